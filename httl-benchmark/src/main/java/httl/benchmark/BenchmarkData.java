@@ -0,0 +1,92 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.test.model.Book;
+import httl.test.model.Model;
+import httl.test.model.User;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * BenchmarkData. (Tool, Static, ThreadSafe)
+ * 
+ * The same user and books as the httl.test.TemplateTest fixtures, as a map or as a bean.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BenchmarkData {
+
+	public static final String MAP = "map";
+
+	public static final String BEAN = "bean";
+
+	public static Object create(String type) throws ParseException {
+		if (BEAN.equals(type)) {
+			return createModel();
+		}
+		return createContext();
+	}
+
+	public static Map<String, Object> createContext() throws ParseException {
+		User user = createUser();
+		Book[] books = createBooks();
+		user.setBook(books[0]);
+		Map<String, Object> context = new HashMap<String, Object>();
+		context.put("user", user);
+		context.put("books", books);
+		context.put("booklist", Arrays.asList(books));
+		return context;
+	}
+
+	public static Model createModel() throws ParseException {
+		User user = createUser();
+		Book[] books = createBooks();
+		user.setBook(books[0]);
+		Model model = new Model();
+		model.user = user;
+		model.setBooks(books);
+		model.setBooklist(Arrays.asList(books));
+		return model;
+	}
+
+	private static User createUser() {
+		return new User("liangfei", "admin", "Y", 1, 3);
+	}
+
+	private static Book[] createBooks() throws ParseException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setTimeZone(TimeZone.getTimeZone("+0"));
+		Book[] books = new Book[10];
+		books[0] = new Book("Practical API Design", "Jaroslav Tulach", "Apress", format.parse("2008-07-29"), 75, 85);
+		books[1] = new Book("Effective Java", "Joshua Bloch", "Addison-Wesley Professional", format.parse("2008-05-28"), 55, 70);
+		books[2] = new Book("Java Concurrency in Practice", "Doug Lea", "Addison-Wesley Professional", format.parse("2006-05-19"), 60, 60);
+		books[3] = new Book("Java Programming Language", "James Gosling", "Prentice Hall", format.parse("2005-08-27"), 65, 75);
+		books[4] = new Book("Domain-Driven Design", "Eric Evans", "Addison-Wesley Professional", format.parse("2003-08-30"), 70, 80);
+		books[5] = new Book("Agile Project Management with Scrum", "Ken Schwaber", "Microsoft Press", format.parse("2004-03-10"), 40, 80);
+		books[6] = new Book("J2EE Development without EJB", "Rod Johnson", "Wrox", format.parse("2011-09-17"), 40, 70);
+		books[7] = new Book("Design Patterns", "Erich Gamma", "Addison-Wesley Professional", format.parse("1994-11-10"), 60, 80);
+		books[8] = new Book("Agile Software Development, Principles, Patterns, and Practices", " Robert C. Martin", "Prentice Hall", format.parse("2002-10-25"), 80, 75);
+		books[9] = new Book("Design by Contract, by Example", "Richard Mitchell", "Addison-Wesley Publishing Company", format.parse("2001-10-22"), 50, 85);
+		return books;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkRunner. (Tool, Static, ThreadSafe)
+ * 
+ * <pre>
+ * mvn -pl httl-benchmark -am package -Dmaven.test.skip
+ * java -jar httl-benchmark/target/benchmarks.jar [include regexp]
+ * java -Dthreads=16 -jar httl-benchmark/target/benchmarks.jar RenderBenchmark
+ * </pre>
+ * 
+ * Runs the selected benchmarks single-threaded and then at -Dthreads (default: available processors),
+ * with the GC profiler reporting the allocation rate.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BenchmarkRunner {
+
+	public static final String COMPILED = "compiled";
+
+	public static final String INTERPRETED = "interpreted";
+
+	public static final String MIXED = "mixed";
+
+	public static final String BYTECODE = "bytecode";
+
+	private static final String CONFIG_PREFIX = "httl-benchmark-";
+
+	private static final String CONFIG_SUFFIX = ".properties";
+
+	private static final String TEMPLATE_DIRECTORY = "/templates/";
+
+	public static String getConfig(String mode) {
+		return CONFIG_PREFIX + mode + CONFIG_SUFFIX;
+	}
+
+	public static String getTemplateName(String template) {
+		return TEMPLATE_DIRECTORY + template;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark";
+		int threads = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+		int[] levels = threads > 1 ? new int[] { 1, threads } : new int[] { 1 };
+		for (int level : levels) {
+			Options options = new OptionsBuilder()
+					.include(include)
+					.threads(level)
+					.addProfiler(GCProfiler.class)
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Node;
+import httl.Template;
+import httl.spi.Parser;
+import httl.spi.Translator;
+import httl.spi.loaders.resources.StringResource;
+
+import java.io.IOException;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CompileBenchmark. (Benchmark)
+ * 
+ * Measures the compile latency of httl.spi.translators.SimpleBytecodeTranslator against
+ * httl.spi.translators.CompiledTranslator with the java compiler, on a template of texts and ${var} values.
+ * The metaspace used and the loaded classes per translated template are printed after every iteration.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileBenchmark {
+
+	@Param({ BenchmarkRunner.COMPILED, BenchmarkRunner.BYTECODE })
+	private String translator;
+
+	@Param({ "10", "100" })
+	private int values;
+
+	private final AtomicLong lastModified = new AtomicLong(System.currentTimeMillis());
+
+	private final AtomicLong translated = new AtomicLong();
+
+	private Engine engine;
+
+	private Translator instance;
+
+	private String source;
+
+	private Node root;
+
+	private long metaspace;
+
+	private long classes;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		engine = Engine.getEngine(BenchmarkRunner.getConfig(translator));
+		instance = engine.getProperty("compiledTranslator", Translator.class);
+		StringBuilder buf = new StringBuilder();
+		buf.append("<ul>\n");
+		for (int i = 0; i < values; i ++) {
+			buf.append("<li>${value").append(i).append("}</li>\n");
+		}
+		buf.append("</ul>\n");
+		source = buf.toString();
+		root = engine.getProperty("templateParser", Parser.class).parse(source, 0);
+	}
+
+	@Setup(Level.Iteration)
+	public void setupIteration() {
+		translated.set(0);
+		metaspace = getMetaspaceUsed();
+		classes = getLoadedClassCount();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() {
+		long count = Math.max(1, translated.get());
+		System.out.println();
+		System.out.println(translator + ": " + translated.get() + " templates, metaspace: "
+				+ (getMetaspaceUsed() - metaspace) / count + " bytes/template, loaded classes: "
+				+ (double) (getLoadedClassCount() - classes) / count + "/template");
+	}
+
+	@Benchmark
+	public Template translate() throws IOException, ParseException {
+		translated.incrementAndGet();
+		StringResource resource = new StringResource(engine, "/compile.httl", null, null, lastModified.incrementAndGet(), source);
+		return instance.translate(resource, root, null);
+	}
+
+	private static long getMetaspaceUsed() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if ("Metaspace".equals(pool.getName())) {
+				return pool.getUsage().getUsed();
+			}
+		}
+		return 0;
+	}
+
+	private static long getLoadedClassCount() {
+		ClassLoadingMXBean bean = ManagementFactory.getClassLoadingMXBean();
+		return bean.getLoadedClassCount();
+	}
+
+}
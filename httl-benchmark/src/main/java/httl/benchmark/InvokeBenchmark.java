@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.spi.methods.CollectionMethod;
+import httl.spi.methods.StringMethod;
+import httl.spi.methods.SystemMethod;
+import httl.spi.translators.templates.InlineCache;
+import httl.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * InvokeBenchmark. (Benchmark)
+ * 
+ * Measures the interpreted method call ${value.substring(1)}: the reflective search of the import methods
+ * and the receiver method on every call, against the httl.spi.translators.templates.InlineCache hit.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeBenchmark {
+
+	private static final String NAME = "substring";
+
+	private final Map<Class<?>, Object> importMethods = new LinkedHashMap<Class<?>, Object>();
+
+	private final InlineCache cache = new InlineCache();
+
+	private Object value;
+
+	private Object[] args;
+
+	@Setup
+	public void setup() throws Exception {
+		importMethods.put(Math.class, Math.class);
+		importMethods.put(SystemMethod.class, SystemMethod.class);
+		importMethods.put(StringMethod.class, StringMethod.class);
+		importMethods.put(CollectionMethod.class, CollectionMethod.class);
+		value = "benchmark";
+		args = new Object[] { Integer.valueOf(1) };
+		Method method = ClassUtils.searchMethod(String.class, NAME, new Class<?>[] { Integer.class }, true);
+		cache.put(getTypes(), InlineCache.INVOKE, InlineCache.toHandle(method), null, null);
+	}
+
+	private Class<?>[] getTypes() {
+		Class<?>[] types = new Class<?>[args.length + 1];
+		types[0] = value.getClass();
+		for (int i = 0; i < args.length; i ++) {
+			types[i + 1] = args[i] == null ? null : args[i].getClass();
+		}
+		return types;
+	}
+
+	@Benchmark
+	public Object reflection() throws Exception {
+		Class<?>[] types = getTypes();
+		for (Class<?> function : importMethods.keySet()) {
+			try {
+				ClassUtils.searchMethod(function, NAME, types, true);
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		Class<?>[] argTypes = new Class<?>[args.length];
+		System.arraycopy(types, 1, argTypes, 0, args.length);
+		Method method = ClassUtils.searchMethod(value.getClass(), NAME, argTypes, true);
+		return method.invoke(value, args);
+	}
+
+	@Benchmark
+	public Object inlineCache() throws Throwable {
+		return cache.get(getTypes()).invoke(value, args);
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Template;
+import httl.test.util.DiscardWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * LargeTemplateBenchmark. (Benchmark)
+ * 
+ * Measures the compiled rendering of a generated very large template, with and without the method outlining.
+ * The outline.size=0 render method is far past the HotSpot HugeMethodLimit, so it is never JIT compiled.
+ * 
+ * @see httl.spi.translators.CompiledTranslator#setOutlineSize(int)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LargeTemplateBenchmark {
+
+	@Param({ "0", "20000" })
+	private int outlineSize;
+
+	@Param({ "50" })
+	private int sections;
+
+	private final Writer writer = new DiscardWriter();
+
+	private Template instance;
+
+	private Map<String, Object> parameters;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		Properties properties = new Properties();
+		properties.setProperty("outline.size", String.valueOf(outlineSize));
+		Engine engine = Engine.getEngine(BenchmarkRunner.getConfig(BenchmarkRunner.COMPILED), properties);
+		parameters = BenchmarkData.createContext();
+		instance = engine.parseTemplate(createSource(sections));
+	}
+
+	public static String createSource(int sections) {
+		StringBuilder buf = new StringBuilder();
+		buf.append("#set(User user)\n#set(Book[] books)\n<html>\n<body>\n");
+		for (int i = 0; i < sections; i ++) {
+			buf.append("<div id=\"section").append(i).append("\">\n");
+			buf.append("<h2>${user.name} ").append(i).append("</h2>\n");
+			buf.append("#if(user.level > ").append(i % 5).append(")\n<p class=\"role\">${user.role}</p>\n#else\n<p>guest</p>\n#end\n");
+			buf.append("<table>\n#for(Book book : books)\n");
+			buf.append("<tr><td>${book.title}</td><td>${book.author}</td>#if(book.discount < 80)<td>${book.price * book.discount / 100}</td>#end</tr>\n");
+			buf.append("#end\n</table>\n</div>\n");
+		}
+		buf.append("</body>\n</html>\n");
+		return buf.toString();
+	}
+
+	@Benchmark
+	public void renderWriter() throws IOException, ParseException {
+		instance.render(parameters, writer);
+	}
+
+}
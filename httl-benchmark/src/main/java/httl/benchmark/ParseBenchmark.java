@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Node;
+import httl.spi.Filter;
+import httl.spi.Parser;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParseBenchmark. (Benchmark)
+ * 
+ * Measures httl.spi.parsers.TemplateParser#parse(String, int) on the filtered template source.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "smoking.httl", "remove_blank.httl", "remove_blank_with_comment.httl" })
+	private String template;
+
+	private Parser parser;
+
+	private String source;
+
+	@Setup
+	public void setup() throws IOException {
+		Engine engine = Engine.getEngine(BenchmarkRunner.getConfig(BenchmarkRunner.COMPILED));
+		String name = BenchmarkRunner.getTemplateName(template);
+		parser = engine.getProperty("templateParser", Parser.class);
+		source = engine.getResource(name).getSource();
+		Filter templateFilter = engine.getProperty("templateFilter", Filter.class);
+		if (templateFilter != null) {
+			source = templateFilter.filter(name, source);
+		}
+	}
+
+	@Benchmark
+	public Node parse() throws IOException, ParseException {
+		return parser.parse(source, 0);
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Template;
+import httl.test.util.DiscardOutputStream;
+import httl.test.util.DiscardWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RenderBenchmark. (Benchmark)
+ * 
+ * Measures httl.Template#render(Object, Object) to a Writer and an OutputStream, and httl.Template#evaluate(Object).
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+	@Param({ BenchmarkRunner.COMPILED, BenchmarkRunner.INTERPRETED, BenchmarkRunner.MIXED })
+	private String mode;
+
+	@Param({ "smoking.httl", "remove_blank.httl", "remove_blank_with_comment.httl" })
+	private String template;
+
+	@Param({ BenchmarkData.MAP, BenchmarkData.BEAN })
+	private String data;
+
+	private final Writer writer = new DiscardWriter();
+
+	private final OutputStream stream = new DiscardOutputStream();
+
+	private Template instance;
+
+	private Object parameters;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		Engine engine = Engine.getEngine(BenchmarkRunner.getConfig(mode));
+		parameters = BenchmarkData.create(data);
+		instance = engine.getTemplate(BenchmarkRunner.getTemplateName(template), parameters);
+		// The mixed template switches to the compiled template on the first complete render.
+		instance.render(parameters, writer);
+	}
+
+	@Benchmark
+	public void renderWriter() throws IOException, ParseException {
+		instance.render(parameters, writer);
+	}
+
+	@Benchmark
+	public void renderStream() throws IOException, ParseException {
+		instance.render(parameters, stream);
+	}
+
+	@Benchmark
+	public Object evaluate() throws ParseException {
+		return instance.evaluate(parameters);
+	}
+
+}
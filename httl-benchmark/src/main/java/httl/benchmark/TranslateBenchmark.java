@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.benchmark;
+
+import httl.Engine;
+import httl.Node;
+import httl.Resource;
+import httl.Template;
+import httl.spi.Filter;
+import httl.spi.Parser;
+import httl.spi.Translator;
+import httl.spi.loaders.resources.StringResource;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TranslateBenchmark. (Benchmark)
+ * 
+ * Measures httl.spi.translators.CompiledTranslator and httl.spi.translators.InterpretedTranslator.
+ * Every invocation translates a resource with a new last modified time, so the compiled
+ * translator generates a new template class and runs the compiler, as a reload does.
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslateBenchmark {
+
+	@Param({ BenchmarkRunner.COMPILED, BenchmarkRunner.INTERPRETED })
+	private String translator;
+
+	@Param({ "smoking.httl", "remove_blank.httl", "remove_blank_with_comment.httl" })
+	private String template;
+
+	private final AtomicLong lastModified = new AtomicLong(System.currentTimeMillis());
+
+	private Engine engine;
+
+	private Translator instance;
+
+	private Resource resource;
+
+	private String source;
+
+	private Node root;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		engine = Engine.getEngine(BenchmarkRunner.getConfig(BenchmarkRunner.COMPILED));
+		String name = BenchmarkRunner.getTemplateName(template);
+		instance = engine.getProperty(translator + "Translator", Translator.class);
+		resource = engine.getResource(name);
+		source = resource.getSource();
+		Filter templateFilter = engine.getProperty("templateFilter", Filter.class);
+		if (templateFilter != null) {
+			source = templateFilter.filter(name, source);
+		}
+		root = engine.getProperty("templateParser", Parser.class).parse(source, 0);
+	}
+
+	@Benchmark
+	public Template translate() throws IOException, ParseException {
+		Resource current = new StringResource(engine, resource.getName(), resource.getLocale(), 
+				resource.getEncoding(), lastModified.incrementAndGet(), source);
+		return instance.translate(current, root, null);
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.maven;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.translators.templates.AdaptiveTemplate;
+import httl.spi.translators.templates.OutputStreamTemplate;
+import httl.util.PrecompiledManifest;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * PrecompileMojo. (Maven Plugin)
+ * 
+ * Compiles the templates at build time, and writes the template classes and 
+ * the manifest to the output directory, so the engine loads them without javac.
+ * 
+ * <pre>
+ * &lt;plugin&gt;
+ *     &lt;groupId&gt;softmotions&lt;/groupId&gt;
+ *     &lt;artifactId&gt;httl-maven-plugin&lt;/artifactId&gt;
+ *     &lt;executions&gt;
+ *         &lt;execution&gt;
+ *             &lt;goals&gt;
+ *                 &lt;goal&gt;precompile&lt;/goal&gt;
+ *             &lt;/goals&gt;
+ *         &lt;/execution&gt;
+ *     &lt;/executions&gt;
+ * &lt;/plugin&gt;
+ * </pre>
+ * 
+ * @see httl.util.PrecompiledManifest
+ * @see httl.spi.translators.CompiledTranslator#setPrecompiledManifest(String)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@Mojo(name = "precompile", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
+public class PrecompileMojo extends AbstractMojo {
+
+	@Parameter(defaultValue = "${project}", readonly = true, required = true)
+	private MavenProject project;
+
+	/**
+	 * The template directory, the template names are relative to it.
+	 */
+	@Parameter(property = "httl.templateDirectory", defaultValue = "${basedir}/src/main/templates")
+	private File templateDirectory;
+
+	/**
+	 * The output directory of the template classes and the manifest.
+	 */
+	@Parameter(property = "httl.outputDirectory", defaultValue = "${project.build.outputDirectory}")
+	private File outputDirectory;
+
+	/**
+	 * The httl config in the project classpath, should be same as the runtime config.
+	 */
+	@Parameter(property = "httl.config", defaultValue = "httl.properties")
+	private String config;
+
+	@Parameter(property = "httl.templateSuffix", defaultValue = ".httl")
+	private String[] templateSuffix;
+
+	@Parameter(property = "httl.manifest", defaultValue = PrecompiledManifest.DEFAULT_PATH)
+	private String manifest;
+
+	@Parameter(property = "httl.skip", defaultValue = "false")
+	private boolean skip;
+
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (skip || ! templateDirectory.isDirectory()) {
+			getLog().info("Skip the httl precompile, no template directory " + templateDirectory);
+			return;
+		}
+		List<String> names = new ArrayList<String>();
+		listTemplates(templateDirectory, "/", names);
+		if (names.isEmpty()) {
+			getLog().info("Skip the httl precompile, no templates in " + templateDirectory);
+			return;
+		}
+		Thread thread = Thread.currentThread();
+		ClassLoader contextLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(createProjectClassLoader());
+		try {
+			Properties properties = new Properties();
+			properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+			properties.setProperty("template.directory", templateDirectory.getAbsolutePath());
+			properties.setProperty("template.suffix", join(templateSuffix));
+			properties.setProperty("compile.directory", outputDirectory.getAbsolutePath());
+			properties.setProperty("text.in.class", "true"); // the text cache is not available at runtime.
+			properties.setProperty("compiled", "true");
+			properties.setProperty("interpreted", "false");
+			properties.setProperty("reloadable", "false");
+			properties.setProperty("localized", "false");
+			properties.setProperty("preload", "false");
+			properties.setProperty("precompiled.manifest", "");
+			Engine engine = Engine.getEngine(config, properties);
+			PrecompiledManifest precompiledManifest = new PrecompiledManifest();
+			for (String name : names) {
+				String source = engine.getResource(name).getSource();
+				Template template = engine.getTemplate(name);
+				if (template instanceof AdaptiveTemplate) {
+					AdaptiveTemplate adaptiveTemplate = (AdaptiveTemplate) template;
+					precompiledManifest.put(name, source, false, adaptiveTemplate.getWriterTemplate().getClass().getName());
+					precompiledManifest.put(name, source, true, adaptiveTemplate.getStreamTemplate().getClass().getName());
+				} else {
+					precompiledManifest.put(name, source, template instanceof OutputStreamTemplate, template.getClass().getName());
+				}
+			}
+			precompiledManifest.store(new File(outputDirectory, manifest));
+			getLog().info("Precompiled " + names.size() + " httl templates to " + outputDirectory);
+		} catch (Exception e) {
+			throw new MojoExecutionException("Failed to precompile httl templates, cause: " + e.getMessage(), e);
+		} finally {
+			thread.setContextClassLoader(contextLoader);
+		}
+	}
+
+	private void listTemplates(File directory, String prefix, List<String> names) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listTemplates(file, prefix + file.getName() + "/", names);
+			} else {
+				for (String suffix : templateSuffix) {
+					if (file.getName().endsWith(suffix)) {
+						names.add(prefix + file.getName());
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private ClassLoader createProjectClassLoader() throws MojoExecutionException {
+		try {
+			List<URL> urls = new ArrayList<URL>();
+			for (Object element : project.getCompileClasspathElements()) {
+				urls.add(new File((String) element).toURI().toURL());
+			}
+			return new URLClassLoader(urls.toArray(new URL[urls.size()]), getClass().getClassLoader());
+		} catch (MalformedURLException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		} catch (Exception e) {
+			throw new MojoExecutionException("Failed to resolve the project classpath, cause: " + e.getMessage(), e);
+		}
+	}
+
+	private static String join(String[] values) {
+		StringBuilder buf = new StringBuilder();
+		for (String value : values) {
+			if (buf.length() > 0) {
+				buf.append(",");
+			}
+			buf.append(value);
+		}
+		return buf.toString();
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.maven;
+
+import httl.util.PrecompiledManifest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.project.MavenProject;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrecompileMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPrecompile() throws Exception {
+		File directory = folder.getRoot();
+		File templateDirectory = new File(directory, "templates");
+		File outputDirectory = new File(directory, "classes");
+		Assert.assertTrue(new File(templateDirectory, "sub").mkdirs());
+		write(new File(templateDirectory, "hello.httl"), "hello ${name}");
+		write(new File(templateDirectory, "sub/page.httl"), "page ${title}");
+		write(new File(templateDirectory, "readme.txt"), "not a template");
+
+		PrecompileMojo mojo = new PrecompileMojo();
+		set(mojo, "project", new MavenProject() {
+			public List<String> getCompileClasspathElements() {
+				return new ArrayList<String>();
+			}
+		});
+		set(mojo, "templateDirectory", templateDirectory);
+		set(mojo, "outputDirectory", outputDirectory);
+		set(mojo, "config", "httl-precompile-mojo.properties");
+		set(mojo, "templateSuffix", new String[] { ".httl" });
+		set(mojo, "manifest", PrecompiledManifest.DEFAULT_PATH);
+		mojo.execute();
+
+		File manifest = new File(outputDirectory, PrecompiledManifest.DEFAULT_PATH);
+		Assert.assertTrue(manifest.isFile());
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(manifest);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		String hello = "/hello.httl#" + PrecompiledManifest.getHash("hello ${name}");
+		String page = "/sub/page.httl#" + PrecompiledManifest.getHash("page ${title}");
+		Assert.assertEquals(4, properties.size());
+		Assert.assertTrue(properties.containsKey(hello + "#writer"));
+		Assert.assertTrue(properties.containsKey(hello + "#stream"));
+		Assert.assertTrue(properties.containsKey(page + "#writer"));
+		Assert.assertTrue(properties.containsKey(page + "#stream"));
+
+		ClassLoader loader = new URLClassLoader(new URL[] { outputDirectory.toURI().toURL() }, getClass().getClassLoader());
+		for (Object className : properties.values()) {
+			File file = new File(outputDirectory, ((String) className).replace('.', '/') + ".class");
+			Assert.assertTrue(file.getPath(), file.isFile());
+			Assert.assertEquals(className, loader.loadClass((String) className).getName());
+		}
+	}
+
+	private static void set(Object object, String name, Object value) throws Exception {
+		Field field = object.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(object, value);
+	}
+
+	private static void write(File file, String source) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -15,8 +15,14 @@
  */
 package httl;
 
+import httl.spi.Resolver;
+import httl.spi.resolvers.ContextResolver;
+import httl.spi.resolvers.MultiResolver;
+import httl.util.DelegateMap;
+
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -49,6 +55,13 @@ import java.util.Set;
  * if (value == null) value = environmentResolver.get(key); // export key=value
  * </pre>
  * 
+ * Explicit context:
+ * 
+ * <pre>
+ * Context context = Context.newContext(parameters);
+ * template.render(context, out); // without the thread local, the rendering can move threads
+ * </pre>
+ * 
  * @see httl.Template#render(Object, Object)
  * @see httl.spi.translators.templates.AbstractTemplate#render(Object, Object)
  * 
@@ -67,7 +80,7 @@ public final class Context implements Map<String, Object> {
 	public static Context getContext() {
 		Context context = LOCAL.get();
 		if (context == null) {
-			context = new Context(null, null);
+			context = new Context(null, null, false);
 			LOCAL.set(context);
 		}
 		return context;
@@ -88,11 +101,68 @@ public final class Context implements Map<String, Object> {
 		if (current instanceof Context) {
 			throw new IllegalArgumentException("Don't use the " + Context.class.getName() + " type as render() parameters, it implicitly delivery.");
 		}
-		Context context = new Context(getContext(), current);
+		Context parent = getContext();
+		Context context = new Context(parent, current, parent.explicit);
 		LOCAL.set(context);
 		return context;
 	}
 
+	/**
+	 * Create a new explicit context, which is not bound to the thread local.
+	 * 
+	 * @see #newContext(Context, Map)
+	 */
+	public static Context newContext() {
+		return newContext(null, null);
+	}
+
+	/**
+	 * Create a new explicit context, which is not bound to the thread local.
+	 * 
+	 * @see #newContext(Context, Map)
+	 * @param current - current variables
+	 */
+	public static Context newContext(Map<String, Object> current) {
+		return newContext(null, current);
+	}
+
+	/**
+	 * Create a new explicit context, which is not bound to the thread local.
+	 * 
+	 * The explicit context is passed as the render() parameters, and delivered to the
+	 * nested templates and macros by the compiled templates, so it can be used by any thread,
+	 * and the rendering can move threads. But the static accessors, such as getContext(),
+	 * see it only while an interpreted template or a bound code is rendering.
+	 * 
+	 * @param parent - parent explicit context
+	 * @param current - current variables
+	 */
+	public static Context newContext(Context parent, Map<String, Object> current) {
+		if (current instanceof Context) {
+			throw new IllegalArgumentException("Don't use the " + Context.class.getName() + " type as variables, use it as the parent.");
+		}
+		if (parent != null && ! parent.explicit) {
+			throw new IllegalArgumentException("The parent context is bound to the thread local, use the pushContext() instead.");
+		}
+		return new Context(parent, current, true);
+	}
+
+	/**
+	 * Bind the explicit context to the thread local, for the code using the static accessors.
+	 * 
+	 * @param context - explicit context, or the returned previous context to restore
+	 * @return previous context
+	 */
+	public static Context bindContext(Context context) {
+		Context previous = LOCAL.get();
+		if (context != null) {
+			LOCAL.set(context);
+		} else {
+			LOCAL.remove();
+		}
+		return previous;
+	}
+
 	/**
 	 * Pop the current context from thread local, and restore parent context to thread local.
 	 */
@@ -115,9 +185,12 @@ public final class Context implements Map<String, Object> {
 		LOCAL.remove();
 	}
 
-	// The current thread.
+	// The current thread, null if the context is explicit.
 	private final Thread thread;
 
+	// The explicit context is passed by the parameters, instead of the thread local.
+	private final boolean explicit;
+
 	// The context level.
 	private final int level;
 
@@ -136,20 +209,44 @@ public final class Context implements Map<String, Object> {
 	// The current engine.
 	private Engine engine;
 
-	private Context(Context parent, Map<String, Object> current) {
-		this.thread = parent == null ? Thread.currentThread() : parent.thread;
+	// The engine resolver, only for the explicit context.
+	private Resolver resolver;
+
+	// The current variable slots.
+	private String[] slots;
+
+	// The current variable frame, indexed by the slots.
+	private Object[] frame;
+
+	// The frame slot states, 0: unchecked, 1: shared, 2: resolved.
+	private byte[] states;
+
+	private Context(Context parent, Map<String, Object> current, boolean explicit) {
+		this.thread = explicit ? null : parent == null ? Thread.currentThread() : parent.thread;
+		this.explicit = explicit;
 		this.level = parent == null ? 0 : parent.getLevel() + 1;
 		this.parent = parent;
-		this.current = current;
+		// The explicit context chains the maps by itself, and resolves without the thread local.
+		this.current = explicit ? new DelegateMap<String, Object>(parent == null ? null : parent.current, current) : current;
 	}
 
 	// Check the cross-thread use.
 	private void checkThread() {
-		if (Thread.currentThread() != thread) {
+		if (thread != null && Thread.currentThread() != thread) {
 			throw new IllegalStateException("Don't cross-thread using " + Context.class.getName() + " object.");
 		}
 	}
 
+	/**
+	 * Is the context explicit, which is not bound to the thread local.
+	 * 
+	 * @see #newContext(Context, Map)
+	 * @return explicit
+	 */
+	public boolean isExplicit() {
+		return explicit;
+	}
+
 	/**
 	 * Get the context level.
 	 * 
@@ -222,7 +319,9 @@ public final class Context implements Map<String, Object> {
 			if (parent != null && parent.getEngine() == null) {
 				parent.setEngine(engine);
 			}
-			if (this.engine == null) {
+			if (explicit) {
+				resolver = engine.getProperty("resolver", Resolver.class);
+			} else if (this.engine == null) {
 				current = engine.createContext(parent, current);
 			}
 		}
@@ -263,6 +362,54 @@ public final class Context implements Map<String, Object> {
 		return this;
 	}
 
+	/**
+	 * Get the variable frame, and link it to the context, used by the compiled template with compiled.slots=true.
+	 * 
+	 * The frame is resolved once per rendering, the compiled template reads
+	 * the variables by the slot index, and the nested contexts find the parent
+	 * variables in the frame, instead of walking the whole context chain.
+	 * Each slot is still resolved through the context maps and the resolvers,
+	 * as the map read, so the gain is limited to the repeated reads of the same
+	 * variables, such as by the nested includes and macros.
+	 * 
+	 * @param slots - the variable keys, indexed by the slot
+	 * @return variable frame
+	 */
+	public Object[] getFrame(String[] slots) {
+		checkThread();
+		Object[] frame = new Object[slots.length];
+		if (current != null) {
+			for (int i = 0; i < slots.length; i ++) {
+				frame[i] = lookup(slots[i]);
+			}
+		}
+		this.slots = slots;
+		this.frame = frame;
+		this.states = new byte[slots.length];
+		return frame;
+	}
+
+	// Find the slot of the key, the keys are interned literals, mostly the same reference.
+	private int getSlot(Object key) {
+		String[] slots = this.slots;
+		for (int i = 0; i < slots.length; i ++) {
+			String slot = slots[i];
+			if (slot == key || slot.equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// The resolver values depend on the current context, such as the out and level,
+	// so only the variables from the context maps are shared to the nested contexts.
+	private boolean isShared(int i) {
+		if (states[i] == 0) {
+			states[i] = current != null && current.containsKey(slots[i]) ? (byte) 1 : (byte) 2;
+		}
+		return states[i] == 1;
+	}
+
 	/**
 	 * Get the variable value.
 	 * 
@@ -280,7 +427,28 @@ public final class Context implements Map<String, Object> {
 
 	public Object get(Object key) {
 		checkThread();
-		return current == null ? null : current.get(key);
+		if (frame != null) {
+			int i = getSlot(key);
+			if (i >= 0 && frame[i] != null && isShared(i)) {
+				return frame[i];
+			}
+		}
+		return current == null ? null : lookup(key);
+	}
+
+	// Lookup the maps, and then the resolver for the explicit context.
+	private Object lookup(Object key) {
+		Object value = current.get(key);
+		if (value == null && resolver != null && key instanceof String) {
+			if (resolver instanceof MultiResolver) {
+				value = ((MultiResolver) resolver).get(this, (String) key);
+			} else if (resolver instanceof ContextResolver) {
+				value = ((ContextResolver) resolver).get(this, (String) key);
+			} else {
+				value = resolver.get((String) key);
+			}
+		}
+		return value;
 	}
 
 	public int size() {
@@ -326,6 +494,13 @@ public final class Context implements Map<String, Object> {
 		if (current == null) { // safe in thread local
 			current = new HashMap<String, Object>();
 		}
+		if (frame != null) {
+			int i = getSlot(key);
+			if (i >= 0) {
+				frame[i] = value;
+				states[i] = 1;
+			}
+		}
 		return current.put(key, value);
 	}
 
@@ -334,16 +509,36 @@ public final class Context implements Map<String, Object> {
 		if (current == null) { // safe in thread local
 			current = new HashMap<String, Object>();
 		}
+		if (frame != null) {
+			for (Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
+				int i = getSlot(entry.getKey());
+				if (i >= 0) {
+					frame[i] = entry.getValue();
+					states[i] = 1;
+				}
+			}
+		}
 		current.putAll(m);
 	}
 
 	public Object remove(Object key) {
 		checkThread();
+		if (frame != null) {
+			int i = getSlot(key);
+			if (i >= 0) {
+				frame[i] = null; // fallback to the map
+				states[i] = 0;
+			}
+		}
 		return current == null ? null : current.remove(key);
 	}
 
 	public void clear() {
 		checkThread();
+		if (frame != null) {
+			Arrays.fill(frame, null);
+			Arrays.fill(states, (byte) 0);
+		}
 		if (current != null) {
 			current.clear();
 		}
@@ -24,9 +24,13 @@ import httl.util.VolatileReference;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -461,6 +465,34 @@ public abstract class Engine {
 
 	public abstract Template parseTemplateByName(String name, Locale locale, String encoding, Object args) throws IOException, ParseException;
 
+	/**
+	 * Add the template dependency, such as the imported macros or the extended layout.
+	 * 
+	 * @param name - dependent template name
+	 * @param dependency - dependency template name
+	 */
+	public void addDependency(String name, String dependency) {
+	}
+
+	/**
+	 * Get the transitive dependent template names, which are invalidated when the template is changed.
+	 * 
+	 * @param name - dependency template name
+	 * @return dependent template names, empty if the engine does not track the dependencies
+	 */
+	public Set<String> getDependents(String name) {
+		return Collections.emptySet();
+	}
+
+	/**
+	 * Get the preload completion, completed with the count of the preloaded templates.
+	 * 
+	 * @return preload completion, completed with 0 if the engine does not preload
+	 */
+	public CompletionStage<Integer> getPreloaded() {
+		return CompletableFuture.completedFuture(0);
+	}
+
 	/**
 	 * Create context map.
 	 * 
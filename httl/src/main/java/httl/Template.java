@@ -19,6 +19,8 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Template. (API, Prototype, Immutable, ThreadSafe)
@@ -91,6 +93,33 @@ public interface Template extends Node, Resource {
 	 */
 	void render() throws IOException, ParseException;
 
+	/**
+	 * Render the template asynchronously.
+	 * 
+	 * The output is written until an uncompleted CompletionStage value, the following
+	 * output is buffered, and flushed in order as the values are completed.
+	 * By default, the template is rendered synchronously, and a completed stage is returned.
+	 * 
+	 * <pre>
+	 * Writer/OutputStream out = ...;
+	 * Map&lt;String, Object&gt; map = new HashMap&lt;String, Object&gt;();
+	 * map.put("foo", fooFuture);
+	 * template.renderAsync(map, out).thenRun(...);
+	 * </pre>
+	 * 
+	 * @see httl.Context
+	 * @see httl.spi.Converter
+	 * @param map - render variables map
+	 * @param out - render output
+	 * @return completed when all the output is flushed
+	 * @throws IOException - If an I/O error occurs
+	 * @throws ParseException - If the template cannot be parsed on runtime
+	 */
+	default CompletionStage<Void> renderAsync(Object map, Object out) throws IOException, ParseException {
+		render(map, out);
+		return CompletableFuture.completedFuture(null);
+	}
+
 	/**
 	 * Evaluate the template.
 	 * 
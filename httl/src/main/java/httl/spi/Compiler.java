@@ -34,4 +34,18 @@ public interface Compiler {
 	 */
 	Class<?> compile(String code) throws ParseException;
 
+	/**
+	 * Compile java source codes in batch, compiled one by one by default.
+	 * 
+	 * @param codes - java source codes
+	 * @return compiled java classes
+	 */
+	default Class<?>[] compile(String[] codes) throws ParseException {
+		Class<?>[] classes = new Class<?>[codes.length];
+		for (int i = 0; i < codes.length; i ++) {
+			classes[i] = compile(codes[i]);
+		}
+		return classes;
+	}
+
 }
\ No newline at end of file
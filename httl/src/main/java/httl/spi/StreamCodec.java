@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Stream Codec. (SPI, Singleton, ThreadSafe)
+ * 
+ * Encode the bean object while writing it to the output, without the encoded string.
+ * The codec which is not a stream codec is encoded to the string first.
+ * 
+ * @see httl.spi.codecs.CodecValue
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public interface StreamCodec extends Codec {
+
+	/**
+	 * Encode the bean object to the writer, without the encoded string.
+	 * 
+	 * @param key - source key
+	 * @param value - bean object
+	 * @param out - the output writer
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void writeTo(String key, Object value, Writer out) throws IOException;
+
+	/**
+	 * Encode the bean object to the output stream in the output encoding, without the encoded string.
+	 * 
+	 * @param key - source key
+	 * @param value - bean object
+	 * @param out - the output stream
+	 * @param encoding - the output encoding
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException;
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Stream Filter. (SPI, Singleton, ThreadSafe)
+ * 
+ * Filter the value while writing it to the output, without the filtered copy.
+ * 
+ * @see httl.spi.translators.CompiledTranslator#setValueFilter(Filter)
+ * @see httl.spi.translators.InterpretedTranslator#setValueFilter(Filter)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public interface StreamFilter extends Filter {
+
+	/**
+	 * Filter the string value to the writer.
+	 * 
+	 * @param key - source key
+	 * @param value - original string value
+	 * @param out - the output writer
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void filter(String key, String value, Writer out) throws IOException;
+
+	/**
+	 * Filter the char array value to the writer.
+	 * 
+	 * @param key - source key
+	 * @param value - original char array value
+	 * @param out - the output writer
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void filter(String key, char[] value, Writer out) throws IOException;
+
+	/**
+	 * Filter the byte array value to the output stream.
+	 * 
+	 * @param key - source key
+	 * @param value - original byte array value
+	 * @param out - the output stream
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void filter(String key, byte[] value, OutputStream out) throws IOException;
+
+	/**
+	 * Filter the byte array range to the output stream.
+	 * 
+	 * @param key - source key
+	 * @param value - original byte array value, such as the reusable number buffer
+	 * @param offset - the start offset of the value
+	 * @param length - the length of the value
+	 * @param out - the output stream
+	 * @throws IOException - If an I/O error occurs
+	 */
+	void filter(String key, byte[] value, int offset, int length, OutputStream out) throws IOException;
+
+}
\ No newline at end of file
@@ -42,4 +42,13 @@ public interface Translator {
 	 */
 	Template translate(Resource resource, Node root, Map<String, Class<?>> types) throws ParseException, IOException;
 
+	/**
+	 * Precompile the resources in batch, before translated one by one, does nothing by default.
+	 * 
+	 * @param resources - template resources
+	 * @param roots - template root nodes
+	 */
+	default void precompile(Resource[] resources, Node[] roots) throws ParseException, IOException {
+	}
+
 }
\ No newline at end of file
@@ -15,104 +15,350 @@
  */
 package httl.spi.caches;
 
-import httl.util.ConcurrentLinkedHashMap;
+import httl.Template;
+import httl.util.ConcurrentLinkedHashMap;
+import httl.util.ConcurrentLinkedHashMap.EvictionListener;
+import httl.util.ConcurrentLinkedHashMap.Weigher;
+import httl.util.VolatileReference;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * AdaptiveCache. (SPI, Singleton, ThreadSafe)
  * 
+ * The bounded cache evicts the least recently used entries, weighed by the template size and macros.
+ * With the frequency admission, the new entries go through a small LRU window first, and an entry
+ * leaving the window is admitted only if it is used more often than the eviction victim, so a sweep
+ * over the rarely used templates does not flush the hot ones.
+ * 
  * @see httl.spi.engines.DefaultEngine#setCache(java.util.Map)
  * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
 public class AdaptiveCache<K, V> implements ConcurrentMap<K, V> {
 
-	private ConcurrentMap<K, V> cache;
+	// The template length of a weight unit, a small template without macros weighs one.
+	private static final int LENGTH_WEIGHT = 8192;
+
+	// The percent of the capacity for the admission window.
+	private static final int WINDOW_PERCENT = 1;
+
+	// The counters are written on each lookup, so they are striped to keep the lookups from contending.
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder recompiles = new LongAdder();
+
+	private int capacity;
+
+	private boolean frequencyAdmission;
+
+	private volatile ConcurrentMap<K, V> cache;
+
+	// The admission window, null if the frequency admission is off.
+	private volatile ConcurrentLinkedHashMap<K, V> window;
+
+	// The access frequencies, null if the frequency admission is off.
+	private volatile FrequencySketch sketch;
 
 	/**
 	 * httl.properties: cache.capacity=1000
 	 */
 	public void setCacheCapacity(int capacity) {
-		if (capacity > 0) {
-			cache = new ConcurrentLinkedHashMap<K, V>(capacity);
-		} else {
-			cache = new ConcurrentHashMap<K, V>();
+		this.capacity = capacity;
+		build();
+	}
+
+	/**
+	 * httl.properties: cache.frequency.admission=false
+	 */
+	public void setCacheFrequencyAdmission(boolean frequencyAdmission) {
+		this.frequencyAdmission = frequencyAdmission;
+		if (cache != null) {
+			build();
 		}
 	}
-	
+
 	public void init() {
 		if (cache == null) {
 			setCacheCapacity(0);
 		}
 	}
 
+	private void build() {
+		if (capacity <= 0) {
+			window = null;
+			sketch = null;
+			cache = new ConcurrentHashMap<K, V>();
+			return;
+		}
+		if (frequencyAdmission) {
+			sketch = new FrequencySketch(capacity);
+			int windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / 100);
+			final ConcurrentLinkedHashMap<K, V> main = newMap(Math.max(1, capacity - windowCapacity), new EvictionListener<K, V>() {
+				public void onEviction(K key, V value) {
+					evictions.increment();
+				}
+			});
+			window = newMap(windowCapacity, new EvictionListener<K, V>() {
+				public void onEviction(K key, V value) {
+					admit(main, key, value);
+				}
+			});
+			cache = main;
+		} else {
+			window = null;
+			sketch = null;
+			cache = newMap(capacity, new EvictionListener<K, V>() {
+				public void onEviction(K key, V value) {
+					evictions.increment();
+				}
+			});
+		}
+	}
+
+	private ConcurrentLinkedHashMap<K, V> newMap(int capacity, EvictionListener<K, V> listener) {
+		return new ConcurrentLinkedHashMap.Builder<K, V>()
+				.maximumWeightedCapacity(capacity)
+				.weigher(new Weigher<V>() {
+					public int weightOf(V value) {
+						return weigh(value);
+					}
+				}).listener(listener).build();
+	}
+
+	// Admit the entry leaving the window, if it has room or is used more often than the eviction victim.
+	private void admit(ConcurrentLinkedHashMap<K, V> main, K key, V value) {
+		FrequencySketch sketch = this.sketch; // safe copy reference
+		if (main.weightedSize() + weigh(value) > main.capacity()) {
+			Iterator<K> victims = main.ascendingKeySetWithLimit(1).iterator();
+			if (victims.hasNext() && sketch.frequency(key) <= sketch.frequency(victims.next())) {
+				evictions.increment(); // rejected
+				return;
+			}
+		}
+		main.putIfAbsent(key, value);
+	}
+
+	// The weight of the template, or the template reference cached by the engine.
+	private static int weigh(Object value) {
+		if (value instanceof VolatileReference) {
+			value = ((VolatileReference<?>) value).get();
+		}
+		if (value instanceof Template) {
+			Template template = (Template) value;
+			long weight = 1 + template.getMacros().size() + template.getLength() / LENGTH_WEIGHT;
+			return (int) Math.min(weight, Integer.MAX_VALUE);
+		}
+		return 1;
+	}
+
+	// Count the entry added again, which has been requested before, so it was evicted or rejected.
+	private void added(K key) {
+		FrequencySketch sketch = this.sketch; // safe copy reference
+		if (sketch != null && sketch.frequency(key) > 1) {
+			recompiles.increment();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public double getHitRate() {
+		long hits = getHitCount();
+		long requests = hits + getMissCount();
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	/**
+	 * Get the count of the evicted entries, including the entries rejected by the frequency admission.
+	 * 
+	 * @return eviction count
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Get the count of the entries added again after evicted, estimated by the access frequencies,
+	 * each one is a template parsed and compiled again, zero if the frequency admission is off.
+	 * 
+	 * @return recompile count
+	 */
+	public long getRecompileCount() {
+		return recompiles.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveCache(size: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", evictions: " + getEvictionCount() + ", recompiles: " + getRecompileCount() + ")";
+	}
+
 	public void clear() {
 		cache.clear();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window != null) {
+			window.clear();
+		}
 	}
 
 	public boolean containsKey(Object key) {
-		return cache.containsKey(key);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.containsKey(key) || (window != null && window.containsKey(key));
 	}
 
 	public boolean containsValue(Object value) {
-		return cache.containsValue(value);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.containsValue(value) || (window != null && window.containsValue(value));
 	}
 
+	// A snapshot with the window entries, if the frequency admission is on.
 	public Set<java.util.Map.Entry<K, V>> entrySet() {
-		return cache.entrySet();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window == null) {
+			return cache.entrySet();
+		}
+		Set<java.util.Map.Entry<K, V>> entries = new HashSet<java.util.Map.Entry<K, V>>(cache.entrySet());
+		entries.addAll(window.entrySet());
+		return entries;
 	}
 
 	public V get(Object key) {
-		return cache.get(key);
+		V value = cache.get(key);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (value == null && window != null) {
+			value = window.get(key);
+		}
+		FrequencySketch sketch = this.sketch; // safe copy reference
+		if (sketch != null) {
+			sketch.increment(key);
+		}
+		if (value != null) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return value;
 	}
 
 	public boolean isEmpty() {
-		return cache.isEmpty();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.isEmpty() && (window == null || window.isEmpty());
 	}
 
+	// A snapshot with the window keys, if the frequency admission is on.
 	public Set<K> keySet() {
-		return cache.keySet();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window == null) {
+			return cache.keySet();
+		}
+		Set<K> keys = new HashSet<K>(cache.keySet());
+		keys.addAll(window.keySet());
+		return keys;
 	}
 
 	public V put(K key, V value) {
-		return cache.put(key, value);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window == null || cache.containsKey(key)) {
+			V old = cache.put(key, value);
+			if (old == null) {
+				added(key);
+			}
+			return old;
+		}
+		V old = window.put(key, value);
+		if (old == null) {
+			added(key);
+		}
+		return old;
 	}
 
 	public void putAll(Map<? extends K, ? extends V> m) {
-		cache.putAll(m);
+		for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
 	}
 
 	public V remove(Object key) {
-		return cache.remove(key);
+		V old = cache.remove(key);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window != null) {
+			V removed = window.remove(key);
+			if (old == null) {
+				old = removed;
+			}
+		}
+		return old;
 	}
 
 	public int size() {
-		return cache.size();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.size() + (window == null ? 0 : window.size());
 	}
 
+	// A snapshot with the window values, if the frequency admission is on.
 	public Collection<V> values() {
-		return cache.values();
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (window == null) {
+			return cache.values();
+		}
+		Collection<V> values = new ArrayList<V>(cache.values());
+		values.addAll(window.values());
+		return values;
 	}
 
 	public V putIfAbsent(K key, V value) {
-		return cache.putIfAbsent(key, value);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		V old;
+		if (window == null) {
+			old = cache.putIfAbsent(key, value);
+		} else {
+			// In a rare race with the admission, the entry may be added to the window again,
+			// then the admitted one is kept, and the duplicate is dropped when it leaves the window.
+			old = ((ConcurrentLinkedHashMap<K, V>) cache).getQuietly(key);
+			if (old == null) {
+				old = window.putIfAbsent(key, value);
+			}
+		}
+		if (old == null) {
+			added(key);
+		}
+		return old;
 	}
 
 	public boolean remove(Object key, Object value) {
-		return cache.remove(key, value);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.remove(key, value) || (window != null && window.remove(key, value));
 	}
 
 	public boolean replace(K key, V oldValue, V newValue) {
-		return cache.replace(key, oldValue, newValue);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		return cache.replace(key, oldValue, newValue) || (window != null && window.replace(key, oldValue, newValue));
 	}
 
 	public V replace(K key, V value) {
-		return cache.replace(key, value);
+		V old = cache.replace(key, value);
+		ConcurrentLinkedHashMap<K, V> window = this.window; // safe copy reference
+		if (old == null && window != null) {
+			old = window.replace(key, value);
+		}
+		return old;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.caches;
+
+/**
+ * FrequencySketch. (SPI, Prototype, ThreadSafe)
+ * 
+ * A count-min sketch of the access frequencies, with four 4-bit counters per key, halved periodically
+ * so the old popularity fades. The counters are updated without locking, a racing update only loses counts.
+ * 
+ * @see httl.spi.caches.AdaptiveCache
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+final class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int MAX_COUNT = 15;
+
+	private final long[] table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private int size;
+
+	FrequencySketch(int capacity) {
+		int length = 16;
+		while (length < capacity && length < (1 << 30)) {
+			length <<= 1;
+		}
+		this.table = new long[length];
+		this.tableMask = length - 1;
+		this.sampleSize = length * 10;
+	}
+
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i ++) {
+			int count = (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & MAX_COUNT);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i ++) {
+			int index = indexOf(hash, i);
+			int offset = offsetOf(hash, i);
+			long value = table[index];
+			if (((value >>> offset) & MAX_COUNT) < MAX_COUNT) {
+				table[index] = value + (1L << offset);
+				added = true;
+			}
+		}
+		if (added && ++ size >= sampleSize) {
+			reset();
+		}
+	}
+
+	// Halve all the counters, so the frequencies are aged.
+	private void reset() {
+		for (int i = 0; i < table.length; i ++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = size >>> 1;
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	// The counter of the row i in the 16 counters of the slot.
+	private static int offsetOf(int hash, int i) {
+		return ((hash >>> (i << 3)) & 15) << 2;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+}
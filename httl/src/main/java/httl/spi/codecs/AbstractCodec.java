@@ -15,13 +15,20 @@
  */
 package httl.spi.codecs;
 
+import java.io.FilterOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.text.ParseException;
 
-import httl.spi.Codec;
+import httl.spi.StreamCodec;
 import httl.spi.formatters.AbstractFormatter;
+import httl.util.StringUtils;
 
-public abstract class AbstractCodec extends AbstractFormatter<Object> implements Codec {
+public abstract class AbstractCodec extends AbstractFormatter<Object> implements StreamCodec {
 
 	public boolean isValueOf(char[] chars) { // slowly
 		return isValueOf(String.valueOf(chars));
@@ -39,6 +46,54 @@ public abstract class AbstractCodec extends AbstractFormatter<Object> implements
 		return valueOf(toString(bytes), type);
 	}
 
+	public void writeTo(String key, Object value, Writer out) throws IOException { // slowly
+		String str = toString(key, value);
+		if (str != null) {
+			out.write(str);
+		}
+	}
+
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException { // slowly
+		String str = toString(key, value);
+		if (str != null) {
+			out.write(encoding == null ? str.getBytes() : StringUtils.toBytes(str, encoding));
+		}
+	}
+
+	// The writer encoding to the output stream, without the encoded string.
+	protected static Writer toWriter(OutputStream out, String encoding) throws UnsupportedEncodingException {
+		out = shield(out);
+		return encoding == null ? new OutputStreamWriter(out) : new OutputStreamWriter(out, encoding);
+	}
+
+	// The output stream ignoring the flush and close by the encoders, the template output is owned by the caller.
+	protected static OutputStream shield(final OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	// The writer ignoring the flush and close by the encoders, the template output is owned by the caller.
+	protected static Writer shield(Writer out) {
+		return new FilterWriter(out) {
+			@Override
+			public void flush() {
+			}
+			@Override
+			public void close() {
+			}
+		};
+	}
+
 	protected String toString(byte[] bytes) {
 		String str;
 		if (outputEncoding == null) {
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.codecs;
+
+import httl.spi.Codec;
+import httl.spi.StreamCodec;
+import httl.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * CodecValue. (SPI, Prototype, ThreadSafe)
+ * 
+ * The bean object to be encoded, the unfiltered value is encoded straight into the template output,
+ * such as $!{encodeJsonStream(list)}, and the filtered one is encoded to the string first.
+ * 
+ * @see httl.spi.methods.CodecMethod#encodeStream(Object, String)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class CodecValue {
+
+	private final Codec codec;
+
+	private final Object value;
+
+	public CodecValue(Codec codec, Object value) {
+		this.codec = codec;
+		this.value = value;
+	}
+
+	public Codec getCodec() {
+		return codec;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public void writeTo(Writer out) throws IOException {
+		if (codec instanceof StreamCodec) {
+			((StreamCodec) codec).writeTo(null, value, out);
+		} else {
+			String str = codec.toString(null, value);
+			if (str != null) {
+				out.write(str);
+			}
+		}
+	}
+
+	public void writeTo(OutputStream out, String encoding) throws IOException {
+		if (codec instanceof StreamCodec) {
+			((StreamCodec) codec).writeTo(null, value, out, encoding);
+		} else {
+			String str = codec.toString(null, value);
+			if (str != null) {
+				out.write(encoding == null ? str.getBytes() : StringUtils.toBytes(str, encoding));
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return codec.toString(null, value);
+	}
+
+}
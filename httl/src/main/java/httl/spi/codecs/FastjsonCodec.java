@@ -15,6 +15,9 @@
  */
 package httl.spi.codecs;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.ParseException;
 
 import com.alibaba.fastjson.JSON;
@@ -51,6 +54,20 @@ public class FastjsonCodec extends AbstractJsonCodec {
 		return JSON.toJSONBytes(value, FEATURES);
 	}
 
+	public void writeTo(String key, Object value, Writer out) throws IOException {
+		if (value != null) {
+			JSON.writeJSONStringTo(value, shield(out), isJsonWithClass() ? FEATURES_WITH_CLASS : FEATURES);
+		}
+	}
+
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException {
+		if (value != null) {
+			Writer writer = toWriter(out, encoding);
+			JSON.writeJSONStringTo(value, writer, isJsonWithClass() ? FEATURES_WITH_CLASS : FEATURES);
+			writer.flush();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T valueOf(String str, Class<T> type) throws ParseException {
 		if (str == null) {
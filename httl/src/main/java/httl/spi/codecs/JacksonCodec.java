@@ -15,8 +15,13 @@
  */
 package httl.spi.codecs;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.ParseException;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.ObjectMapper;
 
@@ -59,6 +64,38 @@ public class JacksonCodec extends AbstractJsonCodec {
 		}
 	}
 
+	public void writeTo(String key, Object value, Writer out) throws IOException {
+		if (value != null) {
+			writeTo(mapper.getJsonFactory().createJsonGenerator(out), value);
+		}
+	}
+
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException {
+		if (value == null) {
+			return;
+		}
+		for (JsonEncoding jsonEncoding : JsonEncoding.values()) {
+			if (encoding == null ? jsonEncoding == JsonEncoding.UTF8 : jsonEncoding.getJavaName().equalsIgnoreCase(encoding)) {
+				writeTo(mapper.getJsonFactory().createJsonGenerator(out, jsonEncoding), value);
+				return;
+			}
+		}
+		Writer writer = toWriter(out, encoding);
+		writeTo(key, value, writer);
+		writer.flush();
+	}
+
+	// The template output is not flushed or closed by the generator.
+	private void writeTo(JsonGenerator generator, Object value) throws IOException {
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+		try {
+			mapper.writeValue(generator, value);
+		} finally {
+			generator.close();
+		}
+	}
+
 	public <T> T valueOf(String str, Class<T> type) throws ParseException {
 		if (str == null) {
 			return null;
@@ -17,9 +17,12 @@ package httl.spi.codecs;
 
 import httl.spi.Compiler;
 import httl.spi.codecs.json.JSON;
+import httl.spi.codecs.json.JSONValue;
 import httl.spi.converters.BeanMapConverter;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.ParseException;
 import java.util.Map;
 
@@ -32,8 +35,15 @@ public class JsonCodec extends AbstractJsonCodec {
 
 	private final BeanMapConverter converter = new BeanMapConverter();
 
+	// Reused for the generated bean encoders.
+	private volatile JSONValue jsonValue = new JSONValue(converter);
+
+	/**
+	 * httl.properties: compiler=httl.spi.compilers.JdkCompiler
+	 */
 	public void setCompiler(Compiler compiler) {
 		this.converter.setCompiler(compiler);
+		this.jsonValue = new JSONValue(converter, compiler);
 	}
 
 	public String toString(String key, Object value) {
@@ -41,12 +51,26 @@ public class JsonCodec extends AbstractJsonCodec {
 			return null;
 		}
 		try {
-			return JSON.json(value, isJsonWithClass(), converter);
+			return JSON.json(value, isJsonWithClass(), jsonValue);
 		} catch (IOException e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
 	}
 
+	public void writeTo(String key, Object value, Writer out) throws IOException {
+		if (value != null) {
+			JSON.json(value, out, isJsonWithClass(), jsonValue);
+		}
+	}
+
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException {
+		if (value != null) {
+			Writer writer = toWriter(out, encoding);
+			JSON.json(value, writer, isJsonWithClass(), jsonValue);
+			writer.flush();
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T valueOf(String str, Class<T> type) throws ParseException {
 		if (str == null) {
@@ -19,6 +19,8 @@ import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.ParseException;
 
 /**
@@ -44,6 +46,16 @@ public class XmlCodec extends AbstractXmlCodec {
 		return bo.toByteArray();
 	}
 
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException {
+		XMLEncoder xe = new XMLEncoder(shield(out), encoding == null ? "UTF-8" : encoding, true, 0);
+		try {
+			xe.writeObject(value);
+			xe.flush();
+		} finally {
+			xe.close();
+		}
+	}
+
 	public <T> T valueOf(String str, Class<T> type) throws ParseException {
 		return valueOf(toBytes(str), type);
 	}
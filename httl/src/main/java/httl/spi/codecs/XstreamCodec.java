@@ -18,6 +18,9 @@ package httl.spi.codecs;
 import httl.util.UnsafeByteArrayInputStream;
 import httl.util.UnsafeByteArrayOutputStream;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.ParseException;
 
 import com.thoughtworks.xstream.XStream;
@@ -51,6 +54,16 @@ public class XstreamCodec extends AbstractXmlCodec {
 		return out.toByteArray();
 	}
 
+	public void writeTo(String key, Object value, Writer out) throws IOException {
+		XSTREAM.toXML(value, shield(out));
+	}
+
+	public void writeTo(String key, Object value, OutputStream out, String encoding) throws IOException {
+		Writer writer = toWriter(out, encoding);
+		XSTREAM.toXML(value, writer);
+		writer.flush();
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T valueOf(String str, Class<T> type) throws ParseException {
 		if (str == null) {
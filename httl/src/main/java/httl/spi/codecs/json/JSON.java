@@ -68,11 +68,25 @@ public class JSON {
 	 */
 	public static String json(Object obj, boolean writeClass, 
 			Converter<Object, Map<String, Object>> mc) throws IOException {
+		return json(obj, writeClass, new JSONValue(mc));
+	}
+
+	/**
+	 * json string, with the beans written by the encoders of the json value.
+	 * 
+	 * @param obj
+	 *            object.
+	 * @param value
+	 *            json value, reused to reuse its generated encoders.
+	 * @return json string.
+	 * @throws IOException.
+	 */
+	public static String json(Object obj, boolean writeClass, JSONValue value) throws IOException {
 		if (obj == null)
 			return NULL;
 		StringWriter sw = new StringWriter();
 		try {
-			json(obj, sw, writeClass, mc);
+			json(obj, sw, writeClass, value);
 			return sw.getBuffer().toString();
 		} finally {
 			sw.close();
@@ -95,10 +109,14 @@ public class JSON {
 
 	public static void json(Object obj, Writer writer, boolean writeClass,
 			Converter<Object, Map<String, Object>> mc) throws IOException {
+		json(obj, writer, writeClass, new JSONValue(mc));
+	}
+
+	public static void json(Object obj, Writer writer, boolean writeClass, JSONValue value) throws IOException {
 		if (obj == null)
 			writer.write(NULL);
 		else
-			json(obj, new JSONWriter(writer), writeClass, mc);
+			json(obj, new JSONWriter(writer), writeClass, value);
 	}
 
 	/**
@@ -150,12 +168,11 @@ public class JSON {
 			json(obj, properties, new JSONWriter(writer), writeClass, mc);
 	}
 
-	private static void json(Object obj, JSONWriter jb, boolean writeClass,
-			Converter<Object, Map<String, Object>> mc) throws IOException {
+	private static void json(Object obj, JSONWriter jb, boolean writeClass, JSONValue value) throws IOException {
 		if (obj == null)
 			jb.valueNull();
 		else
-			new JSONValue(mc).writeValue(obj, jb, writeClass);
+			value.writeValue(obj, jb, writeClass);
 	}
 
 	private static void json(Object obj, String[] properties, JSONWriter jb,
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.codecs.json;
+
+import java.io.IOException;
+
+/**
+ * JSONEncoder, the generated encoder writing the bean properties directly.
+ * 
+ * @see httl.spi.codecs.json.JSONValue#getEncoderClass(Class, httl.spi.Compiler)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public interface JSONEncoder {
+
+	/**
+	 * write the bean as a json object.
+	 * 
+	 * @param bean
+	 *            bean.
+	 * @param jc
+	 *            json converter, for the property values.
+	 * @param jb
+	 *            json builder.
+	 * @param writeClass
+	 *            write the class property.
+	 * @throws IOException
+	 */
+	void encode(Object bean, JSONValue jc, JSONWriter jb, boolean writeClass)
+			throws IOException;
+
+}
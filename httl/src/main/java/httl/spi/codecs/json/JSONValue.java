@@ -15,20 +15,29 @@
  */
 package httl.spi.codecs.json;
 
+import httl.spi.Compiler;
 import httl.spi.Converter;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -42,6 +51,11 @@ public class JSONValue {
 
 	private Converter<Object, Map<String, Object>> converter;
 
+	private Compiler compiler;
+
+	// The generated encoders of this json value, so the bean classes are not held after it.
+	private final ConcurrentMap<Class<?>, JSONEncoder> encoders = new ConcurrentHashMap<Class<?>, JSONEncoder>();
+
 	protected interface Encoder {
 		void encode(Object obj, JSONWriter jb) throws IOException;
 	}
@@ -54,6 +68,19 @@ public class JSONValue {
 		this.converter = mc;
 	}
 
+	/**
+	 * json value, with the beans written by the encoders generated through the compiler.
+	 * 
+	 * @param mc
+	 *            map converter, for the json with properties.
+	 * @param compiler
+	 *            compiler, null to convert the beans to maps.
+	 */
+	public JSONValue(Converter<Object, Map<String, Object>> mc, Compiler compiler) {
+		this.converter = mc;
+		this.compiler = compiler;
+	}
+
 	@SuppressWarnings("unchecked")
 	public void writeValue(Object obj, JSONWriter jb, boolean writeClass)
 			throws IOException {
@@ -102,6 +129,8 @@ public class JSONValue {
 					writeValue(item, jb, writeClass);
 			}
 			jb.arrayEnd();
+		} else if (obj instanceof Serializable && compiler != null) {
+			getEncoder(c).encode(obj, this, jb, writeClass);
 		} else if (obj instanceof Serializable) {
 			jb.objectBegin();
 
@@ -136,6 +165,128 @@ public class JSONValue {
 		}
 	}
 
+	private JSONEncoder getEncoder(Class<?> beanClass) {
+		JSONEncoder encoder = encoders.get(beanClass);
+		if (encoder == null) {
+			try {
+				encoder = (JSONEncoder) getEncoderClass(beanClass, compiler).getDeclaredConstructor().newInstance();
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e.getMessage(), e);
+			}
+			JSONEncoder old = encoders.putIfAbsent(beanClass, encoder);
+			if (old != null) {
+				encoder = old;
+			}
+		}
+		return encoder;
+	}
+
+	/**
+	 * generate the encoder class, writing the same properties in the same order as the bean map,
+	 * with the quoted property names prepared.
+	 * 
+	 * @param beanClass
+	 *            bean class.
+	 * @param compiler
+	 *            compiler.
+	 * @return encoder class, implements JSONEncoder.
+	 * @see httl.spi.converters.BeanMapConverter#getMapClass(Class, Compiler)
+	 */
+	public static Class<?> getEncoderClass(Class<?> beanClass, Compiler compiler) {
+		List<String> keys = new ArrayList<String>();
+		Map<String, String> calls = new HashMap<String, String>();
+		Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+		for (Field field : beanClass.getFields()) {
+			if (Modifier.isPublic(field.getModifiers())
+					&& ! Modifier.isStatic(field.getModifiers())) {
+				String key = field.getName();
+				keys.add(key);
+				calls.put(key, "bean." + key);
+				types.put(key, field.getType());
+			}
+		}
+		Set<String> fields = new HashSet<String>(keys);
+		for (Method method : beanClass.getMethods()) {
+			String name = method.getName();
+			if ((name.length() > 3 && name.startsWith("get") 
+					|| name.length() > 2 && name.startsWith("is"))
+					&& Modifier.isPublic(method.getModifiers())
+					&& method.getReturnType() != void.class
+					&& method.getParameterTypes().length == 0
+					&& method.getDeclaringClass() != Object.class) {
+				int i = name.startsWith("get") ? 3 : 2;
+				String key = name.substring(i, i + 1).toLowerCase() + name.substring(i + 1);
+				if (fields.contains(key)) {
+					continue;
+				}
+				keys.add(key);
+				if (! calls.containsKey(key)) { // the first getter wins, as the bean map.
+					calls.put(key, "bean." + name + "()");
+					types.put(key, method.getReturnType());
+				}
+			}
+		}
+		boolean throwable = Throwable.class.isAssignableFrom(beanClass);
+		StringBuilder items = new StringBuilder();
+		StringBuilder writes = new StringBuilder();
+		int index = 0;
+		for (String key : new HashSet<String>(keys)) { // the key order of the bean map.
+			if (throwable && ("localizedMessage".equals(key) || "cause".equals(key) || "stackTrace".equals(key))) {
+				continue;
+			}
+			String item = "ITEM_" + index ++;
+			items.append("private static final char[] " + item + " = \"\\\"" + key + "\\\":\".toCharArray();\n");
+			writes.append("jb.objectItem(" + item + ");\n");
+			Class<?> type = types.get(key);
+			String call = calls.get(key);
+			if (type == boolean.class) {
+				writes.append("jb.valueBoolean(" + call + ");\n");
+			} else if (type == int.class || type == short.class || type == byte.class) {
+				writes.append("jb.valueInt(" + call + ");\n");
+			} else if (type == long.class) {
+				writes.append("jb.valueLong(" + call + ");\n");
+			} else if (type == float.class) {
+				writes.append("jb.valueFloat(" + call + ");\n");
+			} else if (type == double.class) {
+				writes.append("jb.valueDouble(" + call + ");\n");
+			} else if (type == char.class) {
+				writes.append("jb.valueString(String.valueOf(" + call + "));\n");
+			} else if (type == String.class) {
+				writes.append("value = " + call + ";\n");
+				writes.append("if (value == null) jb.valueNull(); else jb.valueString((String) value);\n");
+			} else {
+				writes.append("value = " + call + ";\n");
+				writes.append("if (value == null || value == bean) jb.valueNull(); else jc.writeValue(value, jb, writeClass);\n");
+			}
+		}
+		String beanName = beanClass.getCanonicalName();
+		StringBuilder code = new StringBuilder();
+		String className = "JSONEncoder_" + beanName.replace('.', '_');
+		code.append("package " + JSONValue.class.getPackage().getName() + ";\n");
+		code.append("public class " + className + " implements " + JSONEncoder.class.getName() + " {\n");
+		code.append("private static final char[] CLASS_ITEM = \"\\\"" + JSONVisitor.CLASS_PROPERTY + "\\\":\".toCharArray();\n");
+		code.append(items);
+		code.append("public void encode(Object obj, " + JSONValue.class.getName() + " jc, " + JSONWriter.class.getName() + " jb, boolean writeClass) throws java.io.IOException {\n");
+		code.append(beanName + " bean = (" + beanName + ") obj;\n");
+		code.append("Object value;\n");
+		code.append("jb.objectBegin();\n");
+		code.append(writes);
+		code.append("if (writeClass) {\n");
+		code.append("jb.objectItem(CLASS_ITEM);\n");
+		code.append("jb.valueString(\"" + beanClass.getName() + "\");\n");
+		code.append("}\n");
+		code.append("jb.objectEnd();\n");
+		code.append("}\n");
+		code.append("}\n");
+		try {
+			return compiler.compile(code.toString());
+		} catch (ParseException e) {
+			throw new RuntimeException(e.getMessage() + "\n====\n" + code.toString() + "\n====\n", e);
+		}
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Object readValue(Class<?> c, Object jv) throws IOException {
 		if (jv == null) {
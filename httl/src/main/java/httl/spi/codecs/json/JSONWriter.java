@@ -102,6 +102,21 @@ public class JSONWriter {
 		return this;
 	}
 
+	/**
+	 * object item, with the name prepared by the generated encoder.
+	 * 
+	 * @param item
+	 *            the escaped name in quotes, followed by the colon.
+	 * @return this.
+	 * @throws IOException.
+	 */
+	public JSONWriter objectItem(char[] item) throws IOException {
+		beforeObjectItem();
+
+		writer.write(item);
+		return this;
+	}
+
 	/**
 	 * array begin.
 	 * 
@@ -19,15 +19,22 @@ import httl.spi.Compiler;
 import httl.spi.Logger;
 import httl.util.ClassUtils;
 import httl.util.StringUtils;
-import httl.util.VolatileReference;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -44,7 +51,12 @@ public abstract class AbstractCompiler implements Compiler {
 	
 	private static final Pattern CLASS_PATTERN = Pattern.compile("class\\s+([_a-zA-Z][_a-zA-Z0-9]*)\\s+");
 
-	private static final ConcurrentMap<String, VolatileReference<Class<?>>> CLASS_CACHE = new ConcurrentHashMap<String, VolatileReference<Class<?>>>();
+	// The compiled classes are weakly referenced, so the replaced and evicted templates can be unloaded with their class loaders.
+	private static final ConcurrentMap<String, ClassReference> CLASS_CACHE = new ConcurrentHashMap<String, ClassReference>();
+
+	private static final AtomicInteger CLASS_COUNT = new AtomicInteger();
+
+	private static final int PURGE_INTERVAL = 256;
 
 	protected File codeDirectory;
 
@@ -54,6 +66,10 @@ public abstract class AbstractCompiler implements Compiler {
 	
 	private volatile boolean first = true;
 
+	private boolean classNameDigest;
+
+	private volatile ClassLoader compileClassLoader;
+
 	/**
 	 * httl.properties: loggers=httl.spi.loggers.Log4jLogger
 	 */
@@ -73,6 +89,13 @@ public abstract class AbstractCompiler implements Compiler {
 		}
 	}
 
+	/**
+	 * httl.properties: class.name.digest=true
+	 */
+	public void setClassNameDigest(boolean classNameDigest) {
+		this.classNameDigest = classNameDigest;
+	}
+
 	/**
 	 * httl.properties: compile.directory=classes
 	 */
@@ -88,13 +111,26 @@ public abstract class AbstractCompiler implements Compiler {
 	protected void saveBytecode(String name, byte[] bytecode) throws IOException {
 		if (compileDirectory != null) {
 			File file = new File(compileDirectory, name.replace('.', '/') + ".class");
-			FileOutputStream out = new FileOutputStream(file);
+			File dir = file.getParentFile();
+			if (! dir.exists() && ! dir.mkdirs()) {
+				throw new IOException("Failed to create directory " + dir.getAbsolutePath());
+			}
+			File temp = new File(dir, file.getName() + ".tmp");
+			FileOutputStream out = new FileOutputStream(temp);
 			try {
 				out.write(bytecode);
 				out.flush();
 			} finally {
 				out.close();
 			}
+			// rename after written, so the half written class is never loaded by the next run.
+			if (! temp.renameTo(file)) {
+				file.delete();
+				if (! temp.renameTo(file)) {
+					temp.delete();
+					throw new IOException("Failed to save class file " + file.getAbsolutePath());
+				}
+			}
 			if (first) {
 				first = false;
 				if (logger != null && logger.isInfoEnabled()) {
@@ -127,38 +163,17 @@ public abstract class AbstractCompiler implements Compiler {
 		String className = null;
 		try {
 			code = code.trim();
-			if (! code.endsWith("}")) {
-				throw new ParseException("The java code not endsWith \"}\"", code.length() - 1);
-			}
-			Matcher matcher = PACKAGE_PATTERN.matcher(code);
-			String pkg;
-			if (matcher.find()) {
-				pkg = matcher.group(1);
-			} else {
-				pkg = "";
-			}
-			matcher = CLASS_PATTERN.matcher(code);
-			String classSimpleName;
-			if (matcher.find()) {
-				classSimpleName = matcher.group(1);
-			} else {
-				throw new ParseException("No such class name in java code.", 0);
-			}
-			className = StringUtils.isNotEmpty(pkg) ? pkg + "." + classSimpleName : classSimpleName;
-			VolatileReference<Class<?>> ref = CLASS_CACHE.get(className);
-			if (ref == null) {
-				ref = new VolatileReference<Class<?>>();
-				VolatileReference<Class<?>> old = CLASS_CACHE.putIfAbsent(className, ref);
-				if (old != null) {
-					ref = old;
-				}
-			}
+			className = getClassName(code);
+			ClassReference ref = getReference(className);
 			Class<?> cls = ref.get();
 			if (cls == null) {
 				synchronized(ref) {
 					cls = ref.get();
 					if (cls == null) {
-						cls = doCompile(className, code);
+						cls = loadCompiledClass(className);
+						if (cls == null) {
+							cls = doCompile(className, code);
+						}
 						ref.set(cls);
 					}
 				}
@@ -175,7 +190,199 @@ public abstract class AbstractCompiler implements Compiler {
 			throw new ParseException("Failed to compile class, cause: " + t.getMessage() + ", class: " + className + ", stack: " + ClassUtils.toString(t), 0);
 		}
 	}
+
+	public Class<?>[] compile(String[] codes) throws ParseException {
+		Class<?>[] classes = new Class<?>[codes.length];
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		List<String> sources = new ArrayList<String>();
+		try {
+			for (int i = 0; i < codes.length; i ++) {
+				String code = codes[i].trim();
+				String className = getClassName(code);
+				Class<?> cls = getReference(className).get();
+				if (cls == null) {
+					cls = loadCompiledClass(className);
+				}
+				if (cls == null) {
+					indexes.add(i);
+					names.add(className);
+					sources.add(code);
+				} else {
+					classes[i] = cls;
+				}
+			}
+			if (names.size() > 0) {
+				Class<?>[] compiled = doCompile(names.toArray(new String[names.size()]), sources.toArray(new String[sources.size()]));
+				for (int i = 0; i < compiled.length; i ++) {
+					ClassReference ref = getReference(names.get(i));
+					Class<?> cls;
+					synchronized(ref) {
+						cls = ref.get();
+						if (cls == null) {
+							cls = compiled[i];
+							ref.set(cls);
+						}
+					}
+					classes[indexes.get(i)] = cls;
+					logJavaCode(cls, sources.get(i));
+				}
+			}
+			return classes;
+		} catch (Throwable t) {
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Failed to compile classes in batch, cause: " + t.getMessage() + ", classes: " + names, t);
+			}
+			if (t instanceof ParseException) {
+				throw (ParseException) t;
+			}
+			throw new ParseException("Failed to compile classes in batch, cause: " + t.getMessage() + ", classes: " + names + ", stack: " + ClassUtils.toString(t), 0);
+		}
+	}
+
+	private String getClassName(String code) throws ParseException {
+		if (! code.endsWith("}")) {
+			throw new ParseException("The java code not endsWith \"}\"", code.length() - 1);
+		}
+		Matcher matcher = PACKAGE_PATTERN.matcher(code);
+		String pkg;
+		if (matcher.find()) {
+			pkg = matcher.group(1);
+		} else {
+			pkg = "";
+		}
+		matcher = CLASS_PATTERN.matcher(code);
+		String classSimpleName;
+		if (matcher.find()) {
+			classSimpleName = matcher.group(1);
+		} else {
+			throw new ParseException("No such class name in java code.", 0);
+		}
+		return StringUtils.isNotEmpty(pkg) ? pkg + "." + classSimpleName : classSimpleName;
+	}
+
+	// Load the class saved by the last run, the digest class name changes with the source.
+	protected Class<?> loadCompiledClass(String className) {
+		File file = compileDirectory == null ? null : new File(compileDirectory, className.replace('.', '/') + ".class");
+		if (! classNameDigest || file == null || ! file.exists()) {
+			return null;
+		}
+		try {
+			Class<?> cls = loadCompiledClass(className, file);
+			if (logger != null && logger.isDebugEnabled()) {
+				logger.debug("Load the compiled class " + className + " from directory " + compileDirectory.getAbsolutePath());
+			}
+			return cls;
+		} catch (Throwable e) { // broken class file, compile again.
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Failed to load the compiled class " + className + " from directory " + compileDirectory.getAbsolutePath() + ", cause: " + e.getMessage(), e);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Load the class file saved in the compile directory, the compilers which link 
+	 * the classes compiled later to the loaded classes should override it.
+	 * 
+	 * @param className - class name
+	 * @param file - class file
+	 * @return loaded class
+	 */
+	protected Class<?> loadCompiledClass(String className, File file) throws Exception {
+		return getCompileClassLoader().loadClass(className);
+	}
+
+	private ClassLoader getCompileClassLoader() throws MalformedURLException {
+		if (compileClassLoader == null) {
+			synchronized (this) {
+				if (compileClassLoader == null) {
+					ClassLoader parent = Thread.currentThread().getContextClassLoader();
+					if (parent == null) {
+						parent = AbstractCompiler.class.getClassLoader();
+					}
+					compileClassLoader = new URLClassLoader(new URL[] { compileDirectory.toURI().toURL() }, parent);
+				}
+			}
+		}
+		return compileClassLoader;
+	}
+
+	private ClassReference getReference(String className) {
+		ClassReference ref = CLASS_CACHE.get(className);
+		if (ref == null) {
+			ref = new ClassReference();
+			ClassReference old = CLASS_CACHE.putIfAbsent(className, ref);
+			if (old != null) {
+				ref = old;
+			} else if (CLASS_COUNT.incrementAndGet() % PURGE_INTERVAL == 0) {
+				purgeClasses();
+			}
+		}
+		return ref;
+	}
+
+	// Remove the unloaded classes, the references still compiling are kept.
+	private static void purgeClasses() {
+		for (Iterator<ClassReference> i = CLASS_CACHE.values().iterator(); i.hasNext(); ) {
+			if (i.next().isUnloaded()) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the count of the compiled template classes still loaded, in all the engines.
+	 * 
+	 * @return loaded class count
+	 */
+	public static int getLoadedClassCount() {
+		int count = 0;
+		for (ClassReference ref : CLASS_CACHE.values()) {
+			if (ref.get() != null) {
+				count ++;
+			}
+		}
+		return count;
+	}
 	
 	protected abstract Class<?> doCompile(String name, String source) throws Exception;
 
+	/**
+	 * Compile the sources in batch, the compilers which can share 
+	 * one compilation for many classes should override it.
+	 * 
+	 * @param names - class names
+	 * @param sources - java source codes
+	 * @return compiled java classes
+	 */
+	protected Class<?>[] doCompile(String[] names, String[] sources) throws Exception {
+		Class<?>[] classes = new Class<?>[names.length];
+		for (int i = 0; i < names.length; i ++) {
+			classes[i] = doCompile(names[i], sources[i]);
+		}
+		return classes;
+	}
+
+
+	private static final class ClassReference {
+
+		private volatile WeakReference<Class<?>> reference;
+
+		Class<?> get() {
+			WeakReference<Class<?>> reference = this.reference;
+			return reference == null ? null : reference.get();
+		}
+
+		void set(Class<?> cls) {
+			this.reference = new WeakReference<Class<?>>(cls);
+		}
+
+		boolean isUnloaded() {
+			WeakReference<Class<?>> reference = this.reference;
+			return reference != null && reference.get() == null;
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -36,6 +36,10 @@ public class AdaptiveCompiler implements Compiler {
 
 	private String codeDirectory;
 
+	private String compileDirectory;
+
+	private boolean classNameDigest;
+
 	/**
 	 * httl.properties: loggers=httl.spi.loggers.Log4jLogger
 	 */
@@ -56,6 +60,26 @@ public class AdaptiveCompiler implements Compiler {
 		}
 	}
 
+	/**
+	 * httl.properties: compile.directory=classes
+	 */
+	public void setCompileDirectory(String compileDirectory) {
+		this.compileDirectory = compileDirectory;
+		if (compiler instanceof AbstractCompiler) {
+			((AbstractCompiler) compiler).setCompileDirectory(compileDirectory);
+		}
+	}
+
+	/**
+	 * httl.properties: class.name.digest=true
+	 */
+	public void setClassNameDigest(boolean classNameDigest) {
+		this.classNameDigest = classNameDigest;
+		if (compiler instanceof AbstractCompiler) {
+			((AbstractCompiler) compiler).setClassNameDigest(classNameDigest);
+		}
+	}
+
 	/**
 	 * httl.properties: lint.unchecked=true
 	 */
@@ -73,12 +97,16 @@ public class AdaptiveCompiler implements Compiler {
 			JavassistCompiler javassistCompiler = new JavassistCompiler();
 			javassistCompiler.setLogger(logger);
 			javassistCompiler.setCodeDirectory(codeDirectory);
+			javassistCompiler.setCompileDirectory(compileDirectory);
+			javassistCompiler.setClassNameDigest(classNameDigest);
 			compiler = javassistCompiler;
 		} else {
 			JdkCompiler jdkCompiler = new JdkCompiler();
 			jdkCompiler.setCompileVersion(version);
 			jdkCompiler.setLogger(logger);
 			jdkCompiler.setCodeDirectory(codeDirectory);
+			jdkCompiler.setCompileDirectory(compileDirectory);
+			jdkCompiler.setClassNameDigest(classNameDigest);
 			compiler = jdkCompiler;
 		}
 	}
@@ -96,4 +124,8 @@ public class AdaptiveCompiler implements Compiler {
 		return compiler.compile(code);
 	}
 
+	public Class<?>[] compile(String[] codes) throws ParseException {
+		return compiler.compile(codes);
+	}
+
 }
\ No newline at end of file
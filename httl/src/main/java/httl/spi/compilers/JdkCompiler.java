@@ -16,19 +16,24 @@
 package httl.spi.compilers;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.tools.Diagnostic;
@@ -47,6 +52,7 @@ import javax.tools.ToolProvider;
 
 import httl.spi.Compiler;
 import httl.util.ClassUtils;
+import httl.util.IOUtils;
 import httl.util.StringUtils;
 import httl.util.UnsafeByteArrayInputStream;
 import httl.util.UnsafeByteArrayOutputStream;
@@ -68,8 +74,16 @@ public class JdkCompiler extends AbstractCompiler {
 
     private final JavaFileManagerImpl javaFileManager;
 
-    // qualifiedClassName => TemplateClassLoader
-    private final Map<String, TemplateClassLoader> qname2Loader = new HashMap<>();
+    // qualifiedClassName => TemplateClassLoader, weakly referenced, so the unused template classes can be unloaded
+    private final Map<String, WeakReference<TemplateClassLoader>> qname2Loader = new ConcurrentHashMap<>();
+
+    // The class loaders created or read by the compilation on the current thread, they reference each other,
+    // so the macro classes compiled before are not unloaded until the template class is linked to them
+    private static final ThreadLocal<List<TemplateClassLoader>> COMPILING = new ThreadLocal<>();
+
+    private final AtomicInteger added = new AtomicInteger();
+
+    private static final int PURGE_INTERVAL = 256;
 
     private final List<String> options = new ArrayList<>();
 
@@ -198,7 +212,7 @@ public class JdkCompiler extends AbstractCompiler {
 
         String strippedName = stripClassTimestamp(name);
         // to avoid ts associated leaks we use one classloader per class
-        TemplateClassLoader cl = qname2Loader.get(strippedName);
+        TemplateClassLoader cl = getLoader(strippedName);
         if (cl != null && name.equals(cl.qualifiedClassName)) {
             try {
                 return cl.loadClass(name);
@@ -210,30 +224,158 @@ public class JdkCompiler extends AbstractCompiler {
         String className = i < 0 ? name : name.substring(i + 1);
         JavaFileObjectImpl javaFileObject = new JavaFileObjectImpl(className, sourceCode);
         javaFileManager.putFileForInput(StandardLocation.SOURCE_PATH, packageName, className, javaFileObject);
-        DiagnosticCollector<JavaFileObject> dc = new DiagnosticCollector<>();
-        Boolean result = compiler.getTask(null, javaFileManager, dc, options,
-                                          null, Collections.singletonList(javaFileObject)).call();
-        if (result == null || !result) {
-            throw new IllegalStateException("Compilation failed. class: " + name +
-                                            ", diagnostics: " + dc.getDiagnostics());
-        }
-        cl = qname2Loader.get(strippedName);
+        List<TemplateClassLoader> loaders = new ArrayList<>();
+        COMPILING.set(loaders);
+        try {
+            DiagnosticCollector<JavaFileObject> dc = new DiagnosticCollector<>();
+            Boolean result = compiler.getTask(null, javaFileManager, dc, options,
+                                              null, Collections.singletonList(javaFileObject)).call();
+            if (result == null || !result) {
+                throw new IllegalStateException("Compilation failed. class: " + name +
+                                                ", diagnostics: " + dc.getDiagnostics());
+            }
+        } finally {
+            COMPILING.remove();
+            javaFileManager.removeFileForInput(StandardLocation.SOURCE_PATH, packageName, className);
+        }
+        cl = findLoader(loaders, name);
         if (cl == null) {
             throw new IllegalStateException("Classloader for: " + name + " is not found");
         }
         return cl.loadClass(name);
     }
 
+    // Load the class saved by the last run into a class loader slot, so the templates compiled later can link to it
+    @Override
+    protected Class<?> loadCompiledClass(String className, File file) throws Exception {
+        TemplateClassLoader slot;
+        synchronized (qname2Loader) { // load the class out of the lock, it may link to the other classes saved
+            slot = getLoader(stripClassTimestamp(className));
+            if (slot == null || !className.equals(slot.qualifiedClassName)) {
+                InputStream in = new FileInputStream(file);
+                byte[] bytecode;
+                try {
+                    bytecode = IOUtils.readToBytes(in);
+                } finally {
+                    in.close();
+                }
+                List<TemplateClassLoader> siblings = new ArrayList<>(1);
+                slot = new TemplateClassLoader(className, Kind.CLASS, siblings);
+                slot.jfo.setByteCode(bytecode);
+                slot.saved = true;
+                siblings.add(slot);
+                putLoader(slot);
+            }
+        }
+        return slot.loadClass(className);
+    }
+
+    private void putLoader(TemplateClassLoader slot) {
+        if (qname2Loader.put(stripClassTimestamp(slot.qualifiedClassName), new WeakReference<>(slot)) == null
+            && added.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purgeLoaders();
+        }
+    }
+
+    // Find the class loader created by the compilation, the compiling loaders are strongly referenced
+    // until the class is loaded, the weak reference in the map may be cleared before it.
+    private TemplateClassLoader findLoader(List<TemplateClassLoader> loaders, String qualifiedClassName) {
+        for (TemplateClassLoader loader : loaders) {
+            if (qualifiedClassName.equals(loader.qualifiedClassName)) {
+                return loader;
+            }
+        }
+        return getLoader(stripClassTimestamp(qualifiedClassName));
+    }
+
+    private TemplateClassLoader getLoader(String qualifiedClassName) {
+        WeakReference<TemplateClassLoader> reference = qname2Loader.get(qualifiedClassName);
+        return reference == null ? null : reference.get();
+    }
+
+    // Remove the unloaded class loaders, called when the new class loaders are added.
+    private void purgeLoaders() {
+        for (Iterator<WeakReference<TemplateClassLoader>> i = qname2Loader.values().iterator(); i.hasNext(); ) {
+            if (i.next().get() == null) {
+                i.remove();
+            }
+        }
+    }
+
+    @Override
+    protected Class<?>[] doCompile(String[] names, String[] sourceCodes) throws Exception {
+        try {
+            return doCompile(names, sourceCodes, options);
+        } catch (Exception e) {
+            if (lintUnchecked && e.getMessage() != null
+                && e.getMessage().contains("-Xlint:unchecked")) {
+                return doCompile(names, sourceCodes, lintOptions);
+            }
+            throw e;
+        }
+    }
+
+    private Class<?>[] doCompile(String[] names, String[] sourceCodes, List<String> options) throws Exception {
+        // one file manager per batch, so the batches can be compiled in parallel
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            fileManager.setLocation(StandardLocation.CLASS_PATH,
+                                    standardJavaFileManager.getLocation(StandardLocation.CLASS_PATH));
+            JavaFileManagerImpl batchFileManager = new JavaFileManagerImpl(fileManager);
+            List<JavaFileObject> units = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i];
+                int j = name.lastIndexOf('.');
+                String packageName = j < 0 ? "" : name.substring(0, j);
+                String className = j < 0 ? name : name.substring(j + 1);
+                JavaFileObjectImpl javaFileObject = new JavaFileObjectImpl(className, sourceCodes[i]);
+                batchFileManager.putFileForInput(StandardLocation.SOURCE_PATH, packageName, className, javaFileObject);
+                units.add(javaFileObject);
+            }
+            List<TemplateClassLoader> loaders = new ArrayList<>();
+            COMPILING.set(loaders);
+            try {
+                DiagnosticCollector<JavaFileObject> dc = new DiagnosticCollector<>();
+                Boolean result = compiler.getTask(null, batchFileManager, dc, options,
+                                                  null, units).call();
+                if (result == null || !result) {
+                    throw new IllegalStateException("Compilation failed. classes: " + Arrays.toString(names) +
+                                                    ", diagnostics: " + dc.getDiagnostics());
+                }
+            } finally {
+                COMPILING.remove();
+            }
+            Class<?>[] classes = new Class<?>[names.length];
+            for (int i = 0; i < names.length; i++) {
+                TemplateClassLoader cl = findLoader(loaders, names[i]);
+                if (cl == null) {
+                    throw new IllegalStateException("Classloader for: " + names[i] + " is not found");
+                }
+                classes[i] = cl.loadClass(names[i]);
+            }
+            return classes;
+        } finally {
+            fileManager.close();
+        }
+    }
+
     private class TemplateClassLoader extends ClassLoader {
 
         private final JavaFileObjectImpl jfo;
 
         private final String qualifiedClassName;
 
-        private TemplateClassLoader(String qualifiedClassName, Kind kind) {
+        // The class loaders compiled together, such as the macro classes, are unloaded together
+        private final List<TemplateClassLoader> siblings;
+
+        // Loaded from the compile directory, not saved again
+        private volatile boolean saved;
+
+        private TemplateClassLoader(String qualifiedClassName, Kind kind, List<TemplateClassLoader> siblings) {
             super(parentClassLoader);
             this.qualifiedClassName = qualifiedClassName;
-            this.jfo = new JavaFileObjectImpl(qualifiedClassName, kind);
+            this.jfo = new JavaFileObjectImpl(qualifiedClassName, kind, this);
+            this.siblings = siblings;
         }
 
         @Override
@@ -241,11 +383,24 @@ public class JdkCompiler extends AbstractCompiler {
             try {
                 return super.findClass(qualifiedClassName);
             } catch (ClassNotFoundException e) {
+                if (! qualifiedClassName.equals(this.qualifiedClassName)) {
+                    TemplateClassLoader slot = getLoader(stripClassTimestamp(qualifiedClassName));
+                    if (slot == null || slot == this || ! qualifiedClassName.equals(slot.qualifiedClassName)) {
+                        Class<?> cls = slot == null ? loadCompiledClass(qualifiedClassName) : null; // such as a macro saved by the last run
+                        if (cls == null) {
+                            throw e;
+                        }
+                        return cls;
+                    }
+                    return slot.loadClass(qualifiedClassName);
+                }
                 byte[] bytes = jfo.getByteCode();
-                try {
-                    saveBytecode(qualifiedClassName, bytes);
-                } catch (IOException e2) {
-                    throw new IllegalStateException(e2.getMessage(), e2);
+                if (! saved) {
+                    try {
+                        saveBytecode(qualifiedClassName, bytes);
+                    } catch (IOException e2) {
+                        throw new IllegalStateException(e2.getMessage(), e2);
+                    }
                 }
                 return defineClass(qualifiedClassName, bytes, 0, bytes.length);
             }
@@ -255,9 +410,9 @@ public class JdkCompiler extends AbstractCompiler {
         public InputStream getResourceAsStream(final String name) {
             if (name.endsWith(ClassUtils.CLASS_EXTENSION)) {
                 String cn = name.substring(0, name.length() - ClassUtils.CLASS_EXTENSION.length()).replace('/', '.');
-                TemplateClassLoader slot = qname2Loader.get(cn);
+                TemplateClassLoader slot = getLoader(cn);
                 if (slot == null) {
-                    slot = qname2Loader.get(stripClassTimestamp(cn));
+                    slot = getLoader(stripClassTimestamp(cn));
                 }
                 if (slot != null) {
                     return new UnsafeByteArrayInputStream(slot.jfo.getByteCode());
@@ -273,19 +428,24 @@ public class JdkCompiler extends AbstractCompiler {
 
         private final CharSequence source;
 
+        private final TemplateClassLoader owner;
+
         private JavaFileObjectImpl(final String baseName, final CharSequence source) {
             super(ClassUtils.toURI(baseName + ClassUtils.JAVA_EXTENSION), Kind.SOURCE);
             this.source = source;
+            this.owner = null;
         }
 
-        JavaFileObjectImpl(final String name, final Kind kind) {
+        JavaFileObjectImpl(final String name, final Kind kind, final TemplateClassLoader owner) {
             super(ClassUtils.toURI(name), kind);
-            source = null;
+            this.source = null;
+            this.owner = owner;
         }
 
         private JavaFileObjectImpl(URI uri, Kind kind) {
             super(uri, kind);
-            source = null;
+            this.source = null;
+            this.owner = null;
         }
 
         @Override
@@ -298,6 +458,10 @@ public class JdkCompiler extends AbstractCompiler {
 
         @Override
         public InputStream openInputStream() {
+            List<TemplateClassLoader> loaders = COMPILING.get();
+            if (owner != null && loaders != null && ! loaders.contains(owner)) {
+                loaders.add(owner); // the compiling classes depend on it
+            }
             return new UnsafeByteArrayInputStream(getByteCode());
         }
 
@@ -309,11 +473,17 @@ public class JdkCompiler extends AbstractCompiler {
         public byte[] getByteCode() {
             return bytecode.toByteArray();
         }
+
+        void setByteCode(byte[] bytes) {
+            UnsafeByteArrayOutputStream out = new UnsafeByteArrayOutputStream(bytes.length);
+            out.write(bytes, 0, bytes.length);
+            bytecode = out;
+        }
     }
 
     private class JavaFileManagerImpl extends ForwardingJavaFileManager<JavaFileManager> {
 
-        private final Map<URI, JavaFileObject> fileObjects = new HashMap<>();
+        private final Map<URI, JavaFileObject> fileObjects = new ConcurrentHashMap<>();
 
         private JavaFileManagerImpl(JavaFileManager fileManager) {
             super(fileManager);
@@ -332,6 +502,13 @@ public class JdkCompiler extends AbstractCompiler {
                             file);
         }
 
+        public void removeFileForInput(StandardLocation location,
+                                       String packageName,
+                                       String className) {
+            fileObjects.remove(uri(location, packageName,
+                                   stripClassTimestamp(className) + ClassUtils.JAVA_EXTENSION));
+        }
+
         @Override
         public FileObject getFileForInput(Location location,
                                           String packageName,
@@ -353,8 +530,13 @@ public class JdkCompiler extends AbstractCompiler {
                                                    String qualifiedName,
                                                    Kind kind,
                                                    FileObject outputFile) throws IOException {
-            TemplateClassLoader slot = new TemplateClassLoader(qualifiedName, kind);
-            qname2Loader.put(stripClassTimestamp(qualifiedName), slot);
+            List<TemplateClassLoader> siblings = COMPILING.get();
+            if (siblings == null) {
+                siblings = new ArrayList<>(1);
+            }
+            TemplateClassLoader slot = new TemplateClassLoader(qualifiedName, kind, siblings);
+            siblings.add(slot);
+            putLoader(slot);
             return slot.jfo;
         }
 
@@ -376,8 +558,11 @@ public class JdkCompiler extends AbstractCompiler {
                         files.add(file);
                     }
                 }
-                for (TemplateClassLoader ts : qname2Loader.values()) {
-                    files.add(ts.jfo);
+                for (WeakReference<TemplateClassLoader> reference : qname2Loader.values()) {
+                    TemplateClassLoader ts = reference.get();
+                    if (ts != null && ts.jfo.bytecode != null) { // skip the classes still compiling in other batches
+                        files.add(ts.jfo);
+                    }
                 }
             } else if (location == StandardLocation.SOURCE_PATH && kinds.contains(JavaFileObject.Kind.SOURCE)) {
                 for (JavaFileObject file : fileObjects.values()) {
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.converters;
+
+import httl.spi.Converter;
+import httl.util.GatheringOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.util.Map;
+
+/**
+ * ChannelOutConverter. (SPI, Singleton, ThreadSafe)
+ * 
+ * Renders to the channel by the gathering writes, the template flushes it after rendering.
+ * 
+ * @see httl.spi.translators.CompiledTranslator#setOutConverter(Converter)
+ * @see httl.spi.translators.InterpretedTranslator#setOutConverter(Converter)
+ * @see httl.util.GatheringOutputStream
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ChannelOutConverter implements Converter<WritableByteChannel, OutputStream> {
+
+	public OutputStream convert(WritableByteChannel value, Map<String, Class<?>> types) throws IOException, ParseException {
+		return new GatheringOutputStream(value);
+	}
+
+}
\ No newline at end of file
@@ -27,7 +27,10 @@ import httl.spi.Parser;
 import httl.spi.Resolver;
 import httl.spi.Translator;
 import httl.spi.loaders.StringLoader;
+import httl.spi.loaders.resources.InputStreamResource;
 import httl.spi.translators.templates.AbstractTemplate;
+import httl.spi.translators.templates.AdaptiveTemplate;
+import httl.spi.translators.templates.CompiledTemplate;
 import httl.util.ConfigUtils;
 import httl.util.DelegateMap;
 import httl.util.Digest;
@@ -36,17 +39,37 @@ import httl.util.TypeMap;
 import httl.util.UrlUtils;
 import httl.util.VolatileReference;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DefaultEngine. (SPI, Singleton, ThreadSafe)
@@ -89,9 +112,65 @@ public class DefaultEngine extends Engine {
 
 	// httl.properties: reloadable=true
 	private boolean reloadable;
+
+	// httl.properties: reload.interval=1000
+	private long reloadInterval;
+
+	// httl.properties: reload.dependents.eagerly=false
+	private boolean reloadDependentsEagerly;
+
+	// The template file watcher, for the reloadable engine.
+	private volatile ResourceWatcher watcher;
+
+	// The count of the changes reloaded by the watcher, written by the watcher thread only.
+	private volatile long resourceChanges;
+
+	// httl.properties: metaspace.budget=0
+	private long metaspaceBudget;
+
+	// The metaspace memory pool, checked after the templates are parsed, if the budget is set.
+	private MemoryPoolMXBean metaspace;
+
+	private volatile long lastEvicted;
+
+	// The metaspace used when the last eviction happened, to know if it freed anything.
+	private volatile long lastEvictedUsed;
+
+	// The metaspace used by the others, over the budget, the evictions freed nothing under it.
+	private volatile long metaspaceFloor;
+
+	// Wait the gc to unload the evicted template classes, before evicting more.
+	private static final long EVICT_INTERVAL = 1000;
+
+	// The dependency template names of the template name, such as the imported macros and the extended layout.
+	private final ConcurrentMap<String, Set<String>> dependencies = new ConcurrentHashMap<String, Set<String>>();
+
+	// The direct dependent template names of the template name, the reverse of the dependencies.
+	private final ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<String, Set<String>>();
 	
 	// httl.properties: preload=true
 	private boolean preload;
+
+	// httl.properties: preload.threads=1
+	private int preloadThreads = 1;
+
+	// httl.properties: compiled=true
+	private boolean compiled;
+
+	// httl.properties: interpreted=false
+	private boolean interpreted;
+
+	// httl.properties: preload.async=false
+	private boolean preloadAsync;
+
+	// httl.properties: import.macros=common.httl
+	private String[] importMacros;
+
+	// httl.properties: extends.default=default.httl
+	private String extendsDefault;
+
+	// Completed with the count of the preloaded templates, or at once if not preload.
+	private final CompletableFuture<Integer> preloaded = new CompletableFuture<Integer>();
 	
 	// httl.properties: localized=true
 	private boolean localized;
@@ -107,8 +186,12 @@ public class DefaultEngine extends Engine {
 	
 	private Converter<Object, Map<String, Object>> mapConverter;
 
+	// The templates parsed from the source strings, bounded by the source.cache.capacity.
+	private SourceCache sourceCache;
+
 	public DefaultEngine() {
 		this.stringLoader = new StringLoader(this);
+		this.sourceCache = new SourceCache(this, stringLoader, 0);
 	}
 
 	/**
@@ -184,14 +267,6 @@ public class DefaultEngine extends Engine {
 		if (cache == null) {
 			return parseTemplate(null, name, locale, encoding, args);
 		}
-		Resource resource = null;
-		long lastModified;
-		if (reloadable) {
-			resource = loadResource(name, locale, encoding);
-			lastModified = resource.getLastModified();
-		} else {
-			lastModified = Long.MIN_VALUE;
-		}
 		String key = name;
 		if (locale != null || encoding != null) {
 			StringBuilder buf = new StringBuilder(name.length() + 20);
@@ -206,39 +281,478 @@ public class DefaultEngine extends Engine {
 			}
 			key = buf.toString();
 		}
-		VolatileReference<Template> reference = (VolatileReference<Template>) cache.get(key);
+		TemplateReference reference = (TemplateReference) cache.get(key);
 		if (reference == null) {
 			if (cache instanceof ConcurrentMap) {
-				reference = new VolatileReference<Template>(); // quickly
-				VolatileReference<Template> old = (VolatileReference<Template>) ((ConcurrentMap<Object, Object>) cache).putIfAbsent(key, reference);
+				reference = new TemplateReference(name, locale, encoding); // quickly
+				TemplateReference old = (TemplateReference) ((ConcurrentMap<Object, Object>) cache).putIfAbsent(key, reference);
 				if (old != null) { // duplicate
 					reference = old;
 				}
 			} else {
 				synchronized (cache) { // cache lock
-					reference = (VolatileReference<Template>) cache.get(key);
+					reference = (TemplateReference) cache.get(key);
 					if (reference == null) { // double check
-						reference = new VolatileReference<Template>(); // quickly
+						reference = new TemplateReference(name, locale, encoding); // quickly
 						cache.put(key, reference);
 					}
 				}
 			}
 		}
 		assert(reference != null);
+		if (metaspaceBudget > 0) {
+			reference.touch();
+		}
 		Template template = (Template) reference.get();
+		if (template != null && (! reloadable || reference.isWatched())) {
+			return template; // the watched template is reloaded by the watcher.
+		}
+		Resource resource = null;
+		long lastModified;
+		if (reloadable) {
+			resource = loadResource(name, locale, encoding);
+			lastModified = resource.getLastModified();
+		} else {
+			lastModified = Long.MIN_VALUE;
+		}
 		if (template == null || template.getLastModified() < lastModified) {
+			boolean parsed = false;
+			boolean changed = false;
 			synchronized (reference) { // reference lock
 				template = (Template) reference.get();
 				if (template == null || template.getLastModified() < lastModified) { // double check
+					if (reloadable) {
+						watch(reference, resource); // before parsing, so the changes are not missed.
+					}
+					changed = template != null;
 					template = parseTemplate(resource, name, locale, encoding, args); // slowly
 					reference.set(template);
+					parsed = true;
 				}
 			}
+			if (parsed && cache instanceof ConcurrentMap) { // weigh the cached entry again with the parsed template.
+				((ConcurrentMap<Object, Object>) cache).replace(key, reference, reference);
+			}
+			if (changed) { // out of the reference lock, the dependents may be parsing with this template.
+				invalidateDependents(Collections.singleton(name));
+			}
+			if (parsed && metaspaceBudget > 0) {
+				checkMetaspace();
+			}
 		}
 		assert(template != null);
 		return template;
 	}
 
+	// Evict the least recently used quarter of the compiled templates, if the metaspace exceeds the budget,
+	// they are parsed again on the next request, and their classes are unloaded by the gc.
+	// The metaspace is shared by the jvm, if an eviction freed nothing, the metaspace is used by the others,
+	// so it is not evicted again until the metaspace grows over that.
+	private void checkMetaspace() {
+		Map<Object, Object> cache = this.cache; // safe copy reference
+		if (metaspace == null || cache == null) {
+			return;
+		}
+		long used = metaspace.getUsage().getUsed();
+		if (used <= metaspaceBudget) {
+			lastEvictedUsed = 0;
+			metaspaceFloor = 0;
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (used <= metaspaceFloor || now - lastEvicted < EVICT_INTERVAL) {
+			return;
+		}
+		lastEvicted = now;
+		if (lastEvictedUsed > 0 && used >= lastEvictedUsed) {
+			lastEvictedUsed = 0;
+			metaspaceFloor = used;
+			if (logger != null && logger.isInfoEnabled()) {
+				logger.info("The last eviction freed nothing, the metaspace used " + used + " bytes over the budget " + metaspaceBudget + " bytes is held by the others, stop evicting until it grows.");
+			}
+			return;
+		}
+		List<TemplateReference> references = new ArrayList<TemplateReference>();
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		for (Object value : cache.values()) {
+			if (value instanceof TemplateReference) {
+				TemplateReference reference = (TemplateReference) value;
+				int size = classes.size();
+				addClasses(reference.get(), classes);
+				if (classes.size() > size) {
+					references.add(reference);
+				}
+			}
+		}
+		if (references.isEmpty()) { // no template classes to free.
+			metaspaceFloor = used;
+			return;
+		}
+		lastEvictedUsed = used;
+		Collections.sort(references, new Comparator<TemplateReference>() {
+			public int compare(TemplateReference o1, TemplateReference o2) {
+				return o1.getLastAccessed() < o2.getLastAccessed() ? -1 : (o1.getLastAccessed() == o2.getLastAccessed() ? 0 : 1);
+			}
+		});
+		int count = (references.size() + 3) / 4;
+		for (int i = 0; i < count; i ++) {
+			TemplateReference reference = references.get(i);
+			synchronized (reference) { // reference lock
+				reference.set(null);
+			}
+		}
+		if (logger != null && logger.isInfoEnabled()) {
+			logger.info("Evicted " + count + " cold templates, the metaspace used " + used + " bytes exceeds the budget " + metaspaceBudget + " bytes, with " + classes.size() + " template classes loaded.");
+		}
+	}
+
+	/**
+	 * Get the count of the compiled template classes held by this engine, including the macro classes.
+	 * 
+	 * @return loaded class count
+	 */
+	public int getLoadedClassCount() {
+		Set<Class<?>> classes = new HashSet<Class<?>>();
+		Map<Object, Object> cache = this.cache; // safe copy reference
+		if (cache != null) {
+			for (Object value : cache.values()) {
+				if (value instanceof TemplateReference) {
+					addClasses(((TemplateReference) value).get(), classes);
+				}
+			}
+		}
+		for (Template template : sourceCache.getTemplates()) {
+			addClasses(template, classes);
+		}
+		return classes.size();
+	}
+
+	private static void addClasses(Template template, Set<Class<?>> classes) {
+		if (template instanceof AdaptiveTemplate) {
+			addClasses(((AdaptiveTemplate) template).getWriterTemplate(), classes);
+			addClasses(((AdaptiveTemplate) template).getStreamTemplate(), classes);
+		} else if (template instanceof CompiledTemplate && classes.add(template.getClass())) {
+			for (Template macro : template.getMacros().values()) {
+				addClasses(macro, classes);
+			}
+		}
+	}
+
+	/**
+	 * Add the template dependency, such as the imported macros or the extended layout.
+	 * 
+	 * @param name - dependent template name
+	 * @param dependency - dependency template name
+	 */
+	public void addDependency(String name, String dependency) {
+		if (name == null || dependency == null || name.equals(dependency)) {
+			return;
+		}
+		if (getNames(dependencies, name).add(dependency)) {
+			getNames(dependents, dependency).add(name);
+		}
+	}
+
+	/**
+	 * Get the transitive dependent template names, which are invalidated when the template is changed.
+	 * 
+	 * @param name - dependency template name
+	 * @return dependent template names
+	 */
+	public Set<String> getDependents(String name) {
+		Set<String> result = new LinkedHashSet<String>();
+		LinkedList<String> queue = new LinkedList<String>();
+		queue.add(name);
+		while (! queue.isEmpty()) {
+			Set<String> names = dependents.get(queue.removeFirst());
+			if (names != null) {
+				for (String dependent : names) {
+					if (! dependent.equals(name) && result.add(dependent)) {
+						queue.add(dependent);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the preload completion, completed with the count of the preloaded templates,
+	 * and the requests are served before it with the preload.async.
+	 * 
+	 * @return preload completion
+	 */
+	public CompletionStage<Integer> getPreloaded() {
+		return preloaded;
+	}
+
+	/**
+	 * Remove the dependencies of the template, before it is translated again, or after it is evicted,
+	 * so the dropped imports and layouts no longer invalidate it.
+	 * 
+	 * @param name - dependent template name
+	 */
+	void removeDependencies(String name) {
+		Set<String> names = dependencies.remove(name);
+		if (names != null) {
+			for (String dependency : names) {
+				Set<String> dependentNames = dependents.get(dependency);
+				if (dependentNames != null) {
+					dependentNames.remove(name); // keep the empty set, the other thread may be adding to it.
+				}
+			}
+		}
+	}
+
+	private static Set<String> getNames(ConcurrentMap<String, Set<String>> graph, String name) {
+		Set<String> names = graph.get(name);
+		if (names == null) {
+			names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			Set<String> old = graph.putIfAbsent(name, names);
+			if (old != null) {
+				names = old;
+			}
+		}
+		return names;
+	}
+
+	// Watch the template file or archive, and skip the last modified checking if it is watched.
+	private void watch(TemplateReference reference, Resource resource) {
+		File file = null;
+		boolean watched = false;
+		if (reloadInterval > 0 && resource instanceof InputStreamResource) {
+			ResourceWatcher watcher = getWatcher();
+			file = ((InputStreamResource) resource).getFile();
+			if (file != null) {
+				watched = watcher.watchFile(file);
+			} else {
+				file = ((InputStreamResource) resource).getArchive();
+				if (file != null) {
+					watched = watcher.watchArchive(file);
+				}
+			}
+		}
+		reference.watch(file, watched);
+	}
+
+	/**
+	 * Stop watching the templates, the reloadable templates are checked by the last modified time on every request then.
+	 */
+	public void close() {
+		ResourceWatcher watcher = this.watcher; // safe copy reference
+		if (watcher == null) {
+			return;
+		}
+		watcher.close();
+		Map<Object, Object> cache = this.cache; // safe copy reference
+		if (cache == null) {
+			return;
+		}
+		for (Object value : cache.values()) {
+			if (value instanceof TemplateReference) {
+				TemplateReference reference = (TemplateReference) value;
+				synchronized (reference) { // reference lock
+					reference.watch(reference.getFile(), false);
+				}
+			}
+		}
+	}
+
+	private ResourceWatcher getWatcher() {
+		if (watcher == null) {
+			synchronized (this) {
+				if (watcher == null) {
+					watcher = new ResourceWatcher(this, reloadInterval, logger);
+				}
+			}
+		}
+		return watcher;
+	}
+
+	/**
+	 * Get the count of the changes reloaded by the watcher, the cached missing resources are checked again when it is changed.
+	 * 
+	 * @see #watchMissingResource(String, Locale)
+	 * @return change count
+	 */
+	public long getResourceChanges() {
+		return resourceChanges;
+	}
+
+	/**
+	 * Watch the directory of the missing resource, so the added resource is counted by the resource changes.
+	 * 
+	 * @see #getResourceChanges()
+	 * @param name - resource name
+	 * @param locale - resource locale
+	 * @return false if the resource can not be watched, then it should be checked on every request
+	 */
+	public boolean watchMissingResource(String name, Locale locale) {
+		if (! reloadable || reloadInterval <= 0) {
+			return false;
+		}
+		try {
+			Resource resource = loader.load(UrlUtils.cleanName(name), cleanLocale(locale), null);
+			File file = resource instanceof InputStreamResource ? ((InputStreamResource) resource).getFile() : null;
+			if (file == null) {
+				return false;
+			}
+			File directory = file.getAbsoluteFile().getParentFile();
+			// the missing directory can not be registered to the watch service.
+			return directory != null && directory.isDirectory() && getWatcher().watchFile(file);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	// Reload the cached templates changed by the file, or all in the directory, called by the watcher.
+	void reload(File file, boolean directory) {
+		resourceChanges ++; // the watcher thread only.
+		Map<Object, Object> cache = this.cache; // safe copy reference
+		if (cache == null) {
+			return;
+		}
+		Set<String> names = new HashSet<String>();
+		for (Object value : cache.values()) {
+			if (value instanceof TemplateReference) {
+				TemplateReference reference = (TemplateReference) value;
+				if (reference.isChangedBy(file, directory)) {
+					reload(reference, true);
+					names.add(reference.getName());
+				}
+			}
+		}
+		if (names.isEmpty()) {
+			return;
+		}
+		if (reloadDependentsEagerly) {
+			reloadDependents(names);
+		} else {
+			invalidateDependents(names);
+		}
+	}
+
+	// Get the cached templates depending on the changed template names, excluding the changed templates.
+	private List<TemplateReference> getDependentReferences(Set<String> names) {
+		Set<String> dependents = new HashSet<String>();
+		for (String name : names) {
+			dependents.addAll(getDependents(name));
+		}
+		dependents.removeAll(names);
+		List<TemplateReference> references = new ArrayList<TemplateReference>();
+		Map<Object, Object> cache = this.cache; // safe copy reference
+		if (cache == null || dependents.isEmpty()) {
+			return references;
+		}
+		for (Object value : cache.values()) {
+			if (value instanceof TemplateReference
+					&& dependents.contains(((TemplateReference) value).getName())) {
+				references.add((TemplateReference) value);
+			}
+		}
+		return references;
+	}
+
+	// Clear the dependent templates, then they are parsed on the next request, in the dependency order.
+	private void invalidateDependents(Set<String> names) {
+		for (TemplateReference reference : getDependentReferences(names)) {
+			synchronized (reference) { // reference lock
+				reference.set(null);
+			}
+		}
+	}
+
+	// Reparse the dependent templates in parallel, wave by wave, the dependencies before their dependents.
+	private void reloadDependents(Set<String> names) {
+		List<TemplateReference> pending = getDependentReferences(names);
+		while (! pending.isEmpty()) {
+			Set<String> pendingNames = new HashSet<String>();
+			for (TemplateReference reference : pending) {
+				pendingNames.add(reference.getName());
+			}
+			List<TemplateReference> wave = new ArrayList<TemplateReference>();
+			List<TemplateReference> rest = new ArrayList<TemplateReference>();
+			for (TemplateReference reference : pending) {
+				Set<String> dependencies = this.dependencies.get(reference.getName());
+				if (dependencies != null && ! Collections.disjoint(dependencies, pendingNames)) {
+					rest.add(reference);
+				} else {
+					wave.add(reference);
+				}
+			}
+			if (wave.isEmpty()) { // cyclic dependencies
+				wave = rest;
+				rest = Collections.emptyList();
+			}
+			reload(wave);
+			pending = rest;
+		}
+	}
+
+	private void reload(List<TemplateReference> references) {
+		int threads = Math.min(references.size(), Runtime.getRuntime().availableProcessors());
+		if (threads <= 1) {
+			for (TemplateReference reference : references) {
+				reload(reference, false);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(references.size());
+			for (final TemplateReference reference : references) {
+				futures.add(executor.submit(new Runnable() {
+					public void run() {
+						reload(reference, false);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// Reparse the template, the file changed template is skipped if its last modified time and length are unchanged,
+	// the dependent template is always reparsed with the changed dependencies.
+	private void reload(TemplateReference reference, boolean changed) {
+		synchronized (reference) { // reference lock
+			Template template = reference.get();
+			if (template == null) {
+				return;
+			}
+			if (useRenderVariableType) {
+				reference.set(null); // the render variable types are unknown, parse it on the next request.
+				return;
+			}
+			try {
+				Resource resource = loadResource(reference.getName(), reference.getLocale(), reference.getEncoding());
+				if (changed && resource.getLastModified() == template.getLastModified()
+						&& resource.getLength() == template.getLength()) {
+					return; // unchanged, such as the other file changed in the directory.
+				}
+				watch(reference, resource);
+				reference.set(parseTemplate(resource, reference.getName(), reference.getLocale(), reference.getEncoding(), null));
+				if (logger != null && logger.isInfoEnabled()) {
+					logger.info("Reloaded the changed template " + reference.getName() + ".");
+				}
+			} catch (Exception e) {
+				reference.set(null); // report the error on the next request.
+				if (logger != null && logger.isDebugEnabled()) {
+					logger.debug("Failed to reload the template " + reference.getName() + ", cause: " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
 	public Template parseTemplateByName(String name, Locale locale, String encoding, Object args) throws IOException, ParseException {
 		return parseTemplate(null, name, locale, encoding, args);
 	}
@@ -255,6 +769,7 @@ public class DefaultEngine extends Engine {
 				source = templateFilter.filter(resource.getName(), source);
 			}
 			Node root = templateParser.parse(source, 0);
+			removeDependencies(name); // the translator adds the current dependencies again.
 			Map<String, Class<?>> parameterTypes = useRenderVariableType && args != null ? new DelegateMap<String, Class<?>>(new TypeMap(convertMap(args))) : null;
 			Template template = translator.translate(resource, root, parameterTypes);
 			if (logger != null && logger.isDebugEnabled()) {
@@ -288,15 +803,33 @@ public class DefaultEngine extends Engine {
 	 * @throws ParseException - If the template cannot be parsed
 	 */
 	public Template parseTemplate(String source, Object parameterTypes) throws ParseException {
-		String name = "/$" + Digest.getMD5(source);
-		if (! hasResource(name)) {
-			stringLoader.add(name, source);
+		SourceCache sourceCache = this.cache == null ? null : this.sourceCache; // no cache
+		Template template = sourceCache == null ? null : sourceCache.get(source);
+		if (template != null) {
+			return template;
 		}
+		String name = sourceCache == null ? "/$" + Digest.getMD5(source) : sourceCache.getName(source);
+		stringLoader.add(name, source);
 		try {
-			return getTemplate(name, parameterTypes);
+			template = parseTemplate(null, name, null, null, parameterTypes);
 		} catch (IOException e) {
 			throw new IllegalStateException(e.getMessage(), e);
 		}
+		if (sourceCache == null) {
+			stringLoader.remove(name);
+			removeDependencies(name);
+			return template;
+		}
+		return sourceCache.put(source, name, template);
+	}
+
+	/**
+	 * Get the cache of the templates parsed from the source strings, with the hit, miss and eviction counts.
+	 * 
+	 * @return source cache
+	 */
+	public SourceCache getSourceCache() {
+		return sourceCache;
 	}
 
 	/**
@@ -383,40 +916,209 @@ public class DefaultEngine extends Engine {
 	 * On all inited.
 	 */
 	public void inited() {
-		if (preload) {
-			try {
-				int count = 0;
-				if (templateSuffix == null) {
-					templateSuffix = new String[] { ".httl" };
+		if (! preload) {
+			preloaded.complete(0);
+		} else if (preloadAsync) { // serve the requests while the templates are warming.
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					preload();
 				}
-				for (String suffix : templateSuffix) {
-					List<String> list = loader.list(suffix);
-					if (list == null) {
-						continue;
+			}, "httl-preload-" + name);
+			thread.setDaemon(true);
+			thread.start();
+		} else {
+			preload();
+		}
+	}
+
+	// Preload the templates with the preload threads, the import macros first in order, and then the default layouts.
+	private void preload() {
+		try {
+			long start = System.currentTimeMillis();
+			if (templateSuffix == null) {
+				templateSuffix = new String[] { ".httl" };
+			}
+			List<String> names = new ArrayList<String>();
+			for (String suffix : templateSuffix) {
+				List<String> list = loader.list(suffix);
+				if (list != null) {
+					names.addAll(list);
+				}
+			}
+			final int count = names.size();
+			int threads = Math.min(preloadThreads > 0 ? preloadThreads : Runtime.getRuntime().availableProcessors(), count);
+			ExecutorService executor = threads <= 1 ? null : Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private final AtomicInteger seq = new AtomicInteger();
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "httl-preload-" + name + "-" + seq.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			final AtomicInteger loaded = new AtomicInteger();
+			final AtomicInteger succeeded = new AtomicInteger();
+			try {
+				List<List<String>> waves = getPreloadWaves(names);
+				for (int i = 0; i < waves.size(); i ++) {
+					List<String> wave = waves.get(i);
+					List<Runnable> tasks = new ArrayList<Runnable>();
+					if (i == waves.size() - 1 && compiled && ! interpreted) { // only the compiled templates are cached by the compiler.
+						// the pages are precompiled after the import macros and the layouts, which they are compiled with.
+						int size = threads <= 1 ? wave.size() : (wave.size() + threads - 1) / threads;
+						for (int j = 0; j < wave.size(); j += size) {
+							final List<String> part = wave.subList(j, Math.min(j + size, wave.size()));
+							tasks.add(new Runnable() {
+								public void run() {
+									precompile(part);
+								}
+							});
+						}
+						execute(executor, tasks);
+						tasks = new ArrayList<Runnable>();
 					}
-					count += list.size();
-					for (String name : list) {
-						try {
-							if (logger != null && logger.isDebugEnabled()) {
-								logger.debug("Preload the template: " + name);
+					for (final String name : wave) {
+						tasks.add(new Runnable() {
+							public void run() {
+								if (preload(name, loaded, count)) {
+									succeeded.incrementAndGet();
+								}
 							}
-							getTemplate(name);
-						} catch (Exception e) {
-							if (logger != null && logger.isErrorEnabled()) {
-								logger.error(e.getMessage(), e);
-							}
-						}
+						});
 					}
+					execute(i == 0 ? null : executor, tasks); // the import macros one by one, as the import order.
 				}
-				if (logger != null && logger.isInfoEnabled()) {
-					logger.info("Preload " + count + " templates from directory " + (templateDirectory == null ? "/" : templateDirectory) + " with suffix " + Arrays.toString(templateSuffix));
+			} finally {
+				if (executor != null) {
+					executor.shutdown();
 				}
-			} catch (Exception e) {
-				if (logger != null && logger.isErrorEnabled()) {
-					logger.error(e.getMessage(), e);
+			}
+			if (logger != null && logger.isInfoEnabled()) {
+				logger.info("Preload " + succeeded.get() + "/" + count + " templates from directory " + (templateDirectory == null ? "/" : templateDirectory) + " with suffix " + Arrays.toString(templateSuffix)
+						+ " in " + (System.currentTimeMillis() - start) + "ms with " + Math.max(threads, 1) + " threads");
+			}
+			preloaded.complete(succeeded.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Preload interrupted.");
+			}
+			preloaded.completeExceptionally(e);
+		} catch (Exception e) {
+			if (logger != null && logger.isErrorEnabled()) {
+				logger.error(e.getMessage(), e);
+			}
+			preloaded.completeExceptionally(e);
+		}
+	}
+
+	// Preload the template, and return false if it failed.
+	private boolean preload(String name, AtomicInteger loaded, int count) {
+		boolean success = false;
+		try {
+			if (logger != null && logger.isDebugEnabled()) {
+				logger.debug("Preload the template: " + name);
+			}
+			getTemplate(name);
+			success = true;
+		} catch (Exception e) {
+			if (logger != null && logger.isErrorEnabled()) {
+				logger.error(e.getMessage(), e);
+			}
+		}
+		int index = loaded.incrementAndGet();
+		if (count >= 10 && index % (count / 10) == 0 && index < count && logger != null && logger.isInfoEnabled()) {
+			logger.info("Preloading " + index + "/" + count + " templates.");
+		}
+		return success;
+	}
+
+	// The import macros one by one in order, then the default layouts, and then the others.
+	private List<List<String>> getPreloadWaves(List<String> names) {
+		Map<String, String> cleanNames = new LinkedHashMap<String, String>();
+		for (String name : names) {
+			cleanNames.put(UrlUtils.cleanName(name), name);
+		}
+		List<String> macros = new ArrayList<String>();
+		if (importMacros != null) {
+			for (String importMacro : importMacros) {
+				String name = StringUtils.isEmpty(importMacro) ? null : cleanNames.remove(UrlUtils.cleanName(importMacro));
+				if (name != null) {
+					macros.add(name);
 				}
 			}
 		}
+		List<String> layouts = new ArrayList<String>();
+		if (StringUtils.isNotEmpty(extendsDefault)) {
+			String layout = UrlUtils.cleanName(extendsDefault); // the relative layouts in the sub directories too.
+			for (Iterator<Map.Entry<String, String>> iterator = cleanNames.entrySet().iterator(); iterator.hasNext();) {
+				Map.Entry<String, String> entry = iterator.next();
+				if (entry.getKey().endsWith(layout)) {
+					layouts.add(entry.getValue());
+					iterator.remove();
+				}
+			}
+		}
+		List<List<String>> waves = new ArrayList<List<String>>();
+		waves.add(macros);
+		waves.add(layouts);
+		waves.add(names.size() == cleanNames.size() ? names : new ArrayList<String>(cleanNames.values()));
+		return waves;
+	}
+
+	// Run the tasks with the executor and wait for them, or one by one if no executor.
+	private void execute(ExecutorService executor, List<Runnable> tasks) throws InterruptedException {
+		if (executor == null || tasks.size() <= 1) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+		for (Runnable task : tasks) {
+			futures.add(executor.submit(task));
+		}
+		try {
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					if (logger != null && logger.isErrorEnabled()) {
+						logger.error("Failed to preload templates, cause: " + e.getCause().getMessage(), e.getCause());
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+
+	// Compile all the templates in batch, and then get them one by one from the compiled class cache.
+	private void precompile(List<String> names) {
+		List<Resource> resources = new ArrayList<Resource>(names.size());
+		List<Node> roots = new ArrayList<Node>(names.size());
+		for (String name : names) {
+			try {
+				Resource resource = loadResource(UrlUtils.cleanName(name), null, null);
+				String source = resource.getSource();
+				if (templateFilter != null) {
+					source = templateFilter.filter(resource.getName(), source);
+				}
+				roots.add(templateParser.parse(source, 0));
+				resources.add(resource);
+			} catch (Exception e) {
+				// skip, the error will be reported when getting the template.
+			}
+		}
+		try {
+			translator.precompile(resources.toArray(new Resource[resources.size()]), roots.toArray(new Node[roots.size()]));
+		} catch (Exception e) {
+			if (logger != null && logger.isWarnEnabled()) {
+				logger.warn("Failed to precompile templates, cause: " + e.getMessage(), e);
+			}
+		}
 	}
 
 	/**
@@ -447,6 +1149,15 @@ public class DefaultEngine extends Engine {
 		this.templateSuffix = suffix;
 	}
 
+	/**
+	 * httl.properties: source.cache.capacity=4194304
+	 * 
+	 * The weighted capacity of the templates parsed from the source strings, 0 to unbounded.
+	 */
+	public void setSourceCacheCapacity(long capacity) {
+		this.sourceCache = new SourceCache(this, stringLoader, capacity);
+	}
+
 	/**
 	 * httl.properties: reloadable=true
 	 */
@@ -454,6 +1165,41 @@ public class DefaultEngine extends Engine {
 		this.reloadable = reloadable;
 	}
 
+	/**
+	 * httl.properties: reload.interval=1000
+	 * 
+	 * The reloadable templates are watched, and the jar and zip files are checked in the interval (ms),
+	 * 0 to check the last modified time on every request.
+	 */
+	public void setReloadInterval(long reloadInterval) {
+		this.reloadInterval = reloadInterval;
+	}
+
+	/**
+	 * httl.properties: reload.dependents.eagerly=false
+	 * 
+	 * Reparse the templates depending on the changed template in background, instead of on the next request.
+	 */
+	public void setReloadDependentsEagerly(boolean reloadDependentsEagerly) {
+		this.reloadDependentsEagerly = reloadDependentsEagerly;
+	}
+
+	/**
+	 * httl.properties: metaspace.budget=0
+	 * 
+	 * The metaspace used in bytes, over which the least recently used compiled templates are evicted, 0 to unlimited.
+	 */
+	public void setMetaspaceBudget(long metaspaceBudget) {
+		this.metaspaceBudget = metaspaceBudget;
+		if (metaspaceBudget > 0) {
+			for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+				if ("Metaspace".equals(pool.getName()) || pool.getName().endsWith("Perm Gen")) {
+					metaspace = pool;
+				}
+			}
+		}
+	}
+
 	/**
 	 * httl.properties: preload=true
 	 */
@@ -461,6 +1207,52 @@ public class DefaultEngine extends Engine {
 		this.preload = preload;
 	}
 
+	/**
+	 * httl.properties: preload.threads=1
+	 * 
+	 * The threads to preload the templates, 0 to the available processors.
+	 */
+	public void setPreloadThreads(int preloadThreads) {
+		this.preloadThreads = preloadThreads;
+	}
+
+	/**
+	 * httl.properties: compiled=true
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	/**
+	 * httl.properties: interpreted=false
+	 * 
+	 * The interpreted and mixed templates are not precompiled in batch, they are parsed once on preloading.
+	 */
+	public void setInterpreted(boolean interpreted) {
+		this.interpreted = interpreted;
+	}
+
+	/**
+	 * httl.properties: preload.async=false
+	 */
+	public void setPreloadAsync(boolean preloadAsync) {
+		this.preloadAsync = preloadAsync;
+	}
+
+	/**
+	 * httl.properties: import.macros=common.httl
+	 */
+	public void setImportMacros(String[] importMacros) {
+		this.importMacros = importMacros;
+	}
+
+	/**
+	 * httl.properties: extends.default=default.httl
+	 */
+	public void setExtendsDefault(String extendsDefault) {
+		this.extendsDefault = extendsDefault;
+	}
+
 	/**
 	 * httl.properties: localized=true
 	 */
@@ -531,4 +1323,84 @@ public class DefaultEngine extends Engine {
 		this.mapConverter = mapConverter;
 	}
 
-}
\ No newline at end of file
+	// The cached template, with the watched file.
+	private static final class TemplateReference extends VolatileReference<Template> {
+
+		private final String name;
+
+		private final Locale locale;
+
+		private final String encoding;
+
+		private volatile File file;
+
+		private volatile boolean watched;
+
+		// The last accessed time, for evicting the cold templates, not volatile on the hot path.
+		private long lastAccessed;
+
+		TemplateReference(String name, Locale locale, String encoding) {
+			this.name = name;
+			this.locale = locale;
+			this.encoding = encoding;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		Locale getLocale() {
+			return locale;
+		}
+
+		String getEncoding() {
+			return encoding;
+		}
+
+		void touch() {
+			lastAccessed = System.currentTimeMillis();
+		}
+
+		long getLastAccessed() {
+			return lastAccessed;
+		}
+
+		boolean isWatched() {
+			return watched;
+		}
+
+		File getFile() {
+			return file;
+		}
+
+		void watch(File file, boolean watched) {
+			this.file = file == null ? null : file.getAbsoluteFile();
+			this.watched = watched;
+		}
+
+		// The file itself, its directory, or a localized file added beside it, such as foo_zh_CN.httl for foo.httl.
+		boolean isChangedBy(File changed, boolean directory) {
+			File file = this.file;
+			if (file == null) {
+				return false;
+			}
+			if (directory) {
+				return changed.equals(file.getParentFile());
+			}
+			if (file.equals(changed)) {
+				return true;
+			}
+			if (! changed.getParentFile().equals(file.getParentFile())) {
+				return false;
+			}
+			String fileName = file.getName();
+			String changedName = changed.getName();
+			int i = fileName.lastIndexOf('.');
+			String base = i < 0 ? fileName : fileName.substring(0, i);
+			String suffix = i < 0 ? "" : fileName.substring(i);
+			return changedName.startsWith(base + "_") && changedName.endsWith(suffix);
+		}
+
+	}
+
+}
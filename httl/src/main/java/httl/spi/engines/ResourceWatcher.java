@@ -0,0 +1,276 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.engines;
+
+import httl.spi.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ResourceWatcher. (SPI, Singleton, ThreadSafe)
+ * 
+ * Watches the template directories by the WatchService, and checks the jar and zip files
+ * in the interval, on a daemon thread, so the reloadable engine does not check the last
+ * modified time on every request. The changed files are reloaded by the engine in background,
+ * after no more changes of the same file in the interval, so a file still writing is not parsed.
+ * 
+ * @see httl.spi.engines.DefaultEngine#setReloadInterval(long)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class ResourceWatcher implements Runnable {
+
+	private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+
+	private final DefaultEngine engine;
+
+	private final long interval;
+
+	private final Logger logger;
+
+	private final Map<WatchKey, Path> directories = new ConcurrentHashMap<WatchKey, Path>();
+
+	private final Map<Path, WatchKey> keys = new ConcurrentHashMap<Path, WatchKey>();
+
+	private final Map<File, Long> archives = new ConcurrentHashMap<File, Long>();
+
+	// The changed files waiting for the interval without changes, accessed by the watcher thread only.
+	private final Map<File, Change> changes = new LinkedHashMap<File, Change>();
+
+	private volatile WatchService watchService;
+
+	private volatile Thread thread;
+
+	private volatile boolean unsupported;
+
+	private volatile boolean closed;
+
+	public ResourceWatcher(DefaultEngine engine, long interval, Logger logger) {
+		this.engine = engine;
+		this.interval = interval;
+		this.logger = logger;
+	}
+
+	/**
+	 * Watch the directory of the file.
+	 * 
+	 * @param file - template file
+	 * @return false if the file system cannot be watched
+	 */
+	public boolean watchFile(File file) {
+		Path directory = file.getAbsoluteFile().toPath().getParent();
+		if (directory == null || unsupported || closed) {
+			return false;
+		}
+		if (keys.containsKey(directory)) {
+			return true;
+		}
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			if (keys.containsKey(directory)) {
+				return true;
+			}
+			try {
+				if (watchService == null) {
+					watchService = FileSystems.getDefault().newWatchService();
+				}
+				WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				directories.put(key, directory);
+				keys.put(directory, key);
+			} catch (Exception e) { // IOException, UnsupportedOperationException
+				unsupported = true;
+				if (logger != null && logger.isWarnEnabled()) {
+					logger.warn("Failed to watch the template directory " + directory + ", fallback to check the last modified time on every request, cause: " + e.getMessage(), e);
+				}
+				return false;
+			}
+			start();
+		}
+		return true;
+	}
+
+	/**
+	 * Check the jar or zip file in the interval.
+	 * 
+	 * @param archive - jar or zip file
+	 * @return false if the watcher is closed
+	 */
+	public boolean watchArchive(File archive) {
+		archive = archive.getAbsoluteFile();
+		if (closed) {
+			return false;
+		}
+		if (! archives.containsKey(archive)) {
+			synchronized (this) {
+				if (closed) {
+					return false;
+				}
+				if (! archives.containsKey(archive)) {
+					archives.put(archive, archive.lastModified());
+					start();
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stop the watcher thread, and close the watch service.
+	 * The templates watched before are checked by the engine on every request then.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			Thread thread = this.thread;
+			if (thread != null) {
+				thread.interrupt();
+			}
+			WatchService watchService = this.watchService;
+			if (watchService != null) {
+				try {
+					watchService.close();
+				} catch (IOException e) {
+					if (logger != null && logger.isWarnEnabled()) {
+						logger.warn("Failed to close the template watcher, cause: " + e.getMessage(), e);
+					}
+				}
+			}
+		}
+	}
+
+	private void start() {
+		if (thread == null) {
+			Thread thread = new Thread(this, "httl-watcher-" + THREAD_SEQ.incrementAndGet());
+			thread.setDaemon(true);
+			thread.start();
+			this.thread = thread;
+		}
+	}
+
+	public void run() {
+		while (! closed) {
+			try {
+				long timeout = getTimeout();
+				WatchService watchService = this.watchService;
+				WatchKey key = watchService == null ? null : watchService.poll(timeout, TimeUnit.MILLISECONDS);
+				if (watchService == null) {
+					Thread.sleep(timeout);
+				}
+				long now = System.currentTimeMillis();
+				if (key != null) {
+					Path directory = directories.get(key);
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (directory == null) {
+							continue;
+						}
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							change(directory.toFile(), true, now); // the events are lost, reload the whole directory.
+						} else {
+							change(directory.resolve((Path) event.context()).toFile(), false, now);
+						}
+					}
+					if (! key.reset()) {
+						directories.remove(key);
+						if (directory != null) {
+							keys.remove(directory);
+						}
+					}
+				}
+				for (Map.Entry<File, Long> entry : archives.entrySet()) {
+					File archive = entry.getKey();
+					long lastModified = archive.lastModified();
+					if (lastModified != entry.getValue().longValue()) {
+						entry.setValue(lastModified);
+						change(archive, false, now);
+					}
+				}
+				reload(now);
+			} catch (InterruptedException e) {
+				return;
+			} catch (ClosedWatchServiceException e) {
+				return;
+			} catch (Throwable e) {
+				if (logger != null && logger.isErrorEnabled()) {
+					logger.error("Failed to watch the templates, cause: " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	// Coalesce the changes of the same file, and wait for the interval again.
+	private void change(File file, boolean directory, long now) {
+		Change change = changes.remove(file);
+		if (change == null) {
+			change = new Change(directory);
+		} else if (directory) {
+			change.directory = true;
+		}
+		change.time = now;
+		changes.put(file, change); // keep in the order of the last change.
+	}
+
+	// Reload the files without changes in the interval, the others are kept waiting.
+	private void reload(long now) {
+		for (Iterator<Map.Entry<File, Change>> i = changes.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry<File, Change> entry = i.next();
+			Change change = entry.getValue();
+			if (now - change.time < interval) {
+				break;
+			}
+			i.remove();
+			engine.reload(entry.getKey(), change.directory);
+		}
+	}
+
+	// Wake up when the earliest waiting file is due.
+	private long getTimeout() {
+		if (changes.isEmpty()) {
+			return interval;
+		}
+		Change change = changes.values().iterator().next();
+		return Math.max(1, change.time + interval - System.currentTimeMillis());
+	}
+
+	private static final class Change {
+
+		boolean directory;
+
+		long time;
+
+		Change(boolean directory) {
+			this.directory = directory;
+		}
+
+	}
+
+}
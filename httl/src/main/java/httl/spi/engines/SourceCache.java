@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.engines;
+
+import httl.Template;
+import httl.spi.loaders.StringLoader;
+import httl.util.ConcurrentLinkedHashMap;
+import httl.util.ConcurrentLinkedHashMap.EvictionListener;
+import httl.util.ConcurrentLinkedHashMap.Weigher;
+import httl.util.Digest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SourceCache. (SPI, Singleton, ThreadSafe)
+ * 
+ * Caches the templates parsed from the source strings, keyed by the 64-bit FNV-1a hash of the source,
+ * and verified by the source itself. The least recently used templates are evicted when the weight,
+ * the source length and the estimated size of the compiled classes, exceeds the capacity, and their
+ * sources and dependencies are removed from the string loader and the engine.
+ * 
+ * @see httl.spi.engines.DefaultEngine#parseTemplate(String, Object)
+ * @see httl.spi.engines.DefaultEngine#setSourceCacheCapacity(long)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class SourceCache {
+
+	// The estimated weight of a compiled template class, in chars.
+	private static final int CLASS_WEIGHT = 4096;
+
+	private final DefaultEngine engine;
+
+	private final StringLoader loader;
+
+	private final ConcurrentMap<Long, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	public SourceCache(DefaultEngine engine, StringLoader loader, long capacity) {
+		this.engine = engine;
+		this.loader = loader;
+		ConcurrentLinkedHashMap.Builder<Long, Entry> builder = new ConcurrentLinkedHashMap.Builder<Long, Entry>();
+		builder.maximumWeightedCapacity(capacity > 0 ? capacity : Long.MAX_VALUE); // 0 to unbounded
+		this.entries = builder.weigher(new Weigher<Entry>() {
+			public int weightOf(Entry entry) {
+				return entry.weight;
+			}
+		}).listener(new EvictionListener<Long, Entry>() {
+			public void onEviction(Long key, Entry entry) {
+				evictions.incrementAndGet();
+				remove(entry.name);
+			}
+		}).build();
+	}
+
+	/**
+	 * Get the cached template of the source.
+	 * 
+	 * @param source - template source
+	 * @return template instance, or null if not cached
+	 */
+	public Template get(String source) {
+		Entry entry = entries.get(Digest.getFNV64(source));
+		if (entry != null && entry.matches(source)) {
+			hits.incrementAndGet();
+			return entry.template;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Get the template name of the source, the hash name, or the MD5 name if the hash is collided.
+	 * 
+	 * @param source - template source
+	 * @return template name
+	 */
+	public String getName(String source) {
+		long hash = Digest.getFNV64(source);
+		Entry entry = entries.get(hash);
+		if (entry != null && ! entry.matches(source)) {
+			return "/$" + Digest.getMD5(source);
+		}
+		return "/$" + Long.toHexString(hash);
+	}
+
+	/**
+	 * Cache the parsed template, the collided template is not cached, and its source is removed from the loader.
+	 * 
+	 * @param source - template source
+	 * @param name - template name
+	 * @param template - template instance
+	 * @return the cached template, may be the one cached by the other thread
+	 */
+	public Template put(String source, String name, Template template) {
+		Entry entry = new Entry(source, name, template);
+		Entry old = entries.putIfAbsent(Digest.getFNV64(source), entry);
+		if (old == null) {
+			return template;
+		}
+		if (old.matches(source)) {
+			return old.template;
+		}
+		remove(name);
+		return template;
+	}
+
+	// Remove the source from the loader, and the dependencies of the template from the engine.
+	private void remove(String name) {
+		loader.remove(name);
+		engine.removeDependencies(name);
+	}
+
+	public List<Template> getTemplates() {
+		List<Template> templates = new ArrayList<Template>(entries.size());
+		for (Entry entry : entries.values()) {
+			templates.add(entry.template);
+		}
+		return templates;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SourceCache(size: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", evictions: " + getEvictionCount() + ")";
+	}
+
+	private static final class Entry {
+
+		final String source;
+
+		final String name;
+
+		final Template template;
+
+		final int weight;
+
+		Entry(String source, String name, Template template) {
+			this.source = source;
+			this.name = name;
+			this.template = template;
+			long weight = source.length() + (long) CLASS_WEIGHT * (1 + template.getMacros().size());
+			this.weight = (int) Math.min(weight, Integer.MAX_VALUE);
+		}
+
+		boolean matches(String source) {
+			return this.source == source || this.source.equals(source);
+		}
+
+	}
+
+}
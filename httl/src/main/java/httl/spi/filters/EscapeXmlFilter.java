@@ -16,8 +16,13 @@
 package httl.spi.filters;
 
 import httl.spi.Filter;
+import httl.spi.StreamFilter;
 import httl.util.StringUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
 /**
  * EscapeXmlFilter. (SPI, Singleton, ThreadSafe)
  * 
@@ -26,7 +31,7 @@ import httl.util.StringUtils;
  * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
-public class EscapeXmlFilter implements Filter {
+public class EscapeXmlFilter implements StreamFilter {
 
 	public String filter(String key, String value) {
 		return StringUtils.escapeXml(value);
@@ -40,4 +45,20 @@ public class EscapeXmlFilter implements Filter {
 		return StringUtils.escapeXml(value);
 	}
 
+	public void filter(String key, String value, Writer out) throws IOException {
+		StringUtils.escapeXml(value, out);
+	}
+
+	public void filter(String key, char[] value, Writer out) throws IOException {
+		StringUtils.escapeXml(value, out);
+	}
+
+	public void filter(String key, byte[] value, OutputStream out) throws IOException {
+		StringUtils.escapeXml(value, out);
+	}
+
+	public void filter(String key, byte[] value, int offset, int length, OutputStream out) throws IOException {
+		StringUtils.escapeXml(value, offset, length, out);
+	}
+
 }
\ No newline at end of file
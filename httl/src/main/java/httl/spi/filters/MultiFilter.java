@@ -16,6 +16,11 @@
 package httl.spi.filters;
 
 import httl.spi.Filter;
+import httl.spi.StreamFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 
 /**
  * MultiFilter. (SPI, Singleton, ThreadSafe)
@@ -29,7 +34,7 @@ import httl.spi.Filter;
  * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
-public abstract class MultiFilter implements Filter {
+public abstract class MultiFilter implements StreamFilter {
 	
 	private Filter[] filters;
 	
@@ -87,4 +92,77 @@ public abstract class MultiFilter implements Filter {
 		return value;
 	}
 
+	public void filter(String key, String value, Writer out) throws IOException {
+		Filter last = getLastFilter();
+		if (last instanceof StreamFilter) {
+			((StreamFilter) last).filter(key, filterHead(key, value), out);
+		} else {
+			value = filter(key, value);
+			if (value != null) {
+				out.write(value);
+			}
+		}
+	}
+
+	public void filter(String key, char[] value, Writer out) throws IOException {
+		Filter last = getLastFilter();
+		if (last instanceof StreamFilter) {
+			((StreamFilter) last).filter(key, filterHead(key, value), out);
+		} else {
+			value = filter(key, value);
+			if (value != null) {
+				out.write(value);
+			}
+		}
+	}
+
+	public void filter(String key, byte[] value, OutputStream out) throws IOException {
+		Filter last = getLastFilter();
+		if (last instanceof StreamFilter) {
+			((StreamFilter) last).filter(key, filterHead(key, value), out);
+		} else {
+			value = filter(key, value);
+			if (value != null) {
+				out.write(value);
+			}
+		}
+	}
+
+	public void filter(String key, byte[] value, int offset, int length, OutputStream out) throws IOException {
+		if (filters == null || filters.length == 0) {
+			out.write(value, offset, length);
+		} else if (filters.length == 1 && filters[0] instanceof StreamFilter) {
+			((StreamFilter) filters[0]).filter(key, value, offset, length, out);
+		} else {
+			byte[] copy = new byte[length];
+			System.arraycopy(value, offset, copy, 0, length);
+			filter(key, copy, out);
+		}
+	}
+
+	private Filter getLastFilter() {
+		return filters == null || filters.length == 0 ? null : filters[filters.length - 1];
+	}
+
+	private String filterHead(String key, String value) {
+		for (int i = 0; i < filters.length - 1; i ++) {
+			value = filters[i].filter(key, value);
+		}
+		return value;
+	}
+
+	private char[] filterHead(String key, char[] value) {
+		for (int i = 0; i < filters.length - 1; i ++) {
+			value = filters[i].filter(key, value);
+		}
+		return value;
+	}
+
+	private byte[] filterHead(String key, byte[] value) {
+		for (int i = 0; i < filters.length - 1; i ++) {
+			value = filters[i].filter(key, value);
+		}
+		return value;
+	}
+
 }
\ No newline at end of file
@@ -16,9 +16,13 @@
 package httl.spi.formatters;
 
 import httl.spi.Formatter;
-import httl.util.DateUtils;
+import httl.util.DateUtils;
 
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -36,20 +40,59 @@ public class DateFormatter extends AbstractFormatter<Date> {
 
 	private TimeZone timeZone;
 
+	private volatile DateTimeFormatter formatter;
+
 	/**
 	 * httl.properties: date.format=yyyy-MM-dd HH:mm:ss
 	 */
 	public void setDateFormat(String dateFormat) {
-		new SimpleDateFormat(dateFormat).format(new Date());
+		DateTimeFormatter.ofPattern(dateFormat);
 		this.dateFormat = dateFormat;
+		this.formatter = null;
 	}
 
+	/**
+	 * httl.properties: time.zone=+8
+	 */
 	public void setTimeZone(String timeZone) {
 		this.timeZone = TimeZone.getTimeZone(timeZone);
+		this.formatter = null;
+	}
+
+	protected DateTimeFormatter getFormatter() {
+		DateTimeFormatter formatter = this.formatter;
+		if (formatter == null) {
+			formatter = DateUtils.getDateTimeFormatter(dateFormat, timeZone == null ? ZoneId.systemDefault() : timeZone.toZoneId());
+			this.formatter = formatter;
+		}
+		return formatter;
 	}
 
 	public String toString(String key, Date value) {
-		return DateUtils.format(value, dateFormat, timeZone);
+		if (value == null) {
+			return null;
+		}
+		// the java.sql.Date does not support toInstant.
+		return getFormatter().format(Instant.ofEpochMilli(value.getTime()));
+	}
+
+	/**
+	 * Format the date straight into the output.
+	 * 
+	 * @param key - source key
+	 * @param value - the date
+	 * @param out - the output writer or builder
+	 * @throws IOException - If an I/O error occurs
+	 */
+	public void formatTo(String key, Date value, Appendable out) throws IOException {
+		try {
+			getFormatter().formatTo(Instant.ofEpochMilli(value.getTime()), out);
+		} catch (DateTimeException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 }
\ No newline at end of file
@@ -23,11 +23,14 @@ import httl.util.ClassComparator;
 import httl.util.ClassUtils;
 import httl.util.DateUtils;
 import httl.util.IOUtils;
+import httl.util.NumberUtils;
 import httl.util.StringUtils;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.time.temporal.TemporalAccessor;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
@@ -90,6 +93,8 @@ public class MultiFormatter implements Formatter<Object> {
 
 	private String outputEncoding;
 
+	private boolean asciiEncoding = isAsciiEncoding(null);
+
 	public MultiFormatter() {
 	}
 
@@ -125,6 +130,27 @@ public class MultiFormatter implements Formatter<Object> {
 	 */
 	public void setOutputEncoding(String outputEncoding) {
 		this.outputEncoding = outputEncoding;
+		this.asciiEncoding = isAsciiEncoding(outputEncoding);
+	}
+
+	// the number digits are written as the ASCII bytes directly.
+	private static boolean isAsciiEncoding(String encoding) {
+		String digits = "-.0123456789";
+		byte[] bytes;
+		try {
+			bytes = encoding == null ? digits.getBytes() : digits.getBytes(encoding);
+		} catch (UnsupportedEncodingException e) {
+			bytes = digits.getBytes();
+		}
+		if (bytes.length != digits.length()) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i ++) {
+			if (bytes[i] != digits.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -366,6 +392,36 @@ public class MultiFormatter implements Formatter<Object> {
 		return value.toString();
 	}
 
+	/**
+	 * Write the date value to the writer, the DateFormatter formats it straight into the writer.
+	 * 
+	 * @param key - source key
+	 * @param value - the value
+	 * @param out - the output writer
+	 * @throws IOException - If an I/O error occurs
+	 */
+	public void write(String key, Date value, Writer out) throws IOException {
+		if (value == null)
+			out.write(nullValue);
+		else if (dateFormatter instanceof DateFormatter)
+			((DateFormatter) dateFormatter).formatTo(key, value, out);
+		else
+			out.write(toString(key, value));
+	}
+
+	@SuppressWarnings("unchecked")
+	public void write(String key, TemporalAccessor value, Writer out) throws IOException {
+		if (value == null) {
+			out.write(nullValue);
+			return;
+		}
+		Formatter<?> temporalFormatter = formatter == null ? formatters.get(value.getClass()) : null;
+		if (temporalFormatter instanceof TemporalFormatter)
+			((TemporalFormatter) temporalFormatter).formatTo(key, value, out);
+		else
+			out.write(toString(key, (Object) value));
+	}
+
 	public String toString(String key, byte[] value) {
 		if (value == null)
 			return nullValue;
@@ -716,6 +772,38 @@ public class MultiFormatter implements Formatter<Object> {
 		return toBytes(key, String.valueOf(value));
 	}
 	
+	/**
+	 * Write the int value into the buffer, without the intermediate string and bytes.
+	 * 
+	 * @param key - source key
+	 * @param value - the value
+	 * @param buffer - the reusable buffer, at least 24 bytes
+	 * @return the length, or -1 if the value should be formatted by toBytes(key, value).
+	 */
+	public int toBytes(String key, int value, byte[] buffer) {
+		if (intFormatter != null || ! asciiEncoding)
+			return -1;
+		return NumberUtils.toBytes(value, buffer);
+	}
+
+	public int toBytes(String key, long value, byte[] buffer) {
+		if (longFormatter != null || ! asciiEncoding)
+			return -1;
+		return NumberUtils.toBytes(value, buffer);
+	}
+
+	public int toBytes(String key, float value, byte[] buffer) {
+		if (floatFormatter != null || ! asciiEncoding)
+			return -1;
+		return NumberUtils.toBytes(value, buffer);
+	}
+
+	public int toBytes(String key, double value, byte[] buffer) {
+		if (doubleFormatter != null || ! asciiEncoding)
+			return -1;
+		return NumberUtils.toBytes(value, buffer);
+	}
+
 	public byte[] toBytes(String key, Boolean value) {
 		if (value == null)
 			return nullValueBytes;
@@ -16,9 +16,10 @@
 package httl.spi.formatters;
 
 import httl.spi.Formatter;
-import httl.util.NumberUtils;
+import httl.util.NumberUtils;
 
 import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 
 /**
  * NumberFormatter. (SPI, Singleton, ThreadSafe)
@@ -31,17 +32,120 @@ import java.text.DecimalFormat;
 public class NumberFormatter extends AbstractFormatter<Number> {
 	
 	private String numberFormat;
+
+	private ThreadLocal<DecimalFormat> decimalFormat;
+
+	private IntegerFormat integerFormat;
 	
 	/**
 	 * httl.properties: number.format=###,##0.###
 	 */
 	public void setNumberFormat(String numberFormat) {
-		new DecimalFormat(numberFormat).format(0);
+		final DecimalFormat format = new DecimalFormat(numberFormat);
+		format.format(0);
 		this.numberFormat = numberFormat;
+		// precompile the pattern once, and clone the parsed format for each thread.
+		this.decimalFormat = new ThreadLocal<DecimalFormat>() {
+			@Override
+			protected DecimalFormat initialValue() {
+				return (DecimalFormat) format.clone();
+			}
+		};
+		this.integerFormat = IntegerFormat.compile(format);
 	}
 
 	public String toString(String key, Number value) {
-		return NumberUtils.format(value, numberFormat);
+		if (decimalFormat == null) {
+			return NumberUtils.format(value, numberFormat);
+		}
+		if (integerFormat != null && (value instanceof Integer || value instanceof Long
+				|| value instanceof Short || value instanceof Byte) && value.longValue() != Long.MIN_VALUE) {
+			return integerFormat.format(value.longValue());
+		}
+		return decimalFormat.get().format(value);
+	}
+
+	// The immutable integer format of the simple pattern, without the DecimalFormat state.
+	private static final class IntegerFormat {
+
+		private final String positivePrefix;
+
+		private final String positiveSuffix;
+
+		private final String negativePrefix;
+
+		private final String negativeSuffix;
+
+		private final int groupingSize;
+
+		private final char groupingSeparator;
+
+		private final int minimumIntegerDigits;
+
+		private final char zeroDigit;
+
+		private final String fraction;
+
+		private IntegerFormat(DecimalFormat format) {
+			DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+			this.positivePrefix = format.getPositivePrefix();
+			this.positiveSuffix = format.getPositiveSuffix();
+			this.negativePrefix = format.getNegativePrefix();
+			this.negativeSuffix = format.getNegativeSuffix();
+			this.groupingSize = format.isGroupingUsed() ? format.getGroupingSize() : 0;
+			this.groupingSeparator = symbols.getGroupingSeparator();
+			this.minimumIntegerDigits = format.getMinimumIntegerDigits();
+			this.zeroDigit = symbols.getZeroDigit();
+			StringBuilder fraction = new StringBuilder();
+			if (format.getMinimumFractionDigits() > 0) {
+				fraction.append(symbols.getDecimalSeparator());
+				for (int i = 0; i < format.getMinimumFractionDigits(); i ++) {
+					fraction.append(zeroDigit);
+				}
+			}
+			this.fraction = fraction.toString();
+		}
+
+		// only the plain decimal pattern, the exponent, percent and currency formats are not compiled.
+		static IntegerFormat compile(DecimalFormat format) {
+			if (format.getMultiplier() != 1 || format.isDecimalSeparatorAlwaysShown()
+					|| format.getMaximumIntegerDigits() < 19 || format.getMinimumIntegerDigits() > 64
+					|| format.toPattern().indexOf('E') >= 0 || format.toPattern().indexOf('\u00A4') >= 0) {
+				return null;
+			}
+			return new IntegerFormat(format);
+		}
+
+		String format(long value) {
+			boolean negative = value < 0;
+			if (negative) {
+				value = - value;
+			}
+			char[] digits = new char[Math.max(20, minimumIntegerDigits)];
+			int count = 0;
+			while (value > 0) {
+				digits[count ++] = (char) (zeroDigit + (int) (value % 10));
+				value /= 10;
+			}
+			if (count == 0 && (minimumIntegerDigits > 0 || fraction.length() == 0)) {
+				digits[count ++] = zeroDigit;
+			}
+			while (count < minimumIntegerDigits) {
+				digits[count ++] = zeroDigit;
+			}
+			StringBuilder buf = new StringBuilder(count + count / 3 + 16);
+			buf.append(negative ? negativePrefix : positivePrefix);
+			for (int i = count - 1; i >= 0; i --) {
+				buf.append(digits[i]);
+				if (groupingSize > 0 && i > 0 && i % groupingSize == 0) {
+					buf.append(groupingSeparator);
+				}
+			}
+			buf.append(fraction);
+			buf.append(negative ? negativeSuffix : positiveSuffix);
+			return buf.toString();
+		}
+
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.formatters;
+
+import httl.spi.Formatter;
+import httl.util.DateUtils;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.TimeZone;
+
+/**
+ * TemporalFormatter. (SPI, Singleton, ThreadSafe)
+ * 
+ * Format the Instant, LocalDate, LocalDateTime, ZonedDateTime and other java.time values
+ * by the shared DateTimeFormatter of the date.format and time.zone.
+ * 
+ * @see httl.spi.translators.CompiledTranslator#setFormatter(Formatter)
+ * @see httl.spi.translators.InterpretedTranslator#setFormatter(Formatter)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class TemporalFormatter extends AbstractFormatter<TemporalAccessor> {
+
+	private String dateFormat;
+
+	private TimeZone timeZone;
+
+	private volatile DateTimeFormatter zonedFormatter;
+
+	private volatile DateTimeFormatter localFormatter;
+
+	/**
+	 * httl.properties: date.format=yyyy-MM-dd HH:mm:ss
+	 */
+	public void setDateFormat(String dateFormat) {
+		DateTimeFormatter.ofPattern(dateFormat);
+		this.dateFormat = dateFormat;
+		this.zonedFormatter = null;
+		this.localFormatter = null;
+	}
+
+	/**
+	 * httl.properties: time.zone=+8
+	 */
+	public void setTimeZone(String timeZone) {
+		this.timeZone = TimeZone.getTimeZone(timeZone);
+		this.zonedFormatter = null;
+		this.localFormatter = null;
+	}
+
+	/**
+	 * Get the formatter of the value, the Instant is formatted in the time zone or the system zone,
+	 * the zoned values are moved to the time zone if it is set, otherwise keep their own zone.
+	 * The local values are placed in the time zone or the system zone by toTemporal first.
+	 * 
+	 * @param value - the java.time value
+	 * @return the shared formatter
+	 */
+	protected DateTimeFormatter getFormatter(TemporalAccessor value) {
+		if (timeZone == null && ! (value instanceof Instant)) {
+			DateTimeFormatter formatter = this.localFormatter;
+			if (formatter == null) {
+				formatter = DateUtils.getDateTimeFormatter(dateFormat, null);
+				this.localFormatter = formatter;
+			}
+			return formatter;
+		}
+		DateTimeFormatter formatter = this.zonedFormatter;
+		if (formatter == null) {
+			formatter = DateUtils.getDateTimeFormatter(dateFormat, getZone());
+			this.zonedFormatter = formatter;
+		}
+		return formatter;
+	}
+
+	public String toString(String key, TemporalAccessor value) {
+		if (value == null) {
+			return null;
+		}
+		value = toTemporal(value);
+		return getFormatter(value).format(value);
+	}
+
+	/**
+	 * Format the value straight into the output.
+	 * 
+	 * @param key - source key
+	 * @param value - the java.time value
+	 * @param out - the output writer or builder
+	 * @throws IOException - If an I/O error occurs
+	 */
+	public void formatTo(String key, TemporalAccessor value, Appendable out) throws IOException {
+		value = toTemporal(value);
+		try {
+			getFormatter(value).formatTo(value, out);
+		} catch (DateTimeException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private ZoneId getZone() {
+		return timeZone == null ? ZoneId.systemDefault() : timeZone.toZoneId();
+	}
+
+	// As the Date in the time zone or the system zone, so the pattern may have the zone and offset fields.
+	private TemporalAccessor toTemporal(TemporalAccessor value) {
+		if (value instanceof LocalDate) {
+			// as the Date of the day, without the time fields the pattern may have.
+			return ((LocalDate) value).atStartOfDay(getZone());
+		}
+		if (value instanceof LocalDateTime) {
+			return ((LocalDateTime) value).atZone(getZone());
+		}
+		return value;
+	}
+
+}
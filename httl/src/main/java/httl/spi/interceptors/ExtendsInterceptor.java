@@ -20,14 +20,20 @@ import httl.Engine;
 import httl.Template;
 import httl.spi.Interceptor;
 import httl.spi.Listener;
+import httl.spi.engines.DefaultEngine;
 import httl.spi.methods.FileMethod;
 import httl.spi.translators.templates.ListenerTemplate;
+import httl.util.ConcurrentLinkedHashMap;
 import httl.util.Optional;
 import httl.util.StringUtils;
 import httl.util.UrlUtils;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.text.ParseException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Extends Interceptor. (SPI, Singleton, ThreadSafe)
@@ -51,6 +57,12 @@ public class ExtendsInterceptor extends FirstInterceptor {
 
 	private String extendsVariable;
 
+	private boolean reloadable;
+
+	// The default layout name resolved for the template name and locale, kept until the template is reloaded.
+	// The template is not referenced, so the replaced template classes are unloaded.
+	private volatile ConcurrentMap<String, DefaultLayout> defaultLayouts = new ConcurrentHashMap<String, DefaultLayout>();
+
 	/**
 	 * httl.properties: engine=httl.spi.engines.DefaultEngine
 	 */
@@ -86,6 +98,22 @@ public class ExtendsInterceptor extends FirstInterceptor {
 		this.extendsVariable = extendsVariable;
 	}
 
+	/**
+	 * httl.properties: reloadable=true
+	 */
+	public void setReloadable(boolean reloadable) {
+		this.reloadable = reloadable;
+	}
+
+	/**
+	 * httl.properties: cache.capacity=1000
+	 */
+	public void setCacheCapacity(int capacity) {
+		if (capacity > 0) {
+			defaultLayouts = new ConcurrentLinkedHashMap<String, DefaultLayout>(capacity);
+		}
+	}
+
 	/**
 	 * httl.properties: extends.nested=nested
 	 */
@@ -105,25 +133,24 @@ public class ExtendsInterceptor extends FirstInterceptor {
 		// 如果默认模板存在，则继承默认模板。
 		// 注意：默认模板是从继承模板目录中查找的，即实际为：template.directory + extends.directory +　extends.default
 		Template template = context.getTemplate();
+		DefaultLayout layout = null;
 		if (StringUtils.isEmpty(extendsName) && StringUtils.isNotEmpty(extendsDefault)) {
-			String templateName = template.getName();
-			String name = UrlUtils.relativeUrl(extendsDefault, templateName);
-			if (StringUtils.isNotEmpty(extendsDirectory)) {
-				name = extendsDirectory + name;
-			}
-			if (! name.equals(templateName) && engine.hasResource(name)) {
-				extendsName = extendsDefault;
-			}
+			layout = getDefaultLayout(template);
+			extendsName = layout.name;
 		}
 		if (StringUtils.isNotEmpty(extendsName)) {
 			// extends.nested=nested
 			Object oldNested = null;
 			if (StringUtils.isNotEmpty(extendsNested)) {
-				oldNested = context.put(extendsNested, new ListenerTemplate(template, listener));
+				oldNested = context.put(extendsNested, layout == null ? new ListenerTemplate(template, listener) : layout.getNested(template, listener));
 			}
 			try {
-				Template extend = fileMethod.$extends(extendsName, template.getLocale(), template.getEncoding());
-				extend.render(context.getOut());
+				Template extend = fileMethod.$extends(context, extendsName, template.getLocale(), template.getEncoding());
+				if (context.isExplicit()) {
+					extend.render(context, context.getOut());
+				} else {
+					extend.render(context.getOut());
+				}
 			} finally {
 				if (StringUtils.isNotEmpty(extendsNested)) {
 					if (oldNested != null) {
@@ -138,4 +165,86 @@ public class ExtendsInterceptor extends FirstInterceptor {
 		}
 	}
 
+	// Resolve the default layout once for the template, and again when the engine reloads the template.
+	// The missing layout of the reloadable engine is cached until the watcher sees a change,
+	// and checked on every request if its directory can not be watched.
+	private DefaultLayout getDefaultLayout(Template template) throws IOException {
+		Locale locale = template.getLocale();
+		String key = locale == null ? template.getName() : template.getName() + "_" + locale;
+		DefaultLayout layout = defaultLayouts.get(key);
+		if (layout != null && layout.isVersionOf(template)
+				&& (layout.name != null || ! reloadable || layout.changes == getResourceChanges())) {
+			return layout;
+		}
+		long changes = getResourceChanges(); // before checking, so the change in checking is not missed.
+		String extendsName = null;
+		String templateName = template.getName();
+		String name = UrlUtils.relativeUrl(extendsDefault, templateName);
+		if (StringUtils.isNotEmpty(extendsDirectory)) {
+			name = extendsDirectory + name;
+		}
+		boolean cached = true;
+		if (! name.equals(templateName)) {
+			if (engine.hasResource(name)) {
+				extendsName = extendsDefault;
+			} else if (reloadable) {
+				// check again after watched, the layout may be added before watched.
+				cached = engine instanceof DefaultEngine && ((DefaultEngine) engine).watchMissingResource(name, null);
+				if (cached && engine.hasResource(name)) {
+					extendsName = extendsDefault;
+				}
+			}
+		}
+		DefaultLayout resolved = new DefaultLayout(template.getLastModified(), template.getLength(), extendsName, changes);
+		if (cached) {
+			defaultLayouts.put(key, resolved);
+		} else if (layout != null) {
+			defaultLayouts.remove(key, layout);
+		}
+		return resolved;
+	}
+
+	private long getResourceChanges() {
+		return engine instanceof DefaultEngine ? ((DefaultEngine) engine).getResourceChanges() : 0;
+	}
+
+	private static final class DefaultLayout {
+
+		final long lastModified;
+
+		final long length;
+
+		final String name;
+
+		// The resource changes of the engine, when the missing layout is resolved.
+		final long changes;
+
+		// The nested template of the last rendering, weakly referenced, so the replaced template classes are unloaded.
+		private volatile WeakReference<ListenerTemplate> nested;
+
+		DefaultLayout(long lastModified, long length, String name, long changes) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.name = name;
+			this.changes = changes;
+		}
+
+		// The reloaded template is changed in the last modified time or the length.
+		boolean isVersionOf(Template template) {
+			return lastModified == template.getLastModified() && length == template.getLength();
+		}
+
+		// Reuse the nested template of the same template and listener, instead of creating it on every rendering.
+		ListenerTemplate getNested(Template template, Listener listener) {
+			WeakReference<ListenerTemplate> reference = nested;
+			ListenerTemplate listenerTemplate = reference == null ? null : reference.get();
+			if (listenerTemplate == null || ! listenerTemplate.isListenerOf(template, listener)) {
+				listenerTemplate = new ListenerTemplate(template, listener);
+				nested = new WeakReference<ListenerTemplate>(listenerTemplate);
+			}
+			return listenerTemplate;
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -65,25 +65,9 @@ public abstract class InputStreamResource extends AbstractResource {
 		if (file != null && file.exists()) {
 			return file.lastModified();
 		}
-		URL url = getUrl();
-		if (url != null) {
-			if (JAR_PROTOCOL.equals(url.getProtocol())) {
-				String path = url.getFile();
-				if (path.startsWith(JAR_PROTOCOL_PREFIX)) {
-					path = path.substring(JAR_PROTOCOL_PREFIX.length());
-				}
-				if (path.startsWith(FILE_PROTOCOL_PREFIX)) {
-					path = path.substring(FILE_PROTOCOL_PREFIX.length());
-				}
-				int i = path.indexOf(JAR_FILE_SEPARATOR);
-				if (i > 0) {
-					path = path.substring(0, i);
-				}
-				file = new File(path);
-				if (file.exists()) {
-					return file.lastModified();
-				}
-			}
+		File archive = getArchive();
+		if (archive != null) {
+			return archive.lastModified();
 		}
 		return super.getLastModified();
 	}
@@ -124,6 +108,35 @@ public abstract class InputStreamResource extends AbstractResource {
 		return null;
 	}
 
+	/**
+	 * Get the jar or zip file, which contains the resource.
+	 * 
+	 * @return archive file, null if the resource is not in an archive
+	 */
+	public File getArchive() {
+		URL url = getUrl();
+		if (url != null) {
+			if (JAR_PROTOCOL.equals(url.getProtocol())) {
+				String path = url.getFile();
+				if (path.startsWith(JAR_PROTOCOL_PREFIX)) {
+					path = path.substring(JAR_PROTOCOL_PREFIX.length());
+				}
+				if (path.startsWith(FILE_PROTOCOL_PREFIX)) {
+					path = path.substring(FILE_PROTOCOL_PREFIX.length());
+				}
+				int i = path.indexOf(JAR_FILE_SEPARATOR);
+				if (i > 0) {
+					path = path.substring(0, i);
+				}
+				File file = new File(path);
+				if (file.exists()) {
+					return file;
+				}
+			}
+		}
+		return null;
+	}
+
 	protected URL getUrl() {
 		return null;
 	}
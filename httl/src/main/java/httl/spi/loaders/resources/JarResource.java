@@ -52,6 +52,10 @@ public class JarResource extends InputStreamResource {
 		return file.lastModified();
 	}
 
+	public File getArchive() {
+		return file;
+	}
+
 	public long getLength() {
 		try {
 			JarFile jarFile = new JarFile(file);
@@ -52,6 +52,10 @@ public class ZipResource extends InputStreamResource {
 		return file.lastModified();
 	}
 
+	public File getArchive() {
+		return file;
+	}
+
 	public long getLength() {
 		try {
 			ZipFile zipFile = new ZipFile(file);
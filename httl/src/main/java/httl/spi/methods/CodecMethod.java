@@ -16,6 +16,7 @@
 package httl.spi.methods;
 
 import httl.spi.Codec;
+import httl.spi.codecs.CodecValue;
 import httl.util.ClassUtils;
 
 import java.text.ParseException;
@@ -55,6 +56,20 @@ public class CodecMethod {
 		return getAndCheckCodec(format).toString(null, value);
 	}
 
+	/**
+	 * Encode the value straight into the template output, if it is not filtered, such as $!{encodeStream(list, "json")}.
+	 * 
+	 * @param value - bean object
+	 * @param format - codec format
+	 * @return codec value, or null if the value is null
+	 */
+	public CodecValue encodeStream(Object value, String format) {
+		if (value == null) {
+			return null;
+		}
+		return new CodecValue(getAndCheckCodec(format), value);
+	}
+
 	public Object decode(String value, String format) throws ParseException {
 		return decode(value, (Class<?>) null, format);
 	}
@@ -71,6 +86,10 @@ public class CodecMethod {
 		return encode(value, "json");
 	}
 
+	public CodecValue encodeJsonStream(Object value) {
+		return encodeStream(value, "json");
+	}
+
 	public Object decodeJson(String value) throws ParseException {
 		return decode(value, (Class<?>) null, "json");
 	}
@@ -87,6 +106,10 @@ public class CodecMethod {
 		return encode(value, "xml");
 	}
 
+	public CodecValue encodeXmlStream(Object value) {
+		return encodeStream(value, "xml");
+	}
+
 	public Object decodeXml(String value) throws ParseException {
 		return decode(value, "xml");
 	}
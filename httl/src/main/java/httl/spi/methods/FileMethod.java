@@ -19,6 +19,7 @@ import httl.Context;
 import httl.Engine;
 import httl.Resource;
 import httl.Template;
+import httl.util.Contextual;
 import httl.util.IOUtils;
 import httl.util.StringUtils;
 import httl.util.UrlUtils;
@@ -31,6 +32,11 @@ import java.util.Map;
 /**
  * FileMethod. (SPI, Singleton, ThreadSafe)
  * 
+ * The include and extends overloads with the leading context are called by the templates with the current context,
+ * so the relative names and the extended macros go to the explicit context, not the thread local one.
+ * 
+ * @see httl.util.Contextual
+ * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
  */
 public class FileMethod {
@@ -57,18 +63,38 @@ public class FileMethod {
 	}
 
 	public Template $extends(String name) throws IOException, ParseException {
-		return $extends(name, (Locale) null, (String) null);
+		return $extends(Context.getContext(), name);
 	}
 
 	public Template $extends(String name, String encoding) throws IOException, ParseException {
-		return $extends(name, (Locale) null, encoding);
+		return $extends(Context.getContext(), name, encoding);
 	}
 
 	public Template $extends(String name, Locale locale) throws IOException, ParseException {
-		return $extends(name, locale, (String) null);
+		return $extends(Context.getContext(), name, locale);
 	}
 
 	public Template $extends(String name, Locale locale, String encoding) throws IOException, ParseException {
+		return $extends(Context.getContext(), name, locale, encoding);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name) throws IOException, ParseException {
+		return $extends(context, name, (Locale) null, (String) null);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, String encoding) throws IOException, ParseException {
+		return $extends(context, name, (Locale) null, encoding);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, Locale locale) throws IOException, ParseException {
+		return $extends(context, name, locale, (String) null);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, Locale locale, String encoding) throws IOException, ParseException {
 		if (StringUtils.isEmpty(name)) {
 			throw new IllegalArgumentException("include template name == null");
 		}
@@ -78,7 +104,7 @@ public class FileMethod {
 			macro = name.substring(i + 1);
 			name = name.substring(0, i);
 		}
-		Template template = Context.getContext().getTemplate();
+		Template template = context.getTemplate();
 		if (template != null) {
 			if (StringUtils.isEmpty(encoding)) {
 				encoding = template.getEncoding();
@@ -92,6 +118,9 @@ public class FileMethod {
 			name = extendsDirectory + name;
 		}
 		Template extend = engine.getTemplate(name, locale, encoding);
+		if (template != null) {
+			engine.addDependency(template.getName(), extend.getName()); // reload the template with the changed layout.
+		}
 		if (StringUtils.isNotEmpty(macro)) {
 			extend = extend.getMacros().get(macro);
 		}
@@ -99,28 +128,48 @@ public class FileMethod {
 			if (template == extend) {
 				throw new IllegalStateException("The template " + template.getName() + " can not be recursive extending the self template.");
 			}
-			Context.getContext().putAll(template.getMacros());
+			context.putAll(template.getMacros());
 		}
 		return extend;
 	}
 
 	public Template $extends(String name, Map<String, Object> parameters) throws IOException, ParseException {
-		return $extends(name, null, null, parameters);
+		return $extends(Context.getContext(), name, parameters);
 	}
 
 	public Template $extends(String name, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
-		return $extends(name, null, encoding, parameters);
+		return $extends(Context.getContext(), name, encoding, parameters);
 	}
 
 	public Template $extends(String name, Locale locale, Map<String, Object> parameters) throws IOException, ParseException {
-		return $extends(name, locale, null, parameters);
+		return $extends(Context.getContext(), name, locale, parameters);
 	}
 
 	public Template $extends(String name, Locale locale, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
+		return $extends(Context.getContext(), name, locale, encoding, parameters);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, Map<String, Object> parameters) throws IOException, ParseException {
+		return $extends(context, name, null, null, parameters);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
+		return $extends(context, name, null, encoding, parameters);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, Locale locale, Map<String, Object> parameters) throws IOException, ParseException {
+		return $extends(context, name, locale, null, parameters);
+	}
+
+	@Contextual
+	public Template $extends(Context context, String name, Locale locale, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
 		if (parameters != null) {
-			Context.getContext().putAll(parameters);
+			context.putAll(parameters);
 		}
-		return $extends(name, locale, encoding);
+		return $extends(context, name, locale, encoding);
 	}
 
 	public Template render(Resource resource) throws IOException, ParseException {
@@ -149,18 +198,38 @@ public class FileMethod {
 	}
 
 	public Template include(String name) throws IOException, ParseException {
-		return include(name, (Locale) null, (String) null);
+		return include(Context.getContext(), name);
 	}
 	
 	public Template include(String name, String encoding) throws IOException, ParseException {
-		return include(name, (Locale) null, encoding);
+		return include(Context.getContext(), name, encoding);
 	}
 
 	public Template include(String name, Locale locale) throws IOException, ParseException {
-		return include(name, locale, (String) null);
+		return include(Context.getContext(), name, locale);
 	}
 
 	public Template include(String name, Locale locale, String encoding) throws IOException, ParseException {
+		return include(Context.getContext(), name, locale, encoding);
+	}
+
+	@Contextual
+	public Template include(Context context, String name) throws IOException, ParseException {
+		return include(context, name, (Locale) null, (String) null);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, String encoding) throws IOException, ParseException {
+		return include(context, name, (Locale) null, encoding);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, Locale locale) throws IOException, ParseException {
+		return include(context, name, locale, (String) null);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, Locale locale, String encoding) throws IOException, ParseException {
 		if (StringUtils.isEmpty(name)) {
 			throw new IllegalArgumentException("include template name == null");
 		}
@@ -170,7 +239,7 @@ public class FileMethod {
 			macro = name.substring(i + 1);
 			name = name.substring(0, i);
 		}
-		Template template = Context.getContext().getTemplate();
+		Template template = context.getTemplate();
 		if (template != null) {
 			if (StringUtils.isEmpty(encoding)) {
 				encoding = template.getEncoding();
@@ -191,22 +260,42 @@ public class FileMethod {
 	}
 
 	public Template include(String name, Map<String, Object> parameters) throws IOException, ParseException {
-		return include(name, null, null, parameters);
+		return include(Context.getContext(), name, parameters);
 	}
 	
 	public Template include(String name, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
-		return include(name, null, encoding, parameters);
+		return include(Context.getContext(), name, encoding, parameters);
 	}
 	
 	public Template include(String name, Locale locale, Map<String, Object> parameters) throws IOException, ParseException {
-		return include(name, locale, null, parameters);
+		return include(Context.getContext(), name, locale, parameters);
 	}
 	
 	public Template include(String name, Locale locale, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
+		return include(Context.getContext(), name, locale, encoding, parameters);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, Map<String, Object> parameters) throws IOException, ParseException {
+		return include(context, name, null, null, parameters);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
+		return include(context, name, null, encoding, parameters);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, Locale locale, Map<String, Object> parameters) throws IOException, ParseException {
+		return include(context, name, locale, null, parameters);
+	}
+
+	@Contextual
+	public Template include(Context context, String name, Locale locale, String encoding, Map<String, Object> parameters) throws IOException, ParseException {
 		if (parameters != null) {
-			Context.getContext().putAll(parameters);
+			context.putAll(parameters);
 		}
-		return include(name, locale, encoding);
+		return include(context, name, locale, encoding);
 	}
 
 	public Resource read(String name) throws IOException, ParseException {
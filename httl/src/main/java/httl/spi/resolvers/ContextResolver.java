@@ -27,21 +27,32 @@ import httl.spi.Resolver;
 public class ContextResolver implements Resolver {
 
 	public Object get(String key) {
+		return get(Context.getContext(), key);
+	}
+
+	/**
+	 * Get the variable of the given context, such as the explicit context.
+	 * 
+	 * @param context - current context
+	 * @param key - variable key
+	 * @return variable value
+	 */
+	public Object get(Context context, String key) {
 		if ("parent".equals(key)) {
-			return Context.getContext().getParent();
+			return context.getParent();
 		} else if ("super".equals(key)) {
-			Context parent = Context.getContext().getParent();
+			Context parent = context.getParent();
 			return parent == null ? null : parent.getTemplate();
 		} else if ("this".equals(key)) {
-			return Context.getContext().getTemplate();
+			return context.getTemplate();
 		} else if ("engine".equals(key)) {
-			return Context.getContext().getEngine();
+			return context.getEngine();
 		} else if ("out".equals(key)) {
-			return Context.getContext().getOut();
+			return context.getOut();
 		} else if ("level".equals(key)) {
-			return Context.getContext().getLevel();
+			return context.getLevel();
 		} else {
-			Template template = Context.getContext().getTemplate();
+			Template template = context.getTemplate();
 			if (template != null) {
 				return template.getMacros().get(key);
 			}
@@ -15,6 +15,7 @@
  */
 package httl.spi.resolvers;
 
+import httl.Context;
 import httl.spi.Resolver;
 
 import java.util.HashMap;
@@ -46,11 +47,23 @@ public class MultiResolver implements Resolver {
 	}
 
 	public Object get(String key) {
+		return get(null, key);
+	}
+
+	/**
+	 * Get the variable of the explicit context, the context resolver gets it without the thread local.
+	 * 
+	 * @param context - explicit context, null to use the thread local context
+	 * @param key - variable key
+	 * @return variable value
+	 */
+	public Object get(Context context, String key) {
 		if (resolvers == null || resolvers.length == 0) {
 			return null;
 		}
 		for (Resolver resolver : resolvers) {
-			Object value = resolver.get(key);
+			Object value = context != null && resolver instanceof ContextResolver 
+					? ((ContextResolver) resolver).get(context, key) : resolver.get(key);
 			if (value != null) {
 				return value;
 			}
@@ -31,8 +31,12 @@ import httl.spi.translators.templates.AdaptiveTemplate;
 import httl.spi.translators.templates.CompiledTemplate;
 import httl.spi.translators.templates.CompiledVisitor;
 import httl.util.ClassUtils;
+import httl.util.Digest;
+import httl.util.PrecompiledManifest;
 import httl.util.StringSequence;
 import httl.util.StringUtils;
+import httl.util.UrlUtils;
+import httl.util.Version;
 
 import java.io.IOException;
 import java.text.ParseException;
@@ -44,8 +48,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * CompiledTranslator. (SPI, Singleton, ThreadSafe)
@@ -56,15 +65,15 @@ import java.util.concurrent.CopyOnWriteArrayList;
  */
 public class CompiledTranslator implements Translator {
 
-	private String[] forVariable;
+	protected String[] forVariable;
 
-	private String filterVariable;
+	protected String filterVariable;
 
-	private String formatterVariable;
+	protected String formatterVariable;
 
-	private String defaultFilterVariable;
+	protected String defaultFilterVariable;
 	
-	private String defaultFormatterVariable;
+	protected String defaultFormatterVariable;
 
 	private Engine engine;
 
@@ -72,21 +81,21 @@ public class CompiledTranslator implements Translator {
 	
 	private Interceptor interceptor;
 	
-	private Logger logger;
+	protected Logger logger;
 	
 	public void setLogger(Logger logger) {
 		this.logger = logger;
 	}
 
-	private Switcher<Filter> textFilterSwitcher;
+	protected Switcher<Filter> textFilterSwitcher;
 
-	private Switcher<Filter> valueFilterSwitcher;
+	protected Switcher<Filter> valueFilterSwitcher;
 
-	private Switcher<Formatter<Object>> formatterSwitcher;
+	protected Switcher<Formatter<Object>> formatterSwitcher;
 
-	private Filter textFilter;
+	protected Filter textFilter;
 
-	private Filter valueFilter;
+	protected Filter valueFilter;
 	
 	private Converter<Object, Object> mapConverter;
 
@@ -95,8 +104,6 @@ public class CompiledTranslator implements Translator {
 	private Formatter<Object> formatter;
 
 	private String[] importMacros;
-   
-	private final Map<String, Template> importMacroTemplates = new ConcurrentHashMap<String, Template>();
 
 	private String[] importPackages;
 
@@ -104,7 +111,7 @@ public class CompiledTranslator implements Translator {
 
 	private String[] importVariables;
 
-	private Map<String, Class<?>> importTypes;
+	protected Map<String, Class<?>> importTypes;
 
 	private final Map<Class<?>, Object> functions = new ConcurrentHashMap<Class<?>, Object>();
 
@@ -119,10 +126,12 @@ public class CompiledTranslator implements Translator {
 	private boolean sourceInClass;
 
 	private boolean textInClass;
+
+	private int outlineSize;
 	
-	private String outputEncoding;
+	protected String outputEncoding;
 	
-	private Class<?> defaultVariableType;
+	protected Class<?> defaultVariableType;
 
 	private String engineName;
 
@@ -130,6 +139,48 @@ public class CompiledTranslator implements Translator {
 
 	private String[] importGetters;
 
+	private int compileBatchSize;
+
+	private String precompiledManifest;
+
+	private PrecompiledManifest manifest;
+
+	private boolean classNameDigest;
+
+	private boolean compiledSlots;
+
+	private Map<String, Object> properties;
+
+	private String configDigest;
+
+	/**
+	 * httl.properties: class.name.digest=true
+	 */
+	public void setClassNameDigest(boolean classNameDigest) {
+		this.classNameDigest = classNameDigest;
+	}
+
+	/**
+	 * httl.properties: instantiated content
+	 */
+	public void setProperties(Map<String, Object> properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * httl.properties: precompiled.manifest=META-INF/httl-precompiled.properties
+	 */
+	public void setPrecompiledManifest(String precompiledManifest) {
+		this.precompiledManifest = precompiledManifest;
+	}
+
+	/**
+	 * httl.properties: compile.batch.size=100
+	 */
+	public void setCompileBatchSize(int compileBatchSize) {
+		this.compileBatchSize = compileBatchSize;
+	}
+
 	/**
 	 * httl.properties: import.sizers=size,length,getSize,getLength
 	 */
@@ -293,6 +344,20 @@ public class CompiledTranslator implements Translator {
 		this.textInClass = textInClass;
 	}
 
+	/**
+	 * httl.properties: outline.size=20000
+	 */
+	public void setOutlineSize(int outlineSize) {
+		this.outlineSize = outlineSize;
+	}
+
+	/**
+	 * httl.properties: compiled.slots=false
+	 */
+	public void setCompiledSlots(boolean compiledSlots) {
+		this.compiledSlots = compiledSlots;
+	}
+
 	/**
 	 * httl.properties: for.variable=for
 	 */
@@ -378,22 +443,49 @@ public class CompiledTranslator implements Translator {
 				this.importTypes.put(var.substring(i + 1), ClassUtils.forName(importPackages, var.substring(0, i)));
 			}
 		}
+		if (classNameDigest) {
+			configDigest = getConfigDigest();
+		}
+		if (StringUtils.isNotEmpty(precompiledManifest)) {
+			try {
+				manifest = PrecompiledManifest.load(precompiledManifest);
+			} catch (IOException e) {
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			if (manifest != null && logger != null && logger.isInfoEnabled()) {
+				logger.info("Load " + manifest.size() + " precompiled template classes from " + precompiledManifest);
+			}
+		}
 	}
 
 	/**
 	 * inited.
 	 */
 	public void inited() {
+		try {
+			getImportMacroTemplates(null); // load the import macros in order.
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	// Get the import macros from the cached templates, so the changed macros are imported, and record the dependencies.
+	// The import macros template only imports the macros before it, as the inited order, to avoid the cyclic importing.
+	protected Map<String, Template> getImportMacroTemplates(String name) throws IOException, ParseException {
+		Map<String, Template> importMacroTemplates = new ConcurrentHashMap<String, Template>();
 		if (importMacros != null && importMacros.length > 0) {
 			for (String importMacro : importMacros) {
-				try {
-					Template importMacroTemplate = engine.getTemplate(importMacro);
-					importMacroTemplates.putAll(importMacroTemplate.getMacros());
-				} catch (Exception e) {
-					throw new IllegalStateException(e.getMessage(), e);
+				if (name != null && name.equals(UrlUtils.cleanName(importMacro))) {
+					break;
+				}
+				Template importMacroTemplate = engine.getTemplate(importMacro);
+				importMacroTemplates.putAll(importMacroTemplate.getMacros());
+				if (name != null) {
+					engine.addDependency(name, importMacroTemplate.getName());
 				}
 			}
 		}
+		return importMacroTemplates;
 	}
 
 	public Template translate(Resource resource, Node root, Map<String, Class<?>> defVariableTypes) throws IOException, ParseException {
@@ -401,15 +493,16 @@ public class CompiledTranslator implements Translator {
 			logger.debug("Compile template " + resource.getName());
 		}
 		try {
+			Map<String, Template> importMacroTemplates = getImportMacroTemplates(resource.getName());
 			Template writerTemplate = null;
 			Template streamTemplate = null;
 			if (isOutputWriter || ! isOutputStream) {
-				Class<?> clazz = parseClass(resource, root, defVariableTypes, false, 0);
+				Class<?> clazz = parseClass(resource, root, defVariableTypes, importMacroTemplates, false, 0);
 				writerTemplate = (Template) clazz.getConstructor(Engine.class, Interceptor.class, Compiler.class, Switcher.class, Switcher.class, Filter.class, Formatter.class, Converter.class, Converter.class, Map.class, Map.class, Resource.class, Template.class, Node.class)
 						.newInstance(engine, interceptor, compiler, valueFilterSwitcher, formatterSwitcher, valueFilter, formatter, mapConverter, outConverter, functions, importMacroTemplates, resource, null, root);
 			}
 			if (isOutputStream) {
-				Class<?> clazz = parseClass(resource, root, defVariableTypes, true, 0);
+				Class<?> clazz = parseClass(resource, root, defVariableTypes, importMacroTemplates, true, 0);
 				streamTemplate = (Template) clazz.getConstructor(Engine.class, Interceptor.class, Compiler.class, Switcher.class, Switcher.class, Filter.class, Formatter.class, Converter.class, Converter.class, Map.class, Map.class, Resource.class, Template.class, Node.class)
 						.newInstance(engine, interceptor, compiler, valueFilterSwitcher, formatterSwitcher, valueFilter, formatter, mapConverter, outConverter, functions, importMacroTemplates, resource, null, root);
 			}
@@ -456,47 +549,197 @@ public class CompiledTranslator implements Translator {
 		return TEMPLATE_CLASS_PREFIX + StringUtils.getVaildName(buf.toString());
 	}
 	
-	private Class<?> parseClass(Resource resource, Node root, Map<String, Class<?>> types, boolean stream, int offset) throws IOException, ParseException {
-		String name = getTemplateClassName(resource, stream);
+	public void precompile(Resource[] resources, Node[] roots) throws IOException, ParseException {
+		if (compileBatchSize <= 0 || resources == null || resources.length == 0) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		final List<String[]> batches = new ArrayList<String[]>();
+		List<String> batch = new ArrayList<String>();
+		int count = 0;
+		for (int i = 0; i < resources.length; i ++) {
+			List<String> sources = new ArrayList<String>();
+			try {
+				if (isOutputWriter || ! isOutputStream) {
+					generateSources(resources[i], roots[i], false, sources);
+				}
+				if (isOutputStream) {
+					generateSources(resources[i], roots[i], true, sources);
+				}
+			} catch (Exception e) {
+				// skip, the error will be reported when translated one by one.
+				continue;
+			}
+			batch.addAll(sources);
+			if (++ count >= compileBatchSize) {
+				batches.add(batch.toArray(new String[batch.size()]));
+				batch = new ArrayList<String>();
+				count = 0;
+			}
+		}
+		if (batch.size() > 0) {
+			batches.add(batch.toArray(new String[batch.size()]));
+		}
+		int threads = Math.min(batches.size(), Runtime.getRuntime().availableProcessors());
+		if (threads <= 1) {
+			for (String[] codes : batches) {
+				compileBatch(codes);
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (final String[] codes : batches) {
+					futures.add(executor.submit(new Runnable() {
+						public void run() {
+							compileBatch(codes);
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					} catch (ExecutionException e) {
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+		if (logger != null && logger.isInfoEnabled()) {
+			logger.info("Precompile " + resources.length + " templates in " + batches.size() + " batches with " + threads + " threads, elapsed: " + (System.currentTimeMillis() - start) + "ms.");
+		}
+	}
+
+	private void compileBatch(String[] codes) {
 		try {
-			return Class.forName(name, true, Thread.currentThread().getContextClassLoader());
+			compiler.compile(codes);
+		} catch (ParseException e) {
+			// fallback to compile one by one, to locate the error template.
+		}
+	}
+
+	private void generateSources(Resource resource, Node root, boolean stream, List<String> sources) throws IOException, ParseException {
+		if (findPrecompiledClass(resource, stream) == null) {
+			CompiledVisitor visitor = createVisitor(resource, root, new HashMap<String, Class<?>>(), getImportMacroTemplates(resource.getName()), stream, 0);
+			visitor.setSources(sources);
+			root.accept(visitor);
+			sources.add(visitor.getCode());
+		}
+	}
+
+	private Class<?> findPrecompiledClass(Resource resource, boolean stream) throws IOException {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if (manifest != null && resource.getLocale() == null) {
+			String className = manifest.getClassName(resource.getName(), resource.getSource(), stream);
+			if (className != null) {
+				try {
+					return Class.forName(className, true, loader);
+				} catch (ClassNotFoundException e) {
+				}
+			}
+		}
+		try {
+			return Class.forName(getTemplateClassName(resource, stream), true, loader);
 		} catch (ClassNotFoundException e) {
-			if (types == null) {
-				types = new HashMap<String, Class<?>>();
+			return null;
+		}
+	}
+
+	protected Class<?> parseClass(Resource resource, Node root, Map<String, Class<?>> types, Map<String, Template> importMacroTemplates, boolean stream, int offset) throws IOException, ParseException {
+		Class<?> clazz = findPrecompiledClass(resource, stream);
+		if (clazz != null) {
+			return clazz;
+		}
+		if (types == null) {
+			types = new HashMap<String, Class<?>>();
+		}
+		CompiledVisitor visitor = createVisitor(resource, root, types, importMacroTemplates, stream, offset);
+		root.accept(visitor);
+		return visitor.compile();
+	}
+
+	// The settings the generated code depends on, the paths are left out, so the same templates get the same class names on each machine.
+	private static boolean isCodeConfig(String key) {
+		return key.startsWith("import.") || key.startsWith("output.")
+				|| key.endsWith(".type") || key.endsWith(".typed")
+				|| key.endsWith(".variable") || key.endsWith(".directive")
+				|| key.endsWith("filter") || key.endsWith("filters")
+				|| key.endsWith("formatter") || key.endsWith("formatters")
+				|| key.endsWith("switcher") || key.endsWith("switchers")
+				|| key.endsWith(".in.class") || "outline.size".equals(key)
+				|| "compiled.slots".equals(key) || "forbid.methods".equals(key);
+	}
+
+	// The digest of the httl version and the config, the generated code depends on them.
+	private String getConfigDigest() {
+		Map<String, String> config = new TreeMap<String, String>();
+		if (properties != null) {
+			for (Map.Entry<String, Object> entry : properties.entrySet()) {
+				if (entry.getValue() instanceof String // skip the instances
+						&& isCodeConfig(entry.getKey())) {
+					config.put(entry.getKey(), (String) entry.getValue());
+				}
 			}
-			CompiledVisitor visitor = new CompiledVisitor();
-			visitor.setResource(resource);
-			visitor.setNode(root);
-			visitor.setTypes(types);
-			visitor.setStream(stream);
-			visitor.setOffset(offset);
-			visitor.setDefaultFilterVariable(defaultFilterVariable);
-			visitor.setDefaultFormatterVariable(defaultFormatterVariable);
-			visitor.setDefaultVariableType(defaultVariableType);
-			visitor.setEngineName(engineName);
-			visitor.setFilterVariable(filterVariable);
-			visitor.setFormatterSwitcher(formatterSwitcher);
-			visitor.setFormatterVariable(formatterVariable);
-			visitor.setForVariable(forVariable);
-			visitor.setImportMacroTemplates(importMacroTemplates);
-			visitor.setImportPackages(importPackages);
-			visitor.setImportPackageSet(importPackageSet);
-			visitor.setImportSizers(importSizers);
-			visitor.setImportGetters(importGetters);
-			visitor.setImportTypes(importTypes);
-			visitor.setImportMethods(functions);
-			visitor.setImportSequences(sequences);
-			visitor.setOutputEncoding(outputEncoding);
-			visitor.setSourceInClass(sourceInClass);
-			visitor.setTextFilter(textFilter);
-			visitor.setTextFilterSwitcher(textFilterSwitcher);
-			visitor.setTextInClass(textInClass);
-			visitor.setValueFilterSwitcher(valueFilterSwitcher);
-			visitor.setCompiler(compiler);
-			visitor.init();
-			root.accept(visitor);
-			return visitor.compile();
 		}
+		StringBuilder buf = new StringBuilder();
+		buf.append(Version.getVersion(CompiledTranslator.class, "0.0.0"));
+		buf.append("\n");
+		for (Map.Entry<String, String> entry : config.entrySet()) {
+			buf.append(entry.getKey());
+			buf.append("=");
+			buf.append(entry.getValue());
+			buf.append("\n");
+		}
+		return Digest.getMD5(buf.toString());
+	}
+
+	private String getClassDigest(Resource resource) throws IOException {
+		if (configDigest == null) {
+			return null;
+		}
+		return Digest.getMD5(configDigest + resource.getSource());
+	}
+
+	protected CompiledVisitor createVisitor(Resource resource, Node root, Map<String, Class<?>> types, Map<String, Template> importMacroTemplates, boolean stream, int offset) throws IOException {
+		CompiledVisitor visitor = new CompiledVisitor();
+		visitor.setResource(resource);
+		visitor.setNode(root);
+		visitor.setTypes(types);
+		visitor.setStream(stream);
+		visitor.setOffset(offset);
+		visitor.setDefaultFilterVariable(defaultFilterVariable);
+		visitor.setDefaultFormatterVariable(defaultFormatterVariable);
+		visitor.setDefaultVariableType(defaultVariableType);
+		visitor.setEngineName(engineName);
+		visitor.setFilterVariable(filterVariable);
+		visitor.setFormatterSwitcher(formatterSwitcher);
+		visitor.setFormatterVariable(formatterVariable);
+		visitor.setForVariable(forVariable);
+		visitor.setImportMacroTemplates(importMacroTemplates);
+		visitor.setImportPackages(importPackages);
+		visitor.setImportPackageSet(importPackageSet);
+		visitor.setImportSizers(importSizers);
+		visitor.setImportGetters(importGetters);
+		visitor.setImportTypes(importTypes);
+		visitor.setImportMethods(functions);
+		visitor.setImportSequences(sequences);
+		visitor.setOutputEncoding(outputEncoding);
+		visitor.setSourceInClass(sourceInClass);
+		visitor.setTextFilter(textFilter);
+		visitor.setTextFilterSwitcher(textFilterSwitcher);
+		visitor.setTextInClass(textInClass || classNameDigest); // the text cache is not persistent.
+		visitor.setOutlineSize(outlineSize);
+		visitor.setCompiledSlots(compiledSlots);
+		visitor.setValueFilter(valueFilter);
+		visitor.setValueFilterSwitcher(valueFilterSwitcher);
+		visitor.setCompiler(compiler);
+		visitor.setClassDigest(getClassDigest(resource));
+		visitor.init();
+		return visitor;
 	}
 
 }
\ No newline at end of file
@@ -28,6 +28,7 @@ import httl.spi.Switcher;
 import httl.spi.Translator;
 import httl.spi.translators.templates.InterpretedTemplate;
 import httl.util.StringSequence;
+import httl.util.UrlUtils;
 
 import java.io.IOException;
 import java.text.ParseException;
@@ -79,8 +80,6 @@ public class InterpretedTranslator implements Translator {
 	private String[] importPackages;
 
 	private String[] importMacros;
-   
-	private final Map<String, Template> importMacroTemplates = new ConcurrentHashMap<String, Template>();
 
 	private Interceptor interceptor;
 
@@ -110,16 +109,30 @@ public class InterpretedTranslator implements Translator {
 	 * inited.
 	 */
 	public void inited() {
+		try {
+			getImportMacroTemplates(null); // load the import macros in order.
+		} catch (Exception e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	// Get the import macros from the cached templates, so the changed macros are imported, and record the dependencies.
+	// The import macros template only imports the macros before it, as the inited order, to avoid the cyclic importing.
+	private Map<String, Template> getImportMacroTemplates(String name) throws IOException, ParseException {
+		Map<String, Template> importMacroTemplates = new ConcurrentHashMap<String, Template>();
 		if (importMacros != null && importMacros.length > 0) {
 			for (String importMacro : importMacros) {
-				try {
-					Template importMacroTemplate = engine.getTemplate(importMacro);
-					importMacroTemplates.putAll(importMacroTemplate.getMacros());
-				} catch (Exception e) {
-					throw new IllegalStateException(e.getMessage(), e);
+				if (name != null && name.equals(UrlUtils.cleanName(importMacro))) {
+					break;
+				}
+				Template importMacroTemplate = engine.getTemplate(importMacro);
+				importMacroTemplates.putAll(importMacroTemplate.getMacros());
+				if (name != null) {
+					engine.addDependency(name, importMacroTemplate.getName());
 				}
 			}
 		}
+		return importMacroTemplates;
 	}
 
 	public void setEngine(Engine engine) {
@@ -227,6 +240,7 @@ public class InterpretedTranslator implements Translator {
 		if (logger != null && logger.isDebugEnabled()) {
 			logger.debug("Interprete template " + resource.getName());
 		}
+		Map<String, Template> importMacroTemplates = getImportMacroTemplates(resource.getName());
 		InterpretedTemplate template = new InterpretedTemplate(resource, root, null);
 		template.setInterceptor(interceptor);
 		template.setMapConverter(mapConverter);
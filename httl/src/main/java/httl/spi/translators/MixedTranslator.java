@@ -25,6 +25,7 @@ import httl.Template;
 import httl.spi.Converter;
 import httl.spi.Logger;
 import httl.spi.Translator;
+import httl.spi.translators.templates.BackgroundCompiler;
 import httl.spi.translators.templates.MixedTemplate;
 
 /**
@@ -48,11 +49,34 @@ public class MixedTranslator implements Translator {
 
 	private boolean interpreted;
 
+	private boolean compileAsync;
+
+	private int compileThreads = 1;
+
+	private int compileQueueCapacity = 1000;
+
+	private BackgroundCompiler backgroundCompiler;
+
+	public void init() {
+		if (compileAsync && interpreted && compiled) {
+			backgroundCompiler = new BackgroundCompiler(compileThreads, compileQueueCapacity, logger);
+		}
+	}
+
+	/**
+	 * Get the background compiler, for the queue depth, compile time and failure metrics.
+	 * 
+	 * @return background compiler, null if the compile.async is disabled.
+	 */
+	public BackgroundCompiler getBackgroundCompiler() {
+		return backgroundCompiler;
+	}
+
 	public Template translate(Resource resource, Node root, Map<String, Class<?>> types)
 			throws ParseException, IOException {
 		if (interpreted && compiled) {
 			return new MixedTemplate(interpretedTranslator.translate(resource, root, types), 
-					resource, root, types, compiledTranslator, mapConverter, logger);
+					resource, root, types, compiledTranslator, mapConverter, logger, backgroundCompiler);
 		} else if (interpreted) {
 			return interpretedTranslator.translate(resource, root, types);
 		} else {
@@ -60,6 +84,12 @@ public class MixedTranslator implements Translator {
 		}
 	}
 
+	public void precompile(Resource[] resources, Node[] roots) throws ParseException, IOException {
+		if (compiled && ! interpreted) {
+			compiledTranslator.precompile(resources, roots);
+		}
+	}
+
 	public void setCompiled(boolean compiled) {
 		this.compiled = compiled;
 	}
@@ -67,6 +97,27 @@ public class MixedTranslator implements Translator {
 	public void setInterpreted(boolean interpreted) {
 		this.interpreted = interpreted;
 	}
+
+	/**
+	 * httl.properties: compile.async=false
+	 */
+	public void setCompileAsync(boolean compileAsync) {
+		this.compileAsync = compileAsync;
+	}
+
+	/**
+	 * httl.properties: compile.threads=1
+	 */
+	public void setCompileThreads(int compileThreads) {
+		this.compileThreads = compileThreads;
+	}
+
+	/**
+	 * httl.properties: compile.queue.capacity=1000
+	 */
+	public void setCompileQueueCapacity(int compileQueueCapacity) {
+		this.compileQueueCapacity = compileQueueCapacity;
+	}
 
 	public void setCompiledTranslator(Translator compiledTranslator) {
 		this.compiledTranslator = compiledTranslator;
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators;
+
+import httl.Node;
+import httl.Resource;
+import httl.Template;
+import httl.spi.Translator;
+import httl.spi.translators.templates.BytecodeVisitor;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SimpleBytecodeTranslator. (SPI, Singleton, ThreadSafe)
+ * 
+ * A fast path of the CompiledTranslator for the simple templates, not a replacement of the java compiler.
+ * Emits the bytecode of the simple templates directly, without the java compiler,
+ * and compiles all the other templates with the java compiler as the CompiledTranslator.
+ * 
+ * <pre>
+ * compiled.translator=httl.spi.translators.SimpleBytecodeTranslator
+ * </pre>
+ * 
+ * The emitted templates consist of texts, comments and ${var} or $!{var} values only,
+ * the var is an Object type variable got from the context, such as not declared by #set,
+ * and not the for status, the filter, the formatter, this, super, an import variable or an import macro.
+ * The texts should not contain the switcher locations, such as &lt;script.
+ * The templates with any directive, such as #if, #for, #set or #macro, any expression, such as a method call,
+ * or any typed variable, are compiled by the java compiler, that is most of the real templates.
+ * 
+ * @see httl.spi.engines.DefaultEngine#setTranslator(Translator)
+ * @see httl.spi.translators.templates.BytecodeVisitor#isSupported()
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class SimpleBytecodeTranslator extends CompiledTranslator {
+
+	@Override
+	public void precompile(Resource[] resources, Node[] roots) throws IOException, ParseException {
+		if (resources == null || resources.length == 0) {
+			return;
+		}
+		// Only the templates which need the java compiler are batched.
+		List<Resource> compiledResources = new ArrayList<Resource>();
+		List<Node> compiledRoots = new ArrayList<Node>();
+		for (int i = 0; i < resources.length; i ++) {
+			if (! createBytecodeVisitor(resources[i], roots[i], null, getImportMacroTemplates(resources[i].getName()), false).isSupported()) {
+				compiledResources.add(resources[i]);
+				compiledRoots.add(roots[i]);
+			}
+		}
+		super.precompile(compiledResources.toArray(new Resource[compiledResources.size()]),
+				compiledRoots.toArray(new Node[compiledRoots.size()]));
+	}
+
+	@Override
+	protected Class<?> parseClass(Resource resource, Node root, Map<String, Class<?>> types, Map<String, Template> importMacroTemplates, boolean stream, int offset) throws IOException, ParseException {
+		if (offset == 0) {
+			BytecodeVisitor visitor = createBytecodeVisitor(resource, root, types, importMacroTemplates, stream);
+			if (visitor.isSupported()) {
+				if (logger != null && logger.isDebugEnabled()) {
+					logger.debug("Emit template bytecode " + resource.getName());
+				}
+				return visitor.compile();
+			}
+		}
+		return super.parseClass(resource, root, types, importMacroTemplates, stream, offset);
+	}
+
+	private BytecodeVisitor createBytecodeVisitor(Resource resource, Node root, Map<String, Class<?>> types, Map<String, Template> importMacroTemplates, boolean stream) {
+		BytecodeVisitor visitor = new BytecodeVisitor();
+		visitor.setResource(resource);
+		visitor.setNode(root);
+		visitor.setTypes(types == null ? null : new HashMap<String, Class<?>>(types)); // the compiled visitor puts its own types.
+		visitor.setStream(stream);
+		visitor.setDefaultVariableType(defaultVariableType);
+		visitor.setForVariable(forVariable);
+		visitor.setFilterVariable(filterVariable);
+		visitor.setFormatterVariable(formatterVariable);
+		visitor.setDefaultFilterVariable(defaultFilterVariable);
+		visitor.setDefaultFormatterVariable(defaultFormatterVariable);
+		visitor.setImportTypes(importTypes);
+		visitor.setImportMacroTemplates(importMacroTemplates);
+		visitor.setTextFilter(textFilter);
+		visitor.setValueFilter(valueFilter);
+		visitor.setTextFilterSwitcher(textFilterSwitcher);
+		visitor.setValueFilterSwitcher(valueFilterSwitcher);
+		visitor.setFormatterSwitcher(formatterSwitcher);
+		visitor.setOutputEncoding(outputEncoding);
+		visitor.init();
+		return visitor;
+	}
+
+}
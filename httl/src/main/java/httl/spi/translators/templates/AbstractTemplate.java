@@ -27,6 +27,9 @@ import httl.spi.Converter;
 import httl.spi.Interceptor;
 import httl.spi.Listener;
 import httl.util.ClassUtils;
+import httl.util.DeferredOutputStream;
+import httl.util.DeferredWriter;
+import httl.util.GatheringOutputStream;
 import httl.util.StringUtils;
 import httl.util.UnsafeStringWriter;
 
@@ -39,6 +42,7 @@ import java.text.ParseException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 /**
  * AbstractTemplate. (SPI, Prototype, ThreadSafe)
@@ -94,6 +98,13 @@ public abstract class AbstractTemplate implements Template {
 	
 	private Interceptor interceptor;
 
+	// The listener of this template, created once, not on every rendering.
+	private final Listener listener = new Listener() {
+		public void render(Context context) throws IOException, ParseException {
+			_render(context);
+		}
+	};
+
 	private Object convertOut(Object out) throws IOException, ParseException {
 		if (outConverter != null && out != null
 				&& ! (out instanceof OutputStream) 
@@ -120,9 +131,16 @@ public abstract class AbstractTemplate implements Template {
 	}
 
 	public void render(Object parameters, Object out) throws IOException, ParseException {
-		Map<String, Object> map = convertMap(parameters);
+		Object target = out;
 		out = convertOut(out);
-		Context context = Context.pushContext(map);
+		Context context;
+		boolean explicit = parameters instanceof Context && ((Context) parameters).isExplicit();
+		if (explicit) {
+			// The explicit context is delivered by the parameters, without the thread local.
+			context = Context.newContext((Context) parameters, null);
+		} else {
+			context = Context.pushContext(convertMap(parameters));
+		}
 		try {
 			context.setTemplate(this);
 			if (out instanceof OutputStream) {
@@ -133,18 +151,56 @@ public abstract class AbstractTemplate implements Template {
 				throw new IllegalArgumentException("No such Converter to convert the " + out.getClass().getName() + " to OutputStream or Writer.");
 			}
 			if (interceptor != null) {
-				interceptor.render(context, new Listener() {
-					public void render(Context context) throws IOException, ParseException {
-						_render(context);
-					}
-				});
+				interceptor.render(context, listener);
 			} else {
 				_render(context);
 			}
+			if (out != target && out instanceof GatheringOutputStream) {
+				((GatheringOutputStream) out).flush();
+			}
 		} catch (ParseException e) {
 			throw toLocatedParseException(e, this);
 		} finally {
-			Context.popContext();
+			if (! explicit) {
+				Context.popContext();
+			}
+		}
+	}
+
+	public CompletionStage<Void> renderAsync(Object parameters, Object out) throws IOException, ParseException {
+		out = convertOut(out);
+		if (out instanceof OutputStream) {
+			DeferredOutputStream deferred = new DeferredOutputStream((OutputStream) out);
+			try {
+				render(parameters, deferred);
+			} catch (IOException e) {
+				deferred.reject(e);
+				throw e;
+			} catch (RuntimeException e) {
+				deferred.reject(e);
+				throw e;
+			} catch (ParseException e) {
+				deferred.reject(e);
+				throw e;
+			}
+			return deferred.finish();
+		} else if (out instanceof Writer) {
+			DeferredWriter deferred = new DeferredWriter((Writer) out);
+			try {
+				render(parameters, deferred);
+			} catch (IOException e) {
+				deferred.reject(e);
+				throw e;
+			} catch (RuntimeException e) {
+				deferred.reject(e);
+				throw e;
+			} catch (ParseException e) {
+				deferred.reject(e);
+				throw e;
+			}
+			return deferred.finish();
+		} else {
+			throw new IllegalArgumentException("No such Converter to convert the " + out.getClass().getName() + " to OutputStream or Writer.");
 		}
 	}
 
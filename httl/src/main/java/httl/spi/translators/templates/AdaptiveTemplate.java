@@ -21,6 +21,7 @@ import httl.Node;
 import httl.Template;
 import httl.Visitor;
 import httl.spi.Converter;
+import httl.util.GatheringOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,6 +35,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Adaptive Template. (SPI, Prototype, ThreadSafe)
@@ -62,6 +64,14 @@ public class AdaptiveTemplate implements Template, Serializable {
 		this.outConverter = outConverter;
 	}
 
+	public Template getWriterTemplate() {
+		return writerTemplate;
+	}
+
+	public Template getStreamTemplate() {
+		return streamTemplate;
+	}
+
 	public String getName() {
 		return writerTemplate.getName();
 	}
@@ -129,6 +139,9 @@ public class AdaptiveTemplate implements Template, Serializable {
 			out = outConverter.convert(out, getVariables());
 			if (out instanceof OutputStream) {
 				streamTemplate.render(out);
+				if (out instanceof GatheringOutputStream) {
+					((GatheringOutputStream) out).flush();
+				}
 			} else {
 				writerTemplate.render(out);
 			}
@@ -145,12 +158,31 @@ public class AdaptiveTemplate implements Template, Serializable {
 			out = outConverter.convert(out, getVariables());
 			if (out instanceof OutputStream) {
 				streamTemplate.render(context, out);
+				if (out instanceof GatheringOutputStream) {
+					((GatheringOutputStream) out).flush();
+				}
 			} else {
 				writerTemplate.render(context, out);
 			}
 		}
 	}
 
+	public CompletionStage<Void> renderAsync(Object context, Object out)
+			throws IOException, ParseException {
+		if (out instanceof OutputStream) {
+			return streamTemplate.renderAsync(context, out);
+		} else if (out instanceof Writer) {
+			return writerTemplate.renderAsync(context, out);
+		} else {
+			out = outConverter.convert(out, getVariables());
+			if (out instanceof OutputStream) {
+				return streamTemplate.renderAsync(context, out);
+			} else {
+				return writerTemplate.renderAsync(context, out);
+			}
+		}
+	}
+
 	public Map<String, Class<?>> getVariables() {
 		return writerTemplate.getVariables();
 	}
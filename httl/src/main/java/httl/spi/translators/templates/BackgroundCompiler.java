@@ -0,0 +1,191 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.spi.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BackgroundCompiler. (SPI, Singleton, ThreadSafe)
+ * 
+ * Runs the mixed template compilations on a bounded pool of daemon threads, 
+ * so the request thread keeps rendering the interpreted template.
+ * 
+ * @see httl.spi.translators.MixedTranslator#setCompileAsync(boolean)
+ * @see httl.spi.translators.templates.MixedTemplate
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BackgroundCompiler {
+
+	private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+	private final ThreadPoolExecutor executor;
+
+	private final Logger logger;
+
+	private final AtomicLong compiledCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private final AtomicLong compileTime = new AtomicLong();
+
+	private final AtomicLong maxCompileTime = new AtomicLong();
+
+	public BackgroundCompiler(int threads, int queueCapacity, Logger logger) {
+		if (threads < 1) {
+			threads = 1;
+		}
+		if (queueCapacity < 1) {
+			queueCapacity = 1;
+		}
+		final String prefix = "httl-compiler-" + POOL_SEQ.incrementAndGet() + "-";
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			private final AtomicInteger seq = new AtomicInteger();
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + seq.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.executor.allowCoreThreadTimeOut(true);
+		this.logger = logger;
+	}
+
+	/**
+	 * Submit the compilation.
+	 * 
+	 * @param name - template name
+	 * @param task - compilation task
+	 * @return false if the queue is full
+	 */
+	public boolean submit(final String name, final Callable<?> task) {
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					long start = System.nanoTime();
+					try {
+						task.call();
+						compiledCount.incrementAndGet();
+						if (logger != null && logger.isDebugEnabled()) {
+							logger.debug("Compiled the template " + name + " in background, elapsed: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+						}
+					} catch (Throwable e) {
+						failedCount.incrementAndGet();
+						if (logger != null && logger.isWarnEnabled()) {
+							logger.warn("Failed to compile the template " + name + " in background, cause: " + e.getMessage(), e);
+						}
+					} finally {
+						long elapsed = System.nanoTime() - start;
+						compileTime.addAndGet(elapsed);
+						long max;
+						while (elapsed > (max = maxCompileTime.get()) 
+								&& ! maxCompileTime.compareAndSet(max, elapsed)) {
+						}
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * Get the number of the waiting compilations.
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Get the number of the running compilations.
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Get the number of the succeeded compilations.
+	 */
+	public long getCompiledCount() {
+		return compiledCount.get();
+	}
+
+	/**
+	 * Get the number of the failed compilations.
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * Get the number of the compilations rejected by the full queue.
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * Get the total compile time in milliseconds.
+	 */
+	public long getCompileTime() {
+		return TimeUnit.NANOSECONDS.toMillis(compileTime.get());
+	}
+
+	/**
+	 * Get the max compile time in milliseconds.
+	 */
+	public long getMaxCompileTime() {
+		return TimeUnit.NANOSECONDS.toMillis(maxCompileTime.get());
+	}
+
+	/**
+	 * Get the average compile time in milliseconds.
+	 */
+	public long getAverageCompileTime() {
+		long count = compiledCount.get() + failedCount.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(compileTime.get() / count);
+	}
+
+	/**
+	 * Stop accepting compilations.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	@Override
+	public String toString() {
+		return "queue: " + getQueueSize() + ", active: " + getActiveCount() 
+				+ ", compiled: " + getCompiledCount() + ", failed: " + getFailedCount() 
+				+ ", rejected: " + getRejectedCount() + ", time: " + getCompileTime() 
+				+ "ms, max: " + getMaxCompileTime() + "ms";
+	}
+
+}
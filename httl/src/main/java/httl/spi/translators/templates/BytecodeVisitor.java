@@ -0,0 +1,702 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.Context;
+import httl.Engine;
+import httl.Node;
+import httl.Resource;
+import httl.Template;
+import httl.ast.AstVisitor;
+import httl.ast.BlockDirective;
+import httl.ast.Comment;
+import httl.ast.RootDirective;
+import httl.ast.Statement;
+import httl.ast.Text;
+import httl.ast.ValueDirective;
+import httl.ast.Variable;
+import httl.spi.Compiler;
+import httl.spi.Converter;
+import httl.spi.Filter;
+import httl.spi.Formatter;
+import httl.spi.Interceptor;
+import httl.spi.StreamFilter;
+import httl.spi.Switcher;
+import httl.spi.formatters.MultiFormatter;
+import httl.util.GatheringOutputStream;
+import httl.util.IOUtils;
+import httl.util.OrderedMap;
+import httl.util.Status;
+import httl.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * BytecodeVisitor. (SPI, Prototype, NonThreadSafe)
+ * 
+ * Emits the template class bytecode directly with ASM, bypassing the java compiler.
+ * Only the templates which consist of texts, comments and ${var} values of the Object type are supported,
+ * the generated class does the same as the CompiledVisitor generated source.
+ * 
+ * @see httl.spi.translators.SimpleBytecodeTranslator
+ * @see httl.spi.translators.templates.CompiledVisitor
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class BytecodeVisitor extends AstVisitor implements Opcodes {
+
+	private static final String TEMPLATE_CLASS_PREFIX = CompiledTemplate.class.getPackage().getName() + ".Template_";
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	// The constant pool UTF8 entry is limited to 65535 bytes.
+	private static final int MAX_CONSTANT_LENGTH = 16384;
+
+	private static final String OBJECT = Type.getInternalName(Object.class);
+
+	private static final String STRING = Type.getInternalName(String.class);
+
+	private static final String CLASS = Type.getInternalName(Class.class);
+
+	private static final String MAP = Type.getInternalName(Map.class);
+
+	private static final String TEMPLATE = Type.getInternalName(Template.class);
+
+	private static final String RESOURCE = Type.getInternalName(Resource.class);
+
+	private static final String CONTEXT = Type.getInternalName(Context.class);
+
+	private static final String FILTER = Type.getInternalName(Filter.class);
+
+	private static final String FORMATTER = Type.getInternalName(MultiFormatter.class);
+
+	private static final String COMPLETION_STAGE = Type.getInternalName(CompletionStage.class);
+
+	private static final String IO_UTILS = Type.getInternalName(IOUtils.class);
+
+	private static final String STRING_UTILS = Type.getInternalName(StringUtils.class);
+
+	private static final String ORDERED_MAP = Type.getInternalName(OrderedMap.class);
+
+	private static final String BYTE_BUFFER = Type.getInternalName(ByteBuffer.class);
+
+	private static final String CONSTRUCTOR_DESC = Type.getMethodDescriptor(Type.VOID_TYPE,
+			Type.getType(Engine.class), Type.getType(Interceptor.class), Type.getType(Compiler.class),
+			Type.getType(Switcher.class), Type.getType(Switcher.class), Type.getType(Filter.class),
+			Type.getType(Formatter.class), Type.getType(Converter.class), Type.getType(Converter.class),
+			Type.getType(Map.class), Type.getType(Map.class), Type.getType(Resource.class),
+			Type.getType(Template.class), Type.getType(Node.class));
+
+	private Resource resource;
+
+	private Node node;
+
+	private boolean stream;
+
+	private Map<String, Class<?>> types;
+
+	private Class<?> defaultVariableType;
+
+	private String[] forVariable;
+
+	private Map<String, Class<?>> importTypes;
+
+	private Map<String, Template> importMacroTemplates;
+
+	private String filterVariable;
+
+	private String formatterVariable;
+
+	private String defaultFilterVariable;
+
+	private String defaultFormatterVariable;
+
+	private Filter textFilter;
+
+	private Filter valueFilter;
+
+	private Switcher<Filter> textFilterSwitcher;
+
+	private Switcher<Filter> valueFilterSwitcher;
+
+	private Switcher<Formatter<Object>> formatterSwitcher;
+
+	private String outputEncoding;
+
+	private String filterKey = null;
+
+	private String className;
+
+	private ClassWriter classWriter;
+
+	private MethodVisitor method;
+
+	private final Map<String, String> texts = new LinkedHashMap<String, String>();
+
+	private final Map<String, Integer> locals = new HashMap<String, Integer>();
+
+	private int codeLocal;
+
+	private int objLocal;
+
+	public void setResource(Resource resource) {
+		this.resource = resource;
+	}
+
+	public void setNode(Node node) {
+		this.node = node;
+	}
+
+	public void setStream(boolean stream) {
+		this.stream = stream;
+	}
+
+	public void setTypes(Map<String, Class<?>> types) {
+		this.types = types;
+	}
+
+	public void setDefaultVariableType(Class<?> defaultVariableType) {
+		this.defaultVariableType = defaultVariableType;
+	}
+
+	public void setForVariable(String[] forVariable) {
+		this.forVariable = forVariable;
+	}
+
+	public void setImportTypes(Map<String, Class<?>> importTypes) {
+		this.importTypes = importTypes;
+	}
+
+	public void setImportMacroTemplates(Map<String, Template> importMacroTemplates) {
+		this.importMacroTemplates = importMacroTemplates;
+	}
+
+	public void setFilterVariable(String filterVariable) {
+		this.filterVariable = filterVariable;
+	}
+
+	public void setFormatterVariable(String formatterVariable) {
+		this.formatterVariable = formatterVariable;
+	}
+
+	public void setDefaultFilterVariable(String defaultFilterVariable) {
+		this.defaultFilterVariable = defaultFilterVariable;
+	}
+
+	public void setDefaultFormatterVariable(String defaultFormatterVariable) {
+		this.defaultFormatterVariable = defaultFormatterVariable;
+	}
+
+	public void setTextFilter(Filter textFilter) {
+		this.textFilter = textFilter;
+	}
+
+	public void setValueFilter(Filter valueFilter) {
+		this.valueFilter = valueFilter;
+	}
+
+	public void setTextFilterSwitcher(Switcher<Filter> textFilterSwitcher) {
+		this.textFilterSwitcher = textFilterSwitcher;
+	}
+
+	public void setValueFilterSwitcher(Switcher<Filter> valueFilterSwitcher) {
+		this.valueFilterSwitcher = valueFilterSwitcher;
+	}
+
+	public void setFormatterSwitcher(Switcher<Formatter<Object>> formatterSwitcher) {
+		this.formatterSwitcher = formatterSwitcher;
+	}
+
+	public void setOutputEncoding(String outputEncoding) {
+		this.outputEncoding = outputEncoding;
+	}
+
+	// The same variable types as the CompiledVisitor, the typed variables are not supported.
+	public void init() {
+		if (types == null) {
+			types = new HashMap<String, Class<?>>();
+		}
+		if (importTypes != null && importTypes.size() > 0) {
+			types.putAll(importTypes);
+		}
+		types.put("this", Template.class);
+		types.put("super", Template.class);
+		types.put(defaultFilterVariable, Filter.class);
+		types.put(filterVariable, Filter.class);
+		types.put(defaultFormatterVariable, Formatter.class);
+		types.put(formatterVariable, Formatter.class);
+		if (forVariable != null) {
+			for (String fv : forVariable) {
+				types.put(fv, Status.class);
+			}
+		}
+		if (importMacroTemplates != null) {
+			for (String macro : importMacroTemplates.keySet()) {
+				types.put(macro, Template.class);
+			}
+		}
+	}
+
+	/**
+	 * Whether the template can be emitted directly, the other templates need the CompiledVisitor.
+	 * Only the texts without the switcher locations, the comments, and the ${var} values are supported,
+	 * the var should be the Object type, not declared by #set, and not bound by the template itself,
+	 * such as this, super, the for status, the filter, the formatter, the import variables and macros.
+	 * 
+	 * @return supported
+	 */
+	public boolean isSupported() {
+		if (! (node instanceof RootDirective)) {
+			return false;
+		}
+		for (Node child : ((BlockDirective) node).getChildren()) {
+			if (child instanceof ValueDirective) {
+				if (! (((ValueDirective) child).getExpression() instanceof Variable)) {
+					return false;
+				}
+				String name = ((Variable) ((ValueDirective) child).getExpression()).getName();
+				Class<?> type = types == null ? null : types.get(name);
+				if (type == null) {
+					type = defaultVariableType;
+				}
+				if (! Object.class.equals(type)) {
+					return false;
+				}
+			} else if (child instanceof Text) {
+				if (hasLocation(((Text) child).getContent(), textFilterSwitcher)
+						|| hasLocation(((Text) child).getContent(), valueFilterSwitcher)
+						|| hasLocation(((Text) child).getContent(), formatterSwitcher)) {
+					return false;
+				}
+			} else if (! (child instanceof Comment)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// The switched texts need the CompiledVisitor switching code.
+	private boolean hasLocation(String txt, Switcher<?> switcher) {
+		List<String> locations = switcher == null ? null : switcher.locations();
+		if (locations != null) {
+			for (String location : locations) {
+				if (txt.indexOf(location) >= 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean visit(Statement node) throws IOException, ParseException {
+		boolean result = super.visit(node);
+		filterKey = node.toString();
+		return result;
+	}
+
+	@Override
+	public void visit(Text node) throws IOException, ParseException {
+		String txt = node.getContent();
+		if (StringUtils.isNotEmpty(txt) && textFilter != null) {
+			txt = textFilter.filter(filterKey, txt);
+		}
+		if (StringUtils.isNotEmpty(txt)) {
+			String field = "$TXT" + (texts.size() + 1);
+			texts.put(field, txt);
+			method.visitVarInsn(ALOAD, 2);
+			method.visitFieldInsn(GETSTATIC, className, field, stream ? "L" + BYTE_BUFFER + ";" : "[C");
+			if (stream) {
+				method.visitMethodInsn(INVOKESTATIC, Type.getInternalName(GatheringOutputStream.class), "writeShared", "(" + Type.getDescriptor(OutputStream.class) + "L" + BYTE_BUFFER + ";)V", false);
+			} else {
+				method.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Writer.class), "write", "([C)V", false);
+			}
+		}
+	}
+
+	@Override
+	public void visit(ValueDirective node) throws IOException, ParseException {
+		boolean nofilter = node.isNoFilter();
+		String name = ((Variable) node.getExpression()).getName();
+		String key = node.getExpression().toString();
+		Label end = new Label();
+		// $code = (var);
+		method.visitVarInsn(ALOAD, locals.get(name));
+		method.visitVarInsn(ASTORE, codeLocal);
+		// if ($code instanceof Template) doRender($context, (Template) $code, $output);
+		Label notTemplate = new Label();
+		method.visitVarInsn(ALOAD, codeLocal);
+		method.visitTypeInsn(INSTANCEOF, TEMPLATE);
+		method.visitJumpInsn(IFEQ, notTemplate);
+		method.visitVarInsn(ALOAD, 0);
+		method.visitVarInsn(ALOAD, 1);
+		method.visitVarInsn(ALOAD, codeLocal);
+		method.visitTypeInsn(CHECKCAST, TEMPLATE);
+		method.visitVarInsn(ALOAD, 2);
+		method.visitMethodInsn(INVOKEVIRTUAL, className, "doRender", "(L" + CONTEXT + ";L" + TEMPLATE + ";L" + OBJECT + ";)V", false);
+		method.visitJumpInsn(GOTO, end);
+		method.visitLabel(notTemplate);
+		// else if ($code instanceof CompletionStage) doDefer(formatter, filter, key, (CompletionStage) $code, $output);
+		Label notDeferred = new Label();
+		method.visitVarInsn(ALOAD, codeLocal);
+		method.visitTypeInsn(INSTANCEOF, COMPLETION_STAGE);
+		method.visitJumpInsn(IFEQ, notDeferred);
+		method.visitVarInsn(ALOAD, 0);
+		method.visitVarInsn(ALOAD, locals.get(formatterVariable));
+		if (nofilter) {
+			method.visitInsn(ACONST_NULL);
+		} else {
+			method.visitVarInsn(ALOAD, locals.get(filterVariable));
+		}
+		method.visitLdcInsn(key);
+		method.visitVarInsn(ALOAD, codeLocal);
+		method.visitTypeInsn(CHECKCAST, COMPLETION_STAGE);
+		method.visitVarInsn(ALOAD, 2);
+		method.visitMethodInsn(INVOKEVIRTUAL, className, "doDefer", "(L" + FORMATTER + ";L" + FILTER + ";L" + STRING + ";L" + COMPLETION_STAGE + ";"
+				+ Type.getDescriptor(stream ? OutputStream.class : Writer.class) + ")V", false);
+		method.visitJumpInsn(GOTO, end);
+		method.visitLabel(notDeferred);
+		if (nofilter) {
+			// else if ($code instanceof Resource) IOUtils.copy(((Resource) $code).openXxx(), $output);
+			Label notResource = new Label();
+			method.visitVarInsn(ALOAD, codeLocal);
+			method.visitTypeInsn(INSTANCEOF, RESOURCE);
+			method.visitJumpInsn(IFEQ, notResource);
+			method.visitVarInsn(ALOAD, codeLocal);
+			method.visitTypeInsn(CHECKCAST, RESOURCE);
+			if (stream) {
+				method.visitMethodInsn(INVOKEINTERFACE, RESOURCE, "openStream", "()" + Type.getDescriptor(InputStream.class), true);
+				method.visitVarInsn(ALOAD, 2);
+				method.visitMethodInsn(INVOKESTATIC, IO_UTILS, "copy", "(" + Type.getDescriptor(InputStream.class) + Type.getDescriptor(OutputStream.class) + ")V", false);
+			} else {
+				method.visitMethodInsn(INVOKEINTERFACE, RESOURCE, "openReader", "()" + Type.getDescriptor(Reader.class), true);
+				method.visitVarInsn(ALOAD, 2);
+				method.visitMethodInsn(INVOKESTATIC, IO_UTILS, "copy", "(" + Type.getDescriptor(Reader.class) + Type.getDescriptor(Writer.class) + ")V", false);
+			}
+			method.visitJumpInsn(GOTO, end);
+			method.visitLabel(notResource);
+			method.visitVarInsn(ALOAD, codeLocal);
+		} else {
+			// ($code instanceof Resource ? IOUtils.readToString(((Resource) $code).openReader()) : $code)
+			Label notResource = new Label();
+			Label value = new Label();
+			method.visitVarInsn(ALOAD, codeLocal);
+			method.visitTypeInsn(INSTANCEOF, RESOURCE);
+			method.visitJumpInsn(IFEQ, notResource);
+			method.visitVarInsn(ALOAD, codeLocal);
+			method.visitTypeInsn(CHECKCAST, RESOURCE);
+			method.visitMethodInsn(INVOKEINTERFACE, RESOURCE, "openReader", "()" + Type.getDescriptor(Reader.class), true);
+			method.visitMethodInsn(INVOKESTATIC, IO_UTILS, "readToString", "(" + Type.getDescriptor(Reader.class) + ")L" + STRING + ";", false);
+			method.visitJumpInsn(GOTO, value);
+			method.visitLabel(notResource);
+			method.visitVarInsn(ALOAD, codeLocal);
+			method.visitLabel(value);
+		}
+		if (stream) {
+			// $output.write(doFilter(filter, key, formatter.toBytes(key, value)));
+			method.visitVarInsn(ASTORE, objLocal);
+			writeValue(key, nofilter, "toBytes", "L" + OBJECT + ";", "[B", OutputStream.class);
+		} else {
+			// if ($obj instanceof char[]) $output.write(doFilter(filter, key, formatter.toChars(key, (char[]) $obj)));
+			// else $output.write(doFilter(filter, key, formatter.toString(key, $obj)));
+			Label notChars = new Label();
+			method.visitVarInsn(ASTORE, objLocal);
+			method.visitVarInsn(ALOAD, objLocal);
+			method.visitTypeInsn(INSTANCEOF, "[C");
+			method.visitJumpInsn(IFEQ, notChars);
+			writeValue(key, nofilter, "toChars", "[C", "[C", Writer.class);
+			method.visitJumpInsn(GOTO, end);
+			method.visitLabel(notChars);
+			writeValue(key, nofilter, "toString", "L" + OBJECT + ";", "L" + STRING + ";", Writer.class);
+		}
+		method.visitLabel(end);
+	}
+
+	private void writeValue(String key, boolean nofilter, String format, String valueDesc, String returnDesc, Class<?> output) {
+		// doFilter(filter, key, formatter.toXxx(key, value), $output) with the stream filter.
+		boolean streaming = ! nofilter && valueFilter instanceof StreamFilter;
+		if (! streaming) {
+			method.visitVarInsn(ALOAD, 2);
+		}
+		if (! nofilter) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitVarInsn(ALOAD, locals.get(filterVariable));
+			method.visitLdcInsn(key);
+		}
+		method.visitVarInsn(ALOAD, locals.get(formatterVariable));
+		method.visitLdcInsn(key);
+		method.visitVarInsn(ALOAD, objLocal);
+		if (valueDesc.startsWith("[")) {
+			method.visitTypeInsn(CHECKCAST, valueDesc);
+		}
+		method.visitMethodInsn(INVOKEVIRTUAL, FORMATTER, format, "(L" + STRING + ";" + valueDesc + ")" + returnDesc, false);
+		if (streaming) {
+			method.visitVarInsn(ALOAD, 2);
+			method.visitMethodInsn(INVOKEVIRTUAL, className, "doFilter", "(L" + FILTER + ";L" + STRING + ";" + returnDesc + Type.getDescriptor(output) + ")V", false);
+		} else {
+			if (! nofilter) {
+				method.visitMethodInsn(INVOKEVIRTUAL, className, "doFilter", "(L" + FILTER + ";L" + STRING + ";" + returnDesc + ")" + returnDesc, false);
+			}
+			method.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(output), "write", "(" + returnDesc + ")V", false);
+		}
+	}
+
+	public byte[] getBytecode() throws IOException, ParseException {
+		if (! isSupported()) {
+			throw new ParseException("Unsupported bytecode template " + resource.getName() + ", only texts and ${var} values are supported.", node.getOffset());
+		}
+		className = getTemplateClassName().replace('.', '/');
+		String superName = Type.getInternalName(stream ? OutputStreamTemplate.class : WriterTemplate.class);
+		classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		classWriter.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, superName, null);
+
+		// The same variables and declaring order as CompiledVisitor.
+		Set<String> getVariables = new HashSet<String>();
+		for (Node child : ((BlockDirective) node).getChildren()) {
+			if (child instanceof ValueDirective) {
+				getVariables.add(((Variable) ((ValueDirective) child).getExpression()).getName());
+				getVariables.add(formatterVariable);
+				if (! ((ValueDirective) child).isNoFilter()) {
+					getVariables.add(filterVariable);
+				}
+			}
+		}
+		List<String> defVariables = new ArrayList<String>();
+		method = classWriter.visitMethod(ACC_PROTECTED, stream ? "doRenderStream" : "doRenderWriter",
+				"(L" + CONTEXT + ";" + Type.getDescriptor(stream ? OutputStream.class : Writer.class) + ")V",
+				null, new String[] { Type.getInternalName(Exception.class) });
+		method.visitCode();
+		int local = 3;
+		if (getVariables.contains(filterVariable)) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitVarInsn(ALOAD, 1);
+			method.visitLdcInsn(filterVariable);
+			method.visitMethodInsn(INVOKEVIRTUAL, className, "getFilter", "(L" + CONTEXT + ";L" + STRING + ";)L" + FILTER + ";", false);
+			method.visitVarInsn(ASTORE, local);
+			locals.put(defaultFilterVariable, local ++);
+			method.visitVarInsn(ALOAD, local - 1);
+			method.visitVarInsn(ASTORE, local);
+			locals.put(filterVariable, local ++);
+		}
+		if (getVariables.contains(formatterVariable)) {
+			method.visitVarInsn(ALOAD, 0);
+			method.visitVarInsn(ALOAD, 1);
+			method.visitLdcInsn(formatterVariable);
+			method.visitMethodInsn(INVOKEVIRTUAL, className, "getFormatter", "(L" + CONTEXT + ";L" + STRING + ";)L" + FORMATTER + ";", false);
+			method.visitVarInsn(ASTORE, local);
+			locals.put(defaultFormatterVariable, local ++);
+			method.visitVarInsn(ALOAD, local - 1);
+			method.visitVarInsn(ASTORE, local);
+			locals.put(formatterVariable, local ++);
+		}
+		for (String var : getVariables) {
+			if (! locals.containsKey(var)) {
+				method.visitVarInsn(ALOAD, 1);
+				method.visitLdcInsn(var);
+				method.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "get", "(L" + OBJECT + ";)L" + OBJECT + ";", false);
+				method.visitVarInsn(ASTORE, local);
+				locals.put(var, local ++);
+				defVariables.add(var);
+			}
+		}
+		method.visitInsn(ACONST_NULL);
+		method.visitVarInsn(ASTORE, local);
+		codeLocal = local ++;
+		objLocal = local ++;
+		node.accept(this);
+		method.visitInsn(RETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+
+		visitFields(defVariables);
+		visitConstructor(superName);
+		visitGetters(defVariables);
+		classWriter.visitEnd();
+		return classWriter.toByteArray();
+	}
+
+	public Class<?> compile() throws IOException, ParseException {
+		byte[] bytecode = getBytecode();
+		ClassLoader parent = BytecodeVisitor.class.getClassLoader();
+		return new BytecodeClassLoader(parent).defineClass(className.replace('/', '.'), bytecode);
+	}
+
+	private void visitFields(List<String> defVariables) {
+		String textDesc = stream ? "L" + BYTE_BUFFER + ";" : "[C";
+		for (String field : texts.keySet()) {
+			classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, field, textDesc, null, null).visitEnd();
+		}
+		classWriter.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "$VARS", "L" + MAP + ";", null, null).visitEnd();
+		MethodVisitor clinit = classWriter.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		clinit.visitCode();
+		for (Map.Entry<String, String> entry : texts.entrySet()) {
+			visitString(clinit, entry.getValue());
+			if (stream) {
+				// The same bytes as the CompiledVisitor inlined by StringUtils.toBytes(txt, outputEncoding).
+				if (outputEncoding == null) {
+					clinit.visitInsn(ACONST_NULL);
+				} else {
+					clinit.visitLdcInsn(outputEncoding);
+				}
+				clinit.visitMethodInsn(INVOKESTATIC, STRING_UTILS, "toBytes", "(L" + STRING + ";L" + STRING + ";)[B", false);
+				clinit.visitMethodInsn(INVOKESTATIC, BYTE_BUFFER, "wrap", "([B)L" + BYTE_BUFFER + ";", false);
+			} else {
+				clinit.visitMethodInsn(INVOKEVIRTUAL, STRING, "toCharArray", "()[C", false);
+			}
+			clinit.visitFieldInsn(PUTSTATIC, className, entry.getKey(), textDesc);
+		}
+		visitOrderedMap(clinit, defVariables);
+		clinit.visitFieldInsn(PUTSTATIC, className, "$VARS", "L" + MAP + ";");
+		clinit.visitInsn(RETURN);
+		clinit.visitMaxs(0, 0);
+		clinit.visitEnd();
+	}
+
+	private void visitConstructor(String superName) {
+		MethodVisitor init = classWriter.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, null, null);
+		init.visitCode();
+		for (int i = 0; i <= 14; i ++) {
+			init.visitVarInsn(ALOAD, i);
+		}
+		init.visitMethodInsn(INVOKESPECIAL, superName, "<init>", CONSTRUCTOR_DESC, false);
+		init.visitInsn(RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+	}
+
+	private void visitGetters(List<String> defVariables) {
+		String templateName = resource.getName();
+		MethodVisitor getter = classWriter.visitMethod(ACC_PUBLIC, "getName", "()L" + STRING + ";", null, null);
+		getter.visitCode();
+		getter.visitLdcInsn(templateName);
+		getter.visitInsn(ARETURN);
+		getter.visitMaxs(0, 0);
+		getter.visitEnd();
+
+		getter = classWriter.visitMethod(ACC_PUBLIC, "getVariables", "()L" + MAP + ";", null, null);
+		getter.visitCode();
+		getter.visitFieldInsn(GETSTATIC, className, "$VARS", "L" + MAP + ";");
+		getter.visitInsn(ARETURN);
+		getter.visitMaxs(0, 0);
+		getter.visitEnd();
+
+		getter = classWriter.visitMethod(ACC_PROTECTED, "getMacroTypes", "()L" + MAP + ";", null, null);
+		getter.visitCode();
+		visitOrderedMap(getter, new ArrayList<String>(0));
+		getter.visitInsn(ARETURN);
+		getter.visitMaxs(0, 0);
+		getter.visitEnd();
+
+		getter = classWriter.visitMethod(ACC_PUBLIC, "isMacro", "()Z", null, null);
+		getter.visitCode();
+		getter.visitInsn(ICONST_0);
+		getter.visitInsn(IRETURN);
+		getter.visitMaxs(0, 0);
+		getter.visitEnd();
+
+		getter = classWriter.visitMethod(ACC_PUBLIC, "getOffset", "()I", null, null);
+		getter.visitCode();
+		getter.visitInsn(ICONST_0);
+		getter.visitInsn(IRETURN);
+		getter.visitMaxs(0, 0);
+		getter.visitEnd();
+	}
+
+	// new OrderedMap(new String[] {"var", ...}, new Class[] {Object.class, ...})
+	private void visitOrderedMap(MethodVisitor mv, List<String> names) {
+		mv.visitTypeInsn(NEW, ORDERED_MAP);
+		mv.visitInsn(DUP);
+		mv.visitLdcInsn(names.size());
+		mv.visitTypeInsn(ANEWARRAY, STRING);
+		for (int i = 0; i < names.size(); i ++) {
+			mv.visitInsn(DUP);
+			mv.visitLdcInsn(i);
+			mv.visitLdcInsn(names.get(i));
+			mv.visitInsn(AASTORE);
+		}
+		mv.visitLdcInsn(names.size());
+		mv.visitTypeInsn(ANEWARRAY, CLASS);
+		for (int i = 0; i < names.size(); i ++) {
+			mv.visitInsn(DUP);
+			mv.visitLdcInsn(i);
+			mv.visitLdcInsn(Type.getType(Object.class));
+			mv.visitInsn(AASTORE);
+		}
+		mv.visitMethodInsn(INVOKESPECIAL, ORDERED_MAP, "<init>", "([L" + OBJECT + ";[L" + OBJECT + ";)V", false);
+	}
+
+	// Split the long text, the constant pool UTF8 entry is limited.
+	private void visitString(MethodVisitor mv, String value) {
+		int len = Math.min(value.length(), MAX_CONSTANT_LENGTH);
+		mv.visitLdcInsn(value.substring(0, len));
+		for (int i = len; i < value.length(); i += MAX_CONSTANT_LENGTH) {
+			mv.visitLdcInsn(value.substring(i, Math.min(value.length(), i + MAX_CONSTANT_LENGTH)));
+			mv.visitMethodInsn(INVOKEVIRTUAL, STRING, "concat", "(L" + STRING + ";)L" + STRING + ";", false);
+		}
+	}
+
+	private String getTemplateClassName() {
+		StringBuilder buf = new StringBuilder(resource.getName().length() + 20);
+		buf.append(resource.getName());
+		if (resource.getEncoding() != null) {
+			buf.append("_");
+			buf.append(resource.getEncoding());
+		}
+		if (resource.getLocale() != null) {
+			buf.append("_");
+			buf.append(resource.getLocale());
+		}
+		buf.append(stream ? "_s" : "_w");
+		buf.append("_bc");
+		buf.append(SEQUENCE.incrementAndGet());
+		return TEMPLATE_CLASS_PREFIX + StringUtils.getVaildName(buf.toString());
+	}
+
+	// One class loader per template class, so the class can be unloaded with its template.
+	private static final class BytecodeClassLoader extends ClassLoader {
+
+		BytecodeClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> defineClass(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+
+	}
+
+}
@@ -25,14 +25,25 @@ import httl.spi.Converter;
 import httl.spi.Filter;
 import httl.spi.Formatter;
 import httl.spi.Interceptor;
+import httl.spi.StreamFilter;
 import httl.spi.Switcher;
 import httl.spi.formatters.MultiFormatter;
+import httl.util.CollectionUtils;
+import httl.util.DeferredOutputStream;
+import httl.util.DeferredWriter;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.text.ParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
 
 /**
  * CompiledTemplate. (SPI, Prototype, ThreadSafe)
@@ -133,6 +144,131 @@ public abstract class CompiledTemplate extends AbstractTemplate {
 		return value;
 	}
 
+	protected void doFilter(Filter filter, String key, String value, Writer out) throws IOException {
+		if (filter instanceof StreamFilter)
+			((StreamFilter) filter).filter(key, value, out);
+		else
+			out.write(doFilter(filter, key, value));
+	}
+
+	protected void doFilter(Filter filter, String key, char[] value, Writer out) throws IOException {
+		if (filter instanceof StreamFilter)
+			((StreamFilter) filter).filter(key, value, out);
+		else
+			out.write(doFilter(filter, key, value));
+	}
+
+	protected void doFilter(Filter filter, String key, byte[] value, OutputStream out) throws IOException {
+		if (filter instanceof StreamFilter)
+			((StreamFilter) filter).filter(key, value, out);
+		else
+			out.write(doFilter(filter, key, value));
+	}
+
+	protected void doFilter(Filter filter, String key, byte[] value, int length, OutputStream out) throws IOException {
+		if (filter == null)
+			out.write(value, 0, length);
+		else if (filter instanceof StreamFilter)
+			((StreamFilter) filter).filter(key, value, 0, length, out);
+		else
+			out.write(filter.filter(key, Arrays.copyOf(value, length)));
+	}
+
+	// write the number digits by the reusable buffer, without the intermediate string and bytes.
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, int value, byte[] buffer, OutputStream out) throws IOException {
+		int length = formatter.toBytes(key, value, buffer);
+		if (length < 0)
+			doFilter(filter, key, formatter.toBytes(key, value), out);
+		else
+			doFilter(filter, key, buffer, length, out);
+	}
+
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, long value, byte[] buffer, OutputStream out) throws IOException {
+		int length = formatter.toBytes(key, value, buffer);
+		if (length < 0)
+			doFilter(filter, key, formatter.toBytes(key, value), out);
+		else
+			doFilter(filter, key, buffer, length, out);
+	}
+
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, float value, byte[] buffer, OutputStream out) throws IOException {
+		int length = formatter.toBytes(key, value, buffer);
+		if (length < 0)
+			doFilter(filter, key, formatter.toBytes(key, value), out);
+		else
+			doFilter(filter, key, buffer, length, out);
+	}
+
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, double value, byte[] buffer, OutputStream out) throws IOException {
+		int length = formatter.toBytes(key, value, buffer);
+		if (length < 0)
+			doFilter(filter, key, formatter.toBytes(key, value), out);
+		else
+			doFilter(filter, key, buffer, length, out);
+	}
+
+	// write the date and time straight into the writer, if it is not filtered.
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, Date value, Writer out) throws IOException {
+		if (filter == null)
+			formatter.write(key, value, out);
+		else
+			doFilter(filter, key, formatter.toString(key, value), out);
+	}
+
+	protected void doFormat(MultiFormatter formatter, Filter filter, String key, TemporalAccessor value, Writer out) throws IOException {
+		if (filter == null)
+			formatter.write(key, value, out);
+		else
+			doFilter(filter, key, formatter.toString(key, value), out);
+	}
+
+	protected void doDefer(final MultiFormatter formatter, final Filter filter, final String key, CompletionStage<?> value, Writer out) throws IOException {
+		if (out instanceof DeferredWriter) {
+			// the pending value is written when completed, the following output is buffered until then.
+			final DeferredWriter deferred = (DeferredWriter) out;
+			final Writer slot = deferred.defer();
+			value.whenComplete(new BiConsumer<Object, Throwable>() {
+				public void accept(Object result, Throwable cause) {
+					if (cause != null) {
+						deferred.reject(cause);
+						return;
+					}
+					try {
+						doFilter(filter, key, formatter.toString(key, result), slot);
+						deferred.resolve(slot);
+					} catch (Throwable e) {
+						deferred.reject(e);
+					}
+				}
+			});
+		} else {
+			doFilter(filter, key, formatter.toString(key, value.toCompletableFuture().join()), out);
+		}
+	}
+
+	protected void doDefer(final MultiFormatter formatter, final Filter filter, final String key, CompletionStage<?> value, OutputStream out) throws IOException {
+		if (out instanceof DeferredOutputStream) {
+			final DeferredOutputStream deferred = (DeferredOutputStream) out;
+			final OutputStream slot = deferred.defer();
+			value.whenComplete(new BiConsumer<Object, Throwable>() {
+				public void accept(Object result, Throwable cause) {
+					if (cause != null) {
+						deferred.reject(cause);
+						return;
+					}
+					try {
+						doFilter(filter, key, formatter.toBytes(key, result), slot);
+						deferred.resolve(slot);
+					} catch (Throwable e) {
+						deferred.reject(e);
+					}
+				}
+			});
+		} else {
+			doFilter(filter, key, formatter.toBytes(key, value.toCompletableFuture().join()), out);
+		}
+	}
+
 	protected Template getMacro(Context context, String key, Template defaultValue) {
 		Object value = context.get(key);
 		if (value instanceof Template) {
@@ -141,6 +277,21 @@ public abstract class CompiledTemplate extends AbstractTemplate {
 		return defaultValue;
 	}
 
+	protected void doRender(Context context, Template template, Object out) throws IOException, ParseException {
+		if (context.isExplicit()) {
+			template.render(context, out);
+		} else {
+			template.render(out);
+		}
+	}
+
+	protected Object doEvaluate(Context context, Template template, Object[] args) throws ParseException {
+		if (context.isExplicit()) {
+			return template.evaluate(Context.newContext(context, CollectionUtils.toMap(template.getVariables().keySet(), args)));
+		}
+		return template.evaluate(args);
+	}
+
 	@Override
 	protected void doRender(Context context) throws Exception {
 		if (context.getOut() instanceof OutputStream) {
@@ -29,12 +29,14 @@ import httl.ast.BitAndOperator;
 import httl.ast.BitNotOperator;
 import httl.ast.BitOrOperator;
 import httl.ast.BitXorOperator;
+import httl.ast.BlockDirective;
 import httl.ast.BreakDirective;
 import httl.ast.CastOperator;
 import httl.ast.ConditionOperator;
 import httl.ast.Constant;
 import httl.ast.DivOperator;
 import httl.ast.ElseDirective;
+import httl.ast.EndDirective;
 import httl.ast.EntryOperator;
 import httl.ast.EqualsOperator;
 import httl.ast.Expression;
@@ -74,12 +76,16 @@ import httl.spi.Converter;
 import httl.spi.Filter;
 import httl.spi.Formatter;
 import httl.spi.Interceptor;
+import httl.spi.StreamFilter;
 import httl.spi.Switcher;
+import httl.spi.codecs.CodecValue;
 import httl.spi.formatters.MultiFormatter;
 import httl.util.ByteCache;
 import httl.util.CharCache;
 import httl.util.ClassUtils;
 import httl.util.CollectionUtils;
+import httl.util.Contextual;
+import httl.util.GatheringOutputStream;
 import httl.util.IOUtils;
 import httl.util.LinkedStack;
 import httl.util.MapEntry;
@@ -100,18 +106,24 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -149,7 +161,10 @@ public class CompiledVisitor extends AstVisitor {
 
 	private Map<String, Class<?>> returnTypes = new HashMap<String, Class<?>>();
 	
-	private Map<String, Class<?>> macros = new HashMap<String, Class<?>>();
+	private Map<String, String> macros = new HashMap<String, String>();
+
+	// The compiled macro classes, referenced until the template class is compiled and linked to them.
+	private final List<Class<?>> macroClasses = new ArrayList<Class<?>>();
 	
 	private Resource resource;
 
@@ -185,6 +200,8 @@ public class CompiledVisitor extends AstVisitor {
 
 	private Filter textFilter;
 
+	private Filter valueFilter;
+
 	private Map<String, Template> importMacroTemplates = new ConcurrentHashMap<String, Template>();
 
 	private String[] importPackages;
@@ -197,6 +214,8 @@ public class CompiledVisitor extends AstVisitor {
 
 	private List<StringSequence> sequences = new CopyOnWriteArrayList<StringSequence>();
 
+	private static final int MAX_OUTLINE_PARAMETERS = 100;
+
 	private static final String TEMPLATE_CLASS_PREFIX = CompiledTemplate.class.getPackage().getName() + ".Template_";
 	
 	private final AtomicInteger seq = new AtomicInteger();
@@ -211,10 +230,61 @@ public class CompiledVisitor extends AstVisitor {
 	
 	private Compiler compiler;
 
+	private List<String> sources;
+
+	private String classDigest;
+
+	private int outlineSize;
+
+	private boolean compiledSlots;
+
+	private final List<Block> blocks = new ArrayList<Block>();
+
+	private final StringBuilder outlines = new StringBuilder();
+
+	private boolean digits;
+
 	public void setCompiler(Compiler compiler) {
 		this.compiler = compiler;
 	}
 
+	/**
+	 * Name the class by the source digest instead of the lastModified.
+	 * 
+	 * @param classDigest - source and config digest
+	 */
+	public void setClassDigest(String classDigest) {
+		this.classDigest = classDigest;
+	}
+
+	/**
+	 * Collect the macro sources instead of compiling them, for the batch compilation.
+	 * 
+	 * @param sources - macro sources
+	 */
+	public void setSources(List<String> sources) {
+		this.sources = sources;
+	}
+
+	/**
+	 * Outline the statements into the private methods, when the render method code exceeds the size.
+	 * 
+	 * @param outlineSize - the max code size of the render method, zero is unlimited.
+	 */
+	public void setOutlineSize(int outlineSize) {
+		this.outlineSize = outlineSize;
+	}
+
+	/**
+	 * Read the variables from the slot-indexed frame of the context, instead of the context map.
+	 * 
+	 * @see httl.Context#getFrame(String[])
+	 * @param compiledSlots - read the variables by the slots
+	 */
+	public void setCompiledSlots(boolean compiledSlots) {
+		this.compiledSlots = compiledSlots;
+	}
+
 	public void setForVariable(String[] forVariable) {
 		this.forVariable = forVariable;
 	}
@@ -284,6 +354,10 @@ public class CompiledVisitor extends AstVisitor {
 		filterReference.set(textFilter);
 	}
 
+	public void setValueFilter(Filter valueFilter) {
+		this.valueFilter = valueFilter;
+	}
+
 	public void setImportMacroTemplates(Map<String, Template> importMacroTemplates) {
 		this.importMacroTemplates = importMacroTemplates;
 	}
@@ -333,6 +407,14 @@ public class CompiledVisitor extends AstVisitor {
 
 	@Override
 	public boolean visit(Statement node) throws IOException, ParseException {
+		// the else is chained to the if, and the end closes the block, both are not a split point.
+		Block block = blocks.get(blocks.size() - 1);
+		if (node instanceof ElseDirective) {
+			// the else branch runs without the writes of the #for header.
+			getUnit(block).firsts.values().removeAll(Collections.singleton(Boolean.TRUE));
+		} else if (! (node instanceof EndDirective) && node.getParent() == block.node) {
+			block.units.add(new Unit(block, builder.length()));
+		}
 		boolean result = super.visit(node);
 		filterKey = node.toString();
 		return result;
@@ -377,7 +459,7 @@ public class CompiledVisitor extends AstVisitor {
 						int end = entry.getKey();
 						String part = getTextPart(txt.substring(begin, end), filter, false);
 						if (StringUtils.isNotEmpty(part)) {
-							builder.append("	$output.write(" + part + ");\n");
+							builder.append(getTextCode(part));
 						}
 						begin = end;
 						for (String location : entry.getValue()) {
@@ -387,9 +469,13 @@ public class CompiledVisitor extends AstVisitor {
 							}
 							if (valueLocations != null && valueLocations.contains(location)) {
 								builder.append("	" + filterVariable + " = switchFilter(\"" + StringUtils.escapeString(location) + "\", " + defaultFilterVariable + ");\n");
+								useVariable(defaultFilterVariable);
+								writeVariable(filterVariable);
 							}
 							if (formatterLocations != null && formatterLocations.contains(location)) {
 								builder.append("	" + formatterVariable + " = switchFormatter(\"" + StringUtils.escapeString(location) + "\", " + defaultFormatterVariable + ");\n");
+								useVariable(defaultFormatterVariable);
+								writeVariable(formatterVariable);
 							}
 						}
 					}
@@ -401,30 +487,84 @@ public class CompiledVisitor extends AstVisitor {
 		}
 		String part = getTextPart(txt, filter, false);
 		if (StringUtils.isNotEmpty(part)) {
-			builder.append("	$output.write(" + part + ");\n");
+			builder.append(getTextCode(part));
 		}
 	}
 
+	private String getTextCode(String part) {
+		if (stream) {
+			// the static text buffers are shared by the gathering output without copy.
+			return "	" + GatheringOutputStream.class.getName() + ".writeShared($output, " + part + ");\n";
+		}
+		return "	$output.write(" + part + ");\n";
+	}
+
 	@Override
 	public void visit(ValueDirective node) throws IOException, ParseException {
 		boolean nofilter = node.isNoFilter();
 		String code = popExpressionCode();
-
-        builder.append("    $code = (" + code + ");\n");
-        code = "$code";
-
 		Class<?> returnType = popExpressionReturnType();
 		Map<String, Class<?>> variableTypes = popExpressionVariableTypes();
-		getVariables.addAll(variableTypes.keySet());
-		if (Template.class.isAssignableFrom(returnType)) {
+		readVariables(variableTypes.keySet());
+		if (stream && (int.class.equals(returnType) || long.class.equals(returnType)
+				|| float.class.equals(returnType) || double.class.equals(returnType))) {
+			// the primitive number is written by the reusable digits buffer, without boxing.
+			readVariable(formatterVariable);
+			if (! nofilter) {
+				readVariable(filterVariable);
+			}
+			useVariable("$digits");
+			digits = true;
+			String key = getTextPart(node.getExpression().toString(), null, true);
+			builder.append("	doFormat(" + formatterVariable + ", " + (nofilter ? "null" : filterVariable) + ", "
+					+ key + ", " + code + ", $digits, $output);\n");
+			return;
+		}
+		if (! stream && (Date.class.isAssignableFrom(returnType) || TemporalAccessor.class.isAssignableFrom(returnType))) {
+			// the date and time is formatted straight into the writer.
+			readVariable(formatterVariable);
+			if (! nofilter) {
+				readVariable(filterVariable);
+			}
+			String key = getTextPart(node.getExpression().toString(), null, true);
+			builder.append("	doFormat(" + formatterVariable + ", " + (nofilter ? "null" : filterVariable) + ", "
+					+ key + ", (" + (Date.class.isAssignableFrom(returnType) ? Date.class : TemporalAccessor.class).getName()
+					+ ") (" + code + "), $output);\n");
+			return;
+		}
+
+		if (CompletionStage.class.isAssignableFrom(returnType)) {
+			// the pending value is deferred by the async rendering, and joined by the others.
+			readVariable(formatterVariable);
+			if (! nofilter) {
+				readVariable(filterVariable);
+			}
+			String key = getTextPart(node.getExpression().toString(), null, true);
+			builder.append("	doDefer(" + formatterVariable + ", " + (nofilter ? "null" : filterVariable) + ", "
+					+ key + ", " + code + ", $output);\n");
+			return;
+		}
+
+		if (! returnType.isPrimitive()) {
+			builder.append("	$code = (" + code + ");\n");
+			code = "$code";
+		}
+		if (nofilter && CodecValue.class.isAssignableFrom(returnType)) {
+			// the codec encodes straight into the output, without the encoded string.
+			builder.append("	if (");
+			builder.append(code);
+			builder.append(" != null) ");
+			builder.append(getCodecWriteCode(code));
+			builder.append(";\n");
+		} else if (Template.class.isAssignableFrom(returnType)) {
 //			if (! StringUtils.isNamed(code)) {
 //				code = "(" + code + ")";
 //			}
 			builder.append("	if (");
 			builder.append(code);
-			builder.append(" != null) (");
+			builder.append(" != null) doRender($context, ");
 			builder.append('(').append(Template.class.getName()).append(')').append(code);
-			builder.append(").render($output);\n");
+			builder.append(", $output);\n");
 		} else if (nofilter && Resource.class.isAssignableFrom(returnType)) {
 //			if (! StringUtils.isNamed(code)) {
 //				code = "(" + code + ")";
@@ -448,11 +588,25 @@ public class CompiledVisitor extends AstVisitor {
 				builder.append(code);
 				builder.append(" instanceof ");
 				builder.append(Template.class.getName());
-				builder.append(") {\n	((");
+				builder.append(") {\n	doRender($context, (");
 				builder.append(Template.class.getName());
 				builder.append(")");
 				builder.append(code);
-				builder.append(").render($output);\n	}");
+				builder.append(", $output);\n	}");
+				readVariable(formatterVariable);
+				if (! nofilter) {
+					readVariable(filterVariable);
+				}
+				builder.append(" else if (");
+				builder.append(code);
+				builder.append(" instanceof ");
+				builder.append(CompletionStage.class.getName());
+				builder.append(") {\n	doDefer(" + formatterVariable + ", " + (nofilter ? "null" : filterVariable) + ", "
+						+ getTextPart(node.getExpression().toString(), null, true) + ", (");
+				builder.append(CompletionStage.class.getName());
+				builder.append(") ");
+				builder.append(code);
+				builder.append(", $output);\n	}");
 				if (nofilter) {
 					builder.append(" else if (");
 					builder.append(code);
@@ -470,6 +624,13 @@ public class CompiledVisitor extends AstVisitor {
 						builder.append(").openReader()");
 					}
 					builder.append(", $output);\n	}");
+					builder.append(" else if (");
+					builder.append(code);
+					builder.append(" instanceof ");
+					builder.append(CodecValue.class.getName());
+					builder.append(") {\n	");
+					builder.append(getCodecWriteCode(code));
+					builder.append(";\n	}");
 				} else {
 					code = "(" + code + " instanceof " + Resource.class.getName() + " ? "
 							+ IOUtils.class.getName() + ".readToString(((" + Resource.class.getName() + ")"
@@ -482,25 +643,33 @@ public class CompiledVisitor extends AstVisitor {
 //				}
 				code = "(" + IOUtils.class.getName() + ".readToString((" + Resource.class.getName() + ")" + code + "))";
 			}
-			getVariables.add(formatterVariable);
+			readVariable(formatterVariable);
 			String key = getTextPart(node.getExpression().toString(), null, true);
+			// the stream filter escapes while writing, without the escaped copy.
+			boolean streaming = ! nofilter && valueFilter instanceof StreamFilter;
 			if (! stream && Object.class.equals(returnType)) {
 				String pre = "";
 				String var = "$obj" + seq.getAndIncrement();
 				pre = "	Object " + var + " = " + code + ";\n";
 				String charsCode = "formatter.toChars(" + key + ", (char[]) " + var + ")";
 				code = "formatter.toString(" + key + ", " + var + ")";
-				if (! nofilter) {
-					getVariables.add(filterVariable);
-					charsCode = "doFilter(" + filterVariable + ", " + key + ", " + charsCode + ")";
-					code = "doFilter(" + filterVariable + ", " + key + ", " + code + ")";
-				}
 				builder.append(pre);
-				builder.append("	if (" + var + " instanceof char[]) $output.write(");
-				builder.append(charsCode);
-				builder.append("); else $output.write(");
-				builder.append(code);
-				builder.append(");\n");
+				if (streaming) {
+					readVariable(filterVariable);
+					builder.append("	if (" + var + " instanceof char[]) doFilter(" + filterVariable + ", " + key + ", " + charsCode + ", $output); ");
+					builder.append("else doFilter(" + filterVariable + ", " + key + ", " + code + ", $output);\n");
+				} else {
+					if (! nofilter) {
+						readVariable(filterVariable);
+						charsCode = "doFilter(" + filterVariable + ", " + key + ", " + charsCode + ")";
+						code = "doFilter(" + filterVariable + ", " + key + ", " + code + ")";
+					}
+					builder.append("	if (" + var + " instanceof char[]) $output.write(");
+					builder.append(charsCode);
+					builder.append("); else $output.write(");
+					builder.append(code);
+					builder.append(");\n");
+				}
 			} else {
 				if (stream) {
 					code = "formatter.toBytes(" + key + ", " + code + ")";
@@ -509,13 +678,18 @@ public class CompiledVisitor extends AstVisitor {
 				} else {
 					code = "formatter.toString(" + key + ", " + code + ")";
 				}
-				if (! nofilter) {
-					getVariables.add(filterVariable);
-					code = "doFilter(" + filterVariable + ", " + key + ", " + code + ")";
+				if (streaming) {
+					readVariable(filterVariable);
+					builder.append("	doFilter(" + filterVariable + ", " + key + ", " + code + ", $output);\n");
+				} else {
+					if (! nofilter) {
+						readVariable(filterVariable);
+						code = "doFilter(" + filterVariable + ", " + key + ", " + code + ")";
+					}
+					builder.append("	$output.write(");
+					builder.append(code);
+					builder.append(");\n");
 				}
-				builder.append("	$output.write(");
-				builder.append(code);
-				builder.append(");\n");
 			}
 			if (Object.class.equals(returnType)) {
 				builder.append("	}\n");
@@ -523,6 +697,12 @@ public class CompiledVisitor extends AstVisitor {
 		}
 	}
 
+	// Write the codec value to the writer, or to the stream in the output encoding.
+	private String getCodecWriteCode(String code) {
+		return "((" + CodecValue.class.getName() + ") " + code + ").writeTo($output"
+				+ (stream ? ", " + (outputEncoding == null ? "null" : "\"" + outputEncoding + "\"") : "") + ")";
+	}
+
 	@Override
 	public void visit(SetDirective node) throws IOException, ParseException {
 		Type type = node.getType();
@@ -534,8 +714,8 @@ public class CompiledVisitor extends AstVisitor {
 			if (clazz == null) {
 				clazz = returnType;
 			}
+			readVariables(variableTypes.keySet());
 			appendVar(clazz, node.getName(), code, node.isExport(), node.isHide(), node.getType() != null, node.getOffset());
-			getVariables.addAll(variableTypes.keySet());
 		} else {
 			clazz = checkVar(clazz, node.getName(), node.getOffset());
 			types.put(node.getName(), clazz);
@@ -572,6 +752,7 @@ public class CompiledVisitor extends AstVisitor {
 			types.put(var, clazz);
 		}
 		setVariables.add(var);
+		writeVariable(var);
 		builder.append("	" + var + " = (" + type + ")(" + code + ");\n");
 		String ctx = null;
 		if (parent) {
@@ -597,7 +778,7 @@ public class CompiledVisitor extends AstVisitor {
 		builder.append("	if(");
 		builder.append(StringUtils.getConditionCode(returnType, code, importSizers));
 		builder.append(") {\n");
-		getVariables.addAll(variableTypes.keySet());
+		readVariables(variableTypes.keySet());
 		return true;
 	}
 
@@ -616,7 +797,7 @@ public class CompiledVisitor extends AstVisitor {
 			Map<String, Class<?>> variableTypes = popExpressionVariableTypes();builder.append("	else if (");
 			builder.append(StringUtils.getConditionCode(returnType, code, importSizers));
 			builder.append(") {\n");
-			getVariables.addAll(variableTypes.keySet());
+			readVariables(variableTypes.keySet());
 		}
 		return true;
 	}
@@ -681,10 +862,11 @@ public class CompiledVisitor extends AstVisitor {
 		} else {
 			varCode = name + ".next()";
 		}
+		readVariables(variableTypes.keySet());
 		appendVar(clazz, var, varCode, false, false, node.getType() != null, node.getOffset());
-		getVariables.addAll(variableTypes.keySet());
 		for (String fv : forVariable) {
 			setVariables.add(fv);
+			useVariable(fv); // the status is restored at the end of the loop
 		}
 		return true;
 	}
@@ -702,6 +884,7 @@ public class CompiledVisitor extends AstVisitor {
 	@Override
 	public void visit(BreakDirective node) throws IOException, ParseException {
 		String b = node.getParent() instanceof ForDirective ? "break" : "return";
+		jump(node.getParent() instanceof ForDirective ? node.getParent() : null);
 		if (node.getExpression() == null) {
 			if (! (node.getParent() instanceof IfDirective
 					|| node.getParent() instanceof ElseDirective)) {
@@ -715,7 +898,7 @@ public class CompiledVisitor extends AstVisitor {
 			builder.append("	if(");
 			builder.append(StringUtils.getConditionCode(returnType, code, importSizers));
 			builder.append(") " + b + ";\n");
-			getVariables.addAll(variableTypes.keySet());
+			readVariables(variableTypes.keySet());
 		}
 	}
 
@@ -748,14 +931,24 @@ public class CompiledVisitor extends AstVisitor {
 		visitor.setTextFilter(textFilter);
 		visitor.setTextFilterSwitcher(textFilterSwitcher);
 		visitor.setTextInClass(textInClass);
+		visitor.setOutlineSize(outlineSize);
+		visitor.setValueFilter(valueFilter);
 		visitor.setValueFilterSwitcher(valueFilterSwitcher);
 		visitor.setCompiler(compiler);
+		visitor.setSources(sources);
+		visitor.setClassDigest(classDigest);
 		visitor.init();
 		for (Node n : node.getChildren()) {
 			n.accept(visitor);
 		}
-		Class<?> macroType = visitor.compile();
-		macros.put(node.getName(), macroType);
+		if (sources != null) {
+			sources.add(visitor.getCode());
+			macros.put(node.getName(), getTemplateClassName(resource, node, stream));
+		} else {
+			Class<?> macroClass = visitor.compile();
+			macroClasses.add(macroClass);
+			macros.put(node.getName(), macroClass.getName());
+		}
 		return false;
 	}
 
@@ -778,6 +971,203 @@ public class CompiledVisitor extends AstVisitor {
 		for (String macro : importMacroTemplates.keySet()) {
 			types.put(macro, Template.class);
 		}
+		blocks.add(new Block(node, 0, null));
+	}
+
+	@Override
+	public boolean visit(BlockDirective node) throws IOException, ParseException {
+		boolean children = super.visit(node);
+		if (children && node != this.node && ! (node instanceof MacroDirective)) {
+			Unit parent = getUnit(blocks.get(blocks.size() - 1));
+			Block block = new Block(node, builder.length(), parent);
+			parent.blocks.add(block);
+			blocks.add(block);
+		}
+		return children;
+	}
+
+	@Override
+	public void visit(EndDirective node) throws IOException, ParseException {
+		Block block = blocks.get(blocks.size() - 1);
+		if (block.node == node.getStart()) {
+			block.end = builder.length();
+			blocks.remove(blocks.size() - 1);
+		}
+		super.visit(node);
+	}
+
+	private Unit getUnit(Block block) {
+		if (block.units.isEmpty()) {
+			block.units.add(new Unit(block, block.start));
+		}
+		return block.units.get(block.units.size() - 1);
+	}
+
+	private void readVariable(String var) {
+		getVariables.add(var);
+		for (Block block : blocks) {
+			getUnit(block).access(var, false, false);
+		}
+	}
+
+	private void readVariables(Collection<String> vars) {
+		for (String var : vars) {
+			readVariable(var);
+		}
+	}
+
+	private void writeVariable(String var) {
+		for (int i = 0; i < blocks.size(); i ++) {
+			// only the write at the unit level dominates the following reads in the unit.
+			getUnit(blocks.get(i)).access(var, true, i == blocks.size() - 1);
+		}
+	}
+
+	private void useVariable(String var) {
+		for (Block block : blocks) {
+			getUnit(block).uses.add(var);
+		}
+	}
+
+	// The break or return can not jump out of the outlined method.
+	private void jump(Node target) {
+		for (int i = blocks.size() - 1; i >= 0; i --) {
+			Block block = blocks.get(i);
+			getUnit(block).jump = true;
+			if (target != null && block.node == target) {
+				break;
+			}
+		}
+	}
+
+	// Outline the statements from the inner blocks to the outer blocks.
+	private String outline(Block block, Map<String, String> locals) {
+		List<Unit> units = block.units;
+		if (units.isEmpty()) {
+			return builder.substring(block.start, block.end);
+		}
+		List<String> codes = new ArrayList<String>(units.size());
+		int total = 0;
+		for (int i = 0; i < units.size(); i ++) {
+			Unit unit = units.get(i);
+			int end = i + 1 < units.size() ? units.get(i + 1).start : block.end;
+			StringBuilder code = new StringBuilder();
+			int position = unit.start;
+			for (Block child : unit.blocks) {
+				code.append(builder, position, child.start);
+				code.append(outline(child, locals));
+				position = child.end;
+			}
+			code.append(builder, position, end);
+			codes.add(code.toString());
+			total += code.length();
+		}
+		StringBuilder buf = new StringBuilder();
+		buf.append(builder, block.start, units.get(0).start);
+		if (outlineSize <= 0 || total <= outlineSize) {
+			for (String code : codes) {
+				buf.append(code);
+			}
+			return buf.toString();
+		}
+		int from = 0;
+		int size = 0;
+		for (int i = 0; i < units.size(); i ++) {
+			int length = codes.get(i).length();
+			if (units.get(i).jump) {
+				buf.append(outline(block, codes, from, i, locals));
+				buf.append(codes.get(i));
+				from = i + 1;
+				size = 0;
+			} else {
+				if (size > 0 && size + length > outlineSize) {
+					buf.append(outline(block, codes, from, i, locals));
+					from = i;
+					size = 0;
+				}
+				size += length;
+			}
+		}
+		buf.append(outline(block, codes, from, units.size(), locals));
+		return buf.toString();
+	}
+
+	// Whether the variable may be read outside the units [from, to) before written.
+	private boolean isReadOutside(String var, Block block, int from, int to) {
+		int reads = 0;
+		for (int i = 0; i < block.units.size(); i ++) {
+			Unit unit = block.units.get(i);
+			if ((i < from || i >= to) && Boolean.FALSE.equals(unit.firsts.get(var))) {
+				return true;
+			}
+			reads += unit.getReads(var);
+		}
+		for (Unit parent = block.parent; parent != null; parent = parent.block.parent) {
+			if (parent.getReads(var) != reads) {
+				return true; // read out of the inner block
+			}
+			reads = 0;
+			for (Unit unit : parent.block.units) {
+				if (unit != parent && Boolean.FALSE.equals(unit.firsts.get(var))) {
+					return true;
+				}
+				reads += unit.getReads(var);
+			}
+		}
+		return false;
+	}
+
+	// Outline the units [from, to) into a private method, the used variables are passed as the parameters,
+	// so the units can only write the variables which are written before read, and never read outside.
+	private String outline(Block block, List<String> codes, int from, int to, Map<String, String> locals) {
+		List<Unit> units = block.units;
+		if (from >= to) {
+			return "";
+		}
+		Map<String, Boolean> firsts = new HashMap<String, Boolean>();
+		Set<String> writes = new HashSet<String>();
+		Set<String> uses = new LinkedHashSet<String>();
+		StringBuilder code = new StringBuilder();
+		for (int i = from; i < to; i ++) {
+			Unit unit = units.get(i);
+			for (Map.Entry<String, Boolean> entry : unit.firsts.entrySet()) {
+				if (! firsts.containsKey(entry.getKey())) {
+					firsts.put(entry.getKey(), entry.getValue());
+				}
+			}
+			writes.addAll(unit.writes);
+			uses.addAll(unit.uses);
+			code.append(codes.get(i));
+		}
+		boolean outlinable = uses.size() <= MAX_OUTLINE_PARAMETERS;
+		for (String var : writes) {
+			if (! Boolean.TRUE.equals(firsts.get(var)) || isReadOutside(var, block, from, to)) {
+				outlinable = false;
+			}
+		}
+		for (String var : uses) {
+			if (! locals.containsKey(var)) {
+				outlinable = false;
+			}
+		}
+		if (! outlinable) {
+			return code.toString();
+		}
+		String name = "$outline" + seq.incrementAndGet();
+		StringBuilder parameters = new StringBuilder();
+		StringBuilder arguments = new StringBuilder();
+		for (String var : uses) {
+			parameters.append(", " + locals.get(var) + " " + ClassUtils.filterJavaKeyword(var));
+			arguments.append(", " + ClassUtils.filterJavaKeyword(var));
+		}
+		outlines.append("private void " + name + "(" + Context.class.getName() + " $context, "
+				+ (stream ? OutputStream.class.getName() : Writer.class.getName()) + " $output"
+				+ parameters + ") throws " + Exception.class.getName() + " {\n"
+				+ "	Object $code = null;\n"
+				+ code
+				+ "}\n"
+				+ "\n");
+		return "	" + name + "($context, $output" + arguments + ");\n";
 	}
 
 	public Class<?> compile() throws IOException, ParseException {
@@ -785,9 +1175,8 @@ public class CompiledVisitor extends AstVisitor {
 		return compiler.compile(code);
 	}
 
-	private String getCode() throws IOException, ParseException {
+	public String getCode() throws IOException, ParseException {
 		String name = getTemplateClassName(resource, node, stream);
-		String code = builder.toString();
 		int i = name.lastIndexOf('.');
 		String packageName = i < 0 ? "" : name.substring(0, i);
 		String className = i < 0 ? name : name.substring(i + 1);
@@ -801,27 +1190,35 @@ public class CompiledVisitor extends AstVisitor {
 			}
 		}
 		Set<String> defined = new HashSet<String>();
+		Map<String, String> locals = new HashMap<String, String>();
+		List<String> slots = new ArrayList<String>();
 		StringBuilder statusInit = new StringBuilder();
 		StringBuilder macroFields = new StringBuilder();
 		StringBuilder macroInits = new StringBuilder();
 		StringBuilder declare = new StringBuilder();
 		if (getVariables.contains("this")) {
 			defined.add("this");
+			locals.put("this", Template.class.getName());
 			declare.append("	" + Template.class.getName() + " " + ClassUtils.filterJavaKeyword("this") + " = this;\n");
 		}
 		if (getVariables.contains("super")) {
 			defined.add("super");
+			locals.put("super", Template.class.getName());
 			declare.append("	" + Template.class.getName() + " " + ClassUtils.filterJavaKeyword("super") + " = ($context.getParent() == null ? null : $context.getParent().getTemplate());\n");
 		}
 		if (getVariables.contains(filterVariable)) {
 			defined.add(filterVariable);
 			defined.add(defaultFilterVariable);
+			locals.put(filterVariable, Filter.class.getName());
+			locals.put(defaultFilterVariable, Filter.class.getName());
 			declare.append("	" + Filter.class.getName() + " " + defaultFilterVariable + " = getFilter($context, \"" + filterVariable + "\");\n");
 			declare.append("	" + Filter.class.getName() + " " + filterVariable + " = " + defaultFilterVariable + ";\n");
 		}
 		if (getVariables.contains(formatterVariable)) {
 			defined.add(formatterVariable);
 			defined.add(defaultFormatterVariable);
+			locals.put(formatterVariable, MultiFormatter.class.getName());
+			locals.put(defaultFormatterVariable, MultiFormatter.class.getName());
 			declare.append("	" + MultiFormatter.class.getName() + " " + defaultFormatterVariable + " = getFormatter($context, \"" + formatterVariable + "\");\n");
 			declare.append("	" + MultiFormatter.class.getName() + " " + formatterVariable + " = " + defaultFormatterVariable + ";\n");
 		}
@@ -832,7 +1229,7 @@ public class CompiledVisitor extends AstVisitor {
 					type = defaultVariableType;
 				}
 				defined.add(var);
-				declare.append(getTypeCode(type, var));
+				declare.append(getTypeCode(type, var, slots, locals));
 			}
 		}
 		Set<String> macroKeySet = macros.keySet();
@@ -840,6 +1237,7 @@ public class CompiledVisitor extends AstVisitor {
 			types.put(macro, Template.class);
 			if (getVariables.contains(macro) && ! defined.contains(macro)) {
 				defined.add(macro);
+				locals.put(macro, Template.class.getName());
 				macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
 				macroInits.append("	" + macro + " = getMacros().get(\"" + macro + "\");\n");
 				declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
@@ -850,13 +1248,14 @@ public class CompiledVisitor extends AstVisitor {
 				String var = entry.getKey();
 				if (getVariables.contains(var)  && ! defined.contains(var)) {
 					defined.add(var);
-					declare.append(getTypeCode(entry.getValue(), var));
+					declare.append(getTypeCode(entry.getValue(), var, slots, locals));
 				}
 			}
 		}
 		for (String macro : importMacroTemplates.keySet()) {
 			if (getVariables.contains(macro) && ! defined.contains(macro)) {
 				defined.add(macro);
+				locals.put(macro, Template.class.getName());
 				macroFields.append("private final " + Template.class.getName() + " " + macro + ";\n");
 				macroInits.append("	" + macro + " = getImportMacros().get(\"" + macro + "\");\n");
 				declare.append("	" + Template.class.getName() + " " + macro + " = getMacro($context, \"" + macro + "\", this." + macro + ");\n");
@@ -867,6 +1266,7 @@ public class CompiledVisitor extends AstVisitor {
 				defined.add(var);
 				Class<?> type = types.get(var);
 				String typeName = getTypeName(type);
+				locals.put(var, typeName);
 				declare.append("	" + typeName + " " + ClassUtils.filterJavaKeyword(var) + " = " + ClassUtils.getInitCode(type) + ";\n");
 			}
 		}
@@ -877,12 +1277,20 @@ public class CompiledVisitor extends AstVisitor {
 					type = defaultVariableType;
 				}
 				defined.add(var);
-				declare.append(getTypeCode(type, var));
+				declare.append(getTypeCode(type, var, slots, locals));
 				defVariables.add(var);
 				defVariableTypes.add(type);
 			}
 		}
         declare.append("	Object $code = null;\n");
+		if (digits) {
+			locals.put("$digits", "byte[]");
+			declare.append("	byte[] $digits = new byte[24];\n");
+		}
+		if (slots.size() > 0) {
+			declare.insert(0, "	Object[] $frame = $context.getFrame($SLOTS);\n");
+			textFields.append("private static final String[] $SLOTS = " + toArrayCode(slots) + ";\n");
+		}
 
 		StringBuilder funtionFileds = new StringBuilder();
 		StringBuilder functionInits = new StringBuilder();
@@ -914,6 +1322,9 @@ public class CompiledVisitor extends AstVisitor {
 			functionInits.append(".class);\n");
 		}
 		
+		Block root = blocks.get(0);
+		root.end = builder.length();
+		String code = outline(root, locals);
 		String methodCode = statusInit.toString() + declare + code;
 		textFields.append("private static final " + Map.class.getName() + " $VARS = " + toTypeCode(defVariables, defVariableTypes) + ";\n");
 		
@@ -964,6 +1375,7 @@ public class CompiledVisitor extends AstVisitor {
 				+ methodCode
 				+ "}\n"
 				+ "\n"
+				+ outlines
 				+ "public " + String.class.getSimpleName() + " getName() {\n"
 				+ "	return \"" + templateName + "\";\n"
 				+ "}\n"
@@ -992,16 +1404,38 @@ public class CompiledVisitor extends AstVisitor {
 		return type.getCanonicalName();
 	}
 
-	private String getTypeCode(Class<?> type, String var) {
+	private String getTypeCode(Class<?> type, String var, List<String> slots, Map<String, String> locals) {
 		String typeName = getTypeName(type);
+		locals.put(var, typeName);
+		String value;
+		if (compiledSlots) {
+			value = "$frame[" + slots.size() + "]";
+			slots.add(var);
+		} else {
+			value = "$context.get(\"" + var + "\")";
+		}
 		if (type.isPrimitive()) {
-			return "	" + typeName + " " + ClassUtils.filterJavaKeyword(var) + " = " + ClassUtils.class.getName() + ".unboxed((" + ClassUtils.getBoxedClass(type).getSimpleName() + ") $context.get(\"" + var + "\"));\n";
+			return "	" + typeName + " " + ClassUtils.filterJavaKeyword(var) + " = " + ClassUtils.class.getName() + ".unboxed((" + ClassUtils.getBoxedClass(type).getSimpleName() + ") " + value + ");\n";
 		} else {
-			return "	" + typeName + " " + ClassUtils.filterJavaKeyword(var) + " = (" + typeName + ") $context.get(\"" + var + "\");\n";
+			return "	" + typeName + " " + ClassUtils.filterJavaKeyword(var) + " = (" + typeName + ") " + value + ";\n";
 		}
 	}
+
+	private String toArrayCode(List<String> values) {
+		StringBuilder buf = new StringBuilder("new String[] {");
+		for (int i = 0; i < values.size(); i ++) {
+			if (i > 0) {
+				buf.append(", ");
+			}
+			buf.append("\"");
+			buf.append(values.get(i));
+			buf.append("\"");
+		}
+		buf.append("}");
+		return buf.toString();
+	}
 	
-	private String toTypeCode(Map<String, Class<?>> types) {
+	private String toTypeCode(Map<String, String> types) {
 		StringBuilder keyBuf = new StringBuilder();
 		StringBuilder valueBuf = new StringBuilder();
 		if (types == null || types.size() == 0) {
@@ -1011,7 +1445,7 @@ public class CompiledVisitor extends AstVisitor {
 			keyBuf.append("new String[] {");
 			valueBuf.append("new Class[] {");
 			boolean first = true;
-			for (Map.Entry<String, Class<?>> entry : types.entrySet()) {
+			for (Map.Entry<String, String> entry : types.entrySet()) {
 				if (first) {
 					first = false;
 				} else {
@@ -1022,7 +1456,7 @@ public class CompiledVisitor extends AstVisitor {
 				keyBuf.append(StringUtils.escapeString(entry.getKey()));
 				keyBuf.append("\"");
 				
-				valueBuf.append(entry.getValue().getCanonicalName());
+				valueBuf.append(entry.getValue());
 				valueBuf.append(".class");;
 			}
 			keyBuf.append("}");
@@ -1111,13 +1545,38 @@ public class CompiledVisitor extends AstVisitor {
 			buf.append(locale);
 		}
 		buf.append(stream ? "_s" : "_w");
-		// Append lastModified as suffix of class name
+		// Append lastModified or source digest as version suffix of class name
 		// It fill be used in JdkCompiler
 		buf.append("_ts");
-		buf.append(lastModified > 0 ? lastModified : 0);
+		if (classDigest != null) {
+			buf.append(classDigest);
+		} else {
+			buf.append(lastModified > 0 ? lastModified : 0);
+			// the file rewritten in the same lastModified, such as a partial write, is named by the length too.
+			buf.append("x");
+			buf.append(resource.getLength() > 0 ? resource.getLength() : 0);
+		}
 		return TEMPLATE_CLASS_PREFIX + StringUtils.getVaildName(buf.toString());
 	}
 	
+	/**
+	 * Search the import method overload with the leading context parameter, marked by the Contextual annotation.
+	 * 
+	 * @see httl.util.Contextual
+	 * @return the method, or null if no such overload
+	 */
+	static Method searchContextMethod(Class<?> function, String name, Class<?>[] parameterTypes, boolean boxed) {
+		Class<?>[] types = new Class<?>[parameterTypes.length + 1];
+		types[0] = Context.class;
+		System.arraycopy(parameterTypes, 0, types, 1, parameterTypes.length);
+		try {
+			Method method = ClassUtils.searchMethod(function, name, types, boxed);
+			return method.isAnnotationPresent(Contextual.class) && Context.class.equals(method.getParameterTypes()[0]) ? method : null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
 	private String getTextPart(String txt, Filter filter, boolean string) {
 		if (StringUtils.isNotEmpty(txt)) {
 			if (filter != null) {
@@ -1132,11 +1591,12 @@ public class CompiledVisitor extends AstVisitor {
 					textFields.append("private static final String " + var + " = " + StringCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
 				}
 			} else if (stream) {
+				// the text bytes are wrapped once, and shared by the gathering output.
 				if (textInClass) {
-					textFields.append("private static final byte[] " + var + " = new byte[] {" + StringUtils.toByteString(StringUtils.toBytes(txt, outputEncoding)) + "};\n");
+					textFields.append("private static final " + ByteBuffer.class.getName() + " " + var + " = " + ByteBuffer.class.getName() + ".wrap(new byte[] {" + StringUtils.toByteString(StringUtils.toBytes(txt, outputEncoding)) + "});\n");
 				} else {
 					String txtId = ByteCache.put(StringUtils.toBytes(txt, outputEncoding));
-					textFields.append("private static final byte[] " + var + " = " + ByteCache.class.getName() +  ".getAndRemove(\"" + txtId + "\");\n");
+					textFields.append("private static final " + ByteBuffer.class.getName() + " " + var + " = " + ByteBuffer.class.getName() + ".wrap(" + ByteCache.class.getName() +  ".getAndRemove(\"" + txtId + "\"));\n");
 				}
 			} else {
 				if (textInClass) {
@@ -1358,7 +1818,7 @@ public class CompiledVisitor extends AstVisitor {
 		if (t != null && Template.class.isAssignableFrom(t)) {
 			variableTypes.put(name, Template.class);
 			type = Object.class;
-			code = "(" + name + " == null ? null : " + name + ".evaluate(new Object" + (parameterCode.length() == 0 ? "[0]" : "[] { " + parameterCode + " }") + "))";
+			code = "(" + name + " == null ? null : doEvaluate($context, " + name + ", new Object" + (parameterCode.length() == 0 ? "[0]" : "[] { " + parameterCode + " }") + "))";
 		} else {
 			name = ClassUtils.filterJavaKeyword(name);
 			type = null;
@@ -1366,7 +1826,12 @@ public class CompiledVisitor extends AstVisitor {
 			if (functions != null && functions.size() > 0) {
 				for (Class<?> function : functions.keySet()) {
 					try {
-						Method method = ClassUtils.searchMethod(function, name, parameterTypes, parameterTypes.length == 1);
+						// the contextual overload is preferred, so the explicit context is passed down.
+						Method method = searchContextMethod(function, name, parameterTypes, parameterTypes.length == 1);
+						boolean contextual = method != null;
+						if (! contextual) {
+							method = ClassUtils.searchMethod(function, name, parameterTypes, parameterTypes.length == 1);
+						}
 						if (Object.class.equals(method.getDeclaringClass())) {
 							break;
 						}
@@ -1376,9 +1841,12 @@ public class CompiledVisitor extends AstVisitor {
 						}
 						Class<?>[] pts = method.getParameterTypes();
 						if (parameterTypes.length == 1 && parameterTypes[0].isPrimitive() 
-								&& pts[0].isAssignableFrom(ClassUtils.getBoxedClass(parameterTypes[0]))) {
+								&& pts[contextual ? 1 : 0].isAssignableFrom(ClassUtils.getBoxedClass(parameterTypes[0]))) {
 							parameterCode = ClassUtils.class.getName() + ".boxed(" + parameterCode + ")";
 						}
+						if (contextual) {
+							parameterCode = parameterCode.length() == 0 ? "$context" : "$context, " + parameterCode;
+						}
 						if (Modifier.isStatic(method.getModifiers())) {
 							code = function.getName() + "." + method.getName() + "(" + parameterCode + ")";
 						} else {
@@ -2387,7 +2855,7 @@ public class CompiledVisitor extends AstVisitor {
 			if (Template.class.isAssignableFrom(leftClass)
 					&& ! hasMethod(Template.class, name, rightTypes)) {
 				type = Object.class;
-				code = getNotNullCode(node.getLeftParameter(), leftClass, leftCode, type, CompiledVisitor.class.getName() + ".getMacro(" + leftCode + ", \"" + name + "\").evaluate(new Object" + (rightCode.length() == 0 ? "[0]" : "[] { " + rightCode + " }") + ")");
+				code = getNotNullCode(node.getLeftParameter(), leftClass, leftCode, type, "doEvaluate($context, " + CompiledVisitor.class.getName() + ".getMacro(" + leftCode + ", \"" + name + "\"), new Object" + (rightCode.length() == 0 ? "[0]" : "[] { " + rightCode + " }") + ")");
 			} else if (Map.class.isAssignableFrom(leftClass)
 					&& rightTypes.length == 0
 					&& ! hasMethod(Map.class, name, rightTypes)) {
@@ -2619,4 +3087,70 @@ public class CompiledVisitor extends AstVisitor {
 		}
 	}
 
+	// The statement block, such as the template, if, else and for body.
+	private static final class Block {
+
+		final Node node;
+
+		final int start;
+
+		final Unit parent;
+
+		int end;
+
+		final List<Unit> units = new ArrayList<Unit>();
+
+		Block(Node node, int start, Unit parent) {
+			this.node = node;
+			this.start = start;
+			this.parent = parent;
+		}
+
+	}
+
+	// The statement in the block, with the variables accessed by it and its inner blocks.
+	private static final class Unit {
+
+		final Block block;
+
+		final int start;
+
+		final List<Block> blocks = new ArrayList<Block>();
+
+		final Set<String> uses = new LinkedHashSet<String>();
+
+		// the first access of the variable, true is the dominating write, false is read.
+		final Map<String, Boolean> firsts = new HashMap<String, Boolean>();
+
+		final Map<String, Integer> reads = new HashMap<String, Integer>();
+
+		final Set<String> writes = new HashSet<String>();
+
+		boolean jump;
+
+		Unit(Block block, int start) {
+			this.block = block;
+			this.start = start;
+		}
+
+		int getReads(String var) {
+			Integer count = reads.get(var);
+			return count == null ? 0 : count;
+		}
+
+		void access(String var, boolean write, boolean dominating) {
+			uses.add(var);
+			if ((! write || dominating) && ! firsts.containsKey(var)) {
+				firsts.put(var, write);
+			}
+			if (write) {
+				writes.add(var);
+			} else {
+				Integer count = reads.get(var);
+				reads.put(var, count == null ? 1 : count + 1);
+			}
+		}
+
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * InlineCache. (SPI, Prototype, ThreadSafe)
+ * 
+ * The per call site cache of the resolved methods, keyed on the receiver and argument classes.
+ * The entries are copy on write, the call site is not cached any more when it's megamorphic.
+ * 
+ * @see httl.spi.translators.templates.InterpretedVisitor
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public final class InlineCache {
+
+	/**
+	 * Invoke the handle: (Object receiver, Object[] args) -> Object
+	 */
+	public static final int INVOKE = 0;
+
+	/**
+	 * Invoke the handle of the import method: (Object target, Object[] receiver and args) -> Object
+	 */
+	public static final int FUNCTION = 1;
+
+	/**
+	 * Get the array length.
+	 */
+	public static final int ARRAY_LENGTH = 2;
+
+	/**
+	 * Get the map value by the method name.
+	 */
+	public static final int MAP_GET = 3;
+
+	/**
+	 * Call the macro of the template receiver.
+	 */
+	public static final int MACRO = 4;
+
+	/**
+	 * Call the bound static method handle, keyed by the class receiver.
+	 */
+	public static final int STATIC = 5;
+
+	/**
+	 * No such method, the "not found" marker.
+	 */
+	public static final int NOT_FOUND = 6;
+
+	/**
+	 * Invoke the handle of the import method with the context: (Object target, Object[] context and args) -> Object
+	 */
+	public static final int CONTEXT_FUNCTION = 7;
+
+	private static final int MAX_ENTRIES = 8;
+
+	private static final Entry[] EMPTY = new Entry[0];
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private volatile Entry[] entries = EMPTY;
+
+	public Entry get(Class<?>[] types) {
+		Entry[] current = entries;
+		for (int i = 0; i < current.length; i ++) {
+			if (current[i].matches(types)) {
+				return current[i];
+			}
+		}
+		return null;
+	}
+
+	public Entry put(Class<?>[] types, int kind, MethodHandle handle, Class<?> function, Object target) {
+		Entry entry = new Entry(types, kind, handle, function, target);
+		synchronized (this) {
+			Entry[] current = entries;
+			if (current.length < MAX_ENTRIES) {
+				Entry[] updated = new Entry[current.length + 1];
+				System.arraycopy(current, 0, updated, 0, current.length);
+				updated[current.length] = entry;
+				entries = updated;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Adapt the method to the generic (Object receiver, Object[] args) -> Object handle.
+	 * 
+	 * @param method - the static or instance method
+	 * @return handle
+	 * @throws IllegalAccessException - the method is not accessible
+	 */
+	public static MethodHandle toHandle(Method method) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflect(method).asFixedArity();
+		int count = method.getParameterTypes().length;
+		if (Modifier.isStatic(method.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle.asType(MethodType.genericMethodType(count + 1)).asSpreader(Object[].class, count);
+	}
+
+	/**
+	 * Adapt the field getter to the generic (Object receiver, Object[] args) -> Object handle.
+	 * 
+	 * @param field - the instance field
+	 * @return handle
+	 * @throws IllegalAccessException - the field is not accessible
+	 */
+	public static MethodHandle toHandle(Field field) throws IllegalAccessException {
+		MethodHandle handle = LOOKUP.unreflectGetter(field);
+		if (Modifier.isStatic(field.getModifiers())) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		return handle.asType(MethodType.genericMethodType(1)).asSpreader(Object[].class, 0);
+	}
+
+	public static final class Entry {
+
+		private final Class<?>[] types;
+
+		private final int kind;
+
+		private final MethodHandle handle;
+
+		private final Class<?> function;
+
+		private final Object target;
+
+		private Entry(Class<?>[] types, int kind, MethodHandle handle, Class<?> function, Object target) {
+			this.types = types;
+			this.kind = kind;
+			this.handle = handle;
+			this.function = function;
+			this.target = target;
+		}
+
+		private boolean matches(Class<?>[] other) {
+			if (types.length != other.length) {
+				return false;
+			}
+			for (int i = 0; i < types.length; i ++) {
+				if (types[i] != other[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public int getKind() {
+			return kind;
+		}
+
+		/**
+		 * The class of the import method, or null.
+		 * 
+		 * @return function
+		 */
+		public Class<?> getFunction() {
+			return function;
+		}
+
+		/**
+		 * The bound receiver of the import method, or null.
+		 * 
+		 * @return target
+		 */
+		public Object getTarget() {
+			return target;
+		}
+
+		public Object invoke(Object receiver, Object[] args) throws Throwable {
+			return (Object) handle.invokeExact(receiver, args);
+		}
+
+	}
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.ast.BreakDirective;
+import httl.ast.ElseDirective;
+import httl.ast.Expression;
+import httl.ast.ForDirective;
+import httl.ast.IfDirective;
+import httl.ast.MethodOperator;
+import httl.ast.SetDirective;
+import httl.ast.StaticMethodOperator;
+import httl.ast.ValueDirective;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * InterpretedNode. (SPI, Prototype, ThreadSafe)
+ *
+ * The executable node of the interpreted plan, linked with its children, and the resolved texts,
+ * names, call sites and folded constants. The node holds no rendering state,
+ * the InterpretedVisitor of each rendering holds the output and the operand stack.
+ *
+ * @see httl.spi.translators.templates.InterpretedPlan
+ * @see httl.spi.translators.templates.InterpretedVisitor
+ *
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public abstract class InterpretedNode {
+
+	public static final int POSITIVE = 0;
+
+	public static final int NEGATIVE = 1;
+
+	public static final int NOT = 2;
+
+	public static final int BIT_NOT = 3;
+
+	public static final int LIST = 4;
+
+	public static final int NEW = 5;
+
+	public static final int CAST = 6;
+
+	public static final int ADD = 7;
+
+	public static final int SUB = 8;
+
+	public static final int MUL = 9;
+
+	public static final int DIV = 10;
+
+	public static final int MOD = 11;
+
+	public static final int EQUALS = 12;
+
+	public static final int NOT_EQUALS = 13;
+
+	public static final int GREATER = 14;
+
+	public static final int GREATER_EQUALS = 15;
+
+	public static final int LESS = 16;
+
+	public static final int LESS_EQUALS = 17;
+
+	public static final int AND = 18;
+
+	public static final int OR = 19;
+
+	public static final int BIT_AND = 20;
+
+	public static final int BIT_OR = 21;
+
+	public static final int BIT_XOR = 22;
+
+	public static final int RIGHT_SHIFT = 23;
+
+	public static final int LEFT_SHIFT = 24;
+
+	public static final int UNSIGN_SHIFT = 25;
+
+	public static final int ARRAY = 26;
+
+	public static final int CONDITION = 27;
+
+	public static final int ENTRY = 28;
+
+	public static final int INSTANCEOF = 29;
+
+	public static final int INDEX = 30;
+
+	public static final int SEQUENCE = 31;
+
+	public abstract void execute(InterpretedVisitor visitor) throws IOException, ParseException;
+
+	/**
+	 * The template or the macro body, stops at the break.
+	 */
+	static final class BlockNode extends InterpretedNode {
+
+		private final InterpretedNode[] children;
+
+		BlockNode(InterpretedNode[] children) {
+			this.children = children;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			visitor.block(children);
+		}
+
+	}
+
+	static final class TextNode extends InterpretedNode {
+
+		private final InterpretedPlan.TextPart[] parts;
+
+		private final int offset;
+
+		TextNode(InterpretedPlan.TextPart[] parts, int offset) {
+			this.parts = parts;
+			this.offset = offset;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			visitor.text(parts, offset);
+		}
+
+	}
+
+	static final class ValueNode extends InterpretedNode {
+
+		private final ValueDirective directive;
+
+		private final InterpretedNode expression;
+
+		private final String name;
+
+		ValueNode(ValueDirective directive, InterpretedNode expression, String name) {
+			this.directive = directive;
+			this.expression = expression;
+			this.name = name;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			expression.execute(visitor);
+			visitor.value(directive, name);
+		}
+
+	}
+
+	static final class SetNode extends InterpretedNode {
+
+		private final SetDirective directive;
+
+		private final InterpretedNode expression;
+
+		SetNode(SetDirective directive, InterpretedNode expression) {
+			this.directive = directive;
+			this.expression = expression;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			if (expression != null) {
+				expression.execute(visitor);
+			}
+			visitor.visit(directive);
+		}
+
+	}
+
+	static final class BreakNode extends InterpretedNode {
+
+		private final BreakDirective directive;
+
+		private final InterpretedNode expression;
+
+		BreakNode(BreakDirective directive, InterpretedNode expression) {
+			this.directive = directive;
+			this.expression = expression;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			if (expression != null) {
+				expression.execute(visitor);
+			}
+			visitor.visit(directive);
+		}
+
+	}
+
+	static final class IfNode extends InterpretedNode {
+
+		private final IfDirective directive;
+
+		private final InterpretedNode expression;
+
+		private final InterpretedNode[] children;
+
+		IfNode(IfDirective directive, InterpretedNode expression, InterpretedNode[] children) {
+			this.directive = directive;
+			this.expression = expression;
+			this.children = children;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			expression.execute(visitor);
+			if (visitor.visit(directive)) {
+				for (InterpretedNode child : children) {
+					child.execute(visitor);
+				}
+			}
+		}
+
+	}
+
+	static final class ElseNode extends InterpretedNode {
+
+		private final ElseDirective directive;
+
+		private final InterpretedNode expression;
+
+		private final InterpretedNode[] children;
+
+		ElseNode(ElseDirective directive, InterpretedNode expression, InterpretedNode[] children) {
+			this.directive = directive;
+			this.expression = expression;
+			this.children = children;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			if (expression != null) {
+				expression.execute(visitor);
+			}
+			if (visitor.visit(directive)) {
+				for (InterpretedNode child : children) {
+					child.execute(visitor);
+				}
+			}
+		}
+
+	}
+
+	static final class ForNode extends InterpretedNode {
+
+		private final ForDirective directive;
+
+		private final InterpretedNode expression;
+
+		private final InterpretedNode[] children;
+
+		ForNode(ForDirective directive, InterpretedNode expression, InterpretedNode[] children) {
+			this.directive = directive;
+			this.expression = expression;
+			this.children = children;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			expression.execute(visitor);
+			visitor.loop(directive, children);
+		}
+
+	}
+
+	/**
+	 * The literal or the folded constant operator.
+	 */
+	static final class ConstantNode extends InterpretedNode {
+
+		private final Object value;
+
+		ConstantNode(Object value) {
+			this.value = value;
+		}
+
+		Object getValue() {
+			return value;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			visitor.push(value);
+		}
+
+	}
+
+	static final class VariableNode extends InterpretedNode {
+
+		private final String name;
+
+		VariableNode(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			visitor.variable(name);
+		}
+
+	}
+
+	static final class UnaryNode extends InterpretedNode {
+
+		private final int operator;
+
+		private final Expression node;
+
+		private final InterpretedNode parameter;
+
+		UnaryNode(int operator, Expression node, InterpretedNode parameter) {
+			this.operator = operator;
+			this.node = node;
+			this.parameter = parameter;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			parameter.execute(visitor);
+			visitor.operate(operator, node);
+		}
+
+	}
+
+	static final class BinaryNode extends InterpretedNode {
+
+		private final int operator;
+
+		private final Expression node;
+
+		private final InterpretedNode leftParameter;
+
+		private final InterpretedNode rightParameter;
+
+		BinaryNode(int operator, Expression node, InterpretedNode leftParameter, InterpretedNode rightParameter) {
+			this.operator = operator;
+			this.node = node;
+			this.leftParameter = leftParameter;
+			this.rightParameter = rightParameter;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			leftParameter.execute(visitor);
+			rightParameter.execute(visitor);
+			visitor.operate(operator, node);
+		}
+
+	}
+
+	static final class StaticMethodNode extends InterpretedNode {
+
+		private final StaticMethodOperator node;
+
+		private final InterpretedNode parameter;
+
+		private final String name;
+
+		private final InlineCache cache = new InlineCache();
+
+		StaticMethodNode(StaticMethodOperator node, InterpretedNode parameter, String name) {
+			this.node = node;
+			this.parameter = parameter;
+			this.name = name;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			parameter.execute(visitor);
+			visitor.invoke(node, name, cache);
+		}
+
+	}
+
+	static final class MethodNode extends InterpretedNode {
+
+		private final MethodOperator node;
+
+		private final InterpretedNode leftParameter;
+
+		private final InterpretedNode rightParameter;
+
+		private final String name;
+
+		private final InlineCache cache = new InlineCache();
+
+		MethodNode(MethodOperator node, InterpretedNode leftParameter, InterpretedNode rightParameter, String name) {
+			this.node = node;
+			this.leftParameter = leftParameter;
+			this.rightParameter = rightParameter;
+			this.name = name;
+		}
+
+		@Override
+		public void execute(InterpretedVisitor visitor) throws IOException, ParseException {
+			leftParameter.execute(visitor);
+			rightParameter.execute(visitor);
+			visitor.invoke(node, name, cache);
+		}
+
+	}
+
+}
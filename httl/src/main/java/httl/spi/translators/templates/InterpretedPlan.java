@@ -0,0 +1,564 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.Node;
+import httl.Template;
+import httl.ast.AddOperator;
+import httl.ast.AndOperator;
+import httl.ast.ArrayOperator;
+import httl.ast.BinaryOperator;
+import httl.ast.BitAndOperator;
+import httl.ast.BitNotOperator;
+import httl.ast.BitOrOperator;
+import httl.ast.BitXorOperator;
+import httl.ast.BlockDirective;
+import httl.ast.BreakDirective;
+import httl.ast.CastOperator;
+import httl.ast.ConditionOperator;
+import httl.ast.Constant;
+import httl.ast.DivOperator;
+import httl.ast.ElseDirective;
+import httl.ast.EntryOperator;
+import httl.ast.EqualsOperator;
+import httl.ast.Expression;
+import httl.ast.ForDirective;
+import httl.ast.GreaterEqualsOperator;
+import httl.ast.GreaterOperator;
+import httl.ast.IfDirective;
+import httl.ast.IndexOperator;
+import httl.ast.InstanceofOperator;
+import httl.ast.LeftShiftOperator;
+import httl.ast.LessEqualsOperator;
+import httl.ast.LessOperator;
+import httl.ast.ListOperator;
+import httl.ast.MethodOperator;
+import httl.ast.ModOperator;
+import httl.ast.MulOperator;
+import httl.ast.NegativeOperator;
+import httl.ast.NewOperator;
+import httl.ast.NotEqualsOperator;
+import httl.ast.NotOperator;
+import httl.ast.OrOperator;
+import httl.ast.PositiveOperator;
+import httl.ast.RightShiftOperator;
+import httl.ast.SequenceOperator;
+import httl.ast.SetDirective;
+import httl.ast.StaticMethodOperator;
+import httl.ast.SubOperator;
+import httl.ast.Text;
+import httl.ast.UnaryOperator;
+import httl.ast.UnsignShiftOperator;
+import httl.ast.ValueDirective;
+import httl.ast.Variable;
+import httl.spi.Filter;
+import httl.spi.Formatter;
+import httl.spi.Switcher;
+import httl.util.ClassUtils;
+import httl.util.StringSequence;
+import httl.util.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * InterpretedPlan. (SPI, Prototype, ThreadSafe)
+ *
+ * The render plan of the interpreted template, linked once when the template is translated:
+ * the AST is linked into the executable nodes, the texts are filtered, switched and encoded,
+ * the expression keys and the method names are resolved, the call sites are bound and the constant operators are folded.
+ * So the InterpretedVisitor of each rendering only holds the output and the operand stack.
+ *
+ * @see httl.spi.translators.templates.InterpretedTemplate#init()
+ * @see httl.spi.translators.templates.InterpretedNode
+ * @see httl.spi.translators.templates.InterpretedVisitor
+ *
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class InterpretedPlan {
+
+	private static final InterpretedNode[] EMPTY_NODES = new InterpretedNode[0];
+
+	private Template template;
+
+	private Filter textFilter;
+
+	private Filter valueFilter;
+
+	private Formatter<Object> formatter;
+
+	private Switcher<Filter> textFilterSwitcher;
+
+	private Switcher<Filter> valueFilterSwitcher;
+
+	private Switcher<Formatter<Object>> formatterSwitcher;
+
+	private String filterVariable;
+
+	private String formatterVariable;
+
+	private String[] forVariable;
+
+	private String ifVariable;
+
+	private String outputEncoding;
+
+	private Map<Class<?>, Object> importMethods;
+
+	private List<StringSequence> importSequences;
+
+	private Map<String, Template> importMacros;
+
+	private String[] importPackages;
+
+	private Filter currentTextFilter;
+
+	private String preText;
+
+	private InterpretedNode root;
+
+	public void init() throws ParseException {
+		currentTextFilter = textFilter;
+		preText = null;
+		root = new InterpretedNode.BlockNode(link(template.getChildren()));
+	}
+
+	public InterpretedNode getRoot() {
+		return root;
+	}
+
+	private InterpretedNode[] link(List<Node> nodes) throws ParseException {
+		if (nodes == null || nodes.isEmpty()) {
+			return EMPTY_NODES;
+		}
+		List<InterpretedNode> linked = new ArrayList<InterpretedNode>(nodes.size());
+		for (Node node : nodes) {
+			InterpretedNode executable = link(node);
+			if (executable != null) {
+				linked.add(executable);
+			}
+		}
+		return linked.toArray(new InterpretedNode[linked.size()]);
+	}
+
+	// the macro has its own plan, and the comment and the end directive have nothing to execute.
+	private InterpretedNode link(Node node) throws ParseException {
+		if (node instanceof Text) {
+			return link((Text) node);
+		} else if (node instanceof ValueDirective) {
+			ValueDirective directive = (ValueDirective) node;
+			return new InterpretedNode.ValueNode(directive, link(directive.getExpression()), directive.getExpression().toString());
+		} else if (node instanceof SetDirective) {
+			SetDirective directive = (SetDirective) node;
+			return new InterpretedNode.SetNode(directive, link(directive.getExpression()));
+		} else if (node instanceof BreakDirective) {
+			BreakDirective directive = (BreakDirective) node;
+			return new InterpretedNode.BreakNode(directive, link(directive.getExpression()));
+		} else if (node instanceof IfDirective) {
+			IfDirective directive = (IfDirective) node;
+			InterpretedNode expression = link(directive.getExpression());
+			return new InterpretedNode.IfNode(directive, expression, link(((BlockDirective) directive).getChildren()));
+		} else if (node instanceof ElseDirective) {
+			ElseDirective directive = (ElseDirective) node;
+			InterpretedNode expression = link(directive.getExpression());
+			return new InterpretedNode.ElseNode(directive, expression, link(((BlockDirective) directive).getChildren()));
+		} else if (node instanceof ForDirective) {
+			ForDirective directive = (ForDirective) node;
+			InterpretedNode expression = link(directive.getExpression());
+			return new InterpretedNode.ForNode(directive, expression, link(((BlockDirective) directive).getChildren()));
+		}
+		return null;
+	}
+
+	private InterpretedNode link(Text node) {
+		String text = node.getContent();
+		List<TextPart> parts = new ArrayList<TextPart>();
+		if (textFilterSwitcher != null || valueFilterSwitcher != null || formatterSwitcher != null) {
+			Set<String> locations = new HashSet<String>();
+			List<String> textLocations = textFilterSwitcher == null ? null : textFilterSwitcher.locations();
+			if (textLocations != null) {
+				locations.addAll(textLocations);
+			}
+			List<String> valueLocations = valueFilterSwitcher == null ? null : valueFilterSwitcher.locations();
+			if (valueLocations != null) {
+				locations.addAll(valueLocations);
+			}
+			List<String> formatterLocations = formatterSwitcher == null ? null : formatterSwitcher.locations();
+			if (formatterLocations != null) {
+				locations.addAll(formatterLocations);
+			}
+			if (locations.size() > 0) {
+				Map<Integer, Set<String>> switchesd = new TreeMap<Integer, Set<String>>();
+				for (String location : locations) {
+					int i = -1;
+					while ((i = text.indexOf(location, i + 1)) >= 0) {
+						Integer key = Integer.valueOf(i);
+						Set<String> values = switchesd.get(key);
+						if (values == null) {
+							values = new HashSet<String>();
+							switchesd.put(key, values);
+						}
+						values.add(location);
+					}
+				}
+				if (switchesd.size() > 0) {
+					int begin = 0;
+					for (Map.Entry<Integer, Set<String>> entry : switchesd.entrySet()) {
+						int end = entry.getKey();
+						TextPart part = createTextPart(filterText(text.substring(begin, end)));
+						begin = end;
+						for (String location : entry.getValue()) {
+							if (textLocations != null && textLocations.contains(location)) {
+								currentTextFilter = textFilterSwitcher.switchover(location, textFilter);
+							}
+							if (valueLocations != null && valueLocations.contains(location)) {
+								part.valueFilterSwitched = true;
+								part.valueFilter = valueFilterSwitcher.switchover(location, valueFilter);
+							}
+							if (formatterLocations != null && formatterLocations.contains(location)) {
+								part.formatterSwitched = true;
+								part.formatter = formatterSwitcher.switchover(location, formatter);
+							}
+						}
+						parts.add(part);
+					}
+					if (begin > 0) {
+						text = text.substring(begin);
+					}
+				}
+			}
+		}
+		parts.add(createTextPart(filterText(text)));
+		return new InterpretedNode.TextNode(parts.toArray(new TextPart[parts.size()]), node.getOffset());
+	}
+
+	private TextPart createTextPart(String text) {
+		ByteBuffer bytes = text == null || outputEncoding == null ? null : ByteBuffer.wrap(StringUtils.toBytes(text, outputEncoding));
+		return new TextPart(text, bytes);
+	}
+
+	private String filterText(String text) {
+		if (StringUtils.isEmpty(text)) {
+			return null;
+		}
+		text = currentTextFilter == null ? text : currentTextFilter.filter(preText, text);
+		preText = text;
+		return text;
+	}
+
+	private InterpretedNode link(Expression node) throws ParseException {
+		if (node == null) {
+			return null;
+		} else if (node instanceof Constant) {
+			return new InterpretedNode.ConstantNode(((Constant) node).getValue());
+		} else if (node instanceof Variable) {
+			return new InterpretedNode.VariableNode(((Variable) node).getName());
+		} else if (node instanceof StaticMethodOperator) {
+			StaticMethodOperator operator = (StaticMethodOperator) node;
+			return new InterpretedNode.StaticMethodNode(operator, link(operator.getParameter()), 
+					ClassUtils.filterJavaKeyword(operator.getName()));
+		} else if (node instanceof MethodOperator) {
+			MethodOperator operator = (MethodOperator) node;
+			return new InterpretedNode.MethodNode(operator, link(operator.getLeftParameter()), 
+					link(operator.getRightParameter()), ClassUtils.filterJavaKeyword(operator.getName()));
+		} else if (node instanceof UnaryOperator) {
+			UnaryOperator operator = (UnaryOperator) node;
+			InterpretedNode parameter = link(operator.getParameter());
+			InterpretedNode executable = new InterpretedNode.UnaryNode(getOperator(operator), operator, parameter);
+			return isFoldable(operator) && parameter instanceof InterpretedNode.ConstantNode ? fold(executable) : executable;
+		} else if (node instanceof BinaryOperator) {
+			BinaryOperator operator = (BinaryOperator) node;
+			InterpretedNode leftParameter = link(operator.getLeftParameter());
+			InterpretedNode rightParameter = link(operator.getRightParameter());
+			InterpretedNode executable = new InterpretedNode.BinaryNode(getOperator(operator), operator, leftParameter, rightParameter);
+			return isFoldable(operator) && leftParameter instanceof InterpretedNode.ConstantNode
+					&& rightParameter instanceof InterpretedNode.ConstantNode ? fold(executable) : executable;
+		}
+		throw new ParseException("Unsupported expression " + node.getClass().getName(), node.getOffset());
+	}
+
+	private int getOperator(Expression node) throws ParseException {
+		if (node instanceof PositiveOperator) {
+			return InterpretedNode.POSITIVE;
+		} else if (node instanceof NegativeOperator) {
+			return InterpretedNode.NEGATIVE;
+		} else if (node instanceof NotOperator) {
+			return InterpretedNode.NOT;
+		} else if (node instanceof BitNotOperator) {
+			return InterpretedNode.BIT_NOT;
+		} else if (node instanceof ListOperator) {
+			return InterpretedNode.LIST;
+		} else if (node instanceof NewOperator) {
+			return InterpretedNode.NEW;
+		} else if (node instanceof CastOperator) {
+			return InterpretedNode.CAST;
+		} else if (node instanceof AddOperator) {
+			return InterpretedNode.ADD;
+		} else if (node instanceof SubOperator) {
+			return InterpretedNode.SUB;
+		} else if (node instanceof MulOperator) {
+			return InterpretedNode.MUL;
+		} else if (node instanceof DivOperator) {
+			return InterpretedNode.DIV;
+		} else if (node instanceof ModOperator) {
+			return InterpretedNode.MOD;
+		} else if (node instanceof EqualsOperator) {
+			return InterpretedNode.EQUALS;
+		} else if (node instanceof NotEqualsOperator) {
+			return InterpretedNode.NOT_EQUALS;
+		} else if (node instanceof GreaterOperator) {
+			return InterpretedNode.GREATER;
+		} else if (node instanceof GreaterEqualsOperator) {
+			return InterpretedNode.GREATER_EQUALS;
+		} else if (node instanceof LessOperator) {
+			return InterpretedNode.LESS;
+		} else if (node instanceof LessEqualsOperator) {
+			return InterpretedNode.LESS_EQUALS;
+		} else if (node instanceof AndOperator) {
+			return InterpretedNode.AND;
+		} else if (node instanceof OrOperator) {
+			return InterpretedNode.OR;
+		} else if (node instanceof BitAndOperator) {
+			return InterpretedNode.BIT_AND;
+		} else if (node instanceof BitOrOperator) {
+			return InterpretedNode.BIT_OR;
+		} else if (node instanceof BitXorOperator) {
+			return InterpretedNode.BIT_XOR;
+		} else if (node instanceof RightShiftOperator) {
+			return InterpretedNode.RIGHT_SHIFT;
+		} else if (node instanceof LeftShiftOperator) {
+			return InterpretedNode.LEFT_SHIFT;
+		} else if (node instanceof UnsignShiftOperator) {
+			return InterpretedNode.UNSIGN_SHIFT;
+		} else if (node instanceof ArrayOperator) {
+			return InterpretedNode.ARRAY;
+		} else if (node instanceof ConditionOperator) {
+			return InterpretedNode.CONDITION;
+		} else if (node instanceof EntryOperator) {
+			return InterpretedNode.ENTRY;
+		} else if (node instanceof InstanceofOperator) {
+			return InterpretedNode.INSTANCEOF;
+		} else if (node instanceof IndexOperator) {
+			return InterpretedNode.INDEX;
+		} else if (node instanceof SequenceOperator) {
+			return InterpretedNode.SEQUENCE;
+		}
+		throw new ParseException("Unsupported operator " + node.getClass().getName(), node.getOffset());
+	}
+
+	private boolean isFoldable(Expression node) {
+		return node instanceof PositiveOperator || node instanceof NegativeOperator
+				|| node instanceof NotOperator || node instanceof BitNotOperator
+				|| node instanceof AddOperator || node instanceof SubOperator
+				|| node instanceof MulOperator || node instanceof DivOperator
+				|| node instanceof ModOperator || node instanceof EqualsOperator
+				|| node instanceof NotEqualsOperator || node instanceof GreaterOperator
+				|| node instanceof GreaterEqualsOperator || node instanceof LessOperator
+				|| node instanceof LessEqualsOperator || node instanceof AndOperator
+				|| node instanceof OrOperator || node instanceof BitAndOperator
+				|| node instanceof BitOrOperator || node instanceof BitXorOperator
+				|| node instanceof RightShiftOperator || node instanceof LeftShiftOperator
+				|| node instanceof UnsignShiftOperator;
+	}
+
+	private InterpretedNode fold(InterpretedNode node) {
+		Object value;
+		try {
+			InterpretedVisitor visitor = new InterpretedVisitor(this, null);
+			node.execute(visitor);
+			value = visitor.getResult();
+		} catch (Exception e) {
+			return node; // reports the error when rendering.
+		}
+		// only the immutable value can be shared by all renderings.
+		if (value == null || value instanceof String || value instanceof Number
+				|| value instanceof Boolean || value instanceof Character) {
+			return new InterpretedNode.ConstantNode(value);
+		}
+		return node;
+	}
+
+	public Template getTemplate() {
+		return template;
+	}
+
+	public void setTemplate(Template template) {
+		this.template = template;
+	}
+
+	public Filter getValueFilter() {
+		return valueFilter;
+	}
+
+	public void setValueFilter(Filter valueFilter) {
+		this.valueFilter = valueFilter;
+	}
+
+	public Filter getTextFilter() {
+		return textFilter;
+	}
+
+	public void setTextFilter(Filter textFilter) {
+		this.textFilter = textFilter;
+	}
+
+	public Formatter<Object> getFormatter() {
+		return formatter;
+	}
+
+	public void setFormatter(Formatter<Object> formatter) {
+		this.formatter = formatter;
+	}
+
+	public void setTextFilterSwitcher(Switcher<Filter> textFilterSwitcher) {
+		this.textFilterSwitcher = textFilterSwitcher;
+	}
+
+	public void setValueFilterSwitcher(Switcher<Filter> valueFilterSwitcher) {
+		this.valueFilterSwitcher = valueFilterSwitcher;
+	}
+
+	public void setFormatterSwitcher(Switcher<Formatter<Object>> formatterSwitcher) {
+		this.formatterSwitcher = formatterSwitcher;
+	}
+
+	public String getFilterVariable() {
+		return filterVariable;
+	}
+
+	public void setFilterVariable(String filterVariable) {
+		this.filterVariable = filterVariable;
+	}
+
+	public String getFormatterVariable() {
+		return formatterVariable;
+	}
+
+	public void setFormatterVariable(String formatterVariable) {
+		this.formatterVariable = formatterVariable;
+	}
+
+	public String[] getForVariable() {
+		return forVariable;
+	}
+
+	public void setForVariable(String[] forVariable) {
+		this.forVariable = forVariable;
+	}
+
+	public String getIfVariable() {
+		return ifVariable;
+	}
+
+	public void setIfVariable(String ifVariable) {
+		this.ifVariable = ifVariable;
+	}
+
+	public String getOutputEncoding() {
+		return outputEncoding;
+	}
+
+	public void setOutputEncoding(String outputEncoding) {
+		this.outputEncoding = outputEncoding;
+	}
+
+	public Map<Class<?>, Object> getImportMethods() {
+		return importMethods;
+	}
+
+	public void setImportMethods(Map<Class<?>, Object> importMethods) {
+		this.importMethods = importMethods;
+	}
+
+	public List<StringSequence> getImportSequences() {
+		return importSequences;
+	}
+
+	public void setImportSequences(List<StringSequence> importSequences) {
+		this.importSequences = importSequences;
+	}
+
+	public Map<String, Template> getImportMacros() {
+		return importMacros;
+	}
+
+	public void setImportMacros(Map<String, Template> importMacros) {
+		this.importMacros = importMacros;
+	}
+
+	public String[] getImportPackages() {
+		return importPackages;
+	}
+
+	public void setImportPackages(String[] importPackages) {
+		this.importPackages = importPackages;
+	}
+
+	/**
+	 * The filtered text before a switch location, and the switched value filter or formatter.
+	 */
+	public static final class TextPart {
+
+		private final String text;
+
+		private final ByteBuffer bytes;
+
+		private boolean valueFilterSwitched;
+
+		private Filter valueFilter;
+
+		private boolean formatterSwitched;
+
+		private Formatter<Object> formatter;
+
+		private TextPart(String text, ByteBuffer bytes) {
+			this.text = text;
+			this.bytes = bytes;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public ByteBuffer getBytes() {
+			return bytes;
+		}
+
+		public boolean isValueFilterSwitched() {
+			return valueFilterSwitched;
+		}
+
+		public Filter getValueFilter() {
+			return valueFilter;
+		}
+
+		public boolean isFormatterSwitched() {
+			return formatterSwitched;
+		}
+
+		public Formatter<Object> getFormatter() {
+			return formatter;
+		}
+
+	}
+
+}
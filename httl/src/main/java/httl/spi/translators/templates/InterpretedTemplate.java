@@ -77,6 +77,8 @@ public class InterpretedTemplate extends AbstractTemplate {
 	
 	private Class<?> defaultVariableType;
 
+	private InterpretedPlan plan;
+
 	public InterpretedTemplate(Resource resource, Node root, Template parent) throws IOException, ParseException {
 		super(resource, root, parent);
 	}
@@ -115,29 +117,40 @@ public class InterpretedTemplate extends AbstractTemplate {
 			macro.setFormatterVariable(formatterVariable);
 			macro.init();
 		}
+		InterpretedPlan plan = new InterpretedPlan();
+		plan.setTemplate(this);
+		plan.setFormatter(formatter);
+		plan.setValueFilter(valueFilter);
+		plan.setTextFilter(textFilter);
+		plan.setForVariable(forVariable);
+		plan.setIfVariable(ifVariable);
+		plan.setOutputEncoding(outputEncoding);
+		plan.setImportSequences(importSequences);
+		plan.setImportMethods(importMethods);
+		plan.setImportMacros(importMacros);
+		plan.setImportPackages(importPackages);
+		plan.setTextFilterSwitcher(textFilterSwitcher);
+		plan.setValueFilterSwitcher(valueFilterSwitcher);
+		plan.setFormatterSwitcher(formatterSwitcher);
+		plan.setFilterVariable(filterVariable);
+		plan.setFormatterVariable(formatterVariable);
+		plan.init();
+		this.plan = plan;
 	}
 
 	@Override
 	protected void doRender(Context context) throws Exception {
-		InterpretedVisitor visitor = new InterpretedVisitor();
-		visitor.setTemplate(this);
-		visitor.setOut(Context.getContext().getOut());
-		visitor.setFormatter(formatter);
-		visitor.setValueFilter(valueFilter);
-		visitor.setTextFilter(textFilter);
-		visitor.setForVariable(forVariable);
-		visitor.setIfVariable(ifVariable);
-		visitor.setOutputEncoding(outputEncoding);
-		visitor.setImportSequences(importSequences);
-		visitor.setImportMethods(importMethods);
-		visitor.setImportMacros(importMacros);
-		visitor.setImportPackages(importPackages);
-		visitor.setTextFilterSwitcher(textFilterSwitcher);
-		visitor.setValueFilterSwitcher(valueFilterSwitcher);
-		visitor.setFormatterSwitcher(formatterSwitcher);
-		visitor.setFilterVariable(filterVariable);
-		visitor.setFormatterVariable(formatterVariable);
-		accept(visitor);
+		// The interpreted visitor uses the static accessors, so bind the explicit context.
+		Context previous = context.isExplicit() ? Context.bindContext(context) : null;
+		try {
+			InterpretedVisitor visitor = new InterpretedVisitor(plan, context.getOut());
+			visitor.setContext(context);
+			plan.getRoot().execute(visitor);
+		} finally {
+			if (context.isExplicit()) {
+				Context.bindContext(previous);
+			}
+		}
 	}
 
 	public void setTextFilterSwitcher(Switcher<Filter> textFilterSwitcher) {
@@ -16,12 +16,10 @@
 package httl.spi.translators.templates;
 
 import httl.Context;
-import httl.Node;
 import httl.Template;
 import httl.ast.AddOperator;
 import httl.ast.AndOperator;
 import httl.ast.ArrayOperator;
-import httl.ast.AstVisitor;
 import httl.ast.BinaryOperator;
 import httl.ast.BitAndOperator;
 import httl.ast.BitNotOperator;
@@ -35,6 +33,7 @@ import httl.ast.DivOperator;
 import httl.ast.ElseDirective;
 import httl.ast.EntryOperator;
 import httl.ast.EqualsOperator;
+import httl.ast.Expression;
 import httl.ast.ForDirective;
 import httl.ast.GreaterEqualsOperator;
 import httl.ast.GreaterOperator;
@@ -45,7 +44,6 @@ import httl.ast.LeftShiftOperator;
 import httl.ast.LessEqualsOperator;
 import httl.ast.LessOperator;
 import httl.ast.ListOperator;
-import httl.ast.MacroDirective;
 import httl.ast.MethodOperator;
 import httl.ast.ModOperator;
 import httl.ast.MulOperator;
@@ -60,17 +58,16 @@ import httl.ast.SequenceOperator;
 import httl.ast.SetDirective;
 import httl.ast.StaticMethodOperator;
 import httl.ast.SubOperator;
-import httl.ast.Text;
 import httl.ast.UnsignShiftOperator;
 import httl.ast.ValueDirective;
-import httl.ast.Variable;
 import httl.spi.Filter;
 import httl.spi.Formatter;
-import httl.spi.Switcher;
+import httl.spi.StreamFilter;
+import httl.spi.codecs.CodecValue;
 import httl.util.ClassUtils;
 import httl.util.CollectionUtils;
 import httl.util.Condition;
-import httl.util.LinkedStack;
+import httl.util.GatheringOutputStream;
 import httl.util.MapEntry;
 import httl.util.Status;
 import httl.util.StringSequence;
@@ -80,101 +77,99 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
 import java.lang.reflect.Array;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
 
-public class InterpretedVisitor extends AstVisitor {
+public class InterpretedVisitor {
 
-	private Filter currentTextFilter;
+	private final InterpretedPlan plan;
 
-	private Filter textFilter;
+	private final Object out;
 
-	private Filter valueFilter;
+	private final String outputEncoding;
 
-	private Formatter<Object> formatter;
-
-	private Switcher<Filter> textFilterSwitcher;
-
-	private Switcher<Filter> valueFilterSwitcher;
-
-	private Switcher<Formatter<Object>> formatterSwitcher;
-
-	private String filterVariable;
-
-	private String formatterVariable;
-
-	private String[] forVariable;
-
-	private String ifVariable;
-
-	private String breakVariable;
-
-	private String outputEncoding;
-
-	private Map<Class<?>, Object> importMethods;
-
-	private List<StringSequence> importSequences;
+	private final String filterVariable;
 
-	private Map<String, Template> importMacros;
+	private final String formatterVariable;
 
-	private String[] importPackages;
+	private final String ifVariable;
 
-	private Template template;
+	private final String[] forVariable;
 
-	private Object out;
+	private Context context;
 
-	private String preText;
+	private Filter filter;
 
-	private final LinkedStack<Object> parameterStack = new LinkedStack<Object>();
-
-	public void setTextFilterSwitcher(Switcher<Filter> textFilterSwitcher) {
-		this.textFilterSwitcher = textFilterSwitcher;
-	}
-
-	public void setValueFilterSwitcher(Switcher<Filter> valueFilterSwitcher) {
-		this.valueFilterSwitcher = valueFilterSwitcher;
-	}
+	private Formatter<Object> formatter;
 
-	public void setFormatterSwitcher(Switcher<Formatter<Object>> formatterSwitcher) {
-		this.formatterSwitcher = formatterSwitcher;
-	}
+	// the break is consumed by the enclosing loop or template.
+	private boolean breaking;
 
-	public void setFilterVariable(String filterVariable) {
-		this.filterVariable = filterVariable;
-	}
+	private Object[] parameterStack = new Object[16];
 
-	public void setFormatterVariable(String formatterVariable) {
-		this.formatterVariable = formatterVariable;
-	}
+	private int parameterSize;
 
-	public void setImportMacros(Map<String, Template> importMacros) {
-		this.importMacros = importMacros;
+	public InterpretedVisitor(InterpretedPlan plan, Object out) {
+		this.plan = plan;
+		this.out = out;
+		this.outputEncoding = plan.getOutputEncoding();
+		this.filterVariable = plan.getFilterVariable();
+		this.formatterVariable = plan.getFormatterVariable();
+		this.ifVariable = plan.getIfVariable();
+		this.forVariable = plan.getForVariable();
+		this.filter = plan.getValueFilter();
+		this.formatter = plan.getFormatter();
+	}
+
+	/**
+	 * Resolve the value filter and formatter of the context once per rendering, as the compiled template.
+	 */
+	@SuppressWarnings("unchecked")
+	public void setContext(Context context) {
+		this.context = context;
+		Object value = context.get(filterVariable);
+		if (value instanceof Filter) {
+			filter = (Filter) value;
+		}
+		value = context.get(formatterVariable);
+		if (value instanceof Formatter) {
+			formatter = (Formatter<Object>) value;
+		}
 	}
 
-	public void setImportMethods(Map<Class<?>, Object> importMethods) {
-		this.importMethods = importMethods;
+	void push(Object value) {
+		if (parameterSize == parameterStack.length) {
+			parameterStack = Arrays.copyOf(parameterStack, parameterSize * 2);
+		}
+		parameterStack[parameterSize ++] = value;
 	}
 
-	public void setImportPackages(String[] importPackages) {
-		this.importPackages = importPackages;
+	private Object pop() {
+		if (parameterSize == 0) {
+			return null;
+		}
+		Object value = parameterStack[-- parameterSize];
+		parameterStack[parameterSize] = null;
+		return value;
 	}
 
-	public void setImportSequences(List<StringSequence> importSequences) {
-		this.importSequences = importSequences;
+	Object getResult() {
+		return pop();
 	}
 
 	private List<String> getSequence(String begin, String end) {
+		List<StringSequence> importSequences = plan.getImportSequences();
 		if (importSequences != null) {
 			for (StringSequence sequence : importSequences) {
 				if (sequence.containSequence(begin, end)) {
@@ -185,141 +180,72 @@ public class InterpretedVisitor extends AstVisitor {
 		throw new IllegalStateException("No such sequence from \"" + begin + "\" to \"" + end + "\".");
 	}
 
-	public void setTemplate(Template template) {
-		this.template = template;
-	}
-
-	public void setOut(Object out) {
-		this.out = out;
-	}
-
-	public void setOutputEncoding(String outputEncoding) {
-		this.outputEncoding = outputEncoding;
-	}
-
-	public void setFormatter(Formatter<Object> formatter) {
-		this.formatter = formatter;
-	}
-
-	public void setTextFilter(Filter textFilter) {
-		this.textFilter = textFilter;
-		this.currentTextFilter = textFilter;
-	}
-
-	public void setValueFilter(Filter valueFilter) {
-		this.valueFilter = valueFilter;
-	}
-
-	public void setIfVariable(String ifVariable) {
-		this.ifVariable = ifVariable;
-	}
-
-	public void setForVariable(String[] forVariable) {
-		this.forVariable = forVariable;
-	}
-
 	private Object popExpressionResult(int offset) throws IOException, ParseException {
-		Object result = parameterStack.pop();
-		if (! parameterStack.isEmpty()) {
+		Object result = pop();
+		if (parameterSize > 0) {
 			throw new ParseException("The directive expression error.", offset);
 		}
 		return result;
 	}
 
-	@Override
-	public void visit(Text node) throws IOException, ParseException {
+	void text(InterpretedPlan.TextPart[] parts, int offset) throws IOException, ParseException {
 		try {
-			String text = node.getContent();
-			if (textFilterSwitcher != null || valueFilterSwitcher != null || formatterSwitcher != null) {
-				Set<String> locations = new HashSet<String>();
-				List<String> textLocations = textFilterSwitcher == null ? null : textFilterSwitcher.locations();
-				if (textLocations != null) {
-					locations.addAll(textLocations);
-				}
-				List<String> valueLocations = valueFilterSwitcher == null ? null : valueFilterSwitcher.locations();
-				if (valueLocations != null) {
-					locations.addAll(valueLocations);
-				}
-				List<String> formatterLocations = formatterSwitcher == null ? null : formatterSwitcher.locations();
-				if (formatterLocations != null) {
-					locations.addAll(formatterLocations);
-				}
-				if (locations != null && locations.size() > 0) {
-					Map<Integer, Set<String>> switchesd = new TreeMap<Integer, Set<String>>();
-					for (String location : locations) {
-						int i = -1;
-						while ((i = text.indexOf(location, i + 1)) >= 0) {
-							Integer key = Integer.valueOf(i);
-							Set<String> values = switchesd.get(key);
-							if (values == null) {
-								values = new HashSet<String>();
-								switchesd.put(key, values);
-							}
-							values.add(location);
-						}
-					}
-					if (switchesd.size() > 0) {
-						int begin = 0;
-						for (Map.Entry<Integer, Set<String>> entry : switchesd.entrySet()) {
-							int end = entry.getKey();
-							String part = text.substring(begin, end);
-							if (StringUtils.isNotEmpty(part)) {
-								part = currentTextFilter == null ? part : currentTextFilter.filter(preText, part);
-								preText = part;
-								if (out instanceof Writer) {
-									((Writer) out).write(part);
-								} else if (out instanceof OutputStream) {
-									((OutputStream) out).write(part.getBytes(outputEncoding));
-								}
-							}
-							begin = end;
-							for (String location : entry.getValue()) {
-								if (textLocations != null && textLocations.contains(location)) {
-									currentTextFilter = textFilterSwitcher.switchover(location, textFilter);
-								}
-								if (valueLocations != null && valueLocations.contains(location)) {
-									Context.getContext().put(filterVariable, valueFilterSwitcher.switchover(location, valueFilter));
-								}
-								if (formatterLocations != null && formatterLocations.contains(location)) {
-									Context.getContext().put(formatterVariable, formatterSwitcher.switchover(location, formatter));
-								}
-							}
-						}
-						if (begin > 0) {
-							text = text.substring(begin);
+			for (InterpretedPlan.TextPart part : parts) {
+				if (part.getText() != null) {
+					if (out instanceof Writer) {
+						((Writer) out).write(part.getText());
+					} else if (out instanceof OutputStream) {
+						ByteBuffer bytes = part.getBytes();
+						if (bytes != null) {
+							GatheringOutputStream.writeShared((OutputStream) out, bytes);
+						} else {
+							((OutputStream) out).write(part.getText().getBytes(outputEncoding));
 						}
 					}
 				}
-			}
-			if (StringUtils.isNotEmpty(text)) {
-				text = currentTextFilter == null ? text : currentTextFilter.filter(preText, text);
-				preText = text;
-				if (out instanceof Writer) {
-					((Writer) out).write(text);
-				} else if (out instanceof OutputStream) {
-					((OutputStream) out).write(text.getBytes(outputEncoding));
+				if (part.isValueFilterSwitched()) {
+					filter = part.getValueFilter();
+					context.put(filterVariable, filter);
+				}
+				if (part.isFormatterSwitched()) {
+					formatter = part.getFormatter();
+					context.put(formatterVariable, formatter);
 				}
 			}
 		} catch (IOException e) {
-			throw new ParseException(e.getMessage(), node.getOffset());
+			throw new ParseException(e.getMessage(), offset);
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(ValueDirective node) throws IOException, ParseException {
+	void value(ValueDirective node, String name) throws IOException, ParseException {
 		Object result = popExpressionResult(node.getOffset());
+		if (result instanceof CompletionStage) {
+			// the interpreted rendering waits for the pending value, only the compiled one defers it.
+			result = ((CompletionStage<?>) result).toCompletableFuture().join();
+		}
 		if (result instanceof Template) {
 			((Template) result).render(out);
+		} else if (result instanceof CodecValue && node.isNoFilter()
+				&& (out instanceof Writer || out instanceof OutputStream)) {
+			try {
+				if (out instanceof Writer) {
+					((CodecValue) result).writeTo((Writer) out);
+				} else {
+					((CodecValue) result).writeTo((OutputStream) out, outputEncoding);
+				}
+			} catch (IOException e) {
+				throw new ParseException(e.getMessage(), node.getOffset());
+			}
 		} else {
-			Formatter<Object> format = (Formatter<Object>) Context.getContext().get(formatterVariable, formatter);
-			String text = format == null ? StringUtils.toString(result) : format.toString(null, result);
-			Filter filter = (Filter) Context.getContext().get(filterVariable, valueFilter);
-			if (! node.isNoFilter() && filter != null) {
-				text =  filter.filter(node.getExpression().toString(), text);
+			String text = formatter == null ? StringUtils.toString(result) : formatter.toString(null, result);
+			boolean streaming = ! node.isNoFilter() && filter instanceof StreamFilter && out instanceof Writer;
+			if (! node.isNoFilter() && filter != null && ! streaming) {
+				text =  filter.filter(name, text);
 			}
 			try {
-				if (text != null) {
+				if (streaming) {
+					((StreamFilter) filter).filter(name, text, (Writer) out);
+				} else if (text != null) {
 					if (out instanceof Writer) {
 						((Writer) out).write(text);
 					} else if (out instanceof OutputStream) {
@@ -332,120 +258,208 @@ public class InterpretedVisitor extends AstVisitor {
 		}
 	}
 
-	@Override
-	public void visit(SetDirective node) throws IOException, ParseException {
+	@SuppressWarnings("unchecked")
+	void visit(SetDirective node) throws IOException, ParseException {
 		if (node.getExpression() != null) {
 			Object result = popExpressionResult(node.getOffset());
-			if (node.isExport() && Context.getContext().getParent() != null) {
-				Context.getContext().getParent().put(node.getName(), result);
+			if (node.isExport() && context.getParent() != null) {
+				context.getParent().put(node.getName(), result);
 			} else {
-				Context.getContext().put(node.getName(), result);
+				context.put(node.getName(), result);
+				if (result instanceof Filter && node.getName().equals(filterVariable)) {
+					filter = (Filter) result;
+				} else if (result instanceof Formatter && node.getName().equals(formatterVariable)) {
+					formatter = (Formatter<Object>) result;
+				}
 			}
 		}
 	}
 
-	@Override
-	public void visit(BreakDirective node) throws IOException, ParseException {
+	void visit(BreakDirective node) throws IOException, ParseException {
 		boolean result = true;
 		if (node.getExpression() != null) {
 			result = ClassUtils.isTrue(popExpressionResult(node.getOffset()));
 		}
 		if (result) {
-			Context.getContext().put(breakVariable, true);
+			breaking = true;
 		}
 	}
 
-	@Override
-	public boolean visit(IfDirective node) throws IOException, ParseException {
+	boolean visit(IfDirective node) throws IOException, ParseException {
 		boolean result = ClassUtils.isTrue(popExpressionResult(node.getOffset()));
-		Context.getContext().put(ifVariable, result);
+		context.put(ifVariable, result);
 		return result;
 	}
 
-	@Override
-	public boolean visit(ElseDirective node) throws IOException, ParseException {
+	boolean visit(ElseDirective node) throws IOException, ParseException {
 		boolean result = true;
 		if (node.getExpression() != null) {
 			result = ClassUtils.isTrue(popExpressionResult(node.getOffset()));
 		}
-		result = result && ! ClassUtils.isTrue(Context.getContext().get(ifVariable));
+		result = result && ! ClassUtils.isTrue(context.get(ifVariable));
 		if (result) {
-			Context.getContext().put(ifVariable, true);
+			context.put(ifVariable, true);
 		}
 		return result;
 	}
 
-	@Override
-	public boolean visit(ForDirective node) throws IOException, ParseException {
+	void loop(ForDirective node, InterpretedNode[] children) throws IOException, ParseException {
 		Object data = popExpressionResult(node.getOffset());
 		boolean result = ClassUtils.isTrue(data);
-		Context.getContext().put(ifVariable, result);
+		context.put(ifVariable, result);
 		Iterator<?> iterator = CollectionUtils.toIterator(data);
-		Status status = new Status((Status) Context.getContext().get(forVariable[0]), data);
+		Status status = new Status((Status) context.get(forVariable[0]), data);
 		for (String var : forVariable) {
-			Context.getContext().put(var, status);
+			context.put(var, status);
 		}
 		loop: while (iterator.hasNext()) {
 			Object item = iterator.next();
-			Context.getContext().put(node.getName(), item);
-			for (Node child : node.getChildren()) {
-				child.accept(this);
-				if (ClassUtils.isTrue(Context.getContext().get(breakVariable))) {
-					Context.getContext().remove(breakVariable);
+			context.put(node.getName(), item);
+			for (InterpretedNode child : children) {
+				child.execute(this);
+				if (breaking) {
+					breaking = false;
 					break loop;
 				}
 			}
 			status.increment();
 		}
 		for (String var : forVariable) {
-			Context.getContext().put(var, status.getParent());
+			context.put(var, status.getParent());
 		}
-		return false;
 	}
 
-	@Override
-	public boolean visit(MacroDirective node) throws IOException, ParseException {
-		return false;
-	}
-
-	@Override
-	public boolean visit(Template node) throws IOException, ParseException {
-		for (Node child : node.getChildren()) {
-			child.accept(this);
-			if (ClassUtils.isTrue(Context.getContext().get(breakVariable))) {
-				Context.getContext().remove(breakVariable);
+	void block(InterpretedNode[] children) throws IOException, ParseException {
+		for (InterpretedNode child : children) {
+			child.execute(this);
+			if (breaking) {
+				breaking = false;
 				break;
 			}
 		}
-		return false;
 	}
 
-	@Override
-	public void visit(Constant node) throws IOException, ParseException {
-		parameterStack.push(node.getValue());
+	void variable(String name) {
+		push(context.get(name));
 	}
 
-	@Override
-	public void visit(Variable node) throws IOException, ParseException {
-		parameterStack.push(Context.getContext().get(node.getName()));
+	void operate(int operator, Expression node) throws IOException, ParseException {
+		switch (operator) {
+			case InterpretedNode.POSITIVE:
+				visit((PositiveOperator) node);
+				break;
+			case InterpretedNode.NEGATIVE:
+				visit((NegativeOperator) node);
+				break;
+			case InterpretedNode.NOT:
+				visit((NotOperator) node);
+				break;
+			case InterpretedNode.BIT_NOT:
+				visit((BitNotOperator) node);
+				break;
+			case InterpretedNode.LIST:
+				visit((ListOperator) node);
+				break;
+			case InterpretedNode.NEW:
+				visit((NewOperator) node);
+				break;
+			case InterpretedNode.CAST:
+				visit((CastOperator) node);
+				break;
+			case InterpretedNode.ADD:
+				visit((AddOperator) node);
+				break;
+			case InterpretedNode.SUB:
+				visit((SubOperator) node);
+				break;
+			case InterpretedNode.MUL:
+				visit((MulOperator) node);
+				break;
+			case InterpretedNode.DIV:
+				visit((DivOperator) node);
+				break;
+			case InterpretedNode.MOD:
+				visit((ModOperator) node);
+				break;
+			case InterpretedNode.EQUALS:
+				visit((EqualsOperator) node);
+				break;
+			case InterpretedNode.NOT_EQUALS:
+				visit((NotEqualsOperator) node);
+				break;
+			case InterpretedNode.GREATER:
+				visit((GreaterOperator) node);
+				break;
+			case InterpretedNode.GREATER_EQUALS:
+				visit((GreaterEqualsOperator) node);
+				break;
+			case InterpretedNode.LESS:
+				visit((LessOperator) node);
+				break;
+			case InterpretedNode.LESS_EQUALS:
+				visit((LessEqualsOperator) node);
+				break;
+			case InterpretedNode.AND:
+				visit((AndOperator) node);
+				break;
+			case InterpretedNode.OR:
+				visit((OrOperator) node);
+				break;
+			case InterpretedNode.BIT_AND:
+				visit((BitAndOperator) node);
+				break;
+			case InterpretedNode.BIT_OR:
+				visit((BitOrOperator) node);
+				break;
+			case InterpretedNode.BIT_XOR:
+				visit((BitXorOperator) node);
+				break;
+			case InterpretedNode.RIGHT_SHIFT:
+				visit((RightShiftOperator) node);
+				break;
+			case InterpretedNode.LEFT_SHIFT:
+				visit((LeftShiftOperator) node);
+				break;
+			case InterpretedNode.UNSIGN_SHIFT:
+				visit((UnsignShiftOperator) node);
+				break;
+			case InterpretedNode.ARRAY:
+				visit((ArrayOperator) node);
+				break;
+			case InterpretedNode.CONDITION:
+				visit((ConditionOperator) node);
+				break;
+			case InterpretedNode.ENTRY:
+				visit((EntryOperator) node);
+				break;
+			case InterpretedNode.INSTANCEOF:
+				visit((InstanceofOperator) node);
+				break;
+			case InterpretedNode.INDEX:
+				visit((IndexOperator) node);
+				break;
+			case InterpretedNode.SEQUENCE:
+				visit((SequenceOperator) node);
+				break;
+			default:
+				throw new ParseException("Unsupported operator " + node.getClass().getName(), node.getOffset());
+		}
 	}
 
-	public void visit(CastOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(CastOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = parameter;
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(PositiveOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(PositiveOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = parameter;;
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(NegativeOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(NegativeOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = null;
 		if (parameter instanceof Integer) {
 			result = - ((Integer) parameter).intValue();
@@ -462,19 +476,17 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			throw new ParseException("The unary operator \"" + node.getName() +  "\" unsupported parameter type " + parameter.getClass(), node.getOffset());
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(NotOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(NotOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = ! ClassUtils.isTrue(parameter);
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(BitNotOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(BitNotOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = null;
 		if (parameter instanceof Integer) {
 			result = ~ ((Integer) parameter).intValue();
@@ -487,13 +499,12 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			throw new ParseException("The unary operator \"" + node.getName() +  "\" unsupported parameter type " + parameter.getClass(), node.getOffset());
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(ListOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(ListOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = null;
 		if (parameter instanceof Object[]) {
 			Object[] array = (Object[]) parameter;
@@ -538,15 +549,14 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			result = new Object[] { parameter };
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(NewOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void visit(NewOperator node) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = null;
 		String name = node.getName();
-		Class<?> cls = ClassUtils.forName(importPackages, name);
+		Class<?> cls = ClassUtils.forName(plan.getImportPackages(), name);
 		Object[] args;
 		if (parameter == null 
 				&& node.getParameter() instanceof Constant
@@ -571,15 +581,13 @@ public class InterpretedVisitor extends AstVisitor {
 			}
 			throw new ParseException("Failed to create " + ClassUtils.getMethodFullName(name, types) + ", cause: " + e.getMessage(), node.getOffset());
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(StaticMethodOperator node) throws IOException, ParseException {
-		Object parameter = parameterStack.pop();
+	void invoke(StaticMethodOperator node, String filteredName, InlineCache cache) throws IOException, ParseException {
+		Object parameter = pop();
 		Object result = null;
 		String name = node.getName();
-		String filteredName = ClassUtils.filterJavaKeyword(name);
 		Object[] args;
 		if (parameter == null 
 				&& node.getParameter() instanceof Constant
@@ -594,38 +602,34 @@ public class InterpretedVisitor extends AstVisitor {
 		for (int i = 0; i < args.length; i ++) {
 			types[i] = args[i] == null ? null : args[i].getClass();
 		}
+		InlineCache.Entry entry = cache.get(types);
+		if (entry == null) {
+			entry = resolveStaticMethod(node, cache, filteredName, types);
+		}
 		boolean found = false;
-		if (importMethods != null && importMethods.size() > 0) {
-			for (Map.Entry<Class<?>, Object> entry : importMethods.entrySet()) {
-				Class<?> function = entry.getKey();
-				try {
-					Method method = ClassUtils.searchMethod(function, filteredName, types, true);
-					if (! Object.class.equals(method.getDeclaringClass())) {
-						Class<?> type = method.getReturnType();
-						if (type == void.class) {
-							throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
-						}
-						if (Modifier.isStatic(method.getModifiers())) {
-							result = method.invoke(null, args);
-						} else {
-							result = method.invoke(entry.getValue(), args);
-						}
-						found = true;
-						break;
-					}
-				} catch (NoSuchMethodException e) {
-				} catch (Exception e) {
-					throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(filteredName, types) + " in class " + function.getCanonicalName() + ", cause: " + ClassUtils.dumpException(e), node.getOffset());
+		if (entry.getKind() == InlineCache.FUNCTION || entry.getKind() == InlineCache.CONTEXT_FUNCTION) {
+			try {
+				if (entry.getKind() == InlineCache.CONTEXT_FUNCTION) {
+					Object[] contextArgs = new Object[args.length + 1];
+					contextArgs[0] = context;
+					System.arraycopy(args, 0, contextArgs, 1, args.length);
+					result = entry.invoke(entry.getTarget(), contextArgs);
+				} else {
+					result = entry.invoke(entry.getTarget(), args);
 				}
+			} catch (Throwable e) {
+				throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(filteredName, types) + " in class " + entry.getFunction().getCanonicalName() + ", cause: " + ClassUtils.dumpException(e), node.getOffset());
 			}
+			found = true;
 		}
 		if (! found) {
 			Template macro;
-			Object value = Context.getContext().get(name);
+			Object value = context.get(name);
 			if (value instanceof Template) {
 				macro = (Template) value;
 			} else {
-				macro = template.getMacros().get(name);
+				macro = plan.getTemplate().getMacros().get(name);
+				Map<String, Template> importMacros = plan.getImportMacros();
 				if (macro == null && importMacros != null) {
 					macro = importMacros.get(name);
 				}
@@ -636,14 +640,42 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("No such macro \"" + filteredName + "\" or import method " + ClassUtils.getMethodFullName(filteredName, types) + ".", node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
+	}
+
+	private InlineCache.Entry resolveStaticMethod(StaticMethodOperator node, InlineCache cache, String name, Class<?>[] types) throws ParseException {
+		Map<Class<?>, Object> importMethods = plan.getImportMethods();
+		if (importMethods != null && importMethods.size() > 0) {
+			for (Map.Entry<Class<?>, Object> entry : importMethods.entrySet()) {
+				Class<?> function = entry.getKey();
+				try {
+					// the contextual overload is preferred, as the compiled template.
+					Method method = CompiledVisitor.searchContextMethod(function, name, types, true);
+					boolean contextual = method != null;
+					if (! contextual) {
+						method = ClassUtils.searchMethod(function, name, types, true);
+					}
+					if (! Object.class.equals(method.getDeclaringClass())) {
+						Class<?> type = method.getReturnType();
+						if (type == void.class) {
+							throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
+						}
+						return cache.put(types, contextual ? InlineCache.CONTEXT_FUNCTION : InlineCache.FUNCTION, InlineCache.toHandle(method), function, 
+								Modifier.isStatic(method.getModifiers()) ? null : entry.getValue());
+					}
+				} catch (NoSuchMethodException e) {
+				} catch (Exception e) {
+					throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(name, types) + " in class " + function.getCanonicalName() + ", cause: " + ClassUtils.dumpException(e), node.getOffset());
+				}
+			}
+		}
+		return cache.put(types, InlineCache.MACRO, null, null, null);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(AddOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(AddOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter instanceof Integer && rightParameter instanceof Number) {
 			result = ((Number) leftParameter).intValue() + ((Number) rightParameter).intValue();
@@ -678,13 +710,12 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			result = StringUtils.concat(leftParameter, rightParameter);
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(SubOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(SubOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -703,13 +734,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(MulOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(MulOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -728,13 +758,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(DivOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(DivOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -753,13 +782,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(ModOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(ModOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -778,13 +806,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(EqualsOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(EqualsOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter instanceof String && ! (rightParameter instanceof String)) {
 			rightParameter = StringUtils.toString(rightParameter);
@@ -796,13 +823,12 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			result = rightParameter == null;
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(NotEqualsOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(NotEqualsOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter instanceof String && ! (rightParameter instanceof String)) {
 			rightParameter = StringUtils.toString(rightParameter);
@@ -814,14 +840,13 @@ public class InterpretedVisitor extends AstVisitor {
 		} else {
 			result = rightParameter != null;
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(GreaterOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(GreaterOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Comparable<?>) {
@@ -830,14 +855,13 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(GreaterEqualsOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(GreaterEqualsOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Comparable<?>) {
@@ -846,14 +870,13 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(LessOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(LessOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Comparable<?>) {
@@ -862,15 +885,14 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(LessEqualsOperator node) throws IOException,
+	void visit(LessEqualsOperator node) throws IOException,
 			ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Comparable<?>) {
@@ -879,24 +901,22 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(AndOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(AndOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			result = ClassUtils.isTrue(leftParameter) && ClassUtils.isTrue(rightParameter);
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(OrOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(OrOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (ClassUtils.isTrue(leftParameter)) {
@@ -905,13 +925,12 @@ public class InterpretedVisitor extends AstVisitor {
 				result = rightParameter;
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(BitAndOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(BitAndOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -926,13 +945,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(BitOrOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(BitOrOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -947,13 +965,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(BitXorOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(BitXorOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -968,13 +985,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(RightShiftOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(RightShiftOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -989,13 +1005,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(LeftShiftOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(LeftShiftOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -1010,13 +1025,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(UnsignShiftOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(UnsignShiftOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Number) {
@@ -1031,13 +1045,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(ArrayOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(ArrayOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Object[]
@@ -1055,24 +1068,22 @@ public class InterpretedVisitor extends AstVisitor {
 				result = array;
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(ConditionOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(ConditionOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			result = new Condition(ClassUtils.isTrue(leftParameter), rightParameter);
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(EntryOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(EntryOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Condition) {
@@ -1082,13 +1093,12 @@ public class InterpretedVisitor extends AstVisitor {
 				result = new MapEntry<Object, Object>(leftParameter, rightParameter);
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(InstanceofOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(InstanceofOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = false;
 		if (leftParameter != null) {
 			if (rightParameter instanceof Class<?>) {
@@ -1099,14 +1109,13 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
 	@SuppressWarnings("unchecked")
-	@Override
-	public void visit(IndexOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(IndexOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (rightParameter instanceof Number) {
@@ -1179,13 +1188,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(SequenceOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void visit(SequenceOperator node) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			if (leftParameter instanceof Integer && rightParameter instanceof Integer) {
@@ -1208,13 +1216,12 @@ public class InterpretedVisitor extends AstVisitor {
 				throw new ParseException("The binary operator \"" + node.getName() +  "\" unsupported parameter type " + leftParameter.getClass().getName() + ", " + rightParameter.getClass().getName(), node.getOffset());
 			}
 		}
-		parameterStack.push(result);
+		push(result);
 	}
 
-	@Override
-	public void visit(MethodOperator node) throws IOException, ParseException {
-		Object rightParameter = parameterStack.pop();
-		Object leftParameter = parameterStack.pop();
+	void invoke(MethodOperator node, String filteredName, InlineCache cache) throws IOException, ParseException {
+		Object rightParameter = pop();
+		Object leftParameter = pop();
 		Object result = null;
 		if (leftParameter != null) {
 			String name = node.getName();
@@ -1229,7 +1236,7 @@ public class InterpretedVisitor extends AstVisitor {
 					result = leftClass;
 				}
 			} else {
-				name = ClassUtils.filterJavaKeyword(name);
+				name = filteredName;
 				Object[] args;
 				if (rightParameter == null) {
 					args = new Object[0];
@@ -1238,94 +1245,151 @@ public class InterpretedVisitor extends AstVisitor {
 				} else {
 					args = new Object[] { rightParameter };
 				}
-				result = null;
-				boolean found = false;
-				if (importMethods != null && importMethods.size() > 0) {
-					Object[] staticArgs = new Object[args.length + 1];
-					staticArgs[0] = leftParameter;
-					System.arraycopy(args, 0, staticArgs, 1, args.length);
-					Class<?>[] types = new Class<?>[staticArgs.length];
-					for (int i = 0; i < staticArgs.length; i ++) {
-						types[i] = staticArgs[i] == null ? null : staticArgs[i].getClass();
-					}
-					for (Map.Entry<Class<?>, Object> entry : importMethods.entrySet()) {
-						Class<?> function = entry.getKey();
-						try {
-							Method method = ClassUtils.searchMethod(function, name, types, true);
-							if (Object.class.equals(method.getDeclaringClass())) {
-								break;
-							}
-							Class<?> type = method.getReturnType();
-							if (type == void.class) {
-								throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
+				Class<?>[] types = new Class<?>[args.length + 1];
+				types[0] = leftClass;
+				for (int i = 0; i < args.length; i ++) {
+					types[i + 1] = args[i] == null ? null : args[i].getClass();
+				}
+				Class<?>[] key = types;
+				if (leftParameter instanceof Class) { // the static methods are resolved by the class receiver.
+					key = Arrays.copyOf(types, types.length + 1);
+					key[types.length] = (Class<?>) leftParameter;
+				}
+				InlineCache.Entry entry = cache.get(key);
+				if (entry == null) {
+					entry = resolveMethod(node, cache, name, key, types, leftParameter);
+				}
+				try {
+					switch (entry.getKind()) {
+						case InlineCache.FUNCTION:
+							Object[] staticArgs = new Object[args.length + 1];
+							staticArgs[0] = leftParameter;
+							System.arraycopy(args, 0, staticArgs, 1, args.length);
+							try {
+								result = entry.invoke(entry.getTarget(), staticArgs);
+							} catch (Throwable e) {
+								throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(name, types) + " in class " + entry.getFunction().getCanonicalName() + ", cause: " + e.getMessage(), node.getOffset());
 							}
-							if (Modifier.isStatic(method.getModifiers())) {
-								result = method.invoke(null, staticArgs);
+							break;
+						case InlineCache.INVOKE:
+							result = entry.invoke(leftParameter, args);
+							break;
+						case InlineCache.ARRAY_LENGTH:
+							result = Array.getLength(leftParameter);
+							break;
+						case InlineCache.MAP_GET:
+							result = ((Map<?, ?>) leftParameter).get(name);
+							break;
+						case InlineCache.MACRO:
+							Template macro = ((Template) leftParameter).getMacros().get(name);
+							if (macro != null) {
+								result = macro.evaluate(args);
 							} else {
-								result = method.invoke(entry.getValue(), staticArgs);
+								throw new ParseException("No such macro or method " + name + " in " + leftParameter.getClass().getCanonicalName(), node.getOffset());
 							}
-							found = true;
 							break;
-						} catch (NoSuchMethodException e) {
-						} catch (Exception e) {
-							throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(name, types) + " in class " + function.getCanonicalName() + ", cause: " + e.getMessage(), node.getOffset());
-						}
+						case InlineCache.STATIC:
+							result = entry.invoke(null, args);
+							break;
+						default:
+							throw new ParseException("No such method " + name + " in " + leftParameter.getClass().getCanonicalName(), node.getOffset());
 					}
+				} catch (ParseException e) {
+					throw e;
+				} catch (Throwable e) {
+					throw new ParseException(ClassUtils.toString(e), node.getOffset());
 				}
-				if (! found) {
-					try {
-						Class<?>[] types = new Class<?>[args.length];
-						for (int i = 0; i < args.length; i ++) {
-							types[i] = args[i] == null ? null : args[i].getClass();
-						}
-						try {
-							Method method = ClassUtils.searchMethod(leftClass, name, types, true);
-							if (! method.isAccessible()) {
-								method.setAccessible(true);
-							}
-							result = method.invoke(leftParameter, args);
-							found = true;
-						} catch (NoSuchMethodException e) {
-							if (args.length == 0) {
-								try {
-									result = ClassUtils.searchProperty(leftParameter, name);
-									found = true;
-								} catch (NoSuchFieldException e2) {
-								}
-							}
-							if (! found) {
-								if (leftParameter instanceof Template) {
-									Template macro = ((Template) leftParameter).getMacros().get(name);
-									if (macro != null) {
-										result = macro.evaluate(args);
-									} else {
-										throw new ParseException("No such macro or method " + name + " in " + leftParameter.getClass().getCanonicalName(), node.getOffset());
-									}
-								} else if (leftParameter instanceof Class) {
-									Class<?> function = (Class<?>) leftParameter;
-									Method method = ClassUtils.searchMethod(function, name, types, true);
-									Class<?> type = method.getReturnType();
-									if (type == void.class) {
-										throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
-									}
-									if (! Modifier.isStatic(method.getModifiers())) {
-										throw new ParseException("Can not call non-static method " + method.getName() + " in class " + function.getName(), node.getOffset());
-									}
-									result = method.invoke(null, args);
-								} else {
-									throw new ParseException("No such method " + name + " in " + leftParameter.getClass().getCanonicalName(), node.getOffset());
-								}
-							}
-						}
-					} catch (ParseException e) {
-						throw e;
-					} catch (Exception e) {
-						throw new ParseException(ClassUtils.toString(e), node.getOffset());
+			}
+		}
+		push(result);
+	}
+
+	private InlineCache.Entry resolveMethod(MethodOperator node, InlineCache cache, String name, Class<?>[] key, Class<?>[] types, Object leftParameter) throws ParseException {
+		Map<Class<?>, Object> importMethods = plan.getImportMethods();
+		if (importMethods != null && importMethods.size() > 0) {
+			for (Map.Entry<Class<?>, Object> entry : importMethods.entrySet()) {
+				Class<?> function = entry.getKey();
+				try {
+					Method method = ClassUtils.searchMethod(function, name, types, true);
+					if (Object.class.equals(method.getDeclaringClass())) {
+						break;
 					}
+					Class<?> type = method.getReturnType();
+					if (type == void.class) {
+						throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
+					}
+					return cache.put(key, InlineCache.FUNCTION, InlineCache.toHandle(method), function, 
+							Modifier.isStatic(method.getModifiers()) ? null : entry.getValue());
+				} catch (NoSuchMethodException e) {
+				} catch (Exception e) {
+					throw new ParseException("Failed to invoke method " + ClassUtils.getMethodFullName(name, types) + " in class " + function.getCanonicalName() + ", cause: " + e.getMessage(), node.getOffset());
+				}
+			}
+		}
+		Class<?> leftClass = types[0];
+		Class<?>[] argTypes = new Class<?>[types.length - 1];
+		System.arraycopy(types, 1, argTypes, 0, argTypes.length);
+		try {
+			try {
+				Method method = ClassUtils.searchMethod(leftClass, name, argTypes, true);
+				method.setAccessible(true);
+				return cache.put(key, InlineCache.INVOKE, InlineCache.toHandle(method), null, null);
+			} catch (NoSuchMethodException e) {
+			}
+			if (argTypes.length == 0) {
+				InlineCache.Entry entry = resolveProperty(cache, name, key, leftClass);
+				if (entry != null) {
+					return entry;
+				}
+			}
+			if (leftParameter instanceof Class) {
+				Class<?> function = (Class<?>) leftParameter;
+				Method method = ClassUtils.searchMethod(function, name, argTypes, true);
+				if (method.getReturnType() == void.class) {
+					throw new ParseException("Can not call void method " + method.getName() + " in class " + function.getName(), node.getOffset());
+				}
+				if (! Modifier.isStatic(method.getModifiers())) {
+					throw new ParseException("Can not call non-static method " + method.getName() + " in class " + function.getName(), node.getOffset());
+				}
+				method.setAccessible(true);
+				return cache.put(key, InlineCache.STATIC, InlineCache.toHandle(method), function, null);
+			}
+		} catch (ParseException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ParseException(ClassUtils.toString(e), node.getOffset());
+		}
+		if (leftParameter instanceof Template) {
+			return cache.put(key, InlineCache.MACRO, null, null, null);
+		}
+		return cache.put(key, InlineCache.NOT_FOUND, null, null, null);
+	}
+
+	// The same as ClassUtils.searchProperty, but resolved by the class.
+	private InlineCache.Entry resolveProperty(InlineCache cache, String name, Class<?>[] key, Class<?> leftClass) throws Exception {
+		if (leftClass.isArray() && "length".equals(name)) {
+			return cache.put(key, InlineCache.ARRAY_LENGTH, null, null, null);
+		} else if (Map.class.isAssignableFrom(leftClass)) {
+			return cache.put(key, InlineCache.MAP_GET, null, null, null);
+		}
+		String property = name.substring(0, 1).toUpperCase() + name.substring(1);
+		Method method;
+		try {
+			method = leftClass.getMethod("get" + property, new Class<?>[0]);
+		} catch (NoSuchMethodException e) {
+			try {
+				method = leftClass.getMethod("is" + property, new Class<?>[0]);
+			} catch (NoSuchMethodException e2) {
+				try {
+					Field field = leftClass.getField(name);
+					return cache.put(key, InlineCache.INVOKE, InlineCache.toHandle(field), null, null);
+				} catch (NoSuchFieldException e3) {
+					return null;
 				}
 			}
 		}
-		parameterStack.push(result);
+		method.setAccessible(true);
+		return cache.put(key, InlineCache.INVOKE, InlineCache.toHandle(method), null, null);
 	}
 
 }
\ No newline at end of file
@@ -38,10 +38,25 @@ public class ListenerTemplate extends ProxyTemplate {
 		this.listener = listener;
 	}
 
+	/**
+	 * Tests whether this template renders the template by the listener, so it can be reused.
+	 * 
+	 * @param template - rendering template
+	 * @param listener - rendering listener
+	 * @return true if the same template and listener
+	 */
+	public boolean isListenerOf(Template template, Listener listener) {
+		return getTemplate() == template && this.listener == listener;
+	}
+
 	@Override
 	public void render(Object parameters, Object out)
 			throws IOException, ParseException {
-		listener.render(Context.getContext());
+		if (parameters instanceof Context && ((Context) parameters).isExplicit()) {
+			listener.render((Context) parameters);
+		} else {
+			listener.render(Context.getContext());
+		}
 	}
 
 }
\ No newline at end of file
@@ -24,13 +24,20 @@ import httl.spi.Translator;
 
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * MixedTemplate. (SPI, Prototype, ThreadSafe)
  * 
+ * Renders by the interpreted template until the compiled template is published.
+ * When the background compiler is present, the compilation runs off the request thread.
+ * 
+ * @see httl.spi.translators.MixedTranslator#setCompileAsync(boolean)
  * @see httl.Engine#getTemplate(String)
  * 
  * @author Liang Fei (liangfei0201 AT gmail DOT com)
@@ -51,14 +58,27 @@ public class MixedTemplate extends ProxyTemplate {
 
 	private final Logger logger;
 
+	private final BackgroundCompiler backgroundCompiler;
+
+	private final AtomicBoolean compiling = new AtomicBoolean();
+
 	private volatile Template compiledTemplate;
 	
 	private volatile boolean firstWarn = true;
 
+	private volatile boolean compileFailed;
+
 	public MixedTemplate(Template template, Resource resource, Node root, Map<String, Class<?>> types, 
 			Translator translator, Converter<Object, Object> mapConverter, Logger logger) {
+		this(template, resource, root, types, translator, mapConverter, logger, null);
+	}
+
+	public MixedTemplate(Template template, Resource resource, Node root, Map<String, Class<?>> types, 
+			Translator translator, Converter<Object, Object> mapConverter, Logger logger, 
+			BackgroundCompiler backgroundCompiler) {
 		super(template);
 		this.compiledTranslator = translator;
+		this.backgroundCompiler = backgroundCompiler;
 		this.mapConverter = mapConverter;
 		this.logger = logger;
 		this.resource = resource;
@@ -86,13 +106,18 @@ public class MixedTemplate extends ProxyTemplate {
 		}
 	}
 
+	public boolean isCompiled() {
+		return compiledTemplate != null;
+	}
+
 	public void render(Object parameters, Object stream)
 			throws IOException, ParseException {
-		if (compiledTemplate != null) {
-			compiledTemplate.render(parameters, stream);
+		Template template = compiledTemplate;
+		if (template != null) {
+			template.render(parameters, stream);
 			return;
 		}
-		Map<String, Object> map = convertMap(parameters);
+		Map<String, Object> map = compileFailed ? null : convertMap(parameters);
 		if (map != null) {
 			boolean compilable = true;
 			for (String key : getVariables().keySet()) {
@@ -106,8 +131,9 @@ public class MixedTemplate extends ProxyTemplate {
 				}
 			}
 			if (compilable) {
-				if (lock.tryLock()) {
-					lock.lock();
+				if (backgroundCompiler != null) {
+					compileAsync();
+				} else if (lock.tryLock()) {
 					try {
 						if (compiledTemplate == null) {
 							try {
@@ -122,14 +148,36 @@ public class MixedTemplate extends ProxyTemplate {
 					} finally {
 						lock.unlock();
 					}
-					if (compiledTemplate != null) {
-						compiledTemplate.render(parameters, stream);
+					template = compiledTemplate;
+					if (template != null) {
+						template.render(parameters, stream);
+						return;
 					}
-					return;
 				}
 			}
 		}
 		super.render(parameters, stream);
 	}
 
+	private void compileAsync() {
+		if (compiling.compareAndSet(false, true)) {
+			final Map<String, Class<?>> snapshot = new HashMap<String, Class<?>>(types);
+			boolean submitted = backgroundCompiler.submit(getName(), new Callable<Template>() {
+				public Template call() throws Exception {
+					try {
+						Template template = compiledTranslator.translate(resource, root, snapshot);
+						compiledTemplate = template;
+						return template;
+					} catch (Exception e) {
+						compileFailed = true; // keep the interpreted template, until reloaded.
+						throw e;
+					}
+				}
+			});
+			if (! submitted) {
+				compiling.set(false); // the queue is full, retry at the next rendering.
+			}
+		}
+	}
+
 }
\ No newline at end of file
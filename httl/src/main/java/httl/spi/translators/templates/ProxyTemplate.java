@@ -31,6 +31,7 @@ import java.text.ParseException;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 
 /**
  * ProxyTemplate. (SPI, Prototype, ThreadSafe)
@@ -46,6 +47,10 @@ public class ProxyTemplate implements Template {
 	public ProxyTemplate(Template template) {
 		this.template = template;
 	}
+
+	protected Template getTemplate() {
+		return template;
+	}
 	
 	public Object evaluate() throws ParseException {
 		return evaluate(null);
@@ -85,6 +90,11 @@ public class ProxyTemplate implements Template {
 		template.render(parameters, stream);
 	}
 
+	public CompletionStage<Void> renderAsync(Object parameters, Object stream)
+			throws IOException, ParseException {
+		return template.renderAsync(parameters, stream);
+	}
+
 	public String getName() {
 		return template.getName();
 	}
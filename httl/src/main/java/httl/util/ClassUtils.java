@@ -594,6 +594,15 @@ public class ClassUtils {
 		return result;
 	}
 
+	// The primitive overload is more specific than the object one for the boxed argument, whatever the methods order.
+	private static boolean isMoreSpecific(Class<?> type, Class<?> likeType, boolean boxed) {
+		if (boxed) {
+			type = ClassUtils.getBoxedClass(type);
+			likeType = ClassUtils.getBoxedClass(likeType);
+		}
+		return likeType.isAssignableFrom(type);
+	}
+
 	public static Method searchMethod(Class<?> currentClass, String name, Class<?>[] parameterTypes) throws NoSuchMethodException {
 		return searchMethod(currentClass, name, parameterTypes, false);
 	}
@@ -632,8 +641,8 @@ public class ClassUtils {
 							}
 						}
 						if (! eq) {
-							if (like && (likeMethod == null || likeMethod.getParameterTypes()[0]
-									.isAssignableFrom(method.getParameterTypes()[0]))) {
+							if (like && (likeMethod == null || isMoreSpecific(method.getParameterTypes()[0],
+									likeMethod.getParameterTypes()[0], boxed))) {
 								likeMethod = method;
 							}
 							continue;
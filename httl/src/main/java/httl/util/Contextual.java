@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Contextual. (SPI, Annotation, ThreadSafe)
+ * 
+ * Marks the import method, which first parameter is the httl.Context, to be called with the current context
+ * of the template, and the following parameters matched with the template arguments. The marked overload is
+ * preferred over the plain overload with the same arguments, the unmarked methods are never passed the context.
+ * 
+ * <pre>
+ * &#64;Contextual
+ * public Template include(Context context, String name) { ... }
+ * </pre>
+ * 
+ * @see httl.spi.methods.FileMethod
+ * @see httl.spi.translators.templates.CompiledVisitor
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface Contextual {
+}
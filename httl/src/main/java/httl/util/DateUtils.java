@@ -18,10 +18,14 @@ package httl.util;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * DateUtils. (Tool, Static, ThreadSafe)
@@ -41,6 +45,34 @@ public class DateUtils {
 
 	private static final ThreadLocal<Map<String, SimpleDateFormat>> LOCAL = new ThreadLocal<Map<String, SimpleDateFormat>>();
 
+	private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<String, DateTimeFormatter>();
+
+	/**
+	 * Get the shared formatter of the pattern and zone, it is immutable and resolved once.
+	 * 
+	 * @param format - the DateTimeFormatter pattern, or the default pattern if empty.
+	 * @param zone - the override zone, or none if null.
+	 * @return the formatter
+	 */
+	public static DateTimeFormatter getDateTimeFormatter(String format, ZoneId zone) {
+		if (StringUtils.isEmpty(format)) {
+			format = DEFAULT_FORMAT;
+		}
+		String key = zone == null ? format : format + "@" + zone.getId();
+		DateTimeFormatter formatter = FORMATTERS.get(key);
+		if (formatter == null) {
+			formatter = DateTimeFormatter.ofPattern(format);
+			if (zone != null) {
+				formatter = formatter.withZone(zone);
+			}
+			DateTimeFormatter old = FORMATTERS.putIfAbsent(key, formatter);
+			if (old != null) {
+				formatter = old;
+			}
+		}
+		return formatter;
+	}
+
 	public static DateFormat getDateFormat(String format, TimeZone timeZone) {
 		if (StringUtils.isEmpty(format) || DEFAULT_FORMAT.equals(format)) {
 			if (timeZone == null) {
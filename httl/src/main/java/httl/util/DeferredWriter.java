@@ -0,0 +1,176 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * DeferredWriter. (Prototype, ThreadSafe)
+ *
+ * Writes the output straight to the target writer, until a deferred value is pending.
+ * The output after a pending value is buffered in segments, and the segments are flushed
+ * in order as the pending values are resolved, from any thread.
+ *
+ * @see httl.Template#renderAsync(Object, Object)
+ *
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class DeferredWriter extends Writer {
+
+	private final Writer out;
+
+	// The pending slots and the buffers after them, in output order.
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+
+	private final CompletableFuture<Void> completion = new CompletableFuture<Void>();
+
+	private boolean finished;
+
+	public DeferredWriter(Writer out) {
+		if (out == null) throw new IllegalArgumentException("out == null");
+		this.out = out;
+	}
+
+	/**
+	 * Defer a value at the current position.
+	 * 
+	 * @return the slot to write the value, and then resolve it.
+	 */
+	public synchronized Writer defer() {
+		Segment slot = new Segment(false);
+		segments.add(slot);
+		segments.add(new Segment(true));
+		return slot.buffer;
+	}
+
+	/**
+	 * Resolve the deferred slot, and flush the resolved segments in order.
+	 * 
+	 * @param slot - the slot from the defer()
+	 */
+	public synchronized void resolve(Writer slot) {
+		for (Segment segment : segments) {
+			if (segment.buffer == slot) {
+				segment.resolved = true;
+				break;
+			}
+		}
+		drain();
+	}
+
+	/**
+	 * Reject the rendering, the pending segments are discarded.
+	 * 
+	 * @param cause - the failure
+	 */
+	public synchronized void reject(Throwable cause) {
+		segments.clear();
+		completion.completeExceptionally(cause);
+	}
+
+	/**
+	 * Finish the rendering, the returned stage is completed when all the segments are flushed.
+	 * 
+	 * @return completion
+	 */
+	public synchronized CompletionStage<Void> finish() {
+		finished = true;
+		drain();
+		return completion;
+	}
+
+	private void drain() {
+		if (completion.isDone()) {
+			return;
+		}
+		try {
+			while (! segments.isEmpty() && segments.getFirst().resolved) {
+				out.write(segments.removeFirst().buffer.toString());
+			}
+			if (finished && segments.isEmpty()) {
+				out.flush();
+				completion.complete(null);
+			}
+		} catch (Throwable e) {
+			reject(e);
+		}
+	}
+
+	@Override
+	public synchronized void write(int c) throws IOException {
+		if (segments.isEmpty()) {
+			out.write(c);
+		} else {
+			segments.getLast().buffer.write(c);
+		}
+	}
+
+	@Override
+	public synchronized void write(char[] cs, int off, int len) throws IOException {
+		if (segments.isEmpty()) {
+			out.write(cs, off, len);
+		} else {
+			segments.getLast().buffer.write(cs, off, len);
+		}
+	}
+
+	@Override
+	public synchronized void write(String str) throws IOException {
+		if (segments.isEmpty()) {
+			out.write(str);
+		} else {
+			segments.getLast().buffer.write(str);
+		}
+	}
+
+	@Override
+	public synchronized void write(String str, int off, int len) throws IOException {
+		if (segments.isEmpty()) {
+			out.write(str, off, len);
+		} else {
+			segments.getLast().buffer.write(str, off, len);
+		}
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (segments.isEmpty()) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+
+	private static final class Segment {
+
+		final UnsafeStringWriter buffer = new UnsafeStringWriter();
+
+		boolean resolved;
+
+		Segment(boolean resolved) {
+			this.resolved = resolved;
+		}
+
+	}
+
+}
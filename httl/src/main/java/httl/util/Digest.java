@@ -43,6 +43,16 @@ public class Digest {
 		return getHEX(messageDigest.digest());
 	}
 
+	// The 64-bit FNV-1a hash, cheap and non-cryptographic, the caller should verify the collision.
+	public static long getFNV64(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0, n = value.length(); i < n; i ++) {
+			hash ^= value.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
 	public static String getHEX(byte[] byteArray) {
 		StringBuilder buf = new StringBuilder();
 		for (int i = 0; i < byteArray.length; i++) {
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * GatheringOutputStream. (Prototype, NonThreadSafe)
+ *
+ * Gathers the template output into a chunk list, and writes it to the channel in one gathering write.
+ * The shared static texts are referenced without copy, only the dynamic values are copied into
+ * the reusable block. The chunk list is flushed when the block is full, or the chunks reach the limit.
+ * The channel should be in blocking mode.
+ *
+ * @see httl.spi.converters.ChannelOutConverter
+ *
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class GatheringOutputStream extends OutputStream {
+
+	private static final int MAX_CHUNKS = 1024; // IOV_MAX
+
+	private final WritableByteChannel channel;
+
+	private final ByteBuffer[] chunks = new ByteBuffer[MAX_CHUNKS];
+
+	private int count;
+
+	private final byte[] block;
+
+	private int position;
+
+	public GatheringOutputStream(WritableByteChannel channel) {
+		this(channel, 8192);
+	}
+
+	public GatheringOutputStream(WritableByteChannel channel, int size) {
+		if (channel == null) throw new IllegalArgumentException("channel == null");
+		if (size <= 0) throw new IllegalArgumentException("Illegal block size: " + size);
+		this.channel = channel;
+		this.block = new byte[size];
+	}
+
+	/**
+	 * Write the shared static text, such as the text fields of the template.
+	 *
+	 * @param out - the output stream
+	 * @param text - the wrapped text bytes, created once per text and never modified after writing.
+	 * @throws IOException
+	 */
+	public static void writeShared(OutputStream out, ByteBuffer text) throws IOException {
+		if (out instanceof GatheringOutputStream) {
+			((GatheringOutputStream) out).share(text);
+		} else {
+			out.write(text.array(), text.arrayOffset() + text.position(), text.remaining());
+		}
+	}
+
+	/**
+	 * Write the shared static text bytes, wrapped on each writing.
+	 *
+	 * @param out - the output stream
+	 * @param text - the read-only text bytes, never modified after writing.
+	 * @throws IOException
+	 */
+	public static void writeShared(OutputStream out, byte[] text) throws IOException {
+		if (out instanceof GatheringOutputStream) {
+			((GatheringOutputStream) out).share(ByteBuffer.wrap(text));
+		} else {
+			out.write(text);
+		}
+	}
+
+	public void share(ByteBuffer text) throws IOException {
+		if (text.hasRemaining()) {
+			if (count >= MAX_CHUNKS) {
+				flush();
+			}
+			// the read-only view keeps the position of the shared buffer, and is not merged with the block.
+			chunks[count ++] = text.asReadOnlyBuffer();
+		}
+	}
+
+	public void write(int b) throws IOException {
+		if (position >= block.length || count >= MAX_CHUNKS) {
+			flush();
+		}
+		block[position] = (byte) b;
+		append(position, 1);
+		position ++;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0)) throw new IndexOutOfBoundsException();
+		if (len == 0) return;
+		if (len > block.length) {
+			flush();
+			writeFully(ByteBuffer.wrap(b, off, len));
+			return;
+		}
+		if (position + len > block.length || count >= MAX_CHUNKS) {
+			flush();
+		}
+		System.arraycopy(b, off, block, position, len);
+		append(position, len);
+		position += len;
+	}
+
+	private void append(int offset, int length) {
+		if (count > 0) {
+			ByteBuffer last = chunks[count - 1];
+			// merge the adjacent dynamic values in the block.
+			if (! last.isReadOnly() && last.array() == block && last.limit() == offset) {
+				last.limit(offset + length);
+				return;
+			}
+		}
+		chunks[count ++] = ByteBuffer.wrap(block, offset, length);
+	}
+
+	public void flush() throws IOException {
+		if (count == 0) {
+			return;
+		}
+		try {
+			if (channel instanceof GatheringByteChannel) {
+				GatheringByteChannel gathering = (GatheringByteChannel) channel;
+				int offset = 0;
+				while (offset < count) {
+					gathering.write(chunks, offset, count - offset);
+					while (offset < count && ! chunks[offset].hasRemaining()) {
+						offset ++;
+					}
+				}
+			} else {
+				for (int i = 0; i < count; i ++) {
+					writeFully(chunks[i]);
+				}
+			}
+		} finally {
+			for (int i = 0; i < count; i ++) {
+				chunks[i] = null;
+			}
+			count = 0;
+			position = 0;
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+}
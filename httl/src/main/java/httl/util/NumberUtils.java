@@ -35,6 +35,8 @@ public class NumberUtils {
 		}
 	};
 
+	private static final byte[] MIN_LONG_BYTES = String.valueOf(Long.MIN_VALUE).getBytes();
+
 	private static final ThreadLocal<Map<String, DecimalFormat>> LOCAL = new ThreadLocal<Map<String, DecimalFormat>>();
 
 	public static DecimalFormat getDecimalFormat(String format) {
@@ -57,5 +59,54 @@ public class NumberUtils {
 	public static String format(Number value, String format) {
 		return getDecimalFormat(format).format(value);
 	}
+
+	/**
+	 * Write the ASCII digits of the value into the buffer, as String.valueOf(long).
+	 * 
+	 * @param value - the value
+	 * @param buffer - the buffer, at least 20 bytes
+	 * @return the length of the digits
+	 */
+	public static int toBytes(long value, byte[] buffer) {
+		if (value == Long.MIN_VALUE) {
+			System.arraycopy(MIN_LONG_BYTES, 0, buffer, 0, MIN_LONG_BYTES.length);
+			return MIN_LONG_BYTES.length;
+		}
+		int length = 0;
+		if (value < 0) {
+			buffer[length ++] = '-';
+			value = - value;
+		}
+		int digits = 1;
+		for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+			digits ++;
+		}
+		length += digits;
+		int i = length;
+		do {
+			buffer[-- i] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		return length;
+	}
+
+	/**
+	 * Write the ASCII digits of the whole value into the buffer, as String.valueOf(double).
+	 * 
+	 * @param value - the value
+	 * @param buffer - the buffer, at least 24 bytes
+	 * @return the length of the digits, or -1 if the value is not a whole number below 10^7.
+	 */
+	public static int toBytes(double value, byte[] buffer) {
+		// String.valueOf writes the whole value below 10^7 as the plain digits with ".0"
+		if (value != Math.rint(value) || Math.abs(value) >= 1e7
+				|| (value == 0 && Double.doubleToRawLongBits(value) != 0)) {
+			return -1;
+		}
+		int length = toBytes((long) value, buffer);
+		buffer[length ++] = '.';
+		buffer[length ++] = '0';
+		return length;
+	}
 	
 }
\ No newline at end of file
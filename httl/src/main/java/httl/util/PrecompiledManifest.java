@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * PrecompiledManifest. (Tool, Prototype, ThreadSafe)
+ * 
+ * Maps the template name and source hash to the template class compiled at build time.
+ * 
+ * @see httl.spi.translators.CompiledTranslator#setPrecompiledManifest(String)
+ * 
+ * @author Liang Fei (liangfei0201 AT gmail DOT com)
+ */
+public class PrecompiledManifest {
+
+	public static final String DEFAULT_PATH = "META-INF/httl-precompiled.properties";
+
+	private final Properties properties = new Properties();
+
+	/**
+	 * Load the manifest from the classpath.
+	 * 
+	 * @param path - manifest path
+	 * @return manifest, null if not found
+	 */
+	public static PrecompiledManifest load(String path) throws IOException {
+		if (path.startsWith("/")) {
+			path = path.substring(1);
+		}
+		InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(path);
+		if (in == null) {
+			in = PrecompiledManifest.class.getClassLoader().getResourceAsStream(path);
+			if (in == null) {
+				return null;
+			}
+		}
+		try {
+			PrecompiledManifest manifest = new PrecompiledManifest();
+			manifest.properties.load(in);
+			return manifest;
+		} finally {
+			in.close();
+		}
+	}
+
+	public static String getHash(String source) {
+		return Digest.getMD5(source);
+	}
+
+	private static String getKey(String name, String hash, boolean stream) {
+		return name + "#" + hash + (stream ? "#stream" : "#writer");
+	}
+
+	/**
+	 * Get the precompiled class name.
+	 * 
+	 * @param name - template name
+	 * @param source - template source
+	 * @param stream - stream or writer template
+	 * @return class name, null if the template is not precompiled or changed.
+	 */
+	public String getClassName(String name, String source, boolean stream) {
+		if (properties.isEmpty()) {
+			return null;
+		}
+		return properties.getProperty(getKey(name, getHash(source), stream));
+	}
+
+	public void put(String name, String source, boolean stream, String className) {
+		properties.setProperty(getKey(name, getHash(source), stream), className);
+	}
+
+	public int size() {
+		return properties.size();
+	}
+
+	public void store(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null && ! dir.exists() && ! dir.mkdirs()) {
+			throw new IOException("Failed to create directory " + dir.getAbsolutePath());
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "HTTL precompiled templates: name#hash#output=class");
+		} finally {
+			out.close();
+		}
+	}
+
+}
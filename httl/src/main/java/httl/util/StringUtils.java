@@ -15,8 +15,11 @@
  */
 package httl.util;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Collection;
@@ -695,6 +698,122 @@ public class StringUtils {
 		return src;
 	}
 
+	private static final byte[] LT_BYTES = new byte[] {'&', 'l', 't', ';'};
+
+	private static final byte[] GT_BYTES = new byte[] {'&', 'g', 't', ';'};
+
+	private static final byte[] QUOT_BYTES = new byte[] {'&', 'q', 'u', 'o', 't', ';'};
+
+	private static final byte[] APOS_BYTES = new byte[] {'&', 'a', 'p', 'o', 's', ';'};
+
+	private static final byte[] AMP_BYTES = new byte[] {'&', 'a', 'm', 'p', ';'};
+
+	private static String getXmlEscape(char ch) {
+		switch (ch) {
+			case '<':
+				return "&lt;";
+			case '>':
+				return "&gt;";
+			case '\"':
+				return "&quot;";
+			case '\'':
+				return "&apos;";
+			case '&':
+				return "&amp;";
+			default:
+				return null;
+		}
+	}
+
+	private static byte[] getXmlEscape(byte ch) {
+		switch (ch) {
+			case 60:
+				return LT_BYTES;
+			case 62:
+				return GT_BYTES;
+			case 34:
+				return QUOT_BYTES;
+			case 39:
+				return APOS_BYTES;
+			case 38:
+				return AMP_BYTES;
+			default:
+				return null;
+		}
+	}
+
+	public static void escapeXml(String value, Writer out) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int len = value.length();
+		int begin = 0;
+		for (int i = 0; i < len; i ++) {
+			String escape = getXmlEscape(value.charAt(i));
+			if (escape != null) {
+				if (i > begin) {
+					out.write(value, begin, i - begin);
+				}
+				out.write(escape);
+				begin = i + 1;
+			}
+		}
+		if (begin == 0) {
+			out.write(value);
+		} else if (begin < len) {
+			out.write(value, begin, len - begin);
+		}
+	}
+
+	public static void escapeXml(char[] value, Writer out) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int len = value.length;
+		int begin = 0;
+		for (int i = 0; i < len; i ++) {
+			String escape = getXmlEscape(value[i]);
+			if (escape != null) {
+				if (i > begin) {
+					out.write(value, begin, i - begin);
+				}
+				out.write(escape);
+				begin = i + 1;
+			}
+		}
+		if (begin < len) {
+			out.write(value, begin, len - begin);
+		}
+	}
+
+	public static void escapeXml(byte[] value, OutputStream out) throws IOException {
+		if (value == null) {
+			return;
+		}
+		escapeXml(value, 0, value.length, out);
+	}
+
+	public static void escapeXml(byte[] value, int offset, int length, OutputStream out) throws IOException {
+		if (value == null) {
+			return;
+		}
+		int len = offset + length;
+		int begin = offset;
+		for (int i = offset; i < len; i ++) {
+			byte[] escape = getXmlEscape(value[i]);
+			if (escape != null) {
+				if (i > begin) {
+					out.write(value, begin, i - begin);
+				}
+				out.write(escape);
+				begin = i + 1;
+			}
+		}
+		if (begin < len) {
+			out.write(value, begin, len - begin);
+		}
+	}
+
 	private static char[] expand(char[] src, int off, int inc) {
 		int len = Math.max(src.length * 2, off + inc);
 		char[] dest = new char[len];
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.caches;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveCacheTest {
+
+	@Test
+	public void testFrequencyAdmission() {
+		Assert.assertTrue(sweep(true) >= 45);
+		Assert.assertTrue(sweep(false) < 5);
+	}
+
+	@Test
+	public void testStats() {
+		AdaptiveCache<String, String> cache = new AdaptiveCache<String, String>();
+		cache.setCacheCapacity(2);
+		cache.init();
+		for (int i = 0; i < 2; i ++) {
+			for (String key : new String[] { "a", "b", "c" }) {
+				if (cache.get(key) == null) {
+					cache.putIfAbsent(key, key);
+				}
+			}
+		}
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(6, cache.getMissCount());
+		Assert.assertEquals(4, cache.getEvictionCount());
+		Assert.assertEquals(0, cache.getRecompileCount()); // not counted without the frequencies
+		Assert.assertEquals("c", cache.get("c"));
+		Assert.assertEquals(1.0 / 7, cache.getHitRate(), 0.001);
+	}
+
+	@Test
+	public void testRecompileStats() {
+		AdaptiveCache<String, String> cache = new AdaptiveCache<String, String>();
+		cache.setCacheCapacity(100);
+		cache.setCacheFrequencyAdmission(true);
+		for (int i = 0; i < 2; i ++) {
+			for (int j = 0; j < 200; j ++) {
+				String key = String.valueOf(j);
+				if (cache.get(key) == null) {
+					cache.putIfAbsent(key, key);
+				}
+			}
+		}
+		Assert.assertTrue(cache.getRecompileCount() > 0);
+		Assert.assertTrue(cache.getRecompileCount() <= cache.getEvictionCount());
+	}
+
+	// Warm up 50 hot entries, then sweep over 1000 cold ones, and count the hot entries kept.
+	private static int sweep(boolean frequencyAdmission) {
+		AdaptiveCache<String, String> cache = new AdaptiveCache<String, String>();
+		cache.setCacheCapacity(100);
+		cache.setCacheFrequencyAdmission(frequencyAdmission);
+		cache.init();
+		for (int i = 0; i < 10; i ++) {
+			for (int j = 0; j < 50; j ++) {
+				request(cache, "hot" + j);
+			}
+		}
+		for (int i = 0; i < 1000; i ++) {
+			request(cache, "cold" + i);
+		}
+		int kept = 0;
+		for (int j = 0; j < 50; j ++) {
+			if (cache.containsKey("hot" + j)) {
+				kept ++;
+			}
+		}
+		return kept;
+	}
+
+	private static void request(AdaptiveCache<String, String> cache, String key) {
+		if (cache.get(key) == null) {
+			cache.putIfAbsent(key, key);
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.codecs;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.codecs.json.JSON;
+import httl.spi.codecs.json.JSONValue;
+import httl.spi.compilers.JdkCompiler;
+import httl.spi.converters.BeanMapConverter;
+import httl.test.model.Book;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonCodecTest {
+
+	@Test
+	public void testGeneratedEncoder() throws Exception {
+		JdkCompiler compiler = new JdkCompiler();
+		compiler.init();
+		BeanMapConverter converter = new BeanMapConverter();
+		converter.setCompiler(compiler);
+		JsonCodec codec = new JsonCodec();
+		codec.setCompiler(compiler);
+		List<Book> books = Arrays.asList(new Book("httl", "liangfei", null, new Date(0), 100, 90),
+				new Book("\"quoted\"", null, "publisher", null, 0, 0));
+		String expected = JSON.json(books, false, converter);
+		Assert.assertTrue(expected.contains("\"title\":\"\\\"quoted\\\"\""));
+		Assert.assertEquals(expected, codec.toString(null, books));
+		Assert.assertEquals(JSON.json(books, true, converter), JSON.json(books, true, new JSONValue(converter, compiler)));
+	}
+
+	@Test
+	public void testEncodeStream() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("output.encoding", "UTF-8");
+		Engine engine = Engine.getEngine("httl-encode-stream.properties", properties);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("books", Arrays.asList(new Book("\u4e2d\u6587", "liangfei", null, new Date(0), 100, 90)));
+		String expected = engine.parseTemplate("$!{encodeJson(books)}").evaluate(parameters).toString();
+		Template template = engine.parseTemplate("<script>var books = $!{encodeJsonStream(books)};</script>");
+		Assert.assertEquals("<script>var books = " + expected + ";</script>", template.evaluate(parameters));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		template.render(parameters, out);
+		Assert.assertEquals("<script>var books = " + expected + ";</script>", new String(out.toByteArray(), "UTF-8"));
+		Assert.assertEquals(engine.parseTemplate("${encodeJson(books)}").evaluate(parameters),
+				engine.parseTemplate("${encodeJsonStream(books)}").evaluate(parameters));
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.compilers;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JdkCompilerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testBatchCompile() throws Exception {
+		JdkCompiler compiler = new JdkCompiler();
+		compiler.init();
+		String[] codes = new String[] {
+			"package httl.test.batch; public class BatchA { public String toString() { return new BatchB().toString(); } }",
+			"package httl.test.batch; public class BatchB { public String toString() { return \"b\"; } }"
+		};
+		Class<?>[] classes = compiler.compile(codes);
+		Assert.assertEquals(2, classes.length);
+		Assert.assertEquals("httl.test.batch.BatchA", classes[0].getName());
+		Assert.assertEquals("httl.test.batch.BatchB", classes[1].getName());
+		Assert.assertEquals("b", classes[0].newInstance().toString());
+		// cached
+		Assert.assertSame(classes[1], compiler.compile(codes[1]));
+	}
+
+	@Test
+	public void testCompileDirectory() throws Exception {
+		File directory = folder.getRoot();
+		String macro = "package httl.test.saved; public class Macro_ts0123456789abcdef0123456789abcdef { public String toString() { return \"m\"; } }";
+		String template = "package httl.test.saved; public class Page_ts0123456789abcdef0123456789abcdef { public String toString() { return \"p\" + new Macro_ts0123456789abcdef0123456789abcdef(); } }";
+		// the macro class saved by the last run.
+		File source = new File(directory, "Macro_ts0123456789abcdef0123456789abcdef.java");
+		FileWriter writer = new FileWriter(source);
+		try {
+			writer.write(macro);
+		} finally {
+			writer.close();
+		}
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		StandardJavaFileManager fileManager = javac.getStandardFileManager(null, null, null);
+		try {
+			Assert.assertTrue(javac.getTask(null, fileManager, null, Arrays.asList("-d", directory.getAbsolutePath()), null,
+					fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(source))).call());
+		} finally {
+			fileManager.close();
+		}
+
+		JdkCompiler compiler = new JdkCompiler();
+		compiler.setClassNameDigest(true);
+		compiler.setCompileDirectory(directory.getAbsolutePath());
+		compiler.init();
+		Class<?> macroClass = compiler.compile(macro);
+		Class<?> templateClass = compiler.compile(template);
+		Assert.assertEquals("pm", templateClass.newInstance().toString());
+		Assert.assertSame(macroClass, templateClass.getClassLoader().loadClass(macroClass.getName()));
+	}
+
+	@Test
+	public void testUnloadReplacedClass() throws Exception {
+		JdkCompiler compiler = new JdkCompiler();
+		compiler.init();
+		WeakReference<ClassLoader> loader = compile(compiler, "Replaced_ts1", "v1");
+		// the changed template is compiled with the new timestamp, and replaces the old class loader.
+		Assert.assertEquals("v2", compiler.compile("package httl.test.unload; public class Replaced_ts2 { public String toString() { return \"v2\"; } }").newInstance().toString());
+		for (int i = 0; i < 100 && loader.get() != null; i ++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertNull(loader.get());
+	}
+
+	private static WeakReference<ClassLoader> compile(JdkCompiler compiler, String className, String value) throws Exception {
+		Class<?> cls = compiler.compile("package httl.test.unload; public class " + className + " { public String toString() { return \"" + value + "\"; } }");
+		Assert.assertEquals(value, cls.newInstance().toString());
+		return new WeakReference<ClassLoader>(cls.getClassLoader());
+	}
+
+}
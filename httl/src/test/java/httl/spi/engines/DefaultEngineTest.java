@@ -0,0 +1,226 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.engines;
+
+import httl.Engine;
+import httl.Template;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DefaultEngineTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWatchReloadable() throws Exception {
+		File directory = folder.getRoot();
+		File file = new File(directory, "hello.httl");
+		write(file, "hello v1");
+		long lastModified = file.lastModified();
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "100");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-watch-reloadable.properties", properties);
+		Assert.assertEquals("hello v1", engine.getTemplate("/hello.httl").evaluate());
+		Assert.assertSame(engine.getTemplate("/hello.httl"), engine.getTemplate("/hello.httl"));
+
+		File changed = new File(directory, "hello.tmp"); // replace it at once, the watcher may read a truncated file.
+		write(changed, "hello v2");
+		Assert.assertTrue(changed.setLastModified(Math.max(lastModified, System.currentTimeMillis()) + 1000));
+		Assert.assertTrue(changed.renameTo(file));
+		Object result = null;
+		for (int i = 0; i < 100 && ! "hello v2".equals(result); i ++) {
+			Thread.sleep(100);
+			result = engine.getTemplate("/hello.httl").evaluate();
+		}
+		Assert.assertEquals("hello v2", result);
+	}
+
+	@Test
+	public void testReloadDependents() throws Exception {
+		File directory = folder.getRoot();
+		File macros = new File(directory, "macros.httl");
+		write(macros, "#macro(greet(String name))hi ${name} v1#end");
+		long lastModified = macros.lastModified();
+		write(new File(directory, "page.httl"), "${greet(\"httl\")}");
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("import.macros", "/macros.httl");
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "100");
+		properties.setProperty("reload.dependents.eagerly", "true");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-reload-dependents.properties", properties);
+		Assert.assertEquals("hi httl v1", engine.getTemplate("/page.httl").evaluate());
+		Assert.assertTrue(engine.getDependents("/macros.httl").contains("/page.httl"));
+
+		File changed = new File(directory, "macros.tmp"); // replace it at once, the page can not be parsed with a partial macros.
+		write(changed, "#macro(greet(String name))hi ${name} v2#end");
+		Assert.assertTrue(changed.setLastModified(lastModified + 1000));
+		Assert.assertTrue(changed.renameTo(macros));
+		Object result = null;
+		for (int i = 0; i < 100 && ! "hi httl v2".equals(result); i ++) {
+			Thread.sleep(100);
+			result = engine.getTemplate("/page.httl").evaluate();
+		}
+		Assert.assertEquals("hi httl v2", result);
+	}
+
+	@Test
+	public void testWatchUnchanged() throws Exception {
+		File directory = folder.getRoot();
+		write(new File(directory, "hello.httl"), "hello");
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "100");
+		properties.setProperty("localized", "true");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-watch-unchanged.properties", properties);
+		Template template = engine.getTemplate("/hello.httl");
+		for (int i = 0; i < 5; i ++) { // the changes of the localized file are coalesced, and the template itself is not changed.
+			write(new File(directory, "hello_zh_CN.httl"), "hello zh " + i);
+			Thread.sleep(20);
+		}
+		Thread.sleep(1000);
+		Assert.assertSame(template, engine.getTemplate("/hello.httl"));
+		Assert.assertEquals("hello zh 4", engine.getTemplate("/hello.httl", Locale.CHINA).evaluate());
+	}
+
+	@Test
+	public void testCloseWatcher() throws Exception {
+		File directory = folder.getRoot();
+		File file = new File(directory, "hello.httl");
+		write(file, "hello v1");
+		long lastModified = file.lastModified();
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "100");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-close-watcher.properties", properties);
+		Assert.assertEquals("hello v1", engine.getTemplate("/hello.httl").evaluate());
+		((DefaultEngine) engine).close();
+		write(file, "hello v2");
+		Assert.assertTrue(file.setLastModified(lastModified + 1000));
+		// checked by the last modified time on the request after the watcher is closed.
+		Assert.assertEquals("hello v2", engine.getTemplate("/hello.httl").evaluate());
+	}
+
+	@Test
+	public void testSourceCache() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("source.cache.capacity", "10000");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-source-cache.properties", properties);
+		SourceCache cache = ((DefaultEngine) engine).getSourceCache();
+		Template template = engine.parseTemplate("hello ${name}");
+		Assert.assertSame(template, engine.parseTemplate(new String("hello ${name}")));
+		Assert.assertEquals(1, cache.getHitCount());
+		for (int i = 0; i < 5; i ++) {
+			Assert.assertEquals("hello " + i, engine.parseTemplate("hello " + i).evaluate());
+		}
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+		Assert.assertTrue(cache.size() <= 2);
+	}
+
+	@Test
+	public void testSourceCacheDependencies() throws Exception {
+		File directory = folder.getRoot();
+		write(new File(directory, "macros.httl"), "#macro(greet(String name))hi ${name}#end");
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("import.macros", "/macros.httl");
+		properties.setProperty("source.cache.capacity", "10000");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-source-dependencies.properties", properties);
+		for (int i = 0; i < 5; i ++) {
+			Assert.assertEquals("hi " + i, engine.parseTemplate("${greet(\"" + i + "\")}").evaluate());
+		}
+		SourceCache cache = ((DefaultEngine) engine).getSourceCache();
+		Assert.assertTrue(cache.getEvictionCount() > 0);
+		// the evicted templates no longer depend on the macros.
+		Assert.assertEquals(cache.size(), engine.getDependents("/macros.httl").size());
+	}
+
+	@Test
+	public void testLoadedClassCount() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("source.cache.capacity", "20000");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-loaded-class-count.properties", properties);
+		for (int i = 0; i < 20; i ++) {
+			engine.parseTemplate("hello " + i + " ${name}").evaluate();
+		}
+		int count = ((DefaultEngine) engine).getLoadedClassCount();
+		Assert.assertTrue(count > 0);
+		Assert.assertTrue(count <= 2 * ((DefaultEngine) engine).getSourceCache().size());
+	}
+
+	@Test
+	public void testParallelPreload() throws Exception {
+		File directory = folder.getRoot();
+		write(new File(directory, "macros.httl"), "#macro(greet(String name))hi ${name}#end");
+		for (int i = 0; i < 20; i ++) {
+			write(new File(directory, "page" + i + ".httl"), "${greet(\"page" + i + "\")}");
+		}
+		write(new File(directory, "broken.httl"), "${undefined(\"broken\")}"); // not counted as preloaded.
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("import.macros", "/macros.httl");
+		properties.setProperty("preload", "true");
+		properties.setProperty("preload.threads", "4");
+		properties.setProperty("preload.async", "true");
+		Engine engine = Engine.getEngine("httl-parallel-preload.properties", properties);
+		Assert.assertEquals(Integer.valueOf(21), engine.getPreloaded().toCompletableFuture().get(60, TimeUnit.SECONDS));
+		Assert.assertEquals("hi page7", engine.getTemplate("/page7.httl").evaluate());
+	}
+
+	private static void write(File file, String source) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.interceptors;
+
+import httl.Engine;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExtendsInterceptorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDefaultLayout() throws Exception {
+		File directory = folder.getRoot();
+		Assert.assertTrue(new File(directory, "sub").mkdirs());
+		write(new File(directory, "default.httl"), "[${nested}]");
+		File page = new File(directory, "page.httl");
+		write(page, "hi");
+		write(new File(directory, "sub/page.httl"), "hi sub");
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("extends.default", "default.httl");
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "0");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-default-layout.properties", properties);
+		Assert.assertEquals("[hi]", engine.getTemplate("/page.httl").evaluate());
+		Assert.assertEquals("[hi]", engine.getTemplate("/page.httl").evaluate());
+		Assert.assertEquals("hi sub", engine.getTemplate("/sub/page.httl").evaluate());
+
+		// the added layout is found, the missing layout is not cached for the reloadable engine.
+		write(new File(directory, "sub/default.httl"), "<${nested}>");
+		Assert.assertEquals("<hi sub>", engine.getTemplate("/sub/page.httl").evaluate());
+
+		// the reloaded template resolves the layout again.
+		long lastModified = page.lastModified();
+		write(page, "hi v2");
+		Assert.assertTrue(page.setLastModified(lastModified + 1000));
+		Assert.assertEquals("[hi v2]", engine.getTemplate("/page.httl").evaluate());
+	}
+
+	@Test
+	public void testWatchMissingLayout() throws Exception {
+		File directory = folder.getRoot();
+		write(new File(directory, "page.httl"), "hi");
+
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("extends.default", "default.httl");
+		properties.setProperty("reloadable", "true");
+		properties.setProperty("reload.interval", "100");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-missing-layout.properties", properties);
+		Assert.assertEquals("hi", engine.getTemplate("/page.httl").evaluate());
+
+		// the missing layout is cached until the watcher sees the added layout.
+		write(new File(directory, "default.httl"), "[${nested}]");
+		Object result = null;
+		for (int i = 0; i < 100 && ! "[hi]".equals(result); i ++) {
+			Thread.sleep(100);
+			result = engine.getTemplate("/page.httl").evaluate();
+		}
+		Assert.assertEquals("[hi]", result);
+	}
+
+	private static void write(File file, String source) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
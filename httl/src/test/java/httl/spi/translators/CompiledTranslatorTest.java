@@ -0,0 +1,360 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators;
+
+import httl.Context;
+import httl.Engine;
+import httl.Template;
+import httl.spi.translators.templates.AdaptiveTemplate;
+import httl.test.method.ContextualMethods;
+import httl.util.PrecompiledManifest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CompiledTranslatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPrecompiledManifest() throws Exception {
+		File root = folder.getRoot();
+		File templates = new File(root, "templates");
+		File classes = new File(root, "classes");
+		Assert.assertTrue(templates.mkdirs());
+		String source = "#macro(hello(String name))hello ${name}#end${hello(name)}";
+		FileWriter writer = new FileWriter(new File(templates, "hello.httl"));
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "world");
+
+		// build time
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", templates.getAbsolutePath());
+		properties.setProperty("compile.directory", classes.getAbsolutePath());
+		properties.setProperty("text.in.class", "true");
+		properties.setProperty("precompiled.manifest", "");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-precompiled-build.properties", properties);
+		AdaptiveTemplate template = (AdaptiveTemplate) engine.getTemplate("/hello.httl");
+		Assert.assertEquals("hello world", template.evaluate(parameters));
+		PrecompiledManifest manifest = new PrecompiledManifest();
+		manifest.put("/hello.httl", source, false, template.getWriterTemplate().getClass().getName());
+		manifest.put("/hello.httl", source, true, template.getStreamTemplate().getClass().getName());
+		manifest.store(new File(classes, PrecompiledManifest.DEFAULT_PATH));
+
+		// runtime
+		Thread thread = Thread.currentThread();
+		ClassLoader contextLoader = thread.getContextClassLoader();
+		ClassLoader classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL() }, contextLoader);
+		thread.setContextClassLoader(classLoader);
+		try {
+			properties.remove("compile.directory");
+			properties.setProperty("precompiled.manifest", PrecompiledManifest.DEFAULT_PATH);
+			engine = Engine.getEngine("httl-precompiled-runtime.properties", properties);
+			Template precompiled = engine.getTemplate("/hello.httl");
+			Assert.assertSame(classLoader, ((AdaptiveTemplate) precompiled).getWriterTemplate().getClass().getClassLoader());
+			Assert.assertEquals("hello world", precompiled.evaluate(parameters));
+		} finally {
+			thread.setContextClassLoader(contextLoader);
+		}
+	}
+
+	@Test
+	public void testClassNameDigest() throws Exception {
+		File classes = folder.newFolder("classes");
+		Properties properties = new Properties();
+		properties.setProperty("class.name.digest", "true");
+		properties.setProperty("compile.directory", classes.getAbsolutePath());
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-digest.properties", properties);
+		AdaptiveTemplate template = (AdaptiveTemplate) engine.parseTemplate("${1 + 2}");
+		Assert.assertEquals("3", template.evaluate());
+		String className = template.getWriterTemplate().getClass().getName();
+		Assert.assertTrue(className, className.matches(".*_w_ts[0-9a-f]{32}"));
+		Assert.assertTrue(new File(classes, className.replace('.', '/') + ".class").exists());
+		// the paths are not in the digest, the class name also has the engine name.
+		String digest = className.substring(className.lastIndexOf('_'));
+		properties.setProperty("compile.directory", folder.newFolder("other").getAbsolutePath());
+		properties.setProperty("template.directory", "/other");
+		engine = Engine.getEngine("httl-digest-path.properties", properties);
+		template = (AdaptiveTemplate) engine.parseTemplate("${1 + 2}");
+		Assert.assertTrue(template.getWriterTemplate().getClass().getName().endsWith(digest));
+		// the code settings are.
+		properties.setProperty("import.packages", "java.util,java.io");
+		engine = Engine.getEngine("httl-digest-import.properties", properties);
+		template = (AdaptiveTemplate) engine.parseTemplate("${1 + 2}");
+		Assert.assertFalse(template.getWriterTemplate().getClass().getName().endsWith(digest));
+	}
+
+	@Test
+	public void testVariableFrame() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compiled.slots", "true");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-variable-frame.properties", properties);
+		String source = "#macro(show)${level}${name}${count}#end${level}${name}#for(i : 1..2)${show()}#set(count = i)#end";
+		Template template = engine.parseTemplate(source);
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "a");
+		// the macro finds name in the parent frame, the level is resolved for the nested context, and the count is put later.
+		Assert.assertEquals("1a2a2a1", template.evaluate(parameters));
+		// the same as the map reads without the slots.
+		properties.setProperty("compiled.slots", "false");
+		engine = Engine.getEngine("httl-variable-map.properties", properties);
+		Assert.assertEquals("1a2a2a1", engine.parseTemplate(source).evaluate(parameters));
+	}
+
+	@Test
+	public void testOutline() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("outline.size", "0");
+		Engine expectedEngine = Engine.getEngine("httl-outline-none.properties", properties);
+		properties.setProperty("outline.size", "50");
+		Engine engine = Engine.getEngine("httl-outline.properties", properties);
+		String source = "#set(int sum = 0)#set(String name)<p>${name}</p>"
+				+ "#for(int i : 1..5)#if(i > 1)${i}, #else first, #end#set(sum = sum + i)#set(j = i * 2)${j}#break(i == 4)#end"
+				+ "#for(int i : 1..3)#set(k = i)${k}#end${sum}, ${i}"
+				+ "#for(int i : empty)${i}#else${i}#end#if(sum > 100)#break#end end";
+		Template expected = expectedEngine.parseTemplate(source);
+		Template template = engine.parseTemplate(source);
+		Assert.assertTrue(isOutlined(template));
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "httl");
+		parameters.put("empty", new int[0]);
+		Assert.assertEquals(expected.evaluate(parameters), template.evaluate(parameters));
+	}
+
+	@Test
+	public void testNumberOutput() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-number-output.properties", properties);
+		String source = "#set(int i = -12)#set(long l = 9223372036854775807L)#set(double d = 2)#set(float f = 1.5)"
+				+ "${i},${l},${d},${f},$!{i * 1000},${d * 10000000},${i > 0}";
+		Template template = engine.parseTemplate(source);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		template.render(output);
+		Assert.assertEquals("-12,9223372036854775807,2.0,1.5,-12000,2.0E7,false", new String(output.toByteArray(), "UTF-8"));
+		properties.setProperty("formatters+", "httl.spi.formatters.NumberFormatter");
+		properties.setProperty("number.format", "#,##0.00");
+		Engine formatEngine = Engine.getEngine("httl-number-format.properties", properties);
+		template = formatEngine.parseTemplate(source);
+		output = new ByteArrayOutputStream();
+		template.render(output);
+		DecimalFormat format = new DecimalFormat("#,##0.00");
+		Assert.assertEquals(format.format(-12) + "," + format.format(Long.MAX_VALUE) + "," + format.format(2) + "," + format.format(1.5)
+				+ "," + format.format(-12000) + "," + format.format(2e7) + ",false", new String(output.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void testDateOutput() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("date.format", "yyyy-MM-dd HH:mm");
+		properties.setProperty("time.zone", "GMT+8");
+		properties.setProperty("import.packages+", "java.time");
+		Engine engine = Engine.getEngine("httl-date-output.properties", properties);
+		Template template = engine.parseTemplate("#set(Date date, LocalDate day, Object instant, ZonedDateTime time)"
+				+ "${date}|$!{date}|${day}|$!{instant}|${time}|${instant}");
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("date", new Date(0));
+		parameters.put("day", LocalDate.of(2013, 1, 2));
+		parameters.put("instant", Instant.ofEpochSecond(3600));
+		parameters.put("time", ZonedDateTime.of(2013, 1, 2, 3, 4, 0, 0, ZoneOffset.UTC));
+		Assert.assertEquals("1970-01-01 08:00|1970-01-01 08:00|2013-01-02 00:00|1970-01-01 09:00|2013-01-02 11:04|1970-01-01 09:00",
+				template.evaluate(parameters));
+	}
+
+	@Test
+	public void testExplicitContext() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-explicit-context.properties", properties);
+		final Template inner = engine.parseTemplate("#set(String name)[${name}:${level}]");
+		final Template outer = engine.parseTemplate("#set(String name, Template inner)"
+				+ "#macro(hello(String who))hi ${who}#end${hello(name)} ${inner}");
+		// the contexts are created by this thread, and rendered by the others.
+		int count = 2000;
+		List<Context> contexts = new ArrayList<Context>();
+		for (int i = 0; i < count; i ++) {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("name", "n" + i);
+			parameters.put("inner", inner);
+			contexts.add(Context.newContext(parameters));
+		}
+		ExecutorService executor;
+		try {
+			executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) { // before java 21
+			executor = Executors.newFixedThreadPool(16);
+		}
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (final Context context : contexts) {
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						return outer.evaluate(context);
+					}
+				}));
+			}
+			for (int i = 0; i < count; i ++) {
+				Assert.assertEquals("hi n" + i + " [n" + i + ":2]", results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertNull(contexts.get(0).getTemplate());
+	}
+
+	@Test
+	public void testExplicitContextFiles() throws Exception {
+		File directory = folder.getRoot();
+		Assert.assertTrue(new File(directory, "dir").mkdirs());
+		write(new File(directory, "dir/inc.httl"), "#set(String name)<${name}>");
+		write(new File(directory, "dir/layout.httl"), "[${include(\"inc.httl\")}|${main}]");
+		write(new File(directory, "dir/page.httl"), "#set(String name)$!{extends(\"layout.httl\")}#macro(main)hi ${name}#end");
+		Properties properties = new Properties();
+		properties.setProperty("loaders", "httl.spi.loaders.FileLoader");
+		properties.setProperty("template.directory", directory.getAbsolutePath());
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-explicit-context-files.properties", properties);
+		final Template page = engine.getTemplate("/dir/page.httl");
+		int count = 200;
+		List<Context> contexts = new ArrayList<Context>();
+		for (int i = 0; i < count; i ++) {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("name", "n" + i);
+			contexts.add(Context.newContext(parameters));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			for (final Context context : contexts) {
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						Object result = page.evaluate(context);
+						// the extends writes the macros into the explicit context, not the thread local one.
+						Assert.assertNull(Context.getContext().get("main"));
+						return result;
+					}
+				}));
+			}
+			for (int i = 0; i < count; i ++) {
+				Assert.assertEquals("[<n" + i + ">|hi n" + i + "]", results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testContextualMethods() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("import.methods+", ContextualMethods.class.getName());
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-contextual-methods.properties", properties);
+		// only the marked overload is passed the context, the unmarked one is the user function as is.
+		Assert.assertEquals("context a|plain b", engine.parseTemplate("${marked(\"a\")}|${unmarked(\"b\")}").evaluate());
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Test
+	public void testRenderAsync() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("import.packages+", "java.util.concurrent");
+		Engine engine = Engine.getEngine("httl-render-async.properties", properties);
+		Template template = engine.parseTemplate("#set(String name, Object first, CompletableFuture second)"
+				+ "<${name}|${first}|${second}>");
+		for (boolean stream : new boolean[] { false, true }) {
+			CompletableFuture<Object> first = new CompletableFuture<Object>();
+			CompletableFuture<Object> second = new CompletableFuture<Object>();
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("name", "n");
+			parameters.put("first", first);
+			parameters.put("second", second);
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			StringWriter writer = new StringWriter();
+			CompletionStage<Void> done = template.renderAsync(parameters, stream ? output : writer);
+			Assert.assertEquals("<n|", stream ? output.toString() : writer.toString());
+			second.complete("<b>");
+			Assert.assertEquals("<n|", stream ? output.toString() : writer.toString());
+			first.complete("a");
+			Assert.assertEquals("<n|a|&lt;b&gt;>", stream ? output.toString() : writer.toString());
+			Assert.assertTrue(done.toCompletableFuture().isDone());
+		}
+		// the completed values are joined by the synchronous rendering.
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "n");
+		parameters.put("first", CompletableFuture.completedFuture("a"));
+		parameters.put("second", CompletableFuture.completedFuture("b"));
+		Assert.assertEquals("<n|a|b>", template.evaluate(parameters));
+	}
+
+	private static boolean isOutlined(Template template) {
+		for (Method method : ((AdaptiveTemplate) template).getWriterTemplate().getClass().getDeclaredMethods()) {
+			if (method.getName().startsWith("$outline")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
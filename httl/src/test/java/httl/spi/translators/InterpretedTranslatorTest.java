@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.translators.templates.InterpretedTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InterpretedTranslatorTest {
+
+	@Test
+	public void testInterpretedPlan() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("interpreted", "true");
+		properties.setProperty("compiled", "false");
+		Engine interpretedEngine = Engine.getEngine("httl-interpreted-plan.properties", properties);
+		properties.setProperty("interpreted", "false");
+		properties.setProperty("compiled", "true");
+		Engine compiledEngine = Engine.getEngine("httl-interpreted-plan-compiled.properties", properties);
+
+		String source = "#set(String name, int[] items)<p>${1 + 2 * 3}, ${name}, $!{name}, ${name.length()}, ${-(4 - 5) == 1 ? 'a' : 'b'}</p>"
+				+ "#for(int item : items)#if(item == 2)two#else(item > 3)big#else${item}#end#break(item == 4)#end";
+		Template template = interpretedEngine.parseTemplate(source);
+		Template expected = compiledEngine.parseTemplate(source);
+		Assert.assertTrue(template instanceof InterpretedTemplate);
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "<b>httl</b>");
+		parameters.put("items", new int[] { 1, 2, 3, 4, 5 });
+		for (int i = 0; i < 3; i ++) { // the plan is reused by each rendering
+			Assert.assertEquals(expected.evaluate(parameters), template.evaluate(parameters));
+		}
+
+		ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+		expected.render(parameters, expectedBytes);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		template.render(parameters, bytes);
+		Assert.assertEquals(expectedBytes.toString("UTF-8"), bytes.toString("UTF-8"));
+	}
+
+}
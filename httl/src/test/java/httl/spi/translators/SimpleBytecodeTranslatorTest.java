@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators;
+
+import httl.Engine;
+import httl.Template;
+import httl.spi.translators.templates.AdaptiveTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SimpleBytecodeTranslatorTest {
+
+	@Test
+	public void testBytecodeTemplate() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compiled.translator", "httl.spi.translators.SimpleBytecodeTranslator");
+		properties.setProperty("preload", "false");
+		Engine bytecodeEngine = Engine.getEngine("httl-bytecode.properties", properties);
+		properties.remove("compiled.translator");
+		Engine compiledEngine = Engine.getEngine("httl-bytecode-compiled.properties", properties);
+
+		String source = "<p>${name}, $!{html}, ${chars}, ${missing}, ${macro}</p>";
+		AdaptiveTemplate template = (AdaptiveTemplate) bytecodeEngine.parseTemplate(source);
+		Template expected = compiledEngine.parseTemplate(source);
+		Assert.assertTrue(template.getWriterTemplate().getClass().getName().contains("_bc"));
+		Assert.assertTrue(template.getStreamTemplate().getClass().getName().contains("_bc"));
+
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "<b>httl</b>");
+		parameters.put("html", "<b>httl</b>");
+		parameters.put("chars", "<i>".toCharArray());
+		parameters.put("macro", compiledEngine.parseTemplate("${1 + 2}"));
+		Assert.assertEquals(expected.evaluate(parameters), template.evaluate(parameters));
+		Assert.assertEquals(new ArrayList<String>(expected.getVariables().keySet()), new ArrayList<String>(template.getVariables().keySet()));
+
+		ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+		expected.render(parameters, expectedBytes);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		template.render(parameters, bytes);
+		Assert.assertEquals(expectedBytes.toString("UTF-8"), bytes.toString("UTF-8"));
+
+		// fallback to the java compiler
+		source = "#if(name)${name}#end";
+		template = (AdaptiveTemplate) bytecodeEngine.parseTemplate(source);
+		Assert.assertFalse(template.getWriterTemplate().getClass().getName().contains("_bc"));
+		Assert.assertEquals(compiledEngine.parseTemplate(source).evaluate(parameters), template.evaluate(parameters));
+	}
+
+	@Test
+	public void testBytecodePath() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("compiled.translator", "httl.spi.translators.SimpleBytecodeTranslator");
+		properties.setProperty("import.variables", "String title");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-bytecode-path.properties", properties);
+		String[] emitted = { "text only", "<p>${name}</p>", "$!{name}<!-- ${html} -->", "##comment\n${a}${b}" };
+		for (String source : emitted) {
+			Assert.assertTrue(source, isBytecode(engine.parseTemplate(source)));
+		}
+		String[] compiled = { "${name.toString()}", "${1 + 2}", "#set(String name)${name}", "${this}", "${filter}", "${formatter}",
+				"${title}", "#for(i : list)${for}#end", "#if(name)${name}#end", "#macro(m)x#end${m}", "<script>${name}</script>" };
+		for (String source : compiled) {
+			Assert.assertFalse(source, isBytecode(engine.parseTemplate(source)));
+		}
+	}
+
+	private static boolean isBytecode(Template template) {
+		AdaptiveTemplate adaptive = (AdaptiveTemplate) template;
+		return adaptive.getWriterTemplate().getClass().getName().contains("_bc")
+				&& adaptive.getStreamTemplate().getClass().getName().contains("_bc");
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.Engine;
+import httl.Template;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InlineCacheTest {
+
+	@Test
+	public void testMonomorphic() throws Throwable {
+		InlineCache cache = new InlineCache();
+		Class<?>[] types = new Class<?>[] { String.class };
+		Assert.assertNull(cache.get(types));
+		InlineCache.Entry entry = cache.put(types, InlineCache.INVOKE, InlineCache.toHandle(String.class.getMethod("length")), null, null);
+		Assert.assertSame(entry, cache.get(new Class<?>[] { String.class }));
+		Assert.assertEquals(4, entry.invoke("httl", new Object[0]));
+	}
+
+	@Test
+	public void testPolymorphic() throws Throwable {
+		InlineCache cache = new InlineCache();
+		InlineCache.Entry string = cache.put(new Class<?>[] { String.class }, InlineCache.INVOKE, InlineCache.toHandle(String.class.getMethod("length")), null, null);
+		InlineCache.Entry builder = cache.put(new Class<?>[] { StringBuilder.class }, InlineCache.INVOKE, InlineCache.toHandle(StringBuilder.class.getMethod("length")), null, null);
+		Assert.assertSame(string, cache.get(new Class<?>[] { String.class }));
+		Assert.assertSame(builder, cache.get(new Class<?>[] { StringBuilder.class }));
+		Assert.assertEquals(2, builder.invoke(new StringBuilder("ab"), new Object[0]));
+		// megamorphic, the new types are not cached.
+		Class<?>[] others = { Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class, Character.class };
+		for (Class<?> type : others) {
+			cache.put(new Class<?>[] { type }, InlineCache.NOT_FOUND, null, null, null);
+		}
+		Assert.assertNotNull(cache.get(new Class<?>[] { Float.class }));
+		Assert.assertNull(cache.get(new Class<?>[] { Character.class }));
+		Assert.assertSame(string, cache.get(new Class<?>[] { String.class }));
+	}
+
+	@Test
+	public void testTypeChange() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		properties.setProperty("interpreted", "true");
+		properties.setProperty("compiled", "false");
+		Engine engine = Engine.getEngine("httl-inline-cache.properties", properties);
+		Template template = engine.parseTemplate("${value.length()}|${cls.greet(\"httl\")}");
+		Assert.assertTrue(template instanceof InterpretedTemplate);
+		Object[][] cases = {
+				{ "abc", Hello.class, "3|hello httl" },
+				{ "abc", Hello.class, "3|hello httl" },
+				{ new StringBuilder("ab"), Hi.class, "2|hi httl" },
+				{ "a", Hello.class, "1|hello httl" },
+				{ new StringBuilder("abcd"), Hi.class, "4|hi httl" } };
+		for (Object[] c : cases) {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("value", c[0]);
+			parameters.put("cls", c[1]);
+			Assert.assertEquals(c[2], template.evaluate(parameters));
+		}
+	}
+
+	public static class Hello {
+		public static String greet(String name) {
+			return "hello " + name;
+		}
+	}
+
+	public static class Hi {
+		public static String greet(String name) {
+			return "hi " + name;
+		}
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.spi.translators.templates;
+
+import httl.Engine;
+import httl.Template;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MixedTemplateTest {
+
+	@Test
+	public void testAsyncCompile() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("interpreted", "true");
+		properties.setProperty("compiled", "true");
+		properties.setProperty("compile.async", "true");
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-mixed-async.properties", properties);
+		Template template = engine.parseTemplate("${name}, ${age}");
+		Assert.assertTrue(template instanceof MixedTemplate);
+		MixedTemplate mixed = (MixedTemplate) template;
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "liangfei");
+		parameters.put("age", 30);
+		// served by the interpreted template, while compiling in background.
+		Assert.assertEquals("liangfei, 30", mixed.evaluate(parameters));
+		for (int i = 0; i < 600 && ! mixed.isCompiled(); i ++) {
+			Thread.sleep(100);
+		}
+		Assert.assertTrue(mixed.isCompiled());
+		Assert.assertEquals("liangfei, 30", mixed.evaluate(parameters));
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.method;
+
+import httl.Context;
+import httl.util.Contextual;
+
+public class ContextualMethods {
+
+	private ContextualMethods() {}
+
+	@Contextual
+	public static String marked(Context context, String name) {
+		return (context.getTemplate() == null ? "none " : "context ") + name;
+	}
+
+	public static String marked(String name) {
+		return "plain " + name;
+	}
+
+	public static String unmarked(Context context, String name) {
+		return "context " + name;
+	}
+
+	public static String unmarked(String name) {
+		return "plain " + name;
+	}
+
+}
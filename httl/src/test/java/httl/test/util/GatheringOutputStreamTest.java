@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011-2013 HTTL Team.
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package httl.test.util;
+
+import httl.Engine;
+import httl.Template;
+import httl.util.GatheringOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class GatheringOutputStreamTest {
+
+	@Test
+	public void testGatheringWrite() throws Exception {
+		RecordChannel channel = new RecordChannel();
+		GatheringOutputStream output = new GatheringOutputStream(channel, 16);
+		byte[] text = "<p>".getBytes("UTF-8");
+		GatheringOutputStream.writeShared(output, text);
+		output.write("ab".getBytes("UTF-8"));
+		output.write('c');
+		GatheringOutputStream.writeShared(output, text);
+		assertEquals(0, channel.writes);
+		output.flush();
+		assertEquals(1, channel.writes);
+		assertEquals("<p>abc<p>", channel.toString());
+
+		// the block is full
+		output.write("0123456789".getBytes("UTF-8"));
+		output.write("0123456789".getBytes("UTF-8"));
+		output.write("0123456789012345678".getBytes("UTF-8"));
+		output.flush();
+		assertEquals("<p>abc<p>" + "01234567890123456789" + "0123456789012345678", channel.toString());
+	}
+
+	@Test
+	public void testSharedBuffer() throws Exception {
+		ByteBuffer text = ByteBuffer.wrap("<p>".getBytes("UTF-8"));
+		for (int i = 0; i < 2; i ++) { // the shared buffer is not consumed by the writing
+			RecordChannel channel = new RecordChannel();
+			GatheringOutputStream output = new GatheringOutputStream(channel, 16);
+			GatheringOutputStream.writeShared(output, text);
+			output.write('a');
+			GatheringOutputStream.writeShared(output, text);
+			output.flush();
+			assertEquals("<p>a<p>", channel.toString());
+			assertEquals(3, text.remaining());
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GatheringOutputStream.writeShared(output, text);
+		assertEquals("<p>", output.toString("UTF-8"));
+	}
+
+	@Test
+	public void testRenderChannel() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty("preload", "false");
+		Engine engine = Engine.getEngine("httl-gathering.properties", properties);
+		Template template = engine.parseTemplate("#set(String name)<p>${name}</p>#for(i : 1..3)<i>${i}</i>#end");
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("name", "<b>httl</b>");
+		RecordChannel channel = new RecordChannel();
+		template.render(parameters, channel);
+		assertEquals(1, channel.writes);
+		assertEquals(template.evaluate(parameters), channel.toString());
+	}
+
+	private static class RecordChannel implements GatheringByteChannel {
+
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		private int writes;
+
+		public int write(ByteBuffer src) throws IOException {
+			return (int) write(new ByteBuffer[] { src }, 0, 1);
+		}
+
+		public long write(ByteBuffer[] srcs) throws IOException {
+			return write(srcs, 0, srcs.length);
+		}
+
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			writes ++;
+			long size = 0;
+			for (int i = offset; i < offset + length; i ++) {
+				while (srcs[i].hasRemaining()) {
+					output.write(srcs[i].get());
+					size ++;
+				}
+			}
+			return size;
+		}
+
+		public boolean isOpen() {
+			return true;
+		}
+
+		public void close() throws IOException {
+		}
+
+		@Override
+		public String toString() {
+			try {
+				return output.toString("UTF-8");
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+	}
+
+}
@@ -18,6 +18,8 @@ package httl.test.util;
 import static org.junit.Assert.assertEquals;
 import httl.util.StringUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
 import java.text.DecimalFormat;
 
 import org.junit.Test;
@@ -68,6 +70,20 @@ public class StringUtilsTest {
 		assertEquals("a&lt;table border=&quot;0&quot; color=&apos;red&apos;&gt;b&amp;lt;c&lt;/table&gt;d", StringUtils.escapeXml("a<table border=\"0\" color=\'red\'>b&lt;c</table>d"));
 	}
 
+	@Test
+	public void testEscapeXmlStream() throws Exception {
+		String html = "a<table border=\"0\" color=\'red\'>b&lt;c</table>d";
+		String escaped = "a&lt;table border=&quot;0&quot; color=&apos;red&apos;&gt;b&amp;lt;c&lt;/table&gt;d";
+		StringWriter writer = new StringWriter();
+		StringUtils.escapeXml(html, writer);
+		StringUtils.escapeXml(html.toCharArray(), writer);
+		assertEquals(escaped + escaped, writer.toString());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StringUtils.escapeXml("中<文>字\"符".getBytes("UTF-8"), output);
+		StringUtils.escapeXml("abcd".getBytes("UTF-8"), output);
+		assertEquals("中&lt;文&gt;字&quot;符abcd", output.toString("UTF-8"));
+	}
+
 	@Test
 	public void testUnescapeXml() {
 		assertEquals("abcd", StringUtils.unescapeXml("abcd"));